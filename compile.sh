@@ -14,7 +14,7 @@ fi
 echo "Compiling Java source..."
 javac -cp "$CLASSPATH" \
       -d build/classes \
-      src/main/java/com/wowza/wms/plugin/security/ModuleRTMPPlaybackAuthentication.java
+      src/main/java/com/wowza/wms/plugin/security/*.java
 
 if [ $? -eq 0 ]; then
     echo "✓ Compilation successful"
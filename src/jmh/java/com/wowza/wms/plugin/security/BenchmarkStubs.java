@@ -0,0 +1,160 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.wowza.wms.application.IApplication;
+import com.wowza.wms.application.IApplicationInstance;
+import com.wowza.wms.application.WMSProperties;
+import com.wowza.wms.client.IClient;
+import com.wowza.wms.vhost.IVHost;
+
+/**
+ * Minimal stand-ins for the Wowza runtime objects the module touches.
+ *
+ * Dynamic proxies are used instead of Mockito so that call recording does
+ * not dominate the measured time; methods the module does not use return
+ * null, false or zero.
+ */
+final class BenchmarkStubs {
+
+    static final String APP_NAME = "bench";
+
+    private BenchmarkStubs() {
+    }
+
+    static IClient client(String ip) {
+        WMSProperties properties = new WMSProperties();
+        return proxy(IClient.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getIp":
+                return ip;
+            case "getProperties":
+                return properties;
+            case "isConnected":
+                return Boolean.TRUE;
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    static IApplicationInstance appInstance(Path home, WMSProperties properties) {
+        IVHost vhost = proxy(IVHost.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getHomePath":
+                return home.toString();
+            case "getName":
+                return "_defaultVHost_";
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        });
+        IApplication application = proxy(IApplication.class,
+                (proxy, method, args) -> "getName".equals(method.getName()) ? APP_NAME
+                        : defaultValue(method.getReturnType()));
+        return proxy(IApplicationInstance.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getVHost":
+                return vhost;
+            case "getApplication":
+                return application;
+            case "getProperties":
+                return properties;
+            case "getName":
+                return "_definst_";
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    /**
+     * Properties for a quiet module: no watcher thread, no throttling, no
+     * JMX and only failure summaries in the log
+     */
+    static WMSProperties quietProperties() {
+        WMSProperties properties = new WMSProperties();
+        properties.setProperty("rtmpPlaybackWatchCredentials", "false");
+        properties.setProperty("rtmpPlaybackThrottleEnabled", "false");
+        properties.setProperty("rtmpPlaybackMetricsJmx", "false");
+        properties.setProperty("rtmpPlaybackLogVerbosity", "failures");
+        return properties;
+    }
+
+    static String username(int i) {
+        return "viewer" + i;
+    }
+
+    static String password(int i) {
+        return "secret-" + Integer.toHexString(i * 0x9E3779B1);
+    }
+
+    /**
+     * Write [home]/conf/bench/publish.password with the given number of users
+     */
+    static Path writePasswordFile(Path home, int users) throws IOException {
+        Path dir = home.resolve("conf").resolve(APP_NAME);
+        Files.createDirectories(dir);
+        Path file = dir.resolve("publish.password");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("# generated for benchmarks\n");
+            for (int i = 0; i < users; i++) {
+                writer.write(username(i));
+                writer.write(':');
+                writer.write(password(i));
+                writer.write('\n');
+            }
+        }
+        return file;
+    }
+
+    static void deleteTree(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == char.class) {
+            return (char) 0;
+        }
+        return null;
+    }
+}
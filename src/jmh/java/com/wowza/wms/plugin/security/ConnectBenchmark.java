@@ -0,0 +1,94 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.wowza.wms.amf.AMFDataList;
+import com.wowza.wms.amf.AMFDataObj;
+import com.wowza.wms.client.IClient;
+
+/**
+ * Full onConnect decision, including credential extraction and
+ * authenticateUser, for plaintext entries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectBenchmark {
+
+    @Param({ "object", "positional" })
+    public String style;
+
+    @Param({ "hit", "miss", "wrongPassword" })
+    public String credentials;
+
+    @Param({ "10000" })
+    public int users;
+
+    private Path home;
+    private ModuleRTMPPlaybackAuthentication module;
+    private IClient client;
+    private AMFDataList params;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("rtmpauth-bench");
+        BenchmarkStubs.writePasswordFile(home, users);
+        module = new ModuleRTMPPlaybackAuthentication();
+        module.onAppStart(BenchmarkStubs.appInstance(home, BenchmarkStubs.quietProperties()));
+        client = BenchmarkStubs.client("10.0.0.1");
+
+        int user = users / 2;
+        String username = "miss".equals(credentials) ? "nobody" + user : BenchmarkStubs.username(user);
+        String password = "wrongPassword".equals(credentials) ? "wrong" : BenchmarkStubs.password(user);
+        params = connectParams(style, username, password);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        module.onAppStop(null);
+        BenchmarkStubs.deleteTree(home);
+    }
+
+    @Benchmark
+    public void onConnect() {
+        module.onConnect(client, null, params);
+    }
+
+    static AMFDataList connectParams(String style, String username, String password) {
+        AMFDataList params = new AMFDataList();
+        AMFDataObj command = new AMFDataObj();
+        command.put("app", "bench");
+        command.put("tcUrl", "rtmp://localhost/bench");
+        params.add(command);
+        if ("object".equals(style)) {
+            AMFDataObj credentials = new AMFDataObj();
+            credentials.put("username", username);
+            credentials.put("password", password);
+            params.add(credentials);
+        } else {
+            params.add(username);
+            params.add(password);
+        }
+        return params;
+    }
+}
@@ -0,0 +1,61 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load a password file into a new snapshot. With the index file
+ * enabled every reload after the first maps the existing sidecar.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class CredentialReloadBenchmark {
+
+    @Param({ "10", "1000", "100000", "1000000" })
+    public int users;
+
+    @Param({ "false", "true" })
+    public boolean indexFile;
+
+    private Path home;
+    private CredentialSource source;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("rtmpauth-bench");
+        Path file = BenchmarkStubs.writePasswordFile(home, users);
+        source = new CredentialSource(file.toString(), false, indexFile, 10, 0, 0);
+        source.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        source.stop();
+        BenchmarkStubs.deleteTree(home);
+    }
+
+    @Benchmark
+    public CredentialSnapshot reload() {
+        return source.reload();
+    }
+}
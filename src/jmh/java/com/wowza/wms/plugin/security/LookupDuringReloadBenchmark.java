@@ -0,0 +1,89 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Credential lookups on several threads while another thread reloads the
+ * password file back to back. Lookup latency should not depend on reloads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class LookupDuringReloadBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({ "100000" })
+    public int users;
+
+    private Path home;
+    private CredentialSource source;
+    private String[] usernames;
+    private String[] passwords;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("rtmpauth-bench");
+        Path file = BenchmarkStubs.writePasswordFile(home, users);
+        source = new CredentialSource(file.toString(), false, false, 10, 0, 0);
+        source.start();
+        usernames = new String[KEYS];
+        passwords = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            // Every other key is unknown so the filter and the index both get exercised
+            int user = (int) ((i * 2654435761L) % users);
+            usernames[i] = (i & 1) == 0 ? BenchmarkStubs.username(user) : "nobody" + user;
+            passwords[i] = BenchmarkStubs.password(user);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        source.stop();
+        BenchmarkStubs.deleteTree(home);
+    }
+
+    @Benchmark
+    @Group("lookupDuringReload")
+    @GroupThreads(3)
+    public boolean lookup(Cursor cursor) {
+        int i = cursor.next++ & (KEYS - 1);
+        CredentialSnapshot snapshot = source.snapshot();
+        int entry = snapshot.find(usernames[i]);
+        return entry >= 0 && snapshot.passwordEquals(entry, passwords[i]);
+    }
+
+    @Benchmark
+    @Group("lookupDuringReload")
+    @GroupThreads(1)
+    public CredentialSnapshot reload() {
+        return source.reload();
+    }
+}
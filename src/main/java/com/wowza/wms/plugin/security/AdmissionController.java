@@ -0,0 +1,120 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds how many connects are authenticated at once.
+ *
+ * Up to {@code maxInFlight} checks run concurrently; further connects wait
+ * in a bounded FIFO queue for at most the queue deadline. A connect is shed
+ * immediately, without waiting, when the queue is full or when the expected
+ * wait (queue position times the average check time, divided by the
+ * concurrency) already exceeds the deadline. During a reconnect storm the
+ * connects that are admitted therefore finish in bounded time, and the rest
+ * are told quickly to retry instead of piling up on Wowza's threads.
+ */
+final class AdmissionController {
+
+    private final int maxInFlight;
+    private final int maxQueue;
+    private final long deadlineNanos;
+    private final Semaphore permits;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // Exponentially weighted average time a permit is held, seeded at 1ms
+    private final AtomicLong averageServiceNanos = new AtomicLong(TimeUnit.MILLISECONDS.toNanos(1));
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder admittedAfterWait = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    AdmissionController(int maxInFlight, int maxQueue, long deadlineMillis) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, deadlineMillis));
+        // Fair, so queued connects are admitted in arrival order
+        this.permits = new Semaphore(this.maxInFlight, true);
+    }
+
+    /**
+     * Take a slot, waiting in the queue if needed. Every successful call
+     * must be paired with {@link #release}.
+     *
+     * @return false if the connect should be shed
+     */
+    boolean acquire() {
+        if (waiting.get() == 0 && permits.tryAcquire()) {
+            admitted.increment();
+            return true;
+        }
+        int position = waiting.incrementAndGet();
+        try {
+            if (position > maxQueue || expectedWaitNanos(position) > deadlineNanos) {
+                shed.increment();
+                return false;
+            }
+            if (permits.tryAcquire(deadlineNanos, TimeUnit.NANOSECONDS)) {
+                admitted.increment();
+                admittedAfterWait.increment();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        shed.increment();
+        return false;
+    }
+
+    /**
+     * Return a slot taken at {@code acquiredNanos} ({@link System#nanoTime()})
+     */
+    void release(long acquiredNanos) {
+        long sample = Math.max(0, System.nanoTime() - acquiredNanos);
+        long average;
+        do {
+            average = averageServiceNanos.get();
+        } while (!averageServiceNanos.compareAndSet(average, average + (sample - average) / 8));
+        permits.release();
+    }
+
+    private long expectedWaitNanos(int position) {
+        return position * averageServiceNanos.get() / maxInFlight;
+    }
+
+    /**
+     * @return a hint for shed clients: how long until the current queue
+     *         has drained, at least one second
+     */
+    long retryAfterMillis() {
+        long drain = TimeUnit.NANOSECONDS.toMillis(expectedWaitNanos(Math.max(1, waiting.get())));
+        return Math.max(1000, drain);
+    }
+
+    int inFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    int queued() {
+        return waiting.get();
+    }
+
+    long admittedCount() {
+        return admitted.sum();
+    }
+
+    long admittedAfterWaitCount() {
+        return admittedAfterWait.sum();
+    }
+
+    long shedCount() {
+        return shed.sum();
+    }
+
+    long averageServiceMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(averageServiceNanos.get());
+    }
+}
@@ -0,0 +1,374 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Durable record of every authentication decision, one JSON object per
+ * line:
+ *
+ * <pre>
+ * {"time":"2026-10-16T12:00:00.123Z","event":"connect","ip":"10.0.0.7","user":"alice","result":"accepted","reason":"accepted"}
+ * {"time":"2026-10-16T12:00:01.456Z","event":"play","ip":"10.0.0.7","user":"alice","result":"rejected","reason":"stream-denied","stream":"live/bob"}
+ * </pre>
+ *
+ * The connect path only claims a slot in a preallocated ring buffer and
+ * stores references into it; there is no lock, no allocation and no I/O.
+ * A single writer thread drains whatever has been published, formats it
+ * and appends the batch with one write and one fsync, so the disk cost is
+ * shared by every event of the batch. When the buffer is full the event is
+ * counted as dropped instead of blocking the connect.
+ *
+ * The file is rotated by size: {@code audit.log} becomes
+ * {@code audit.log.1}, older files shift up and the oldest is deleted.
+ * {@link AuditLogReader} reads and filters the files.
+ */
+final class AuditLog {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(AuditLog.class);
+
+    static final String CONNECT = "connect";
+    static final String PLAY = "play";
+    static final String STREAM_DENIED = "stream-denied";
+
+    // Attacker-chosen names must not make single lines arbitrarily long
+    private static final int MAX_FIELD_LENGTH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long DROP_REPORT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final int mask;
+
+    // The ring: slot i holds the event whose sequence is published[i]
+    private final long[] times;
+    private final String[] events;
+    private final String[] ips;
+    private final String[] users;
+    private final AuthOutcome[] outcomes;
+    private final String[] streams;
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private volatile long consumed;
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final StringBuilder line = new StringBuilder(256); // writer thread only
+    private FileChannel channel; // writer thread only, after start
+    private long fileBytes;
+    private volatile boolean running;
+    private volatile Thread writer;
+
+    /**
+     * @param file         the audit file
+     * @param bufferSize   events that can wait for the writer, rounded up to
+     *                     a power of two
+     * @param maxFileBytes size after which the file is rotated
+     * @param maxFiles     rotated files kept next to the current one
+     */
+    AuditLog(Path file, int bufferSize, long maxFileBytes, int maxFiles) {
+        int capacity = Math.max(2, Integer.highestOneBit(Math.max(1, bufferSize - 1) << 1));
+        this.file = file;
+        this.maxFileBytes = Math.max(1024, maxFileBytes);
+        this.maxFiles = Math.max(0, maxFiles);
+        this.mask = capacity - 1;
+        this.times = new long[capacity];
+        this.events = new String[capacity];
+        this.ips = new String[capacity];
+        this.users = new String[capacity];
+        this.outcomes = new AuthOutcome[capacity];
+        this.streams = new String[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    synchronized void start() throws IOException {
+        if (writer != null) {
+            return;
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        openFile();
+        running = true;
+        Thread t = new Thread(this::run, "RTMPPlaybackAuth-audit");
+        t.setDaemon(true);
+        writer = t;
+        t.start();
+    }
+
+    /**
+     * Stop the writer after it has written everything already published
+     */
+    synchronized void stop() {
+        Thread t = writer;
+        writer = null;
+        if (t == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(t);
+        try {
+            t.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Record a connect decision
+     *
+     * @return false if the buffer was full and the event was dropped
+     */
+    boolean connect(String ip, String username, AuthOutcome outcome) {
+        return record(CONNECT, ip, username, outcome, null);
+    }
+
+    /**
+     * Record a play request refused by the stream rules
+     */
+    boolean playDenied(String ip, String username, String stream) {
+        return record(PLAY, ip, username, null, stream);
+    }
+
+    private boolean record(String event, String ip, String username, AuthOutcome outcome, String stream) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) (sequence & mask);
+        times[slot] = System.currentTimeMillis();
+        events[slot] = event;
+        ips[slot] = ip;
+        users[slot] = username;
+        outcomes[slot] = outcome;
+        streams[slot] = stream;
+        // The volatile write publishes the fields above to the writer
+        published.set(slot, sequence);
+        return true;
+    }
+
+    long droppedCount() {
+        return dropped.sum();
+    }
+
+    long writtenCount() {
+        return written.get();
+    }
+
+    /**
+     * @return events published but not yet written
+     */
+    int pendingCount() {
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    private void run() {
+        long reportedDrops = 0;
+        long lastReport = System.nanoTime();
+        while (true) {
+            boolean stopping = !running;
+            int batch = drain();
+            long drops = dropped.sum();
+            if (drops != reportedDrops && System.nanoTime() - lastReport > DROP_REPORT_NANOS) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Audit buffer full, dropped " + (drops - reportedDrops)
+                        + " events");
+                reportedDrops = drops;
+                lastReport = System.nanoTime();
+            }
+            if (stopping && batch == 0) {
+                break;
+            }
+            if (batch == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+        closeFile();
+    }
+
+    /**
+     * Write every event published so far as one batch
+     *
+     * @return the number of events written
+     */
+    private int drain() {
+        long next = consumed;
+        StringBuilder batch = null;
+        int count = 0;
+        while (published.get((int) (next & mask)) == next) {
+            int slot = (int) (next & mask);
+            if (batch == null) {
+                batch = new StringBuilder(256 * 16);
+            }
+            format(slot);
+            batch.append(line);
+            // Drop references so the ring does not keep old strings alive
+            ips[slot] = null;
+            users[slot] = null;
+            streams[slot] = null;
+            next++;
+            count++;
+            if (count == mask + 1) {
+                break;
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        // Slots are free once read; the write below may take a while
+        consumed = next;
+        write(batch);
+        written.addAndGet(count);
+        return count;
+    }
+
+    private void format(int slot) {
+        StringBuilder sb = line;
+        sb.setLength(0);
+        AuthOutcome outcome = outcomes[slot];
+        boolean accepted = outcome != null && outcome.isAccepted();
+        sb.append("{\"time\":\"").append(Instant.ofEpochMilli(times[slot])).append('"');
+        sb.append(",\"event\":\"").append(events[slot]).append('"');
+        field(sb, "ip", ips[slot]);
+        field(sb, "user", users[slot]);
+        sb.append(",\"result\":\"").append(accepted ? "accepted" : "rejected").append('"');
+        sb.append(",\"reason\":\"").append(outcome != null ? AuthEventLog.label(outcome) : STREAM_DENIED).append('"');
+        if (streams[slot] != null) {
+            field(sb, "stream", streams[slot]);
+        }
+        sb.append("}\n");
+    }
+
+    private static void field(StringBuilder sb, String name, String value) {
+        sb.append(",\"").append(name).append("\":");
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        jsonString(sb, value);
+    }
+
+    /**
+     * Append a value as a JSON string, cut to {@value #MAX_FIELD_LENGTH}
+     * characters
+     */
+    static void jsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        int length = Math.min(value.length(), MAX_FIELD_LENGTH);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                sb.append("\\\"");
+                break;
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    private void write(StringBuilder batch) {
+        byte[] bytes = batch.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            if (channel == null) {
+                // A failed rotation left no file open
+                openFile();
+            }
+            if (fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) {
+                rotate();
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            fileBytes += bytes.length;
+        } catch (IOException | RuntimeException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Cannot write audit log " + file, e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        if (maxFiles == 0) {
+            Files.deleteIfExists(file);
+        } else {
+            Files.deleteIfExists(rotated(file, maxFiles));
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                Path from = rotated(file, i);
+                if (Files.exists(from)) {
+                    Files.move(from, rotated(file, i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, rotated(file, 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        openFile();
+    }
+
+    static Path rotated(Path file, int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void openFile() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileBytes = channel.size();
+    }
+
+    private void closeFile() {
+        FileChannel c = channel;
+        channel = null;
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException e) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Cannot close audit log " + file + ": "
+                        + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Command line reader for {@link AuditLog} files.
+ *
+ * <pre>
+ * java -cp rtmp-playback-auth.jar com.wowza.wms.plugin.security.AuditLogReader \
+ *     [--user NAME] [--ip ADDRESS] [--result accepted|rejected] [--reason REASON]
+ *     [--since 2026-10-16T00:00:00Z] [--until ...] [--summary] audit.log
+ * </pre>
+ *
+ * Rotated files ({@code audit.log.N}) are read oldest first, followed by
+ * the current file. Matching lines are printed unchanged, or with
+ * {@code --summary} counted per result and reason.
+ */
+final class AuditLogReader {
+
+    private final Map<String, String> filters = new LinkedHashMap<>();
+    private Instant since;
+    private Instant until;
+
+    /**
+     * Only match records whose field has this value
+     */
+    AuditLogReader where(String field, String value) {
+        filters.put(field, value);
+        return this;
+    }
+
+    AuditLogReader between(Instant since, Instant until) {
+        this.since = since;
+        this.until = until;
+        return this;
+    }
+
+    boolean matches(Map<String, String> record) {
+        for (Map.Entry<String, String> filter : filters.entrySet()) {
+            if (!filter.getValue().equals(record.get(filter.getKey()))) {
+                return false;
+            }
+        }
+        if (since != null || until != null) {
+            Instant time;
+            try {
+                time = Instant.parse(record.getOrDefault("time", ""));
+            } catch (DateTimeParseException e) {
+                return false;
+            }
+            if ((since != null && time.isBefore(since)) || (until != null && !time.isBefore(until))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read every matching record of the file and its rotations
+     *
+     * @param consumer called with the raw line and its parsed fields
+     * @return the number of lines that could not be parsed
+     */
+    int read(Path log, RecordConsumer consumer) throws IOException {
+        int malformed = 0;
+        for (Path file : files(log)) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                for (String line; (line = reader.readLine()) != null;) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    Map<String, String> record = parse(line);
+                    if (record == null) {
+                        malformed++;
+                    } else if (matches(record)) {
+                        consumer.accept(line, record);
+                    }
+                }
+            }
+        }
+        return malformed;
+    }
+
+    interface RecordConsumer {
+        void accept(String line, Map<String, String> record);
+    }
+
+    /**
+     * @return the rotated files oldest first, then the current file; files
+     *         that do not exist are left out
+     */
+    static List<Path> files(Path log) {
+        List<Path> files = new ArrayList<>();
+        for (int i = 1; Files.exists(AuditLog.rotated(log, i)); i++) {
+            files.add(AuditLog.rotated(log, i));
+        }
+        Collections.reverse(files);
+        if (Files.exists(log)) {
+            files.add(log);
+        }
+        return files;
+    }
+
+    /**
+     * Parse one audit line: a flat JSON object with string or null values
+     *
+     * @return the fields in order, or null if the line is not such an object
+     */
+    static Map<String, String> parse(String line) {
+        Map<String, Object> object = JsonReader.parseObject(line);
+        if (object == null) {
+            return null;
+        }
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> field : object.entrySet()) {
+            Object value = field.getValue();
+            if (value != null && !(value instanceof String)) {
+                return null;
+            }
+            fields.put(field.getKey(), (String) value);
+        }
+        return fields;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    static int run(String[] args, PrintStream out, PrintStream err) throws IOException {
+        AuditLogReader reader = new AuditLogReader();
+        boolean summary = false;
+        Instant since = null;
+        Instant until = null;
+        Path log = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                case "--user":
+                case "--ip":
+                case "--result":
+                case "--reason":
+                case "--event":
+                    reader.where(arg.substring(2), args[++i]);
+                    break;
+                case "--since":
+                    since = Instant.parse(args[++i]);
+                    break;
+                case "--until":
+                    until = Instant.parse(args[++i]);
+                    break;
+                case "--summary":
+                    summary = true;
+                    break;
+                default:
+                    if (arg.startsWith("--") || log != null) {
+                        throw new IllegalArgumentException("unexpected argument " + arg);
+                    }
+                    log = Paths.get(arg);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException | DateTimeParseException e) {
+            log = null;
+        }
+        if (log == null) {
+            err.println("Usage: AuditLogReader [--user NAME] [--ip ADDRESS] [--result accepted|rejected] "
+                    + "[--reason REASON] [--event connect|play] [--since TIME] [--until TIME] [--summary] <audit.log>");
+            return 1;
+        }
+        reader.between(since, until);
+
+        Map<String, Long> counts = new TreeMap<>();
+        long[] matched = new long[1];
+        boolean countOnly = summary;
+        int malformed = reader.read(log, (line, record) -> {
+            matched[0]++;
+            if (countOnly) {
+                counts.merge(record.get("result") + " " + record.get("reason"), 1L, Long::sum);
+            } else {
+                out.println(line);
+            }
+        });
+        if (summary) {
+            for (Map.Entry<String, Long> count : counts.entrySet()) {
+                out.println(count.getValue() + "\t" + count.getKey());
+            }
+            out.println(matched[0] + "\ttotal");
+        }
+        if (malformed > 0) {
+            err.println("Skipped " + malformed + " malformed lines");
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,296 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.wowza.wms.logging.WMSLogger;
+
+/**
+ * Connect logging for the authentication module.
+ *
+ * Every connect produces at most one compact key=value line, and it is only
+ * built when the verbosity and the logger level let it through. Failures
+ * are not logged one by one: they are counted per user, /24 (or /64) subnet
+ * and reason, and a background flush writes one summary line per group,
+ * e.g. {@code user=alice failed 532 times from 10.0.0.0/24 in the last 10s}.
+ * Unknown usernames are grouped by subnet only, so attacker-chosen names do
+ * not end up in the log or blow up the number of groups. Every client-chosen
+ * value passes through {@link #printable} first, so it cannot start a line
+ * or a field of its own.
+ */
+final class AuthEventLog {
+
+    /**
+     * How much the module logs, set by rtmpPlaybackLogVerbosity
+     */
+    enum Verbosity {
+        /** Nothing per connect, not even failure summaries */
+        OFF,
+        /** Periodic failure summaries only */
+        FAILURES,
+        /** One line per accepted connect plus failure summaries */
+        EVENTS,
+        /** Every connect and every failure as it happens */
+        VERBOSE;
+
+        static Verbosity parse(String value, Verbosity defaultValue) {
+            if (value == null || value.trim().isEmpty()) {
+                return defaultValue;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return defaultValue;
+            }
+        }
+    }
+
+    static final int MAX_GROUPS = 1024;
+    static final int MAX_VALUE_LENGTH = 128;
+
+    private static final String PREFIX = "ModuleRTMPPlaybackAuthentication: ";
+
+    private final WMSLogger logger;
+    private final Verbosity verbosity;
+    private final long flushIntervalMillis;
+    private final Map<String, FailureGroup> failures = new ConcurrentHashMap<>();
+    private final LongAdder overflow = new LongAdder();
+    private final AtomicLong windowStart = new AtomicLong(System.currentTimeMillis());
+    private volatile ScheduledExecutorService flusher;
+
+    private static final class FailureGroup {
+        final String reason;
+        final String user;
+        final String subnet;
+        final LongAdder count = new LongAdder();
+
+        FailureGroup(String reason, String user, String subnet) {
+            this.reason = reason;
+            this.user = user;
+            this.subnet = subnet;
+        }
+    }
+
+    AuthEventLog(WMSLogger logger, Verbosity verbosity, long flushIntervalMillis) {
+        this.logger = logger;
+        this.verbosity = verbosity;
+        this.flushIntervalMillis = Math.max(100, flushIntervalMillis);
+    }
+
+    Verbosity getVerbosity() {
+        return verbosity;
+    }
+
+    synchronized void start() {
+        if (flusher != null || verbosity == Verbosity.OFF) {
+            return;
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "RTMPPlaybackAuth-log-flush");
+            t.setDaemon(true);
+            return t;
+        });
+        flusher.scheduleWithFixedDelay(() -> flush(System.currentTimeMillis()), flushIntervalMillis,
+                flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        ScheduledExecutorService f = flusher;
+        flusher = null;
+        if (f != null) {
+            f.shutdownNow();
+        }
+        flush(System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if per-step detail should be logged
+     */
+    boolean isVerbose() {
+        return verbosity == Verbosity.VERBOSE && logger.isInfoEnabled();
+    }
+
+    void verbose(String message) {
+        if (isVerbose()) {
+            logger.info(PREFIX + message);
+        }
+    }
+
+    void accepted(String username, String ip, boolean tokenOverridden) {
+        if (verbosity.compareTo(Verbosity.EVENTS) < 0 || !logger.isInfoEnabled()) {
+            return;
+        }
+        StringBuilder line = new StringBuilder(96).append(PREFIX).append("auth result=accepted user=")
+                .append(printable(username)).append(" ip=").append(ip);
+        if (tokenOverridden) {
+            line.append(" securityTokenOverridden=true");
+        }
+        logger.info(line.toString());
+    }
+
+    void disconnected(String username) {
+        if (verbosity.compareTo(Verbosity.EVENTS) >= 0 && logger.isInfoEnabled()) {
+            logger.info(PREFIX + "auth result=disconnected user=" + printable(username));
+        }
+    }
+
+    void expired(String username) {
+        if (verbosity.compareTo(Verbosity.EVENTS) >= 0 && logger.isInfoEnabled()) {
+            logger.info(PREFIX + "auth result=expired user=" + printable(username));
+        }
+    }
+
+    void playDenied(String username, String ip, String streamName) {
+        if (verbosity.compareTo(Verbosity.EVENTS) >= 0 && logger.isInfoEnabled()) {
+            logger.info(PREFIX + "auth result=play-denied user=" + printable(username) + " ip=" + ip + " stream="
+                    + printable(streamName));
+        }
+    }
+
+    /**
+     * Count a rejected connect; it is reported by the next flush
+     */
+    void rejected(String username, String ip, AuthOutcome reason) {
+        if (verbosity == Verbosity.OFF) {
+            return;
+        }
+        // Attacker-chosen names are not worth a group of their own
+        String user = reason == AuthOutcome.UNKNOWN_USER || username == null ? "-" : printable(username);
+        if (verbosity == Verbosity.VERBOSE) {
+            logger.warn(PREFIX + "auth result=" + label(reason) + " user=" + user + " ip=" + ip);
+            return;
+        }
+        String label = label(reason);
+        String network = subnet(ip);
+        String key = label + '\0' + user + '\0' + network;
+        FailureGroup group = failures.get(key);
+        if (group == null) {
+            if (failures.size() >= MAX_GROUPS) {
+                overflow.increment();
+                return;
+            }
+            group = failures.computeIfAbsent(key, k -> new FailureGroup(label, user, network));
+        }
+        group.count.increment();
+    }
+
+    /**
+     * Write one summary line per failure group seen since the last flush
+     */
+    void flush(long now) {
+        long start = windowStart.getAndSet(now);
+        long seconds = Math.max(1, (now - start + 500) / 1000);
+        for (Iterator<Map.Entry<String, FailureGroup>> it = failures.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, FailureGroup> entry = it.next();
+            FailureGroup group = entry.getValue();
+            // Groups stay in the map while they are active, so a concurrent
+            // rejected() always counts into a group that a later flush reads
+            long count = group.count.sumThenReset();
+            if (count == 0) {
+                // Idle since the last flush: drop it, and put back anything
+                // counted while it was being removed
+                it.remove();
+                long late = group.count.sumThenReset();
+                if (late > 0) {
+                    failures.computeIfAbsent(entry.getKey(), k -> group).count.add(late);
+                }
+                continue;
+            }
+            logger.warn(PREFIX + "user=" + group.user + " failed " + count + (count == 1 ? " time" : " times")
+                    + " from " + group.subnet + " in the last " + seconds + "s (" + group.reason + ")");
+        }
+        long dropped = overflow.sumThenReset();
+        if (dropped > 0) {
+            logger.warn(PREFIX + dropped + " more failed connects in the last " + seconds
+                    + "s (too many distinct sources to list)");
+        }
+    }
+
+    int pendingGroups() {
+        return failures.size();
+    }
+
+    /**
+     * Make a client-chosen value safe for a log line: cut to
+     * {@value #MAX_VALUE_LENGTH} characters and escape backslashes, spaces
+     * and control characters, so it can neither break the line nor pose as
+     * another key=value field.
+     */
+    static String printable(String value) {
+        if (value == null) {
+            return "-";
+        }
+        int length = Math.min(value.length(), MAX_VALUE_LENGTH);
+        StringBuilder sb = null;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            boolean plain = c > ' ' && c != '\\' && c != 0x7F && (c < 0x80 || c > 0x9F) && c != '\u2028'
+                    && c != '\u2029';
+            if (plain) {
+                if (sb != null) {
+                    sb.append(c);
+                }
+                continue;
+            }
+            if (sb == null) {
+                sb = new StringBuilder(length + 16).append(value, 0, i);
+            }
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            default:
+                sb.append(String.format("\\u%04x", (int) c));
+            }
+        }
+        if (sb == null && length == value.length()) {
+            return value;
+        }
+        String safe = sb != null ? sb.toString() : value.substring(0, length);
+        return length < value.length() ? safe + "..." : safe;
+    }
+
+    static String label(AuthOutcome outcome) {
+        return outcome.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * @return the /24 network of an IPv4 address or the /64 of an IPv6
+     *         address, falling back to the address itself
+     */
+    static String subnet(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            return "unknown";
+        }
+        if (ip.indexOf(':') < 0) {
+            int dot = ip.lastIndexOf('.');
+            return dot > 0 ? ip.substring(0, dot) + ".0/24" : ip;
+        }
+        int end = 0;
+        for (int groups = 0; groups < 4; groups++) {
+            int colon = ip.indexOf(':', end);
+            if (colon < 0 || colon == end) {
+                // Compressed or too short to cut at a /64 boundary
+                return ip;
+            }
+            end = colon + 1;
+        }
+        return ip.substring(0, end) + ":/64";
+    }
+}
@@ -0,0 +1,368 @@
+package com.wowza.wms.plugin.security;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Counters and latency histograms for one application instance.
+ *
+ * Recording only touches {@link LongAdder}s and striped histogram buckets,
+ * so it stays on in production. Registered instances are listed by
+ * {@link HTTPProviderAuthMetrics} in Prometheus text format and, when
+ * enabled, exposed as a JMX MBean.
+ */
+final class AuthMetrics implements AuthMetricsMBean {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(AuthMetrics.class);
+
+    static final String JMX_DOMAIN = "com.wowza.wms.plugin.security";
+
+    private static final Map<String, AuthMetrics> REGISTRY = new ConcurrentHashMap<>();
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+    private static final AuthOutcome[] OUTCOMES = AuthOutcome.values();
+
+    private final String name;
+    private final LongAdder[] outcomes = new LongAdder[OUTCOMES.length];
+    private final LongAdder reloads = new LongAdder();
+    private final LongAdder reloadFailures = new LongAdder();
+    private final LongAdder playsDenied = new LongAdder();
+    private final LatencyHistogram connectLatency = new LatencyHistogram();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
+    private final LatencyHistogram reloadLatency = new LatencyHistogram();
+    private volatile IntSupplier loadedUsers = () -> 0;
+    private volatile TopClients topClients;
+    private ObjectName objectName; // guarded by this
+
+    AuthMetrics(String name) {
+        this.name = name;
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new LongAdder();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void setLoadedUsers(IntSupplier loadedUsers) {
+        this.loadedUsers = loadedUsers;
+    }
+
+    void setTopClients(TopClients topClients) {
+        this.topClients = topClients;
+    }
+
+    TopClients topClients() {
+        return topClients;
+    }
+
+    /**
+     * Count a finished connect and its latency since {@code startNanos}
+     */
+    void recordConnect(AuthOutcome outcome, long startNanos) {
+        outcomes[outcome.ordinal()].increment();
+        connectLatency.recordSince(startNanos);
+    }
+
+    void recordPlayDenied() {
+        playsDenied.increment();
+    }
+
+    void recordLookup(long startNanos) {
+        lookupLatency.recordSince(startNanos);
+    }
+
+    void recordReload(boolean loaded, long durationNanos) {
+        (loaded ? reloads : reloadFailures).increment();
+        reloadLatency.record(durationNanos);
+    }
+
+    long count(AuthOutcome outcome) {
+        return outcomes[outcome.ordinal()].sum();
+    }
+
+    LatencyHistogram connectLatency() {
+        return connectLatency;
+    }
+
+    /**
+     * Make these metrics visible to the HTTP provider and, optionally, JMX.
+     * An earlier registration under the same name is replaced.
+     */
+    synchronized void register(boolean jmx) {
+        REGISTRY.put(name, this);
+        if (!jmx) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=RTMPPlaybackAuthentication,name="
+                    + ObjectName.quote(name));
+            if (server.isRegistered(on)) {
+                server.unregisterMBean(on);
+            }
+            server.registerMBean(new StandardMBean(this, AuthMetricsMBean.class), on);
+            objectName = on;
+        } catch (JMException e) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Could not register metrics MBean for " + name + ": "
+                    + e.getMessage());
+        }
+    }
+
+    synchronized void unregister() {
+        REGISTRY.remove(name, this);
+        if (objectName == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+    static AuthMetrics registered(String name) {
+        return REGISTRY.get(name);
+    }
+
+    /**
+     * Write the top clients of every registered application that tracks
+     * them, as one JSON object.
+     */
+    static void writeTopClients(StringBuilder out) {
+        out.append("{\"applications\":[");
+        boolean first = true;
+        for (AuthMetrics m : new TreeMap<>(REGISTRY).values()) {
+            TopClients top = m.topClients;
+            if (top == null) {
+                continue;
+            }
+            out.append(first ? "{\"name\":" : ",{\"name\":");
+            AuditLog.jsonString(out, m.name);
+            out.append(',');
+            top.writeJson(out);
+            out.append('}');
+            first = false;
+        }
+        out.append("]}");
+    }
+
+    /**
+     * Write every registered application's metrics in Prometheus text
+     * exposition format (version 0.0.4).
+     */
+    static void writePrometheus(StringBuilder out) {
+        Map<String, AuthMetrics> all = new TreeMap<>(REGISTRY);
+
+        family(out, "rtmp_auth_connects_total", "counter", "Connect attempts by outcome");
+        for (AuthMetrics m : all.values()) {
+            for (AuthOutcome outcome : OUTCOMES) {
+                sample(out, "rtmp_auth_connects_total", m.name, "outcome", AuthEventLog.label(outcome),
+                        m.count(outcome));
+            }
+        }
+        family(out, "rtmp_auth_reloads_total", "counter", "Password file reloads by result");
+        for (AuthMetrics m : all.values()) {
+            sample(out, "rtmp_auth_reloads_total", m.name, "result", "ok", m.reloads.sum());
+            sample(out, "rtmp_auth_reloads_total", m.name, "result", "failed", m.reloadFailures.sum());
+        }
+        family(out, "rtmp_auth_plays_denied_total", "counter", "Play requests refused by stream rules");
+        for (AuthMetrics m : all.values()) {
+            sample(out, "rtmp_auth_plays_denied_total", m.name, null, null, m.playsDenied.sum());
+        }
+        family(out, "rtmp_auth_users", "gauge", "Users in the current credential snapshot");
+        for (AuthMetrics m : all.values()) {
+            sample(out, "rtmp_auth_users", m.name, null, null, m.getLoadedUsers());
+        }
+        summary(out, all, "rtmp_auth_connect_seconds", "Time from onConnect to the accept or reject decision",
+                m -> m.connectLatency);
+        summary(out, all, "rtmp_auth_lookup_seconds", "Credential lookup time", m -> m.lookupLatency);
+        summary(out, all, "rtmp_auth_reload_seconds", "Password file reload time", m -> m.reloadLatency);
+    }
+
+    private static void summary(StringBuilder out, Map<String, AuthMetrics> all, String metric, String help,
+            Function<AuthMetrics, LatencyHistogram> histogram) {
+        family(out, metric, "summary", help);
+        for (AuthMetrics m : all.values()) {
+            LatencyHistogram h = histogram.apply(m);
+            for (double q : QUANTILES) {
+                sample(out, metric, m.name, "quantile", Double.toString(q), seconds(h.percentile(q)));
+            }
+            sample(out, metric + "_sum", m.name, null, null, seconds(h.sum()));
+            sample(out, metric + "_count", m.name, null, null, h.count());
+        }
+    }
+
+    private static void family(StringBuilder out, String metric, String type, String help) {
+        out.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(metric).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String metric, String app, String label, String labelValue,
+            Object value) {
+        out.append(metric).append("{app=\"");
+        escape(out, app);
+        out.append('"');
+        if (label != null) {
+            out.append(',').append(label).append("=\"");
+            escape(out, labelValue);
+            out.append('"');
+        }
+        out.append("} ").append(value).append('\n');
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1e9;
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return count(AuthOutcome.ACCEPTED);
+    }
+
+    @Override
+    public long getRejectedCount() {
+        long total = 0;
+        for (AuthOutcome outcome : OUTCOMES) {
+            if (!outcome.isAccepted()) {
+                total += count(outcome);
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public long getNoCredentialsCount() {
+        return count(AuthOutcome.NO_CREDENTIALS);
+    }
+
+    @Override
+    public long getUnknownUserCount() {
+        return count(AuthOutcome.UNKNOWN_USER);
+    }
+
+    @Override
+    public long getBadPasswordCount() {
+        return count(AuthOutcome.BAD_PASSWORD);
+    }
+
+    @Override
+    public long getBadTicketCount() {
+        return count(AuthOutcome.BAD_TICKET);
+    }
+
+    @Override
+    public long getThrottledCount() {
+        return count(AuthOutcome.THROTTLED);
+    }
+
+    @Override
+    public long getSessionLimitCount() {
+        return count(AuthOutcome.SESSION_LIMIT);
+    }
+
+    @Override
+    public long getOverloadedCount() {
+        return count(AuthOutcome.OVERLOADED);
+    }
+
+    @Override
+    public long getIpDeniedCount() {
+        return count(AuthOutcome.IP_DENIED);
+    }
+
+    @Override
+    public long getErrorCount() {
+        return count(AuthOutcome.ERROR);
+    }
+
+    @Override
+    public long getPlayDeniedCount() {
+        return playsDenied.sum();
+    }
+
+    @Override
+    public long getReloadCount() {
+        return reloads.sum();
+    }
+
+    @Override
+    public long getReloadFailureCount() {
+        return reloadFailures.sum();
+    }
+
+    @Override
+    public int getLoadedUsers() {
+        return loadedUsers.getAsInt();
+    }
+
+    @Override
+    public long getConnectLatencyP50Micros() {
+        return micros(connectLatency.percentile(0.5));
+    }
+
+    @Override
+    public long getConnectLatencyP99Micros() {
+        return micros(connectLatency.percentile(0.99));
+    }
+
+    @Override
+    public long getConnectLatencyP999Micros() {
+        return micros(connectLatency.percentile(0.999));
+    }
+
+    @Override
+    public long getConnectLatencyMaxMicros() {
+        return micros(connectLatency.max());
+    }
+
+    @Override
+    public long getLookupLatencyP50Micros() {
+        return micros(lookupLatency.percentile(0.5));
+    }
+
+    @Override
+    public long getLookupLatencyP99Micros() {
+        return micros(lookupLatency.percentile(0.99));
+    }
+
+    @Override
+    public long getReloadLatencyMaxMicros() {
+        return micros(reloadLatency.max());
+    }
+}
@@ -0,0 +1,54 @@
+package com.wowza.wms.plugin.security;
+
+/**
+ * JMX view of one application's authentication metrics.
+ *
+ * Counters are totals since the application started; latencies are
+ * reported in microseconds.
+ */
+public interface AuthMetricsMBean {
+
+    long getAcceptedCount();
+
+    long getRejectedCount();
+
+    long getNoCredentialsCount();
+
+    long getUnknownUserCount();
+
+    long getBadPasswordCount();
+
+    long getBadTicketCount();
+
+    long getThrottledCount();
+
+    long getSessionLimitCount();
+
+    long getOverloadedCount();
+
+    long getIpDeniedCount();
+
+    long getErrorCount();
+
+    long getPlayDeniedCount();
+
+    long getReloadCount();
+
+    long getReloadFailureCount();
+
+    int getLoadedUsers();
+
+    long getConnectLatencyP50Micros();
+
+    long getConnectLatencyP99Micros();
+
+    long getConnectLatencyP999Micros();
+
+    long getConnectLatencyMaxMicros();
+
+    long getLookupLatencyP50Micros();
+
+    long getLookupLatencyP99Micros();
+
+    long getReloadLatencyMaxMicros();
+}
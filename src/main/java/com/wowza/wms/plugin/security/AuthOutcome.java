@@ -0,0 +1,43 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Result of one connect authentication, carrying the reject reason.
+ *
+ * Public because {@link CredentialStore} implementations return it.
+ */
+public enum AuthOutcome {
+
+    ACCEPTED,
+    NO_CREDENTIALS,
+    UNKNOWN_USER,
+    BAD_PASSWORD,
+    BAD_TICKET,
+    THROTTLED,
+    SESSION_LIMIT,
+    OVERLOADED,
+    IP_DENIED,
+    ERROR;
+
+    private final CompletableFuture<AuthOutcome> completed = CompletableFuture.completedFuture(this);
+
+    public boolean isAccepted() {
+        return this == ACCEPTED;
+    }
+
+    /**
+     * @return true when the credentials the client presented were wrong or
+     *         missing, false for a busy or failing server
+     */
+    public boolean isCredentialFailure() {
+        return this == NO_CREDENTIALS || this == UNKNOWN_USER || this == BAD_PASSWORD || this == BAD_TICKET;
+    }
+
+    /**
+     * @return a shared, already completed future holding this outcome
+     */
+    public CompletableFuture<AuthOutcome> future() {
+        return completed;
+    }
+}
@@ -0,0 +1,23 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A bounded executor for blocking credential work, created by
+ * {@link BlockingExecutors}. At most a fixed number of tasks run at once and
+ * a fixed number more may wait; anything beyond that is rejected with a
+ * {@link RejectedExecutionException} instead of piling up.
+ */
+abstract class BlockingExecutor implements Executor {
+
+    /**
+     * @return tasks accepted but not yet running
+     */
+    abstract int waitingCount();
+
+    /**
+     * Stop accepting tasks and interrupt the running ones
+     */
+    abstract void shutdown();
+}
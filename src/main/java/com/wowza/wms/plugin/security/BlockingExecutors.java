@@ -0,0 +1,97 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for blocking credential work: password file reloads, hash checks
+ * and calls to the credential service.
+ *
+ * This is the Java 11 version, which runs the work on daemon platform
+ * threads. The jar is multi-release; on Java 21 and later the JVM loads
+ * {@code META-INF/versions/21} instead, which starts one virtual thread per
+ * task. Nothing needs to be configured, {@link #mode()} tells which one is
+ * in use.
+ */
+final class BlockingExecutors {
+
+    private BlockingExecutors() {
+    }
+
+    /**
+     * @return "platform threads" or "virtual threads", for logs and stats
+     */
+    static String mode() {
+        return "platform threads";
+    }
+
+    static boolean isVirtual() {
+        return false;
+    }
+
+    /**
+     * @param name      thread name prefix
+     * @param threads   tasks that may run at once
+     * @param queueSize tasks that may wait for a thread
+     */
+    static BlockingExecutor bounded(String name, int threads, int queueSize) {
+        return new Pooled(name, Math.max(1, threads), Math.max(1, queueSize));
+    }
+
+    /**
+     * @return an executor that never rejects, for callbacks of the HTTP
+     *         client
+     */
+    static ExecutorService unbounded(String name) {
+        return Executors.newCachedThreadPool(daemonThreads(name));
+    }
+
+    /**
+     * @return a started thread for long running work such as watching a file
+     */
+    static Thread start(String name, Runnable task) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private static final class Pooled extends BlockingExecutor {
+        private final ThreadPoolExecutor pool;
+
+        Pooled(String name, int threads, int queueSize) {
+            pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueSize), daemonThreads(name));
+            pool.allowCoreThreadTimeOut(true);
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            pool.execute(task);
+        }
+
+        @Override
+        int waitingCount() {
+            return pool.getQueue().size();
+        }
+
+        @Override
+        void shutdown() {
+            pool.shutdownNow();
+        }
+    }
+}
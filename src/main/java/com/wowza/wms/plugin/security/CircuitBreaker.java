@@ -0,0 +1,76 @@
+package com.wowza.wms.plugin.security;
+
+/**
+ * Consecutive-failure circuit breaker for a remote credential service.
+ *
+ * After {@code failureThreshold} failures in a row the circuit opens and
+ * calls are refused for {@code openMillis}. After that a single probe is
+ * let through: if it succeeds the circuit closes, otherwise it opens again.
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED; // guarded by this
+    private int failures; // guarded by this
+    private long openedAt; // guarded by this
+    private boolean probing; // guarded by this
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = Math.max(0, openMillis);
+    }
+
+    /**
+     * @return true if a call may go to the remote service now
+     */
+    synchronized boolean allowRequest(long now) {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (now - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probing = true;
+            return true;
+        default:
+            // One probe at a time while half open
+            if (probing) {
+                return false;
+            }
+            probing = true;
+            return true;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    /**
+     * @return true if this failure opened the circuit
+     */
+    synchronized boolean recordFailure(long now) {
+        probing = false;
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,906 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Replicates credential changes and revocations between edge servers.
+ *
+ * Every node pushes its changes to every configured peer over short TCP
+ * connections; there is no coordinator. Changes are versioned with a
+ * Lamport clock and merged last-writer-wins per username (ties broken by
+ * node id), so nodes converge whatever order deltas arrive in. Each node
+ * numbers the deltas it sends; a receiver that sees a gap, or a node that
+ * starts, pulls a snapshot of a peer's replicated state to catch up.
+ *
+ * Replicated entries overlay the local password file: a user changed or
+ * removed anywhere in the cluster is answered from the overlay on every
+ * node until the local file says the same, and then {@link #prune}d. A
+ * node keeps the changes and revocations it made itself until every peer
+ * has acknowledged a delta or a snapshot that carries them, so a peer that
+ * missed one still finds it in the node's snapshot.
+ *
+ * Frame payloads carry stored passwords, which are plaintext for users
+ * without a hash, so they are encrypted with AES-GCM under a key derived
+ * from the shared cluster key and the whole frame is authenticated with
+ * HMAC-SHA256 under the cluster key. Only configured peers may connect, and
+ * a frame's
+ * length is authenticated before its payload is read, so a stranger cannot
+ * make a node buffer anything.
+ */
+final class ClusterReplicator {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(ClusterReplicator.class);
+
+    /**
+     * Told about changes that arrive from other nodes, on a replicator thread
+     */
+    interface Listener {
+        /** The user was changed or removed elsewhere; existing sessions are stale */
+        void credentialsChanged(String username);
+
+        /** The user was revoked elsewhere */
+        void revoked(String username);
+    }
+
+    /**
+     * Replicated state of one user
+     */
+    static final class Entry {
+        /** null when the user was removed */
+        final String password;
+        final long version;
+        final String origin;
+
+        Entry(String password, long version, String origin) {
+            this.password = password;
+            this.version = version;
+            this.origin = origin;
+        }
+
+        boolean isRemoved() {
+            return password == null;
+        }
+
+        boolean supersedes(Entry other) {
+            return other == null || version > other.version
+                    || (version == other.version && origin.compareTo(other.origin) > 0);
+        }
+    }
+
+    private static final int MAGIC = 0x52504143;
+    // Updates are batched into payloads of up to half this; one update never
+    // exceeds the other half
+    private static final int MAX_FRAME = 512 * 1024;
+    private static final int MAX_BATCH = MAX_FRAME / 2;
+    private static final int HEADER_MAC_LENGTH = 16;
+    private static final int MAC_LENGTH = 32;
+    private static final int IV_LENGTH = 12;
+    private static final int TAG_BITS = 128;
+    private static final int HANDLER_THREADS = 4;
+    private static final int HANDLER_QUEUE = 64;
+
+    private static final byte DELTA = 1;
+    private static final byte SNAPSHOT_REQUEST = 2;
+    private static final byte SNAPSHOT = 3;
+    // Sent back once a delta is applied or a whole snapshot is read
+    private static final int ACK = 0x06;
+
+    private static final byte UPSERT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte REVOKE = 3;
+
+    private final String nodeId;
+    // Distinguishes restarts of the same node, whose sequence starts over
+    private final String incarnation;
+    private final InetSocketAddress bindAddress;
+    private final SecretKeySpec key;
+    private final SecretKeySpec cipherKey;
+    private final SecureRandom random = new SecureRandom();
+    private final int timeoutMillis;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // Latest revocation version per username and originating incarnation
+    private final Map<String, Long> revocations = new ConcurrentHashMap<>();
+    // Local changes are versioned and recorded under this lock, so a snapshot
+    // holds every own change up to the version it reports
+    private final Object localLock = new Object();
+    private final Map<InetSocketAddress, Delivery> deliveries = new ConcurrentHashMap<>();
+    private volatile Function<String, String> local;
+    private final AtomicLong clock = new AtomicLong();
+    // Versions dropped by the last prune, until the next one
+    private volatile Map<String, Long> pruned = Collections.emptyMap();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> lastSequence = new ConcurrentHashMap<>();
+    private final Map<InetSocketAddress, ExecutorService> senders = new LinkedHashMap<>();
+    private volatile List<InetSocketAddress> peers = Collections.emptyList();
+    private volatile ServerSocket server;
+    private volatile BlockingExecutor handlers;
+
+    /**
+     * Which of this node's own changes a peer is known to have
+     */
+    private static final class Delivery {
+        // Every own change up to this version reached the peer
+        private long through;
+        // First own change the peer missed, 0 if none
+        private long missed;
+
+        synchronized void delivered(long version) {
+            if (missed == 0) {
+                through = Math.max(through, version);
+            }
+        }
+
+        synchronized void failed(long version) {
+            if (missed == 0) {
+                missed = version;
+            }
+        }
+
+        /** The peer read a snapshot with every own change up to version */
+        synchronized void caughtUp(long version) {
+            through = Math.max(through, version);
+            if (missed != 0 && missed <= version) {
+                missed = 0;
+            }
+        }
+
+        synchronized long through() {
+            return through;
+        }
+    }
+
+    ClusterReplicator(String nodeId, InetSocketAddress bindAddress, byte[] key, int timeoutMillis) {
+        this.nodeId = nodeId;
+        this.incarnation = nodeId + "#" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.bindAddress = bindAddress;
+        this.key = new SecretKeySpec(key, "HmacSHA256");
+        // A key of its own for encryption, so the MAC key is never used as both
+        this.cipherKey = new SecretKeySpec(newMac().doFinal("rtmpauth-cluster-aes-gcm".getBytes(
+                StandardCharsets.US_ASCII)), "AES");
+        this.timeoutMillis = Math.max(100, timeoutMillis);
+    }
+
+    void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @param local username to the stored password in the local file, or
+     *              null when the file does not have the user; a change that
+     *              arrives when the file already agrees is not an overlay
+     *              entry and ends no sessions
+     */
+    void setLocal(Function<String, String> local) {
+        this.local = local;
+    }
+
+    /**
+     * Parse {@code host:port}; a bare port means loopback, so listening on a
+     * network interface always takes an explicit address
+     */
+    static InetSocketAddress parseAddress(String value) {
+        String s = value.trim();
+        int colon = s.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(s));
+        }
+        return new InetSocketAddress(s.substring(0, colon), Integer.parseInt(s.substring(colon + 1)));
+    }
+
+    static List<InetSocketAddress> parsePeers(String value) {
+        List<InetSocketAddress> result = new ArrayList<>();
+        for (String part : value.split(",")) {
+            if (!part.trim().isEmpty()) {
+                result.add(parseAddress(part));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Listen for peers and catch up from them
+     */
+    synchronized void start(List<InetSocketAddress> peerList) throws IOException {
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(bindAddress);
+        server = socket;
+        peers = Collections.unmodifiableList(new ArrayList<>(peerList));
+        handlers = BlockingExecutors.bounded("RTMPPlaybackAuth-cluster", HANDLER_THREADS, HANDLER_QUEUE);
+        Thread acceptor = daemon(this::acceptLoop, "RTMPPlaybackAuth-cluster-accept");
+        acceptor.start();
+        if (socket.getInetAddress().isLoopbackAddress() && !allLoopback(peers)) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Cluster node " + nodeId
+                    + " only listens on loopback; peers on other hosts cannot reach it");
+        }
+        for (InetSocketAddress peer : peers) {
+            senders.put(peer, Executors.newSingleThreadExecutor(r -> daemon(r, "RTMPPlaybackAuth-cluster-send")));
+            deliveries.put(peer, new Delivery());
+        }
+        for (InetSocketAddress peer : peers) {
+            sender(peer).execute(() -> pullSnapshot(peer));
+        }
+        logger.info("ModuleRTMPPlaybackAuthentication: Cluster node " + nodeId + " listening on "
+                + socket.getLocalSocketAddress() + ", " + peers.size() + " peers");
+    }
+
+    synchronized void stop() {
+        ServerSocket socket = server;
+        server = null;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Closing only stops the acceptor
+            }
+        }
+        for (ExecutorService sender : senders.values()) {
+            sender.shutdown();
+        }
+        senders.clear();
+        if (handlers != null) {
+            handlers.shutdown();
+            handlers = null;
+        }
+    }
+
+    int getPort() {
+        ServerSocket socket = server;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+
+    String getNodeId() {
+        return nodeId;
+    }
+
+    int peerCount() {
+        return peers.size();
+    }
+
+    int entryCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return the replicated state of a user, or null if it was never changed
+     *         in the cluster since this node started
+     */
+    Entry lookup(String username) {
+        return entries.get(username);
+    }
+
+    /**
+     * Publish local credential changes. Values that already match the
+     * replicated state are skipped, so a node whose file catches up with a
+     * change made elsewhere does not send it round again.
+     *
+     * @param upserts   username to new stored password
+     * @param removals  removed usernames
+     * @return the number of changes sent
+     */
+    int publish(Map<String, String> upserts, Collection<String> removals) {
+        synchronized (localLock) {
+            List<Object[]> updates = new ArrayList<>();
+            for (Map.Entry<String, String> e : upserts.entrySet()) {
+                Entry current = entries.get(e.getKey());
+                if (current == null || !Objects.equals(current.password, e.getValue())) {
+                    updates.add(localUpdate(UPSERT, e.getKey(), e.getValue()));
+                }
+            }
+            for (String username : removals) {
+                Entry current = entries.get(username);
+                if (current == null || !current.isRemoved()) {
+                    updates.add(localUpdate(REMOVE, username, null));
+                }
+            }
+            if (!updates.isEmpty()) {
+                broadcast(updates);
+            }
+            return updates.size();
+        }
+    }
+
+    /**
+     * Forget the entries the local file has caught up with, called after
+     * each reload. Their versions are kept as tombstones until the next
+     * prune, so a late delta cannot bring back an older value meanwhile.
+     * This node's own changes and revocations are kept until every peer has
+     * them.
+     *
+     * @param local username to the stored password in the local file, or
+     *              null when the file does not have the user
+     * @return the number of entries dropped
+     */
+    int prune(Function<String, String> local) {
+        long delivered = deliveredFloor();
+        Map<String, Long> dropped = new HashMap<>();
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            if (entry.origin.equals(nodeId) && entry.version > delivered) {
+                // A peer that missed it can only learn it from our snapshot
+                continue;
+            }
+            if (Objects.equals(entry.password, local.apply(e.getKey())) && entries.remove(e.getKey(), entry)) {
+                dropped.put(e.getKey(), entry.version);
+            }
+        }
+        String own = '\0' + incarnation;
+        revocations.entrySet().removeIf(e -> e.getKey().endsWith(own) && e.getValue() <= delivered);
+        pruned = dropped;
+        return dropped.size();
+    }
+
+    void publishRevocation(String username) {
+        synchronized (localLock) {
+            long version = clock.incrementAndGet();
+            revocations.put(username + '\0' + incarnation, version);
+            broadcast(Collections.singletonList(new Object[] { REVOKE, username, null, version, incarnation }));
+        }
+    }
+
+    /**
+     * @return the version up to which every peer has all of this node's own
+     *         changes
+     */
+    private long deliveredFloor() {
+        long floor = Long.MAX_VALUE;
+        for (InetSocketAddress peer : peers) {
+            Delivery delivery = deliveries.get(peer);
+            floor = Math.min(floor, delivery != null ? delivery.through() : 0);
+        }
+        return floor;
+    }
+
+    private boolean isPruned(String username, long version) {
+        Long tombstone = pruned.get(username);
+        return tombstone != null && version <= tombstone;
+    }
+
+    private Object[] localUpdate(byte kind, String username, String password) {
+        Entry entry = new Entry(password, clock.incrementAndGet(), nodeId);
+        entries.put(username, entry);
+        return new Object[] { kind, username, password, entry.version, nodeId };
+    }
+
+    /**
+     * Send own updates, in version order, to every peer
+     */
+    private void broadcast(List<Object[]> updates) {
+        List<byte[]> frames = new ArrayList<>();
+        List<Long> versions = new ArrayList<>();
+        try {
+            List<byte[]> encoded = new ArrayList<>(updates.size());
+            for (Object[] u : updates) {
+                encoded.add(encodeUpdate((Byte) u[0], (String) u[1], (String) u[2], (Long) u[3], (String) u[4]));
+            }
+            // Each batch is a delta of its own, numbered in order
+            int end = 0;
+            for (List<byte[]> batch : batches(encoded)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                writeHeader(out, sequence.incrementAndGet());
+                writeBatch(out, batch);
+                frames.add(frame(DELTA, bytes.toByteArray()));
+                end += batch.size();
+                versions.add((Long) updates.get(end - 1)[3]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        for (InetSocketAddress peer : peers) {
+            ExecutorService sender = sender(peer);
+            if (sender != null) {
+                sender.execute(() -> {
+                    for (int i = 0; i < frames.size(); i++) {
+                        send(peer, frames.get(i), versions.get(i));
+                    }
+                });
+            }
+        }
+    }
+
+    private synchronized ExecutorService sender(InetSocketAddress peer) {
+        return senders.get(peer);
+    }
+
+    /**
+     * @param version the newest own change in the frame
+     */
+    private void send(InetSocketAddress peer, byte[] frame, long version) {
+        Delivery delivery = deliveries.get(peer);
+        try (Socket socket = connect(peer)) {
+            socket.getOutputStream().write(frame);
+            socket.getOutputStream().flush();
+            if (socket.getInputStream().read() != ACK) {
+                throw new IOException("delta not acknowledged");
+            }
+            delivery.delivered(version);
+        } catch (IOException e) {
+            // The peer catches up from a snapshot when it notices the gap; we
+            // keep the change for it until then
+            delivery.failed(version);
+            logger.warn("ModuleRTMPPlaybackAuthentication: Cluster peer " + peer + " unreachable: " + e.getMessage());
+        }
+    }
+
+    private void pullSnapshot(InetSocketAddress peer) {
+        try (Socket socket = connect(peer)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writeHeader(new DataOutputStream(bytes), sequence.get());
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write(frame(SNAPSHOT_REQUEST, bytes.toByteArray()));
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (handle(peer.getAddress(), in, null)) {
+                // A large snapshot arrives in several frames
+            }
+            out.writeByte(ACK);
+            out.flush();
+        } catch (IOException e) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Cannot catch up from cluster peer " + peer + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private Socket connect(InetSocketAddress peer) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(peer, timeoutMillis);
+            socket.setSoTimeout(timeoutMillis);
+            return socket;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocket socket = server;
+        while (socket != null && !socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                if (!isPeer(client.getInetAddress())) {
+                    logger.warn("ModuleRTMPPlaybackAuthentication: Refused cluster connection from "
+                            + client.getRemoteSocketAddress() + ", not a configured peer");
+                    client.close();
+                    continue;
+                }
+                client.setSoTimeout(timeoutMillis);
+                BlockingExecutor pool = handlers;
+                try {
+                    if (pool == null) {
+                        throw new RejectedExecutionException("stopped");
+                    }
+                    pool.execute(() -> {
+                        try (Socket s = client) {
+                            handle(s.getInetAddress(), new DataInputStream(s.getInputStream()),
+                                    new DataOutputStream(s.getOutputStream()));
+                        } catch (IOException e) {
+                            logger.warn("ModuleRTMPPlaybackAuthentication: Bad cluster message from "
+                                    + client.getRemoteSocketAddress() + ": " + e.getMessage());
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    // The sender notices the missing delta later and catches up from a snapshot
+                    logger.warn("ModuleRTMPPlaybackAuthentication: Cluster handlers busy, dropped message from "
+                            + client.getRemoteSocketAddress());
+                    client.close();
+                }
+            } catch (SocketException e) {
+                return; // closed by stop()
+            } catch (IOException | RuntimeException e) {
+                logger.error("ModuleRTMPPlaybackAuthentication: Cluster accept failed", e);
+            }
+        }
+    }
+
+    private boolean isPeer(InetAddress remote) {
+        for (InetSocketAddress peer : peers) {
+            if (remote.equals(resolve(peer))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the configured peer at an address and listen port, or null
+     */
+    private InetSocketAddress peerAt(InetAddress remote, int port) {
+        for (InetSocketAddress peer : peers) {
+            if (peer.getPort() == port && remote.equals(resolve(peer))) {
+                return peer;
+            }
+        }
+        return null;
+    }
+
+    private static InetAddress resolve(InetSocketAddress peer) {
+        InetAddress address = peer.getAddress();
+        if (address == null) {
+            try {
+                address = InetAddress.getByName(peer.getHostString());
+            } catch (UnknownHostException e) {
+                return null;
+            }
+        }
+        return address;
+    }
+
+    private static boolean allLoopback(List<InetSocketAddress> addresses) {
+        for (InetSocketAddress address : addresses) {
+            if (address.getAddress() == null || !address.getAddress().isLoopbackAddress()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read and apply one frame; snapshot requests are answered on {@code reply}
+     *
+     * @return true when the frame is part of a snapshot and more parts follow
+     */
+    private boolean handle(InetAddress remote, DataInputStream in, DataOutputStream reply) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a cluster frame");
+        }
+        byte type = in.readByte();
+        int length = in.readInt();
+        byte[] presentedHeader = new byte[HEADER_MAC_LENGTH];
+        in.readFully(presentedHeader);
+        // Nothing is buffered for a frame whose length was not signed with the key
+        if (!MessageDigest.isEqual(headerMac(type, length), presentedHeader)) {
+            throw new IOException("bad signature");
+        }
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("frame too large");
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        byte[] presented = new byte[MAC_LENGTH];
+        in.readFully(presented);
+        if (!MessageDigest.isEqual(mac(type, payload), presented)) {
+            throw new IOException("bad signature");
+        }
+        payload = decrypt(type, payload);
+
+        DataInputStream body = new DataInputStream(new ByteArrayInputStream(payload));
+        String sender = body.readUTF();
+        int senderPort = body.readUnsignedShort();
+        long seq = body.readLong();
+        if (type == SNAPSHOT_REQUEST && reply != null) {
+            long[] version = new long[1];
+            for (byte[] frame : snapshotFrames(version)) {
+                reply.write(frame);
+            }
+            reply.flush();
+            InetSocketAddress peer = peerAt(remote, senderPort);
+            Delivery delivery = peer != null ? deliveries.get(peer) : null;
+            if (in.read() == ACK && delivery != null) {
+                delivery.caughtUp(version[0]);
+            }
+        } else if (type == DELTA) {
+            applyDelta(sender, new InetSocketAddress(remote, senderPort), seq, body);
+            if (reply != null) {
+                reply.writeByte(ACK);
+                reply.flush();
+            }
+        } else if (type == SNAPSHOT) {
+            boolean last = body.readBoolean();
+            int count = body.readInt();
+            for (int i = 0; i < count; i++) {
+                readUpdate(body);
+            }
+            if (!last) {
+                return true;
+            }
+            // Only a complete snapshot covers the sender's deltas up to seq
+            lastSequence.merge(sender, seq, Math::max);
+        }
+        return false;
+    }
+
+    private void applyDelta(String sender, InetSocketAddress senderAddress, long seq, DataInputStream body)
+            throws IOException {
+        // Updates are applied even when a snapshot already covered this delta:
+        // older versions never win and a revocation is only acted on once
+        int count = body.readInt();
+        for (int i = 0; i < count; i++) {
+            readUpdate(body);
+        }
+        Long last = lastSequence.get(sender);
+        if (last != null && seq <= last) {
+            return;
+        }
+        lastSequence.merge(sender, seq, Math::max);
+        if (seq != (last != null ? last : 0) + 1) {
+            // Missed deltas of this sender: fetch its whole state
+            BlockingExecutor pool = handlers;
+            try {
+                if (pool != null) {
+                    pool.execute(() -> pullSnapshot(senderAddress));
+                }
+            } catch (RejectedExecutionException e) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Cluster handlers busy, cannot catch up from "
+                        + senderAddress);
+            }
+        }
+    }
+
+    private void readUpdate(DataInputStream in) throws IOException {
+        byte kind = in.readByte();
+        String username = in.readUTF();
+        String password = kind == UPSERT ? in.readUTF() : null;
+        long version = in.readLong();
+        String origin = in.readUTF();
+        clock.accumulateAndGet(version, Math::max);
+        if (kind == REVOKE) {
+            // Revocations reach a node in deltas and in snapshots; act once
+            boolean[] fresh = new boolean[1];
+            revocations.compute(username + '\0' + origin, (k, known) -> {
+                fresh[0] = known == null || version > known;
+                return fresh[0] ? version : known;
+            });
+            if (fresh[0]) {
+                for (Listener listener : listeners) {
+                    listener.revoked(username);
+                }
+            }
+            return;
+        }
+        Entry incoming = new Entry(password, version, origin);
+        Function<String, String> file = local;
+        while (true) {
+            Entry current = entries.get(username);
+            if (!incoming.supersedes(current) || (current == null && isPruned(username, version))) {
+                return;
+            }
+            if (current == null && file != null && Objects.equals(file.apply(username), password)) {
+                // The local file already says the same
+                return;
+            }
+            boolean replaced = current == null ? entries.putIfAbsent(username, incoming) == null
+                    : entries.replace(username, current, incoming);
+            if (replaced) {
+                if (current == null || !Objects.equals(current.password, password)) {
+                    for (Listener listener : listeners) {
+                        listener.credentialsChanged(username);
+                    }
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * The replicated state and this node's retained revocations in as many
+     * frames as it takes, all carrying the current sequence number; only the
+     * last one says so
+     *
+     * @param version receives the version up to which every own change is
+     *                included
+     */
+    private List<byte[]> snapshotFrames(long[] version) throws IOException {
+        long seq;
+        Map<String, Entry> state;
+        Map<String, Long> revoked = new HashMap<>();
+        synchronized (localLock) {
+            seq = sequence.get();
+            version[0] = clock.get();
+            state = new HashMap<>(entries);
+            String own = '\0' + incarnation;
+            for (Map.Entry<String, Long> e : revocations.entrySet()) {
+                if (e.getKey().endsWith(own)) {
+                    revoked.put(e.getKey().substring(0, e.getKey().length() - own.length()), e.getValue());
+                }
+            }
+        }
+        List<byte[]> encoded = new ArrayList<>();
+        for (Map.Entry<String, Entry> e : state.entrySet()) {
+            Entry entry = e.getValue();
+            encoded.add(encodeUpdate(entry.isRemoved() ? REMOVE : UPSERT, e.getKey(), entry.password, entry.version,
+                    entry.origin));
+        }
+        for (Map.Entry<String, Long> e : revoked.entrySet()) {
+            encoded.add(encodeUpdate(REVOKE, e.getKey(), null, e.getValue(), incarnation));
+        }
+        List<List<byte[]>> batches = batches(encoded);
+        List<byte[]> frames = new ArrayList<>(batches.size());
+        for (int i = 0; i < batches.size(); i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            writeHeader(out, seq);
+            out.writeBoolean(i == batches.size() - 1);
+            writeBatch(out, batches.get(i));
+            frames.add(frame(SNAPSHOT, bytes.toByteArray()));
+        }
+        return frames;
+    }
+
+    /**
+     * Split encoded updates into batches of at most MAX_BATCH bytes. There is
+     * always at least one batch, which may be empty.
+     */
+    private static List<List<byte[]>> batches(List<byte[]> encoded) {
+        List<List<byte[]>> result = new ArrayList<>();
+        List<byte[]> batch = new ArrayList<>();
+        int size = 0;
+        for (byte[] update : encoded) {
+            if (!batch.isEmpty() && size + update.length > MAX_BATCH) {
+                result.add(batch);
+                batch = new ArrayList<>();
+                size = 0;
+            }
+            batch.add(update);
+            size += update.length;
+        }
+        result.add(batch);
+        return result;
+    }
+
+    private static void writeBatch(DataOutputStream out, List<byte[]> batch) throws IOException {
+        out.writeInt(batch.size());
+        for (byte[] update : batch) {
+            out.write(update);
+        }
+    }
+
+    /**
+     * Sender incarnation, the port it listens on (its address is taken from
+     * the connection) and its sequence number
+     */
+    private void writeHeader(DataOutputStream out, long seq) throws IOException {
+        out.writeUTF(incarnation);
+        out.writeShort(getPort());
+        out.writeLong(seq);
+    }
+
+    /**
+     * One update is at most three modified UTF-8 strings of 64 KB each, so it
+     * always fits a batch
+     */
+    private static byte[] encodeUpdate(byte kind, String username, String password, long version, String origin)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writeUpdate(new DataOutputStream(bytes), kind, username, password, version, origin);
+        return bytes.toByteArray();
+    }
+
+    private static void writeUpdate(DataOutputStream out, byte kind, String username, String password, long version,
+            String origin) throws IOException {
+        out.writeByte(kind);
+        out.writeUTF(username);
+        if (kind == UPSERT) {
+            out.writeUTF(password);
+        }
+        out.writeLong(version);
+        out.writeUTF(origin);
+    }
+
+    private byte[] frame(byte type, byte[] plain) throws IOException {
+        byte[] payload = encrypt(type, plain);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 57);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(headerMac(type, payload.length));
+        out.write(payload);
+        out.write(mac(type, payload));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return a random IV followed by the AES-GCM ciphertext; the frame type
+     *         is authenticated with it
+     */
+    private byte[] encrypt(byte type, byte[] plain) {
+        byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, cipherKey, new GCMParameterSpec(TAG_BITS, iv));
+            cipher.updateAAD(new byte[] { type });
+            byte[] sealed = Arrays.copyOf(iv, IV_LENGTH + cipher.getOutputSize(plain.length));
+            cipher.doFinal(plain, 0, plain.length, sealed, IV_LENGTH);
+            return sealed;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM unavailable", e);
+        }
+    }
+
+    private byte[] decrypt(byte type, byte[] sealed) throws IOException {
+        if (sealed.length < IV_LENGTH) {
+            throw new IOException("frame too short");
+        }
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, cipherKey, new GCMParameterSpec(TAG_BITS, sealed, 0, IV_LENGTH));
+            cipher.updateAAD(new byte[] { type });
+            return cipher.doFinal(sealed, IV_LENGTH, sealed.length - IV_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("cannot decrypt frame", e);
+        }
+    }
+
+    private byte[] mac(byte type, byte[] payload) {
+        Mac mac = newMac();
+        mac.update(type);
+        return mac.doFinal(payload);
+    }
+
+    /**
+     * Truncated MAC of a frame's type and length. The leading zero keeps it
+     * apart from payload MACs, which start with the type.
+     */
+    private byte[] headerMac(byte type, int length) {
+        Mac mac = newMac();
+        mac.update((byte) 0);
+        mac.update(type);
+        mac.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+                (byte) length });
+        return Arrays.copyOf(mac.doFinal(), HEADER_MAC_LENGTH);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+}
@@ -0,0 +1,571 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Read-only open-addressing hash index of username/password pairs stored in
+ * a single ByteBuffer, either off-heap or memory-mapped from a sidecar file.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   header  magic, version, source mtime, source size, entry count, table size, total size
+ *   table   tableSize slots of [int hash, int entry offset], offset 0 = empty
+ *   data    entries of [u16 user length, user bytes, u16 password length, password bytes]
+ * </pre>
+ * Strings are stored as UTF-8. Lookups encode the probe string on the fly,
+ * so finding a user and comparing a password allocate nothing.
+ *
+ * The text file is parsed byte by byte without creating a String per line.
+ * When a sidecar is enabled, the built index is written next to the text file
+ * and later starts just map it, as long as the recorded source modification
+ * time and size still match.
+ */
+final class CompactCredentialIndex {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(CompactCredentialIndex.class);
+
+    static final String SIDECAR_SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x52504149; // "RPAI"
+    private static final int VERSION = 1;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_VERSION = 4;
+    private static final int OFF_SOURCE_MTIME = 8;
+    private static final int OFF_SOURCE_SIZE = 16;
+    private static final int OFF_COUNT = 24;
+    private static final int OFF_TABLE_SIZE = 28;
+    private static final int OFF_TOTAL_SIZE = 32;
+    private static final int HEADER_SIZE = 40;
+    private static final int SLOT_SIZE = 8;
+    private static final int MAX_FIELD_LENGTH = 0xFFFF;
+
+    private static final int FNV_OFFSET = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+    private static final long FNV64_OFFSET = 0xCBF29CE484222325L;
+    private static final long FNV64_PRIME = 0x100000001B3L;
+
+    static final CompactCredentialIndex EMPTY = build(new byte[0], 0, 0, null);
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int tableSize;
+    private final int mask;
+    private final boolean mapped;
+
+    private CompactCredentialIndex(ByteBuffer buffer, boolean mapped) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(OFF_COUNT);
+        this.tableSize = buffer.getInt(OFF_TABLE_SIZE);
+        this.mask = tableSize - 1;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Load the index for a text password file, mapping or refreshing its
+     * sidecar when {@code useSidecar} is set.
+     */
+    static CompactCredentialIndex open(Path source, boolean useSidecar) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        long sourceMtime = attrs.lastModifiedTime().to(TimeUnit.MICROSECONDS);
+        long sourceSize = attrs.size();
+        Path sidecar = useSidecar ? sidecarPath(source) : null;
+
+        if (sidecar != null) {
+            CompactCredentialIndex existing = mapSidecar(sidecar, sourceMtime, sourceSize);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        byte[] text = Files.readAllBytes(source);
+        CompactCredentialIndex built = build(text, sourceMtime, sourceSize, source.toString());
+        if (sidecar != null) {
+            try {
+                writeSidecar(built, sidecar);
+                CompactCredentialIndex remapped = mapSidecar(sidecar, sourceMtime, sourceSize);
+                if (remapped != null) {
+                    return remapped;
+                }
+            } catch (IOException e) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Could not write credential index " + sidecar + ": "
+                        + e.getMessage() + ", using in-memory index");
+            }
+        }
+        return built;
+    }
+
+    static Path sidecarPath(Path source) {
+        return source.resolveSibling(source.getFileName().toString() + SIDECAR_SUFFIX);
+    }
+
+    /**
+     * Parse password file contents ({@code username:password} or
+     * {@code username password} per line, {@code #} comments) into an
+     * off-heap index.
+     */
+    static CompactCredentialIndex build(byte[] text, long sourceMtime, long sourceSize, String sourceName) {
+        int candidates = 0;
+        int lineStart = 0;
+        for (int i = 0; i <= text.length; i++) {
+            if (i == text.length || text[i] == '\n' || text[i] == '\r') {
+                int s = trimStart(text, lineStart, i);
+                if (s < trimEnd(text, s, i) && text[s] != '#') {
+                    candidates++;
+                }
+                lineStart = i + 1;
+            }
+        }
+
+        int tableSize = Integer.highestOneBit(Math.max(2, candidates * 2 - 1)) << 1;
+        long capacity = HEADER_SIZE + (long) tableSize * SLOT_SIZE + text.length + 4L * candidates;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Password file too large to index: " + sourceName);
+        }
+        ByteBuffer buf = ByteBuffer.allocateDirect((int) capacity);
+        int mask = tableSize - 1;
+        int dataPos = HEADER_SIZE + tableSize * SLOT_SIZE;
+        int count = 0;
+
+        int lineNumber = 0;
+        lineStart = 0;
+        for (int i = 0; i <= text.length; i++) {
+            if (i < text.length && text[i] != '\n' && text[i] != '\r') {
+                continue;
+            }
+            // Count "\r\n" as one line like BufferedReader does
+            if (i == text.length || text[i] == '\n' || i + 1 >= text.length || text[i + 1] != '\n') {
+                lineNumber++;
+            }
+            int s = trimStart(text, lineStart, i);
+            int e = trimEnd(text, s, i);
+            lineStart = i + 1;
+            if (s >= e || text[s] == '#') {
+                continue;
+            }
+
+            int userStart = s;
+            int userEnd;
+            int passStart;
+            int colon = indexOf(text, s, e, (byte) ':');
+            if (colon >= 0) {
+                userEnd = colon;
+                passStart = colon + 1;
+            } else {
+                userEnd = s;
+                while (userEnd < e && !isWhitespace(text[userEnd])) {
+                    userEnd++;
+                }
+                if (userEnd == e) {
+                    logger.warn("ModuleRTMPPlaybackAuthentication: Invalid line format at line " + lineNumber + " in "
+                            + sourceName);
+                    continue;
+                }
+                passStart = userEnd;
+            }
+            userEnd = trimEnd(text, userStart, userEnd);
+            passStart = trimStart(text, passStart, e);
+            int userLen = userEnd - userStart;
+            int passLen = e - passStart;
+            if (userLen > MAX_FIELD_LENGTH || passLen > MAX_FIELD_LENGTH) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Invalid line format at line " + lineNumber + " in "
+                        + sourceName);
+                continue;
+            }
+
+            int entry = dataPos;
+            buf.putShort(dataPos, (short) userLen);
+            buf.position(dataPos + 2);
+            buf.put(text, userStart, userLen);
+            buf.putShort(dataPos + 2 + userLen, (short) passLen);
+            buf.position(dataPos + 4 + userLen);
+            buf.put(text, passStart, passLen);
+            dataPos += 4 + userLen + passLen;
+
+            int hash = hashBytes(text, userStart, userLen);
+            for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+                int slotPos = HEADER_SIZE + slot * SLOT_SIZE;
+                int existing = buf.getInt(slotPos + 4);
+                if (existing == 0) {
+                    buf.putInt(slotPos, hash);
+                    buf.putInt(slotPos + 4, entry);
+                    count++;
+                    break;
+                }
+                if (buf.getInt(slotPos) == hash && userBytesEqual(buf, existing, text, userStart, userLen)) {
+                    // Later lines win, as they did with Map.put
+                    buf.putInt(slotPos + 4, entry);
+                    break;
+                }
+            }
+        }
+
+        buf.putInt(OFF_MAGIC, MAGIC);
+        buf.putInt(OFF_VERSION, VERSION);
+        buf.putLong(OFF_SOURCE_MTIME, sourceMtime);
+        buf.putLong(OFF_SOURCE_SIZE, sourceSize);
+        buf.putInt(OFF_COUNT, count);
+        buf.putInt(OFF_TABLE_SIZE, tableSize);
+        buf.putInt(OFF_TOTAL_SIZE, dataPos);
+        buf.position(0);
+        buf.limit(dataPos);
+        return new CompactCredentialIndex(buf, false);
+    }
+
+    private static CompactCredentialIndex mapSidecar(Path sidecar, long sourceMtime, long sourceSize) {
+        try (FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt(OFF_MAGIC) != MAGIC || buf.getInt(OFF_VERSION) != VERSION
+                    || buf.getLong(OFF_SOURCE_MTIME) != sourceMtime || buf.getLong(OFF_SOURCE_SIZE) != sourceSize
+                    || buf.getInt(OFF_TOTAL_SIZE) != size) {
+                return null;
+            }
+            int tableSize = buf.getInt(OFF_TABLE_SIZE);
+            if (tableSize <= 0 || Integer.bitCount(tableSize) != 1
+                    || HEADER_SIZE + (long) tableSize * SLOT_SIZE > size) {
+                return null;
+            }
+            return new CompactCredentialIndex(buf, true);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Could not map credential index " + sidecar + ": "
+                    + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeSidecar(CompactCredentialIndex index, Path sidecar) throws IOException {
+        Path temp = Files.createTempFile(sidecar.toAbsolutePath().getParent(), sidecar.getFileName().toString(),
+                ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer src = index.buffer.duplicate();
+            src.position(0);
+            while (src.hasRemaining()) {
+                channel.write(src);
+            }
+            channel.force(false);
+        }
+        // Readers that already mapped the previous file keep their mapping
+        try {
+            Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, sidecar, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isMapped() {
+        return mapped;
+    }
+
+    long byteSize() {
+        return buffer.limit();
+    }
+
+    /**
+     * @return the entry offset for the user, or -1 if unknown
+     */
+    int find(CharSequence username) {
+        if (username == null || count == 0) {
+            return -1;
+        }
+        int hash = hashChars(username);
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int slotPos = HEADER_SIZE + slot * SLOT_SIZE;
+            int entry = buffer.getInt(slotPos + 4);
+            if (entry == 0) {
+                return -1;
+            }
+            if (buffer.getInt(slotPos) == hash
+                    && utf8Equals(buffer, entry + 2, buffer.getShort(entry) & 0xFFFF, username)) {
+                return entry;
+            }
+        }
+    }
+
+    /**
+     * Compare the stored password of an entry with {@code password}. Runs in
+     * time that depends only on the lengths involved, not on where the
+     * first difference is.
+     */
+    boolean passwordEquals(int entry, CharSequence password) {
+        int passPos = passwordPosition(entry);
+        int passLen = buffer.getShort(passPos) & 0xFFFF;
+        return utf8ConstantTimeEquals(buffer, passPos + 2, passLen, password);
+    }
+
+    /**
+     * @return true if the stored password starts with the ASCII prefix
+     */
+    boolean passwordStartsWith(int entry, String prefix) {
+        int passPos = passwordPosition(entry);
+        int passLen = buffer.getShort(passPos) & 0xFFFF;
+        if (passLen < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(passPos + 2 + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String username(int entry) {
+        return decode(entry + 2, buffer.getShort(entry) & 0xFFFF);
+    }
+
+    String password(int entry) {
+        int passPos = passwordPosition(entry);
+        return decode(passPos + 2, buffer.getShort(passPos) & 0xFFFF);
+    }
+
+    int slotCount() {
+        return tableSize;
+    }
+
+    /**
+     * @return the entry stored in a hash table slot, 0 if the slot is empty
+     */
+    int entryAtSlot(int slot) {
+        return buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4);
+    }
+
+    /**
+     * Same value as {@link #hash64(CharSequence)} for the entry's username.
+     */
+    long usernameHash64(int entry) {
+        int len = buffer.getShort(entry) & 0xFFFF;
+        long h = FNV64_OFFSET;
+        for (int i = 0; i < len; i++) {
+            h = (h ^ (buffer.get(entry + 2 + i) & 0xFF)) * FNV64_PRIME;
+        }
+        return mix64(h);
+    }
+
+    Map<String, String> toMap() {
+        Map<String, String> map = new HashMap<>(count * 2);
+        for (int slot = 0; slot < tableSize; slot++) {
+            int entry = buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE + 4);
+            if (entry != 0) {
+                map.put(username(entry), password(entry));
+            }
+        }
+        return map;
+    }
+
+    private int passwordPosition(int entry) {
+        return entry + 2 + (buffer.getShort(entry) & 0xFFFF);
+    }
+
+    private String decode(int pos, int len) {
+        byte[] bytes = new byte[len];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(pos);
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean userBytesEqual(ByteBuffer buf, int entry, byte[] text, int start, int len) {
+        if ((buf.getShort(entry) & 0xFFFF) != len) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            if (buf.get(entry + 2 + i) != text[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] text, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (text[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Same characters String.trim() removes
+    private static int trimStart(byte[] text, int from, int to) {
+        while (from < to && (text[from] & 0xFF) <= ' ') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(byte[] text, int from, int to) {
+        while (to > from && (text[to - 1] & 0xFF) <= ' ') {
+            to--;
+        }
+        return to;
+    }
+
+    // Same characters the \s regex class matches
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+
+    private static int hashBytes(byte[] bytes, int start, int len) {
+        int h = FNV_OFFSET;
+        for (int i = start; i < start + len; i++) {
+            h = (h ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Same hash as {@link #hashBytes} over the UTF-8 encoding of {@code s},
+     * without materializing the bytes.
+     */
+    static int hashChars(CharSequence s) {
+        int h = FNV_OFFSET;
+        int len = s.length();
+        for (int i = 0; i < len;) {
+            long enc = utf8At(s, i);
+            int n = utf8Count(enc);
+            for (int k = 0; k < n; k++) {
+                h = (h ^ utf8Byte(enc, k)) * FNV_PRIME;
+            }
+            i += utf8Chars(enc);
+        }
+        return mix(h);
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 encoding of {@code s}, used by the
+     * username filter. Allocates nothing.
+     */
+    static long hash64(CharSequence s) {
+        long h = FNV64_OFFSET;
+        int len = s.length();
+        for (int i = 0; i < len;) {
+            long enc = utf8At(s, i);
+            int n = utf8Count(enc);
+            for (int k = 0; k < n; k++) {
+                h = (h ^ utf8Byte(enc, k)) * FNV64_PRIME;
+            }
+            i += utf8Chars(enc);
+        }
+        return mix64(h);
+    }
+
+    private static long mix64(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private static boolean utf8Equals(ByteBuffer buf, int pos, int len, CharSequence s) {
+        int slen = s.length();
+        int p = 0;
+        for (int i = 0; i < slen;) {
+            long enc = utf8At(s, i);
+            int n = utf8Count(enc);
+            if (p + n > len) {
+                return false;
+            }
+            for (int k = 0; k < n; k++) {
+                if ((buf.get(pos + p + k) & 0xFF) != utf8Byte(enc, k)) {
+                    return false;
+                }
+            }
+            p += n;
+            i += utf8Chars(enc);
+        }
+        return p == len;
+    }
+
+    private static boolean utf8ConstantTimeEquals(ByteBuffer buf, int pos, int len, CharSequence s) {
+        int diff = 0;
+        int p = 0;
+        int slen = s.length();
+        for (int i = 0; i < slen;) {
+            long enc = utf8At(s, i);
+            int n = utf8Count(enc);
+            for (int k = 0; k < n; k++) {
+                int stored = p < len ? buf.get(pos + p) & 0xFF : 0x100;
+                diff |= stored ^ utf8Byte(enc, k);
+                p++;
+            }
+            i += utf8Chars(enc);
+        }
+        // Touch the rest of the stored value so timing does not reveal its length
+        for (int q = p; q < len; q++) {
+            diff |= buf.get(pos + q) | 0x100;
+        }
+        return diff == 0 && p == len;
+    }
+
+    /**
+     * Encode the code point at {@code i} as UTF-8 and pack the result into a
+     * long: bytes in bits 0-31, byte count in bits 32-35, chars consumed in
+     * bits 36-39. Unpaired surrogates become '?', as String.getBytes does.
+     */
+    private static long utf8At(CharSequence s, int i) {
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            return c | (1L << 32) | (1L << 36);
+        }
+        if (c < 0x800) {
+            return (0xC0 | (c >> 6)) | ((long) (0x80 | (c & 0x3F)) << 8) | (2L << 32) | (1L << 36);
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            return (0xF0 | (cp >> 18)) | ((long) (0x80 | ((cp >> 12) & 0x3F)) << 8)
+                    | ((long) (0x80 | ((cp >> 6) & 0x3F)) << 16) | ((long) (0x80 | (cp & 0x3F)) << 24)
+                    | (4L << 32) | (2L << 36);
+        }
+        if (Character.isSurrogate(c)) {
+            return '?' | (1L << 32) | (1L << 36);
+        }
+        return (0xE0 | (c >> 12)) | ((long) (0x80 | ((c >> 6) & 0x3F)) << 8) | ((long) (0x80 | (c & 0x3F)) << 16)
+                | (3L << 32) | (1L << 36);
+    }
+
+    private static int utf8Count(long enc) {
+        return (int) (enc >>> 32) & 0xF;
+    }
+
+    private static int utf8Chars(long enc) {
+        return (int) (enc >>> 36) & 0xF;
+    }
+
+    private static int utf8Byte(long enc, int k) {
+        return (int) (enc >>> (k * 8)) & 0xFF;
+    }
+}
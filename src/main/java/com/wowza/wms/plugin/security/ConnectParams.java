@@ -0,0 +1,99 @@
+package com.wowza.wms.plugin.security;
+
+import com.wowza.wms.amf.AMFData;
+import com.wowza.wms.amf.AMFDataItem;
+import com.wowza.wms.amf.AMFDataList;
+import com.wowza.wms.amf.AMFDataObj;
+
+/**
+ * Allocation-free extraction of NetConnection.connect() credentials.
+ *
+ * {@link #locate} inspects the parameter types once and returns where the
+ * credentials are; {@link #username} and {@link #password} then read the
+ * underlying String values directly instead of going through toString(),
+ * so the common object and positional cases produce no garbage.
+ */
+final class ConnectParams {
+
+    /** No credentials in the connect parameters */
+    static final int NONE = -1;
+    /** Credentials are the two positional parameters after the command object */
+    static final int POSITIONAL = 0;
+
+    private static final String KEY_USERNAME = "username";
+    private static final String KEY_PASSWORD = "password";
+
+    private ConnectParams() {
+    }
+
+    /**
+     * @return the index of the credential object ({@code >= 1}),
+     *         {@link #POSITIONAL}, or {@link #NONE}
+     */
+    static int locate(AMFDataList params) {
+        if (params == null) {
+            return NONE;
+        }
+        int size = params.size();
+        if (size < 2) {
+            return NONE;
+        }
+
+        // Method 1: AMF object with username and password members
+        for (int i = 1; i < size; i++) {
+            AMFData param = params.get(i);
+            if (param instanceof AMFDataObj) {
+                AMFDataObj obj = (AMFDataObj) param;
+                if (obj.get(KEY_USERNAME) != null && obj.get(KEY_PASSWORD) != null) {
+                    return i;
+                }
+            }
+        }
+
+        // Method 2: simple string parameters
+        if (size >= 3 && isNonEmpty(params.get(1)) && isNonEmpty(params.get(2))) {
+            return POSITIONAL;
+        }
+        return NONE;
+    }
+
+    static String username(AMFDataList params, int location) {
+        if (location == POSITIONAL) {
+            return stringValue(params.get(1));
+        }
+        return location > 0 ? stringValue(((AMFDataObj) params.get(location)).get(KEY_USERNAME)) : null;
+    }
+
+    static String password(AMFDataList params, int location) {
+        if (location == POSITIONAL) {
+            return stringValue(params.get(2));
+        }
+        return location > 0 ? stringValue(((AMFDataObj) params.get(location)).get(KEY_PASSWORD)) : null;
+    }
+
+    /**
+     * @return the String held by an AMF value, falling back to toString()
+     *         for non-string types such as numeric passwords
+     */
+    static String stringValue(AMFData data) {
+        if (data == null) {
+            return null;
+        }
+        int type = data.getType();
+        if (type == AMFData.DATA_TYPE_NULL || type == AMFData.DATA_TYPE_UNDEFINED) {
+            return null;
+        }
+        if (data instanceof AMFDataItem) {
+            Object value = ((AMFDataItem) data).getValue();
+            if (value instanceof String) {
+                return (String) value;
+            }
+        }
+        return data.toString();
+    }
+
+    private static boolean isNonEmpty(AMFData data) {
+        String value = stringValue(data);
+        return value != null && !value.isEmpty();
+    }
+}
@@ -0,0 +1,84 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Difference between two credential snapshots.
+ *
+ * Computed once per reload on the reloading thread, in one pass over each
+ * index. Removed and changed usernames are kept so their sessions can be
+ * ended, and added ones so a cluster can be told about them.
+ */
+final class CredentialDiff {
+
+    static final CredentialDiff NONE = new CredentialDiff(Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList());
+
+    private final List<String> added;
+    private final List<String> removed;
+    private final List<String> changed;
+
+    private CredentialDiff(List<String> added, List<String> removed, List<String> changed) {
+        this.added = added;
+        this.removed = removed;
+        this.changed = changed;
+    }
+
+    static CredentialDiff between(CredentialSnapshot previous, CredentialSnapshot current) {
+        CompactCredentialIndex before = previous.getIndex();
+        CompactCredentialIndex after = current.getIndex();
+        List<String> removed = new ArrayList<>();
+        List<String> changed = new ArrayList<>();
+        for (int slot = 0; slot < before.slotCount(); slot++) {
+            int entry = before.entryAtSlot(slot);
+            if (entry == 0) {
+                continue;
+            }
+            String username = before.username(entry);
+            int match = after.find(username);
+            if (match < 0) {
+                removed.add(username);
+            } else if (!after.passwordEquals(match, before.password(entry))) {
+                changed.add(username);
+            }
+        }
+        // Every user of the new file is either kept, changed or added, so the
+        // second pass stops as soon as all additions are found
+        int addedCount = after.size() - (before.size() - removed.size());
+        List<String> added = new ArrayList<>(Math.max(0, addedCount));
+        for (int slot = 0; slot < after.slotCount() && added.size() < addedCount; slot++) {
+            int entry = after.entryAtSlot(slot);
+            if (entry != 0 && before.find(after.username(entry)) < 0) {
+                added.add(after.username(entry));
+            }
+        }
+        return new CredentialDiff(added, removed, changed);
+    }
+
+    int addedCount() {
+        return added.size();
+    }
+
+    List<String> added() {
+        return added;
+    }
+
+    List<String> removed() {
+        return removed;
+    }
+
+    List<String> changed() {
+        return changed;
+    }
+
+    boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added.size() + " added, -" + removed.size() + " removed, ~" + changed.size() + " changed";
+    }
+}
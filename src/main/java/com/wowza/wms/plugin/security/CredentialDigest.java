@@ -0,0 +1,48 @@
+package com.wowza.wms.plugin.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HMAC of a username and password under a random per-instance key.
+ *
+ * Caches use it to remember that a password was accepted without keeping
+ * the password itself; the digests are useless outside this process.
+ */
+final class CredentialDigest {
+
+    private final SecretKeySpec key;
+
+    CredentialDigest() {
+        byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        this.key = new SecretKeySpec(bytes, "HmacSHA256");
+    }
+
+    /**
+     * @return the digest, or null if HmacSHA256 is unavailable
+     */
+    byte[] digest(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Constant-time comparison of two digests
+     */
+    static boolean matches(byte[] a, byte[] b) {
+        return a != null && b != null && MessageDigest.isEqual(a, b);
+    }
+}
@@ -0,0 +1,144 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable view of one parsed password file.
+ *
+ * A snapshot is never modified after construction; reloads build a new one
+ * and publish it with a single volatile write, so readers on the connect
+ * path see either the old table or the new one, never a partial one.
+ */
+final class CredentialSnapshot {
+
+    static final CredentialSnapshot EMPTY = new CredentialSnapshot(0, null, 0, CompactCredentialIndex.EMPTY,
+            UsernameFilter.PASS_ALL, StreamAcl.ALLOW_ALL, IpFilter.ALLOW_ALL);
+
+    private static final String[] HASH_PREFIXES = PasswordHash.prefixes();
+
+    private final long generation;
+    private final String path;
+    private final long lastModified;
+    private final CompactCredentialIndex index;
+    private final UsernameFilter filter;
+    private final StreamAcl streamAcl;
+    private final IpFilter ipFilter;
+
+    CredentialSnapshot(long generation, String path, long lastModified, CompactCredentialIndex index) {
+        this(generation, path, lastModified, index, UsernameFilter.PASS_ALL, StreamAcl.ALLOW_ALL, IpFilter.ALLOW_ALL);
+    }
+
+    CredentialSnapshot(long generation, String path, long lastModified, CompactCredentialIndex index,
+            UsernameFilter filter, StreamAcl streamAcl, IpFilter ipFilter) {
+        this.generation = generation;
+        this.path = path;
+        this.lastModified = lastModified;
+        this.index = index;
+        this.filter = filter;
+        this.streamAcl = streamAcl;
+        this.ipFilter = ipFilter;
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    CompactCredentialIndex getIndex() {
+        return index;
+    }
+
+    int size() {
+        return index.size();
+    }
+
+    UsernameFilter getFilter() {
+        return filter;
+    }
+
+    StreamAcl getStreamAcl() {
+        return streamAcl;
+    }
+
+    IpFilter getIpFilter() {
+        return ipFilter;
+    }
+
+    boolean contains(String username) {
+        return find(username) >= 0;
+    }
+
+    /**
+     * @return false if the user is definitely unknown, without touching the index
+     */
+    boolean mightContain(CharSequence username) {
+        return filter.mightContain(username);
+    }
+
+    /**
+     * @return the entry for the user, or -1 if unknown
+     */
+    int find(CharSequence username) {
+        return filter.mightContain(username) ? index.find(username) : -1;
+    }
+
+    boolean passwordEquals(int entry, CharSequence password) {
+        return index.passwordEquals(entry, password);
+    }
+
+    /**
+     * @return true if the entry holds a hash rather than a plaintext password
+     */
+    boolean isHashed(int entry) {
+        if (!index.passwordStartsWith(entry, "$")) {
+            return false;
+        }
+        for (String prefix : HASH_PREFIXES) {
+            if (index.passwordStartsWith(entry, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the entries holding a hash this module cannot check, adding the
+     * first {@code sampleSize} of their users to {@code sample}.
+     */
+    int unsupportedHashes(List<String> sample, int sampleSize) {
+        int count = 0;
+        for (int slot = 0; slot < index.slotCount(); slot++) {
+            int entry = index.entryAtSlot(slot);
+            if (entry != 0 && isHashed(entry) && !PasswordHash.isSupported(index.password(entry))) {
+                if (count++ < sampleSize) {
+                    sample.add(index.username(entry));
+                }
+            }
+        }
+        return count;
+    }
+
+    String storedPassword(int entry) {
+        return index.password(entry);
+    }
+
+    /**
+     * @return the stored password, or null if the user is unknown
+     */
+    String getPassword(String username) {
+        int entry = find(username);
+        return entry < 0 ? null : index.password(entry);
+    }
+
+    Map<String, String> toMap() {
+        return index.toMap();
+    }
+}
@@ -0,0 +1,257 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Owns one password file and the current {@link CredentialSnapshot} parsed
+ * from it.
+ *
+ * Reloads build a new {@link CompactCredentialIndex} off to the side and
+ * publish it with one volatile swap. Stream rules from the {@code .acl} file
+ * and client address ranges from the {@code .ips} file next to the password
+ * file are compiled into the same snapshot. Concurrent reload requests are
+ * merged: a caller waits for a parse that started after its request instead
+ * of starting another one.
+ *
+ * When another credential store checks passwords, a {@link #rulesOnly}
+ * source loads and watches just the rules and ranges; its snapshots hold no
+ * users.
+ */
+final class CredentialSource {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(CredentialSource.class);
+
+    /**
+     * Notified after every reload attempt, on the reloading thread
+     */
+    interface ReloadListener {
+        /**
+         * @param current the new snapshot, or null if the file could not be
+         *                read and {@code previous} stays in place
+         * @param diff    users that changed, computed once for all listeners;
+         *                {@link CredentialDiff#NONE} for the first load and
+         *                for failed reloads
+         */
+        void reloaded(CredentialSnapshot previous, CredentialSnapshot current, CredentialDiff diff,
+                long durationNanos);
+    }
+
+    static final String ACL_SUFFIX = ".acl";
+    static final String IPS_SUFFIX = ".ips";
+
+    private static final int UNSUPPORTED_SAMPLE = 5;
+
+    private final String path;
+    private final boolean rulesOnly;
+    private final boolean watch;
+    private final boolean useIndexFile;
+    private final int filterBitsPerKey;
+    private final long debounceMillis;
+    private final long pollMillis;
+
+    private volatile CredentialSnapshot snapshot = CredentialSnapshot.EMPTY;
+    private final AtomicLong reloadRequests = new AtomicLong();
+    private final Object reloadLock = new Object();
+    private long completedRequest; // guarded by reloadLock
+    private long generation; // guarded by reloadLock
+    private CredentialWatcher watcher;
+    private CredentialWatcher aclWatcher;
+    private CredentialWatcher ipsWatcher;
+    private final List<ReloadListener> listeners = new CopyOnWriteArrayList<>();
+
+    CredentialSource(String path, boolean watch, boolean useIndexFile, long debounceMillis, long pollMillis) {
+        this(path, watch, useIndexFile, 0, debounceMillis, pollMillis);
+    }
+
+    /**
+     * @param filterBitsPerKey size of the username Bloom filter built with
+     *                         each snapshot, 0 to disable it
+     */
+    CredentialSource(String path, boolean watch, boolean useIndexFile, int filterBitsPerKey, long debounceMillis,
+            long pollMillis) {
+        this(path, false, watch, useIndexFile, filterBitsPerKey, debounceMillis, pollMillis);
+    }
+
+    private CredentialSource(String path, boolean rulesOnly, boolean watch, boolean useIndexFile,
+            int filterBitsPerKey, long debounceMillis, long pollMillis) {
+        this.path = path;
+        this.rulesOnly = rulesOnly;
+        this.watch = watch;
+        this.useIndexFile = useIndexFile;
+        this.filterBitsPerKey = filterBitsPerKey;
+        this.debounceMillis = debounceMillis;
+        this.pollMillis = pollMillis;
+    }
+
+    /**
+     * A source for the {@code .acl} and {@code .ips} files next to a password
+     * file that is not read, because another credential store is in use
+     */
+    static CredentialSource rulesOnly(String path, boolean watch, long debounceMillis, long pollMillis) {
+        return new CredentialSource(path, true, watch, false, 0, debounceMillis, pollMillis);
+    }
+
+    boolean isRulesOnly() {
+        return rulesOnly;
+    }
+
+    /**
+     * Load the file and start watching it for changes.
+     */
+    synchronized void start() {
+        reload();
+        if (watch && aclWatcher == null) {
+            if (!rulesOnly) {
+                watcher = new CredentialWatcher(path, debounceMillis, pollMillis, true, this::reload);
+                watcher.start();
+            }
+            aclWatcher = new CredentialWatcher(path + ACL_SUFFIX, debounceMillis, pollMillis, true, this::reload);
+            aclWatcher.start();
+            ipsWatcher = new CredentialWatcher(path + IPS_SUFFIX, debounceMillis, pollMillis, true, this::reload);
+            ipsWatcher.start();
+        }
+    }
+
+    synchronized void stop() {
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        if (aclWatcher != null) {
+            aclWatcher.stop();
+            aclWatcher = null;
+        }
+        if (ipsWatcher != null) {
+            ipsWatcher.stop();
+            ipsWatcher = null;
+        }
+    }
+
+    void addReloadListener(ReloadListener listener) {
+        listeners.add(listener);
+    }
+
+    void removeReloadListener(ReloadListener listener) {
+        listeners.remove(listener);
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    CredentialSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Reload the password file and return the snapshot that reflects it.
+     * If the file cannot be read the previous snapshot stays in place.
+     */
+    CredentialSnapshot reload() {
+        long ticket = reloadRequests.incrementAndGet();
+        synchronized (reloadLock) {
+            if (completedRequest >= ticket) {
+                // A parse that started after our request has already finished
+                return snapshot;
+            }
+            long covered = reloadRequests.get();
+            long start = System.nanoTime();
+            CredentialSnapshot previous = snapshot;
+            CredentialSnapshot next = parse(generation + 1, previous.getStreamAcl(), previous.getIpFilter());
+            completedRequest = covered;
+            if (next != null) {
+                generation = next.getGeneration();
+                snapshot = next;
+            }
+            long duration = System.nanoTime() - start;
+            if (listeners.isEmpty()) {
+                return snapshot;
+            }
+            // Shared sources have one listener per application instance
+            CredentialDiff diff = next == null || previous == CredentialSnapshot.EMPTY ? CredentialDiff.NONE
+                    : CredentialDiff.between(previous, next);
+            for (ReloadListener listener : listeners) {
+                listener.reloaded(previous, next, diff, duration);
+            }
+            return snapshot;
+        }
+    }
+
+    private CredentialSnapshot parse(long nextGeneration, StreamAcl previousAcl, IpFilter previousIps) {
+        File passwordFile = new File(path);
+        long lastModified = 0;
+        CompactCredentialIndex index = CompactCredentialIndex.EMPTY;
+        if (!rulesOnly) {
+            if (!passwordFile.exists()) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Password file not found: " + path);
+                return null;
+            }
+            lastModified = passwordFile.lastModified();
+            try {
+                index = CompactCredentialIndex.open(passwordFile.toPath(), useIndexFile);
+            } catch (IOException | RuntimeException e) {
+                logger.error("ModuleRTMPPlaybackAuthentication: Error reading password file: " + path
+                        + ", keeping previous credentials", e);
+                return null;
+            }
+        }
+
+        StreamAcl acl;
+        try {
+            acl = StreamAcl.load(Paths.get(path + ACL_SUFFIX));
+        } catch (IOException | RuntimeException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Error reading stream rules: " + path + ACL_SUFFIX
+                    + ", keeping previous rules", e);
+            acl = previousAcl;
+        }
+
+        IpFilter ips;
+        try {
+            ips = IpFilter.load(Paths.get(path + IPS_SUFFIX));
+        } catch (IOException | RuntimeException e) {
+            // Without earlier ranges to keep, allowing everyone would fail open
+            ips = previousIps.isEnforcing() ? previousIps : IpFilter.DENY_ALL;
+            logger.error("ModuleRTMPPlaybackAuthentication: Error reading address ranges: " + path + IPS_SUFFIX
+                    + (ips == IpFilter.DENY_ALL ? ", denying all clients until it is fixed"
+                            : ", keeping previous ranges"), e);
+        }
+
+        UsernameFilter filter = UsernameFilter.build(index, filterBitsPerKey);
+        CredentialSnapshot next = new CredentialSnapshot(nextGeneration, path, lastModified, index, filter, acl,
+                ips);
+        logger.info("ModuleRTMPPlaybackAuthentication: Loaded "
+                + (rulesOnly ? "stream rules and address ranges for " : next.size() + " user credentials from ")
+                + path + " (generation " + nextGeneration + (index.isMapped() ? ", mapped index" : "")
+                + (acl.isEnforcing() ? ", " + acl.ruleCount() + " stream rules" : "")
+                + (ips.isEnforcing() ? ", " + ips.allowCount() + " allowed and " + ips.denyCount()
+                        + " denied address ranges" : "") + ")");
+        if (!rulesOnly) {
+            warnUnsupportedHashes(next);
+        }
+        return next;
+    }
+
+    /**
+     * Report entries that can never match once per load, rather than on every
+     * connect that uses them
+     */
+    private void warnUnsupportedHashes(CredentialSnapshot next) {
+        List<String> sample = new ArrayList<>();
+        int count = next.unsupportedHashes(sample, UNSUPPORTED_SAMPLE);
+        if (count > 0) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: " + count + " entries in " + path
+                    + " use a password hash scheme this module cannot check, so these users cannot log in: "
+                    + String.join(", ", sample) + (count > sample.size() ? " and " + (count - sample.size())
+                            + " more" : ""));
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.wowza.wms.application.IApplicationInstance;
+
+/**
+ * Where ModuleRTMPPlaybackAuthentication checks credentials.
+ *
+ * The module uses the publish.password file by default. Set
+ * rtmpPlaybackCredentialStore to {@code http} for {@link HttpCredentialStore},
+ * or to the name of a class implementing this interface with a public
+ * no-argument constructor.
+ *
+ * {@link #authenticate} is called on the connect thread and must not block:
+ * return a completed future when the answer is known locally, and complete
+ * it from another thread otherwise.
+ */
+public interface CredentialStore {
+
+    /**
+     * Called once from onAppStart. Implementations read their own settings
+     * from the application properties.
+     */
+    void start(IApplicationInstance appInstance);
+
+    /**
+     * Called from onAppStop
+     */
+    void stop();
+
+    /**
+     * @param username trimmed, non-empty username
+     * @param password trimmed, non-empty password
+     */
+    CompletableFuture<AuthOutcome> authenticate(String username, String password);
+
+    /**
+     * @return a short description for logs and getAuthStats
+     */
+    String describe();
+}
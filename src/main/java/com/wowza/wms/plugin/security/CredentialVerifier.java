@@ -0,0 +1,148 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Checks hashed password entries on a bounded {@link BlockingExecutor} so
+ * the expensive key derivation never runs on the thread that called
+ * onConnect.
+ *
+ * Successful verifications are remembered for a short time, keyed by user
+ * and an HMAC of the presented password under a per-process random key, so
+ * a reconnect storm costs one hash per user instead of one per connect. The
+ * cache is tied to the snapshot generation and dropped on every reload.
+ */
+final class CredentialVerifier {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(CredentialVerifier.class);
+
+    private final BlockingExecutor pool;
+    private final long cacheTtlNanos;
+    private final int cacheSize;
+    private final Map<String, CachedVerification> cache = new ConcurrentHashMap<>();
+    private final CredentialDigest cacheKey = new CredentialDigest();
+    private final Map<String, Long> unsupportedWarned = new ConcurrentHashMap<>();
+
+    private static final class CachedVerification {
+        final long generation;
+        final byte[] digest;
+        final long expiresAt;
+
+        CachedVerification(long generation, byte[] digest, long expiresAt) {
+            this.generation = generation;
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    CredentialVerifier(int threads, int queueSize, long cacheTtlMillis, int cacheSize) {
+        this.pool = BlockingExecutors.bounded("RTMPPlaybackAuth-verifier", threads, queueSize);
+        this.cacheTtlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cacheTtlMillis));
+        this.cacheSize = Math.max(0, cacheSize);
+    }
+
+    /**
+     * Verify a password against a hashed entry of the snapshot.
+     *
+     * @return {@link AuthOutcome#ACCEPTED} or {@link AuthOutcome#BAD_PASSWORD},
+     *         or {@link AuthOutcome#OVERLOADED} when the queue is full and the
+     *         password was not checked. Cache hits and full queues give an
+     *         already completed future, otherwise it completes on the
+     *         verifier pool.
+     */
+    CompletableFuture<AuthOutcome> verify(CredentialSnapshot snapshot, int entry, String username, String password) {
+        // Unsupported entries in a file are reported once when it is loaded
+        return verify(snapshot.storedPassword(entry), snapshot.getGeneration(), username, password, false);
+    }
+
+    /**
+     * Verify a password against a stored hash that is not part of a snapshot.
+     * Cached results are only reused for the same {@code generation}, and an
+     * unsupported scheme is reported once per user and generation.
+     */
+    CompletableFuture<AuthOutcome> verify(String stored, long generation, String username, String password) {
+        return verify(stored, generation, username, password, true);
+    }
+
+    private CompletableFuture<AuthOutcome> verify(String stored, long generation, String username, String password,
+            boolean warnUnsupported) {
+        if (!PasswordHash.isSupported(stored)) {
+            Long warned = warnUnsupported ? unsupportedWarned.put(username, generation) : null;
+            if (warnUnsupported && (warned == null || warned != generation)) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Unsupported password hash scheme for user '"
+                        + AuthEventLog.printable(username) + "', the user cannot log in");
+            }
+            return AuthOutcome.BAD_PASSWORD.future();
+        }
+
+        byte[] digest = cacheTtlNanos > 0 ? cacheKey.digest(username, password) : null;
+        if (digest != null && isCached(username, generation, digest)) {
+            return AuthOutcome.ACCEPTED.future();
+        }
+
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                boolean verified = PasswordHash.verify(stored, password);
+                if (verified && digest != null) {
+                    remember(username, generation, digest);
+                }
+                return verified ? AuthOutcome.ACCEPTED : AuthOutcome.BAD_PASSWORD;
+            }, pool);
+        } catch (RejectedExecutionException e) {
+            // Not the client's fault, so this must not count as a wrong password
+            logger.warn("ModuleRTMPPlaybackAuthentication: Verifier queue full, rejecting user '"
+                    + AuthEventLog.printable(username) + "'");
+            return AuthOutcome.OVERLOADED.future();
+        }
+    }
+
+    void shutdown() {
+        pool.shutdown();
+        cache.clear();
+        unsupportedWarned.clear();
+    }
+
+    int cachedCount() {
+        return cache.size();
+    }
+
+    int queuedCount() {
+        return pool.waitingCount();
+    }
+
+    private boolean isCached(String username, long generation, byte[] digest) {
+        CachedVerification cached = cache.get(username);
+        if (cached == null) {
+            return false;
+        }
+        if (cached.generation != generation || System.nanoTime() - cached.expiresAt > 0) {
+            cache.remove(username, cached);
+            return false;
+        }
+        return CredentialDigest.matches(cached.digest, digest);
+    }
+
+    private void remember(String username, long generation, byte[] digest) {
+        if (cache.size() >= cacheSize) {
+            long now = System.nanoTime();
+            for (Iterator<CachedVerification> it = cache.values().iterator(); it.hasNext();) {
+                CachedVerification cached = it.next();
+                if (cached.generation != generation || now - cached.expiresAt > 0) {
+                    it.remove();
+                }
+            }
+            if (cache.size() >= cacheSize) {
+                return;
+            }
+        }
+        cache.put(username, new CachedVerification(generation, digest, System.nanoTime() + cacheTtlNanos));
+    }
+}
@@ -0,0 +1,176 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Background watcher for the password file.
+ *
+ * Uses an NIO WatchService on the parent directory when the platform supports
+ * it and falls back to polling the file's size and modification time
+ * otherwise. The WatchService is backed by a slow poll as well, since some
+ * filesystems (NFS, some container overlays) never deliver events.
+ *
+ * Bursts of changes (editors writing temp files, rsync, config management)
+ * are collapsed: the reload callback runs once the file has been quiet for
+ * the debounce window. The callback always runs on the watcher thread, so
+ * connecting clients never touch the disk.
+ */
+final class CredentialWatcher implements Runnable {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(CredentialWatcher.class);
+
+    private final File file;
+    private final long debounceMillis;
+    private final long pollMillis;
+    private final boolean useWatchService;
+    private final Runnable onChange;
+
+    private volatile boolean running;
+    private volatile Thread thread;
+    private WatchService watchService;
+
+    // Only touched by the watcher thread
+    private long lastModified;
+    private long lastLength;
+    private long pendingSince = -1;
+
+    CredentialWatcher(String filePath, long debounceMillis, long pollMillis, boolean useWatchService,
+            Runnable onChange) {
+        this.file = new File(filePath).getAbsoluteFile();
+        this.debounceMillis = Math.max(0, debounceMillis);
+        this.pollMillis = Math.max(10, pollMillis);
+        this.useWatchService = useWatchService;
+        this.onChange = onChange;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        lastModified = file.lastModified();
+        lastLength = file.length();
+        if (useWatchService) {
+            watchService = openWatchService();
+        }
+        running = true;
+        thread = BlockingExecutors.start("RTMPPlaybackAuth-watcher[" + file.getName() + "]", this);
+        logger.info("ModuleRTMPPlaybackAuthentication: Watching " + file.getPath() + " ("
+                + (watchService != null ? "watch service" : "polling every " + pollMillis + "ms")
+                + ", debounce " + debounceMillis + "ms)");
+    }
+
+    synchronized void stop() {
+        running = false;
+        Thread t = thread;
+        thread = null;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                // Closing only wakes the watcher thread up
+            }
+            watchService = null;
+        }
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean isUsingWatchService() {
+        return watchService != null;
+    }
+
+    @Override
+    public void run() {
+        WatchService ws = watchService;
+        while (running) {
+            try {
+                long waitMillis = pendingSince < 0 ? pollMillis
+                        : Math.max(1, debounceMillis - (System.currentTimeMillis() - pendingSince));
+                if (ws != null) {
+                    WatchKey key = ws.poll(Math.min(waitMillis, pollMillis), TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        drainEvents(key);
+                    }
+                } else {
+                    Thread.sleep(Math.min(waitMillis, pollMillis));
+                }
+                checkFile();
+                firePendingChange();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            } catch (RuntimeException e) {
+                logger.error("ModuleRTMPPlaybackAuthentication: Error in password file watcher", e);
+            }
+        }
+    }
+
+    private WatchService openWatchService() {
+        File dir = file.getParentFile();
+        if (dir == null || !dir.isDirectory()) {
+            return null;
+        }
+        try {
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            dir.toPath().register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            return ws;
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Watch service unavailable for " + dir.getPath()
+                    + ", falling back to polling");
+            return null;
+        }
+    }
+
+    private void drainEvents(WatchKey key) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && file.getName().equals(context.toString()))) {
+                markPending();
+            }
+        }
+        key.reset();
+    }
+
+    private void checkFile() {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified != lastModified || length != lastLength) {
+            lastModified = modified;
+            lastLength = length;
+            markPending();
+        }
+    }
+
+    private void markPending() {
+        // Every new change restarts the quiet period
+        pendingSince = System.currentTimeMillis();
+    }
+
+    private void firePendingChange() {
+        if (pendingSince < 0 || System.currentTimeMillis() - pendingSince < debounceMillis) {
+            return;
+        }
+        pendingSince = -1;
+        lastModified = file.lastModified();
+        lastLength = file.length();
+        onChange.run();
+    }
+}
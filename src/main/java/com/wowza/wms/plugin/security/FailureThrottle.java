@@ -0,0 +1,212 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free failed-attempt throttle keyed by client IP or username.
+ *
+ * Every key owns a token bucket of {@code maxFailures} tokens that refills
+ * one token per {@code refillMillis}. A failure takes a token; once the
+ * bucket is empty the key is blocked for {@code baseBackoffMillis}, doubling
+ * with every further strike up to {@code maxBackoffMillis}. Strikes are
+ * forgotten after a quiet period of twice the maximum backoff.
+ *
+ * Buckets live in a fixed-size table and are replaced with compare-and-set,
+ * so memory stays bounded no matter how many distinct keys show up: a key
+ * probes a small window of slots and, when all are taken, evicts the
+ * stalest unblocked bucket. {@link #isBlocked} only reads and allocates
+ * nothing, so throttled clients cost almost nothing to turn away.
+ */
+final class FailureThrottle {
+
+    private static final int PROBE_WINDOW = 4;
+
+    private final AtomicReferenceArray<Bucket> table;
+    private final int mask;
+    private final int maxFailures;
+    private final long refillMillis;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private static final class Bucket {
+        final String key;
+        final int tokens;
+        final long lastRefill;
+        final long lastFailure;
+        final int strikes;
+        final long blockedUntil;
+
+        Bucket(String key, int tokens, long lastRefill, long lastFailure, int strikes, long blockedUntil) {
+            this.key = key;
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+            this.lastFailure = lastFailure;
+            this.strikes = strikes;
+            this.blockedUntil = blockedUntil;
+        }
+    }
+
+    FailureThrottle(int tableSize, int maxFailures, long refillMillis, long baseBackoffMillis,
+            long maxBackoffMillis) {
+        int size = Integer.highestOneBit(Math.max(PROBE_WINDOW, tableSize) - 1) << 1;
+        this.table = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.maxFailures = Math.max(1, maxFailures);
+        this.refillMillis = Math.max(1, refillMillis);
+        this.baseBackoffMillis = Math.max(1, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * @return true if the key is currently in a backoff period
+     */
+    boolean isBlocked(String key, long now) {
+        if (key == null) {
+            return false;
+        }
+        int start = spread(key.hashCode());
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            Bucket b = table.get((start + i) & mask);
+            if (b != null && b.key.equals(key)) {
+                return b.blockedUntil > now;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the time until which the key is blocked, 0 if it is not
+     */
+    long blockedUntil(String key, long now) {
+        if (key == null) {
+            return 0;
+        }
+        int start = spread(key.hashCode());
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            Bucket b = table.get((start + i) & mask);
+            if (b != null && b.key.equals(key)) {
+                return b.blockedUntil > now ? b.blockedUntil : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Record a failed attempt.
+     *
+     * @return true if this failure started a backoff period
+     */
+    boolean recordFailure(String key, long now) {
+        if (key == null) {
+            return false;
+        }
+        int start = spread(key.hashCode());
+        while (true) {
+            int slot = -1;
+            Bucket current = null;
+            boolean sameKey = false;
+            boolean haveEmpty = false;
+            for (int i = 0; i < PROBE_WINDOW; i++) {
+                int idx = (start + i) & mask;
+                Bucket b = table.get(idx);
+                if (b != null && b.key.equals(key)) {
+                    slot = idx;
+                    current = b;
+                    sameKey = true;
+                    break;
+                }
+                if (b == null) {
+                    if (!haveEmpty) {
+                        slot = idx;
+                        current = null;
+                        haveEmpty = true;
+                    }
+                } else if (!haveEmpty && (slot < 0 || evictsBefore(b, current, now))) {
+                    slot = idx;
+                    current = b;
+                }
+            }
+            if (!sameKey && current != null && current.blockedUntil > now) {
+                // Every candidate slot holds a blocked key; keep them rather than forget an attacker
+                return false;
+            }
+
+            Bucket next = fail(sameKey ? current : null, key, now);
+            if (table.compareAndSet(slot, current, next)) {
+                return next.blockedUntil > now && !(sameKey && current.blockedUntil > now);
+            }
+        }
+    }
+
+    /**
+     * Forget a key after a successful attempt.
+     */
+    void recordSuccess(String key) {
+        if (key == null) {
+            return;
+        }
+        int start = spread(key.hashCode());
+        for (int i = 0; i < PROBE_WINDOW; i++) {
+            int idx = (start + i) & mask;
+            Bucket b = table.get(idx);
+            if (b != null && b.key.equals(key)) {
+                table.compareAndSet(idx, b, null);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return number of keys currently in a backoff period
+     */
+    int blockedCount(long now) {
+        int count = 0;
+        for (int i = 0; i < table.length(); i++) {
+            Bucket b = table.get(i);
+            if (b != null && b.blockedUntil > now) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int capacity() {
+        return table.length();
+    }
+
+    private Bucket fail(Bucket b, String key, long now) {
+        if (b == null) {
+            b = new Bucket(key, maxFailures, now, now, 0, 0);
+        }
+        int strikes = now - b.lastFailure > 2 * maxBackoffMillis ? 0 : b.strikes;
+        long refills = (now - b.lastRefill) / refillMillis;
+        int tokens = (int) Math.min(maxFailures, b.tokens + refills);
+        long lastRefill = tokens == maxFailures ? now : b.lastRefill + refills * refillMillis;
+
+        tokens--;
+        long blockedUntil = b.blockedUntil;
+        if (tokens <= 0) {
+            strikes++;
+            long backoff = baseBackoffMillis << Math.min(strikes - 1, 30);
+            blockedUntil = now + Math.min(maxBackoffMillis, backoff > 0 ? backoff : maxBackoffMillis);
+            tokens = 0;
+        }
+        return new Bucket(key, tokens, lastRefill, now, strikes, blockedUntil);
+    }
+
+    // Prefer unblocked buckets, then the one that failed longest ago
+    private static boolean evictsBefore(Bucket a, Bucket b, long now) {
+        boolean aBlocked = a.blockedUntil > now;
+        boolean bBlocked = b.blockedUntil > now;
+        if (aBlocked != bBlocked) {
+            return !aBlocked;
+        }
+        return a.lastFailure < b.lastFailure;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x45D9F3B;
+        return h ^ (h >>> 16);
+    }
+}
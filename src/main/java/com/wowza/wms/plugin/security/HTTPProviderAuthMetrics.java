@@ -0,0 +1,51 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.wowza.wms.http.HTTProvider2Base;
+import com.wowza.wms.http.IHTTPRequest;
+import com.wowza.wms.http.IHTTPResponse;
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+import com.wowza.wms.vhost.IVHost;
+
+/**
+ * HTTP provider serving the authentication metrics of every application
+ * that runs ModuleRTMPPlaybackAuthentication, in Prometheus text format.
+ *
+ * Add it to a HostPort in VHost.xml:
+ * <pre>
+ * &lt;HTTPProvider&gt;
+ *     &lt;BaseClass&gt;com.wowza.wms.plugin.security.HTTPProviderAuthMetrics&lt;/BaseClass&gt;
+ *     &lt;RequestFilters&gt;rtmpauth-metrics*&lt;/RequestFilters&gt;
+ *     &lt;AuthenticationMethod&gt;none&lt;/AuthenticationMethod&gt;
+ * &lt;/HTTPProvider&gt;
+ * </pre>
+ */
+public class HTTPProviderAuthMetrics extends HTTProvider2Base {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(HTTPProviderAuthMetrics.class);
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    @Override
+    public void onHTTPRequest(IVHost vhost, IHTTPRequest req, IHTTPResponse resp) {
+        if (!doHTTPAuthentication(vhost, req, resp)) {
+            return;
+        }
+
+        StringBuilder body = new StringBuilder(4096);
+        AuthMetrics.writePrometheus(body);
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        resp.setHeader("Content-Type", CONTENT_TYPE);
+        try {
+            OutputStream out = resp.getOutputStream();
+            out.write(bytes);
+        } catch (IOException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Error writing metrics response", e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import com.wowza.wms.http.HTTProvider2Base;
+import com.wowza.wms.http.IHTTPRequest;
+import com.wowza.wms.http.IHTTPResponse;
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+import com.wowza.wms.vhost.IVHost;
+
+/**
+ * HTTP provider listing the users and client addresses that connect most
+ * often to every application that runs ModuleRTMPPlaybackAuthentication, as
+ * JSON:
+ *
+ * <pre>
+ * {"applications":[{"name":"_defaultVHost_/live/_definst_","windowSeconds":60,
+ *   "rejectedUsers":[{"key":"bob","count":1200}],"rejectedIps":[...],"acceptedUsers":[...],"acceptedIps":[...]}]}
+ * </pre>
+ *
+ * The lists name clients, so protect the endpoint. Add it to an admin
+ * HostPort in VHost.xml:
+ * <pre>
+ * &lt;HTTPProvider&gt;
+ *     &lt;BaseClass&gt;com.wowza.wms.plugin.security.HTTPProviderAuthTopClients&lt;/BaseClass&gt;
+ *     &lt;RequestFilters&gt;rtmpauth-top*&lt;/RequestFilters&gt;
+ *     &lt;AuthenticationMethod&gt;admin-digest&lt;/AuthenticationMethod&gt;
+ * &lt;/HTTPProvider&gt;
+ * </pre>
+ */
+public class HTTPProviderAuthTopClients extends HTTProvider2Base {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(HTTPProviderAuthTopClients.class);
+
+    static final String CONTENT_TYPE = "application/json; charset=utf-8";
+
+    @Override
+    public void onHTTPRequest(IVHost vhost, IHTTPRequest req, IHTTPResponse resp) {
+        if (!doHTTPAuthentication(vhost, req, resp)) {
+            return;
+        }
+
+        StringBuilder body = new StringBuilder(4096);
+        AuthMetrics.writeTopClients(body);
+        byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+
+        resp.setHeader("Content-Type", CONTENT_TYPE);
+        try {
+            OutputStream out = resp.getOutputStream();
+            out.write(bytes);
+        } catch (IOException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Error writing top clients response", e);
+        }
+    }
+}
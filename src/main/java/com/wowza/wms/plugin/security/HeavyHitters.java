@@ -0,0 +1,243 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.LongSupplier;
+
+/**
+ * The most frequent keys of a stream over a sliding time window, in memory
+ * that does not depend on how many distinct keys there are.
+ *
+ * The window is split into {@link #BUCKETS} buckets. Each bucket counts
+ * keys in a count-min sketch ({@link #DEPTH} rows of {@link #WIDTH}
+ * counters), which may overestimate a key by roughly {@code 2/WIDTH} of the
+ * bucket's events but never underestimates it, and keeps the current
+ * heaviest keys in a space-saving table: a key that is not tracked replaces
+ * the lightest tracked one once its estimate is larger. A key is only
+ * offered to the table when its estimate exceeds the lightest tracked
+ * count, so the many light keys of a flood only touch the sketch. When the
+ * clock moves past a bucket's interval the bucket is cleared and reused.
+ */
+final class HeavyHitters {
+
+    static final int DEPTH = 4;
+    static final int WIDTH = 512;
+    static final int BUCKETS = 6;
+
+    // Attacker-chosen names must not make tracked keys arbitrarily large
+    static final int MAX_KEY_LENGTH = 256;
+
+    private final int capacity;
+    private final long bucketMillis;
+    private final LongSupplier clock;
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final Bucket[] buckets = new Bucket[BUCKETS];
+
+    /**
+     * One key and its estimated count over the window
+     */
+    static final class Entry {
+        final String key;
+        final long count;
+
+        Entry(String key, long count) {
+            this.key = key;
+            this.count = count;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count;
+        }
+    }
+
+    private final class Bucket {
+        volatile long interval = -1;
+        final AtomicIntegerArray sketch = new AtomicIntegerArray(DEPTH * WIDTH);
+        // Space-saving table, guarded by this
+        final String[] keys = new String[capacity];
+        final int[] hashes = new int[capacity];
+        final long[] counts = new long[capacity];
+        int size;
+        // Lightest tracked count once the table is full
+        volatile long floor;
+
+        synchronized void startInterval(long next) {
+            if (interval >= next) {
+                return;
+            }
+            for (int i = 0; i < DEPTH * WIDTH; i++) {
+                sketch.set(i, 0);
+            }
+            for (int i = 0; i < size; i++) {
+                keys[i] = null;
+            }
+            size = 0;
+            floor = 0;
+            interval = next;
+        }
+
+        int add(long hash) {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                estimate = Math.min(estimate, sketch.incrementAndGet(cell(hash, row)));
+            }
+            return estimate;
+        }
+
+        int estimate(long hash) {
+            int estimate = Integer.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                estimate = Math.min(estimate, sketch.get(cell(hash, row)));
+            }
+            return estimate;
+        }
+
+        synchronized void offer(String key, int hash, long estimate) {
+            int lightest = -1;
+            for (int i = 0; i < size; i++) {
+                if (hashes[i] == hash && keys[i].equals(key)) {
+                    counts[i] = Math.max(counts[i], estimate);
+                    updateFloor();
+                    return;
+                }
+                if (lightest < 0 || counts[i] < counts[lightest]) {
+                    lightest = i;
+                }
+            }
+            int slot;
+            if (size < capacity) {
+                slot = size++;
+            } else if (estimate > counts[lightest]) {
+                slot = lightest;
+            } else {
+                return;
+            }
+            keys[slot] = key;
+            hashes[slot] = hash;
+            counts[slot] = estimate;
+            updateFloor();
+        }
+
+        private void updateFloor() {
+            if (size < capacity) {
+                return;
+            }
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < size; i++) {
+                min = Math.min(min, counts[i]);
+            }
+            floor = min;
+        }
+
+        synchronized void candidates(Set<String> out) {
+            for (int i = 0; i < size; i++) {
+                out.add(keys[i]);
+            }
+        }
+    }
+
+    /**
+     * @param capacity     keys tracked per bucket; a few times the number
+     *                     reported keeps the ranking stable
+     * @param windowMillis length of the sliding window
+     */
+    HeavyHitters(int capacity, long windowMillis, LongSupplier clock) {
+        this.capacity = Math.max(1, capacity);
+        this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+        this.clock = clock;
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    void record(String key) {
+        key = truncate(key);
+        long interval = clock.getAsLong() / bucketMillis;
+        Bucket bucket = buckets[(int) (interval % BUCKETS)];
+        if (bucket.interval != interval) {
+            bucket.startInterval(interval);
+        }
+        long hash = hash(key);
+        int estimate = bucket.add(hash);
+        if (estimate > bucket.floor) {
+            bucket.offer(key, (int) hash, estimate);
+        }
+    }
+
+    /**
+     * @return an upper bound for the key's count over the window
+     */
+    long estimate(String key) {
+        long hash = hash(truncate(key));
+        long now = clock.getAsLong() / bucketMillis;
+        long total = 0;
+        for (Bucket bucket : buckets) {
+            if (isLive(bucket, now)) {
+                total += bucket.estimate(hash);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return up to {@code n} keys with the highest counts over the window,
+     *         heaviest first
+     */
+    List<Entry> top(int n) {
+        long now = clock.getAsLong() / bucketMillis;
+        Set<String> candidates = new LinkedHashSet<>();
+        for (Bucket bucket : buckets) {
+            if (isLive(bucket, now)) {
+                bucket.candidates(candidates);
+            }
+        }
+        List<Entry> entries = new ArrayList<>(candidates.size());
+        for (String key : candidates) {
+            entries.add(new Entry(key, estimate(key)));
+        }
+        entries.sort((a, b) -> a.count != b.count ? Long.compare(b.count, a.count) : a.key.compareTo(b.key));
+        return entries.size() > n ? new ArrayList<>(entries.subList(0, Math.max(0, n))) : entries;
+    }
+
+    long windowMillis() {
+        return bucketMillis * BUCKETS;
+    }
+
+    /**
+     * Each row takes its column from its own 16 bits of the hash, so two
+     * keys share a counter in every row only if 36 hash bits agree
+     */
+    private static int cell(long hash, int row) {
+        return row * WIDTH + ((int) (hash >>> (row * 16)) & (WIDTH - 1));
+    }
+
+    private static String truncate(String key) {
+        return key.length() > MAX_KEY_LENGTH ? key.substring(0, MAX_KEY_LENGTH) : key;
+    }
+
+    private static boolean isLive(Bucket bucket, long now) {
+        long interval = bucket.interval;
+        return interval >= 0 && now - interval < BUCKETS;
+    }
+
+    /**
+     * Seeded 64-bit FNV-1a finished with a MurmurHash3 mix; the seed keeps
+     * clients from choosing names that collide with someone else's counters
+     */
+    private long hash(String key) {
+        long h = seed ^ 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
@@ -0,0 +1,327 @@
+package com.wowza.wms.plugin.security;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.function.LongSupplier;
+
+import com.wowza.wms.application.IApplicationInstance;
+import com.wowza.wms.application.WMSProperties;
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Credential store backed by an HTTP/JSON authentication service.
+ *
+ * Each check POSTs {@code {"username":"...","password":"..."}} to the
+ * configured URL. The service answers 200 with
+ * {@code {"authenticated":true}} or {@code {"authenticated":false}},
+ * optionally with {@code "reason":"unknown_user"}; 401/403 count as a wrong
+ * password and 404 as an unknown user. Anything else is a failure.
+ *
+ * Answers are cached per user: accepted and rejected passwords by an HMAC
+ * of the password, unknown users by name alone, each with its own TTL.
+ * Concurrent checks of the same credentials share one request. Failures
+ * feed a {@link CircuitBreaker}; while it is open, or when a request
+ * fails, the last known answer is used if it is not older than the stale
+ * TTL, and the connect is rejected otherwise.
+ */
+final class HttpCredentialStore implements CredentialStore {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(HttpCredentialStore.class);
+
+    static final String PROP_URL = "rtmpPlaybackCredentialUrl";
+    static final String PROP_TIMEOUT = "rtmpPlaybackCredentialTimeout";
+    static final String PROP_CACHE_TTL = "rtmpPlaybackCredentialCacheTtl";
+    static final String PROP_NEGATIVE_CACHE_TTL = "rtmpPlaybackCredentialNegativeCacheTtl";
+    static final String PROP_STALE_TTL = "rtmpPlaybackCredentialStaleTtl";
+    static final String PROP_CACHE_SIZE = "rtmpPlaybackCredentialCacheSize";
+    static final String PROP_CIRCUIT_FAILURES = "rtmpPlaybackCircuitFailures";
+    static final String PROP_CIRCUIT_OPEN_TIME = "rtmpPlaybackCircuitOpenTime";
+
+    private static final int DEFAULT_TIMEOUT = 2000; // 2 seconds
+    private static final int DEFAULT_CACHE_TTL = 60000; // 1 minute
+    private static final int DEFAULT_NEGATIVE_CACHE_TTL = 10000; // 10 seconds
+    private static final int DEFAULT_STALE_TTL = 600000; // 10 minutes
+    private static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int DEFAULT_CIRCUIT_FAILURES = 5;
+    private static final int DEFAULT_CIRCUIT_OPEN_TIME = 30000; // 30 seconds
+
+    private final URI url;
+    private final long timeoutMillis;
+    private final long cacheTtlMillis;
+    private final long negativeCacheTtlMillis;
+    private final long staleTtlMillis;
+    private final int cacheSize;
+    private final CircuitBreaker circuit;
+    private final LongSupplier clock;
+    private final CredentialDigest digests = new CredentialDigest();
+    private final Map<String, CachedResult> cache = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<AuthOutcome>> inFlight = new ConcurrentHashMap<>();
+    private volatile HttpClient client;
+    private ExecutorService executor;
+
+    private static final class CachedResult {
+        final AuthOutcome outcome;
+        final byte[] digest; // null for unknown users
+        final long expiresAt;
+        final long staleUntil;
+
+        CachedResult(AuthOutcome outcome, byte[] digest, long expiresAt, long staleUntil) {
+            this.outcome = outcome;
+            this.digest = digest;
+            this.expiresAt = expiresAt;
+            this.staleUntil = staleUntil;
+        }
+
+        boolean matches(byte[] presented) {
+            return outcome == AuthOutcome.UNKNOWN_USER || CredentialDigest.matches(digest, presented);
+        }
+    }
+
+    HttpCredentialStore(URI url, long timeoutMillis, long cacheTtlMillis, long negativeCacheTtlMillis,
+            long staleTtlMillis, int cacheSize, int circuitFailures, long circuitOpenMillis, LongSupplier clock) {
+        this.url = url;
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        this.cacheTtlMillis = Math.max(0, cacheTtlMillis);
+        this.negativeCacheTtlMillis = Math.max(0, negativeCacheTtlMillis);
+        this.staleTtlMillis = Math.max(0, staleTtlMillis);
+        this.cacheSize = Math.max(0, cacheSize);
+        this.circuit = new CircuitBreaker(circuitFailures, circuitOpenMillis);
+        this.clock = clock;
+    }
+
+    /**
+     * @return a store configured from the application properties, or null
+     *         if no URL is set
+     */
+    static HttpCredentialStore fromProperties(WMSProperties props) {
+        String url = props.getPropertyStr(PROP_URL);
+        if (url == null || url.trim().isEmpty()) {
+            return null;
+        }
+        return new HttpCredentialStore(URI.create(url.trim()), props.getPropertyInt(PROP_TIMEOUT, DEFAULT_TIMEOUT),
+                props.getPropertyInt(PROP_CACHE_TTL, DEFAULT_CACHE_TTL),
+                props.getPropertyInt(PROP_NEGATIVE_CACHE_TTL, DEFAULT_NEGATIVE_CACHE_TTL),
+                props.getPropertyInt(PROP_STALE_TTL, DEFAULT_STALE_TTL),
+                props.getPropertyInt(PROP_CACHE_SIZE, DEFAULT_CACHE_SIZE),
+                props.getPropertyInt(PROP_CIRCUIT_FAILURES, DEFAULT_CIRCUIT_FAILURES),
+                props.getPropertyInt(PROP_CIRCUIT_OPEN_TIME, DEFAULT_CIRCUIT_OPEN_TIME), System::currentTimeMillis);
+    }
+
+    @Override
+    public void start(IApplicationInstance appInstance) {
+        executor = BlockingExecutors.unbounded("RTMPPlaybackAuth-http");
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(timeoutMillis)).executor(executor).build();
+        logger.info("ModuleRTMPPlaybackAuthentication: Using credential service " + url + " (timeout "
+                + timeoutMillis + "ms, cache " + cacheSize + " entries for " + cacheTtlMillis + "ms)");
+    }
+
+    @Override
+    public void stop() {
+        client = null;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        cache.clear();
+    }
+
+    @Override
+    public CompletableFuture<AuthOutcome> authenticate(String username, String password) {
+        long now = clock.getAsLong();
+        byte[] digest = digests.digest(username, password);
+        CachedResult cached = cache.get(username);
+        if (cached != null && now < cached.expiresAt && cached.matches(digest)) {
+            return cached.outcome.future();
+        }
+
+        if (!circuit.allowRequest(now)) {
+            return fallback(username, digest, now).future();
+        }
+
+        // Concurrent checks of the same credentials share one request
+        String key = username + '\0' + (digest != null ? Base64.getEncoder().encodeToString(digest) : password);
+        CompletableFuture<AuthOutcome> pending = inFlight.get(key);
+        if (pending != null) {
+            return pending;
+        }
+        CompletableFuture<AuthOutcome> created = new CompletableFuture<>();
+        pending = inFlight.putIfAbsent(key, created);
+        if (pending != null) {
+            return pending;
+        }
+        request(username, password, digest).whenComplete((outcome, error) -> {
+            inFlight.remove(key, created);
+            created.complete(outcome != null ? outcome : AuthOutcome.ERROR);
+        });
+        return created;
+    }
+
+    @Override
+    public String describe() {
+        return "http " + url + " (circuit " + circuit.getState() + ", cached " + cache.size() + ")";
+    }
+
+    int cachedCount() {
+        return cache.size();
+    }
+
+    CircuitBreaker.State circuitState() {
+        return circuit.getState();
+    }
+
+    private CompletableFuture<AuthOutcome> request(String username, String password, byte[] digest) {
+        HttpClient http = client;
+        if (http == null) {
+            return AuthOutcome.ERROR.future();
+        }
+        HttpRequest request = HttpRequest.newBuilder(url)
+                .timeout(Duration.ofMillis(timeoutMillis))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody(username, password)))
+                .build();
+        try {
+            return http.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .handle((response, error) -> complete(username, digest, response, error));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(complete(username, digest, null, e));
+        }
+    }
+
+    private AuthOutcome complete(String username, byte[] digest, HttpResponse<String> response, Throwable error) {
+        long now = clock.getAsLong();
+        AuthOutcome outcome = error == null ? parse(response) : null;
+        if (outcome == null) {
+            if (circuit.recordFailure(now)) {
+                logger.warn("ModuleRTMPPlaybackAuthentication: Credential service " + url + " unavailable ("
+                        + (error != null ? error.getClass().getSimpleName() : "HTTP " + response.statusCode())
+                        + "), using cached results");
+            }
+            return fallback(username, digest, now);
+        }
+        circuit.recordSuccess();
+        remember(username, digest, outcome, now);
+        return outcome;
+    }
+
+    /**
+     * @return the mapped outcome, or null if the response is a failure
+     */
+    static AuthOutcome parse(HttpResponse<String> response) {
+        int status = response.statusCode();
+        if (status == 401 || status == 403) {
+            return AuthOutcome.BAD_PASSWORD;
+        }
+        if (status == 404) {
+            return AuthOutcome.UNKNOWN_USER;
+        }
+        if (status != 200 || response.body() == null) {
+            return null;
+        }
+        // Only the top-level fields count, and a body with a repeated key is refused
+        Map<String, Object> body = JsonReader.parseObject(response.body());
+        Object authenticated = body != null ? body.get("authenticated") : null;
+        if (!(authenticated instanceof Boolean)) {
+            return null;
+        }
+        if ((Boolean) authenticated) {
+            return AuthOutcome.ACCEPTED;
+        }
+        Object reason = body.get("reason");
+        if (reason instanceof String && ((String) reason).replace('-', '_').equalsIgnoreCase("unknown_user")) {
+            return AuthOutcome.UNKNOWN_USER;
+        }
+        return AuthOutcome.BAD_PASSWORD;
+    }
+
+    private AuthOutcome fallback(String username, byte[] digest, long now) {
+        CachedResult cached = cache.get(username);
+        if (cached != null && now < cached.staleUntil && cached.matches(digest)) {
+            return cached.outcome;
+        }
+        return AuthOutcome.ERROR;
+    }
+
+    private void remember(String username, byte[] digest, AuthOutcome outcome, long now) {
+        if (cacheSize == 0 || (digest == null && outcome != AuthOutcome.UNKNOWN_USER)) {
+            return;
+        }
+        long ttl = outcome.isAccepted() ? cacheTtlMillis : negativeCacheTtlMillis;
+        CachedResult current = cache.get(username);
+        if (!outcome.isAccepted() && current != null && current.outcome.isAccepted() && now < current.expiresAt) {
+            // A wrong guess must not push out a valid login
+            return;
+        }
+        if (current == null && cache.size() >= cacheSize) {
+            evict(now);
+            if (cache.size() >= cacheSize) {
+                return;
+            }
+        }
+        cache.put(username, new CachedResult(outcome, outcome == AuthOutcome.UNKNOWN_USER ? null : digest,
+                now + ttl, now + Math.max(ttl, staleTtlMillis)));
+    }
+
+    private void evict(long now) {
+        for (Iterator<CachedResult> it = cache.values().iterator(); it.hasNext();) {
+            if (now >= it.next().staleUntil) {
+                it.remove();
+            }
+        }
+        // Still full: drop a slice in hash order, which is effectively random
+        int toRemove = cache.size() - cacheSize + cacheSize / 16 + 1;
+        for (Iterator<CachedResult> it = cache.values().iterator(); it.hasNext() && toRemove > 0; toRemove--) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    static String requestBody(String username, String password) {
+        StringBuilder json = new StringBuilder(64).append("{\"username\":");
+        quote(json, username);
+        json.append(",\"password\":");
+        quote(json, password);
+        return json.append('}').toString();
+    }
+
+    private static void quote(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                out.append("\\\"");
+                break;
+            case '\\':
+                out.append("\\\\");
+                break;
+            case '\n':
+                out.append("\\n");
+                break;
+            case '\r':
+                out.append("\\r");
+                break;
+            case '\t':
+                out.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+        out.append('"');
+    }
+}
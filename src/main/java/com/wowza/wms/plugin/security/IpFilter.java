@@ -0,0 +1,452 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Client address allow and deny ranges, compiled once per credential
+ * snapshot and checked before any credential work.
+ *
+ * The ranges file lists {@code allow} or {@code deny} followed by IPv4 or
+ * IPv6 CIDR ranges (or single addresses), separated by commas or
+ * whitespace:
+ *
+ * <pre>
+ * allow  52.95.0.0/16, 2600:1f00::/24
+ * deny   52.95.12.0/24
+ * </pre>
+ *
+ * The most specific matching range decides; when the same range is both
+ * allowed and denied, deny wins. Addresses no range matches are refused as
+ * soon as there is at least one allow range, and accepted otherwise.
+ *
+ * Each address family is held in a path-compressed binary radix trie: a
+ * node only exists where ranges branch or end, so a lookup follows at most
+ * one node per range prefix on the path no matter how many ranges are
+ * loaded. The address string is parsed in place and the lookup does not
+ * allocate.
+ */
+final class IpFilter {
+
+    /**
+     * No ranges file: every address may connect
+     */
+    static final IpFilter ALLOW_ALL = new IpFilter(false, new Node(0, 0, 0, Node.NONE), new Node(0, 0, 0, Node.NONE),
+            0, 0);
+
+    /**
+     * Ranges file that cannot be parsed and no earlier ranges to keep: no
+     * address may connect until it is fixed
+     */
+    static final IpFilter DENY_ALL = new IpFilter(true, new Node(0, 0, 0, Node.DENY), new Node(0, 0, 0, Node.DENY),
+            0, 0);
+
+    private final boolean enforcing;
+    private final Node v4;
+    private final Node v6;
+    private final int allowCount;
+    private final int denyCount;
+
+    private IpFilter(boolean enforcing, Node v4, Node v6, int allowCount, int denyCount) {
+        this.enforcing = enforcing;
+        this.v4 = v4;
+        this.v6 = v6;
+        this.allowCount = allowCount;
+        this.denyCount = denyCount;
+    }
+
+    /**
+     * @return the ranges in a file, or {@link #ALLOW_ALL} if it does not
+     *         exist
+     * @throws IllegalArgumentException if a line cannot be parsed; a typo
+     *                                  must not silently drop a deny range
+     */
+    static IpFilter load(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return ALLOW_ALL;
+        }
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    static IpFilter parse(List<String> lines) {
+        Node v4 = new Node(0, 0, 0, Node.NONE);
+        Node v6 = new Node(0, 0, 0, Node.NONE);
+        int allows = 0;
+        int denies = 0;
+        int number = 0;
+        for (String raw : lines) {
+            number++;
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[\\s,]+");
+            byte action;
+            if ("allow".equalsIgnoreCase(fields[0])) {
+                action = Node.ALLOW;
+            } else if ("deny".equalsIgnoreCase(fields[0])) {
+                action = Node.DENY;
+            } else {
+                throw new IllegalArgumentException("line " + number + ": expected allow or deny, found '"
+                        + fields[0] + "'");
+            }
+            for (int i = 1; i < fields.length; i++) {
+                if (!add(v4, v6, fields[i], action)) {
+                    throw new IllegalArgumentException("line " + number + ": invalid range '" + fields[i] + "'");
+                }
+                if (action == Node.ALLOW) {
+                    allows++;
+                } else {
+                    denies++;
+                }
+            }
+        }
+        return new IpFilter(true, v4, v6, allows, denies);
+    }
+
+    private static boolean add(Node v4, Node v6, String range, byte action) {
+        int slash = range.indexOf('/');
+        int end = slash >= 0 ? slash : range.length();
+        boolean ipv6 = range.indexOf(':') >= 0;
+        int maxLength = ipv6 ? 128 : 32;
+        int length = maxLength;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(range.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (length < 0 || length > maxLength) {
+                return false;
+            }
+        }
+        if (ipv6) {
+            if (!isValidV6(range, 0, end)) {
+                return false;
+            }
+            v6.insert(parseV6(range, 0, end, true), parseV6(range, 0, end, false), length, action);
+        } else {
+            long address = parseV4(range, 0, end);
+            if (address < 0) {
+                return false;
+            }
+            v4.insert(address << 32, 0, length, action);
+        }
+        return true;
+    }
+
+    /**
+     * @return false when ranges were loaded and they refuse this address
+     */
+    boolean isAllowed(String ip) {
+        if (!enforcing) {
+            return true;
+        }
+        if (this == DENY_ALL) {
+            // Also refuses addresses that do not parse
+            return false;
+        }
+        byte action = lookup(ip);
+        return action == Node.NONE ? allowCount == 0 : action == Node.ALLOW;
+    }
+
+    private byte lookup(String ip) {
+        if (ip == null) {
+            return Node.NONE;
+        }
+        int start = 0;
+        int end = ip.length();
+        if (end > 0 && ip.charAt(0) == '[') {
+            start = 1;
+            int close = ip.indexOf(']');
+            end = close >= 0 ? close : end;
+        }
+        int zone = ip.indexOf('%', start);
+        if (zone >= 0 && zone < end) {
+            end = zone;
+        }
+        int colon = ip.indexOf(':', start);
+        if (colon < 0 || colon >= end) {
+            long address = parseV4(ip, start, end);
+            return address < 0 ? Node.NONE : v4.lookup(address << 32, 0, 32);
+        }
+        if (!isValidV6(ip, start, end)) {
+            return Node.NONE;
+        }
+        long hi = parseV6(ip, start, end, true);
+        long lo = parseV6(ip, start, end, false);
+        if (hi == 0 && (lo >>> 32) == 0xffffL) {
+            // IPv4-mapped address from a dual-stack socket
+            return v4.lookup(lo << 32, 0, 32);
+        }
+        return v6.lookup(hi, lo, 128);
+    }
+
+    boolean isEnforcing() {
+        return enforcing;
+    }
+
+    int allowCount() {
+        return allowCount;
+    }
+
+    int denyCount() {
+        return denyCount;
+    }
+
+    /**
+     * @return a dotted IPv4 address as an unsigned value, or -1
+     */
+    static long parseV4(CharSequence s, int start, int end) {
+        long address = 0;
+        int octets = 0;
+        int i = start;
+        while (octets < 4) {
+            int value = 0;
+            int digits = 0;
+            while (i < end && digits < 4) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > 3 || value > 255) {
+                return -1;
+            }
+            address = (address << 8) | value;
+            octets++;
+            if (octets < 4) {
+                if (i >= end || s.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == end ? address : -1;
+    }
+
+    // Returned with the same value for both halves of a malformed address
+    private static final long INVALID_HALF = 0x5555_5555_5555_5555L;
+
+    static boolean isValidV6(CharSequence s, int start, int end) {
+        return parseV6(s, start, end, true, true) != INVALID_HALF;
+    }
+
+    /**
+     * @return the high or low 64 bits of an IPv6 address; call
+     *         {@link #isValidV6} first to tell a malformed address apart
+     */
+    static long parseV6(CharSequence s, int start, int end, boolean high) {
+        return parseV6(s, start, end, high, false);
+    }
+
+    /**
+     * Parses the address into 16-bit groups: those before {@code ::} into
+     * {@code head}, those after into {@code tail}, each a 128-bit value in
+     * two longs that is shifted left by one group per group read. The head
+     * is then moved to the top and the tail kept at the bottom.
+     */
+    private static long parseV6(CharSequence s, int start, int end, boolean high, boolean validate) {
+        long headHi = 0;
+        long headLo = 0;
+        long tailHi = 0;
+        long tailLo = 0;
+        int heads = 0;
+        int tails = 0;
+        boolean compressed = false;
+        int i = start;
+        if (end - start >= 2 && s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+            compressed = true;
+            i += 2;
+        } else if (i < end && s.charAt(i) == ':') {
+            return INVALID_HALF;
+        }
+        while (i < end) {
+            int value = 0;
+            int digits = 0;
+            int j = i;
+            while (j < end) {
+                int d = Character.digit(s.charAt(j), 16);
+                if (d < 0) {
+                    break;
+                }
+                value = (value << 4) | d;
+                digits++;
+                j++;
+            }
+            if (j < end && s.charAt(j) == '.') {
+                // Trailing dotted IPv4 part, two groups
+                long v4 = parseV4(s, i, end);
+                if (v4 < 0) {
+                    return INVALID_HALF;
+                }
+                if (compressed) {
+                    tailHi = (tailHi << 32) | (tailLo >>> 32);
+                    tailLo = (tailLo << 32) | v4;
+                    tails += 2;
+                } else {
+                    headHi = (headHi << 32) | (headLo >>> 32);
+                    headLo = (headLo << 32) | v4;
+                    heads += 2;
+                }
+                i = end;
+                break;
+            }
+            if (digits == 0 || digits > 4) {
+                return INVALID_HALF;
+            }
+            if (compressed) {
+                tailHi = (tailHi << 16) | (tailLo >>> 48);
+                tailLo = (tailLo << 16) | value;
+                tails++;
+            } else {
+                headHi = (headHi << 16) | (headLo >>> 48);
+                headLo = (headLo << 16) | value;
+                heads++;
+            }
+            if (heads + tails > 8) {
+                return INVALID_HALF;
+            }
+            if (j == end) {
+                i = j;
+                break;
+            }
+            if (s.charAt(j) != ':') {
+                return INVALID_HALF;
+            }
+            if (j + 1 < end && s.charAt(j + 1) == ':') {
+                if (compressed) {
+                    return INVALID_HALF;
+                }
+                compressed = true;
+                i = j + 2;
+            } else {
+                i = j + 1;
+                if (i == end) {
+                    return INVALID_HALF;
+                }
+            }
+        }
+        if (compressed ? heads + tails > 7 : heads != 8) {
+            return INVALID_HALF;
+        }
+        if (validate) {
+            return 0;
+        }
+        for (int shift = heads; shift < 8; shift++) {
+            headHi = (headHi << 16) | (headLo >>> 48);
+            headLo <<= 16;
+        }
+        return high ? headHi | tailHi : headLo | tailLo;
+    }
+
+    /**
+     * One node of the radix trie. The key is a 128-bit prefix held in two
+     * longs, IPv4 addresses in the top 32 bits; children continue the prefix
+     * with a 0 or 1 bit and may skip any number of bits after it.
+     */
+    static final class Node {
+        static final byte NONE = 0;
+        static final byte ALLOW = 1;
+        static final byte DENY = 2;
+
+        final long hi;
+        final long lo;
+        final int length;
+        byte action;
+        Node zero;
+        Node one;
+
+        Node(long hi, long lo, int length, byte action) {
+            this.hi = hi & maskHi(length);
+            this.lo = lo & maskLo(length);
+            this.length = length;
+            this.action = action;
+        }
+
+        /**
+         * @return the action of the longest prefix covering the address
+         */
+        byte lookup(long hi, long lo, int maxLength) {
+            byte result = action;
+            Node node = this;
+            while (node.length < maxLength) {
+                Node child = bit(hi, lo, node.length) == 0 ? node.zero : node.one;
+                if (child == null || !child.covers(hi, lo)) {
+                    break;
+                }
+                node = child;
+                if (node.action != NONE) {
+                    result = node.action;
+                }
+            }
+            return result;
+        }
+
+        void insert(long hi, long lo, int length, byte action) {
+            Node node = this;
+            while (true) {
+                if (node.length == length) {
+                    node.action = node.action == DENY ? DENY : action;
+                    return;
+                }
+                int bit = bit(hi, lo, node.length);
+                Node child = bit == 0 ? node.zero : node.one;
+                if (child == null) {
+                    node.set(bit, new Node(hi, lo, length, action));
+                    return;
+                }
+                int common = Math.min(commonPrefix(hi, lo, child.hi, child.lo), Math.min(length, child.length));
+                if (common == child.length) {
+                    node = child;
+                    continue;
+                }
+                // Split the edge where the new range leaves it
+                Node split = new Node(hi, lo, common, NONE);
+                node.set(bit, split);
+                split.set(bit(child.hi, child.lo, common), child);
+                if (common == length) {
+                    split.action = action;
+                } else {
+                    split.set(bit(hi, lo, common), new Node(hi, lo, length, action));
+                }
+                return;
+            }
+        }
+
+        private boolean covers(long hi, long lo) {
+            return ((hi ^ this.hi) & maskHi(length)) == 0 && ((lo ^ this.lo) & maskLo(length)) == 0;
+        }
+
+        private void set(int bit, Node child) {
+            if (bit == 0) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+
+        private static int bit(long hi, long lo, int index) {
+            return (int) (index < 64 ? hi >>> (63 - index) : lo >>> (127 - index)) & 1;
+        }
+
+        private static int commonPrefix(long hi1, long lo1, long hi2, long lo2) {
+            long x = hi1 ^ hi2;
+            return x != 0 ? Long.numberOfLeadingZeros(x) : 64 + Long.numberOfLeadingZeros(lo1 ^ lo2);
+        }
+
+        private static long maskHi(int length) {
+            return length >= 64 ? -1L : length == 0 ? 0 : -1L << (64 - length);
+        }
+
+        private static long maskLo(int length) {
+            return length <= 64 ? 0 : length >= 128 ? -1L : -1L << (128 - length);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package com.wowza.wms.plugin.security;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Strict reader for the small JSON documents the module consumes: answers
+ * of the HTTP credential service and audit log lines.
+ *
+ * Objects come back as maps in document order, arrays as lists, and the
+ * scalars as String, Boolean, BigDecimal or null. Anything that is not
+ * exactly one well-formed document is refused, including duplicate keys
+ * (which parsers disagree on, so a service and this module could read
+ * different answers from one body) and nesting deeper than
+ * {@value #MAX_DEPTH}.
+ */
+final class JsonReader {
+
+    static final int MAX_DEPTH = 32;
+
+    private final String text;
+    private int pos;
+
+    private JsonReader(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @return the top-level object's fields, or null if the text is not a
+     *         single valid JSON object
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> parseObject(String text) {
+        if (text == null) {
+            return null;
+        }
+        JsonReader reader = new JsonReader(text);
+        try {
+            reader.skipSpace();
+            if (!reader.peek('{')) {
+                return null;
+            }
+            Object value = reader.value(0);
+            reader.skipSpace();
+            return reader.pos == text.length() ? (Map<String, Object>) value : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private Object value(int depth) {
+        if (depth > MAX_DEPTH) {
+            throw error("nested too deeply");
+        }
+        skipSpace();
+        if (pos >= text.length()) {
+            throw error("unexpected end");
+        }
+        char c = text.charAt(pos);
+        switch (c) {
+        case '{':
+            return object(depth);
+        case '[':
+            return array(depth);
+        case '"':
+            return string();
+        case 't':
+            return literal("true", Boolean.TRUE);
+        case 'f':
+            return literal("false", Boolean.FALSE);
+        case 'n':
+            return literal("null", null);
+        default:
+            return number();
+        }
+    }
+
+    private Map<String, Object> object(int depth) {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        pos++;
+        skipSpace();
+        if (peek('}')) {
+            pos++;
+            return fields;
+        }
+        while (true) {
+            skipSpace();
+            if (!peek('"')) {
+                throw error("expected a key");
+            }
+            String key = string();
+            skipSpace();
+            expect(':');
+            Object value = value(depth + 1);
+            if (fields.containsKey(key)) {
+                throw error("duplicate key " + key);
+            }
+            fields.put(key, value);
+            skipSpace();
+            if (peek('}')) {
+                pos++;
+                return fields;
+            }
+            expect(',');
+        }
+    }
+
+    private List<Object> array(int depth) {
+        List<Object> values = new ArrayList<>();
+        pos++;
+        skipSpace();
+        if (peek(']')) {
+            pos++;
+            return values;
+        }
+        while (true) {
+            values.add(value(depth + 1));
+            skipSpace();
+            if (peek(']')) {
+                pos++;
+                return values;
+            }
+            expect(',');
+        }
+    }
+
+    private String string() {
+        StringBuilder sb = new StringBuilder();
+        for (pos++; pos < text.length(); pos++) {
+            char c = text.charAt(pos);
+            if (c == '"') {
+                pos++;
+                return sb.toString();
+            }
+            if (c < 0x20) {
+                throw error("control character in string");
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (++pos >= text.length()) {
+                break;
+            }
+            char e = text.charAt(pos);
+            switch (e) {
+            case '"':
+            case '\\':
+            case '/':
+                sb.append(e);
+                break;
+            case 'b':
+                sb.append('\b');
+                break;
+            case 'f':
+                sb.append('\f');
+                break;
+            case 'n':
+                sb.append('\n');
+                break;
+            case 'r':
+                sb.append('\r');
+                break;
+            case 't':
+                sb.append('\t');
+                break;
+            case 'u':
+                if (pos + 4 >= text.length()) {
+                    throw error("short unicode escape");
+                }
+                int code = 0;
+                for (int i = 1; i <= 4; i++) {
+                    int digit = Character.digit(text.charAt(pos + i), 16);
+                    if (digit < 0) {
+                        throw error("bad unicode escape");
+                    }
+                    code = code * 16 + digit;
+                }
+                sb.append((char) code);
+                pos += 4;
+                break;
+            default:
+                throw error("bad escape");
+            }
+        }
+        throw error("unterminated string");
+    }
+
+    private BigDecimal number() {
+        int start = pos;
+        if (peek('-')) {
+            pos++;
+        }
+        if (peek('0')) {
+            pos++;
+        } else if (digits() == 0) {
+            throw error("unexpected character");
+        }
+        if (peek('.')) {
+            pos++;
+            if (digits() == 0) {
+                throw error("bad fraction");
+            }
+        }
+        if (peek('e') || peek('E')) {
+            pos++;
+            if (peek('+') || peek('-')) {
+                pos++;
+            }
+            if (digits() == 0) {
+                throw error("bad exponent");
+            }
+        }
+        try {
+            return new BigDecimal(text.substring(start, pos));
+        } catch (NumberFormatException e) {
+            throw error("bad number");
+        }
+    }
+
+    private int digits() {
+        int start = pos;
+        while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+            pos++;
+        }
+        return pos - start;
+    }
+
+    private Object literal(String word, Object value) {
+        if (!text.startsWith(word, pos)) {
+            throw error("unexpected character");
+        }
+        pos += word.length();
+        return value;
+    }
+
+    private boolean peek(char c) {
+        return pos < text.length() && text.charAt(pos) == c;
+    }
+
+    private void expect(char c) {
+        if (!peek(c)) {
+            throw error("expected '" + c + "'");
+        }
+        pos++;
+    }
+
+    private void skipSpace() {
+        while (pos < text.length()) {
+            char c = text.charAt(pos);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(message + " at " + pos);
+    }
+}
@@ -0,0 +1,122 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size latency histogram with HDR-style log-linear buckets.
+ *
+ * Values (nanoseconds) below 16 get a bucket each; above that every power
+ * of two is split into 8 linear sub-buckets, so any recorded value is
+ * reported within 12.5% of its true value across the whole long range with
+ * 488 buckets. Recording is a couple of shifts and one atomic increment on
+ * a stripe picked by thread id, so it is cheap enough to leave on; reads
+ * sum the stripes and are only as consistent as a monitoring scrape needs.
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(8, cpus)));
+        this.stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+        this.stripeMask = stripeCount - 1;
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        stripes[stripe].incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /**
+     * Record the time elapsed since a {@link System#nanoTime()} reading
+     */
+    void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    long count() {
+        return count.sum();
+    }
+
+    long sum() {
+        return sum.sum();
+    }
+
+    long max() {
+        return max.get();
+    }
+
+    /**
+     * @return an upper bound of the given quantile (0..1), 0 if empty
+     */
+    long percentile(double quantile) {
+        long[] buckets = buckets();
+        long total = 0;
+        for (long b : buckets) {
+            total += b;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max());
+            }
+        }
+        return max();
+    }
+
+    private long[] buckets() {
+        long[] merged = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                merged[i] += stripe.get(i);
+            }
+        }
+        return merged;
+    }
+
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (exponent << SUB_BITS) + (int) (value >>> exponent);
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int exponent = (bucket >> SUB_BITS) - 1;
+        return (long) (SUB_COUNT + (bucket & (SUB_COUNT - 1))) << exponent;
+    }
+
+    static long upperBound(int bucket) {
+        return bucket + 1 < BUCKETS ? lowerBound(bucket + 1) - 1 : Long.MAX_VALUE;
+    }
+}
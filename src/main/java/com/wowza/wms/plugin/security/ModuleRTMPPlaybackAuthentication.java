@@ -1,11 +1,20 @@
 package com.wowza.wms.plugin.security;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import com.wowza.wms.application.IApplicationInstance;
 import com.wowza.wms.application.WMSProperties;
@@ -14,9 +23,7 @@ import com.wowza.wms.logging.WMSLogger;
 import com.wowza.wms.logging.WMSLoggerFactory;
 import com.wowza.wms.module.ModuleBase;
 import com.wowza.wms.request.RequestFunction;
-import com.wowza.wms.amf.AMFData;
 import com.wowza.wms.amf.AMFDataList;
-import com.wowza.wms.amf.AMFDataObj;
 
 /**
  * RTMP Playback Authentication Module - API Compatible Version for Wowza 4.x
@@ -47,21 +54,188 @@ public class ModuleRTMPPlaybackAuthentication extends ModuleBase {
     private static final String PROP_USE_PUBLISH_AUTH = "rtmpPlaybackUsePublishAuth";
     private static final String PROP_CUSTOM_PASSWORD_FILE = "securityPublishPasswordFile";
     private static final String PROP_OVERRIDE_SECURITY_TOKEN = "rtmpPlaybackOverrideSecurityToken";
+    private static final String PROP_WATCH_CREDENTIALS = "rtmpPlaybackWatchCredentials";
+    private static final String PROP_RELOAD_DEBOUNCE = "rtmpPlaybackReloadDebounce";
+    private static final String PROP_RELOAD_POLL_INTERVAL = "rtmpPlaybackReloadPollInterval";
+    private static final String PROP_CREDENTIAL_INDEX = "rtmpPlaybackCredentialIndex";
+    private static final String PROP_ASYNC_ACCEPT = "rtmpPlaybackAsyncAccept";
+    private static final String PROP_VERIFY_THREADS = "rtmpPlaybackVerifyThreads";
+    private static final String PROP_VERIFY_QUEUE = "rtmpPlaybackVerifyQueue";
+    private static final String PROP_VERIFY_TIMEOUT = "rtmpPlaybackVerifyTimeout";
+    private static final String PROP_VERIFY_CACHE_TTL = "rtmpPlaybackVerifyCacheTtl";
+    private static final String PROP_VERIFY_CACHE_SIZE = "rtmpPlaybackVerifyCacheSize";
+    private static final String PROP_THROTTLE_ENABLED = "rtmpPlaybackThrottleEnabled";
+    private static final String PROP_THROTTLE_USERS = "rtmpPlaybackThrottleUsers";
+    private static final String PROP_THROTTLE_MAX_FAILURES = "rtmpPlaybackThrottleMaxFailures";
+    private static final String PROP_THROTTLE_REFILL_INTERVAL = "rtmpPlaybackThrottleRefillInterval";
+    private static final String PROP_THROTTLE_BASE_BACKOFF = "rtmpPlaybackThrottleBaseBackoff";
+    private static final String PROP_THROTTLE_MAX_BACKOFF = "rtmpPlaybackThrottleMaxBackoff";
+    private static final String PROP_THROTTLE_TABLE_SIZE = "rtmpPlaybackThrottleTableSize";
+    private static final String PROP_USERNAME_FILTER_BITS = "rtmpPlaybackUsernameFilterBits";
+    private static final String PROP_LOG_VERBOSITY = "rtmpPlaybackLogVerbosity";
+    private static final String PROP_LOG_FLUSH_INTERVAL = "rtmpPlaybackLogFlushInterval";
+    private static final String PROP_METRICS_JMX = "rtmpPlaybackMetricsJmx";
+    private static final String PROP_CREDENTIAL_STORE = "rtmpPlaybackCredentialStore";
+    private static final String PROP_MAX_IN_FLIGHT = "rtmpPlaybackMaxInFlight";
+    private static final String PROP_ADMISSION_QUEUE = "rtmpPlaybackAdmissionQueue";
+    private static final String PROP_ADMISSION_TIMEOUT = "rtmpPlaybackAdmissionTimeout";
+    private static final String PROP_MAX_SESSIONS_PER_USER = "rtmpPlaybackMaxSessionsPerUser";
+    private static final String PROP_REVOKE_ON_RELOAD = "rtmpPlaybackRevokeOnReload";
+    private static final String PROP_STREAM_ACL = "rtmpPlaybackStreamAcl";
+    private static final String PROP_IP_FILTER = "rtmpPlaybackIpFilter";
+    private static final String PROP_TICKETS = "rtmpPlaybackTickets";
+    private static final String PROP_TICKET_TTL = "rtmpPlaybackTicketTtl";
+    private static final String PROP_TICKET_KEYS = "rtmpPlaybackTicketKeys";
+    private static final String PROP_TICKET_CLIENT_METHOD = "rtmpPlaybackTicketClientMethod";
+    private static final String PROP_CLUSTER_PEERS = "rtmpPlaybackClusterPeers";
+    private static final String PROP_CLUSTER_LISTEN = "rtmpPlaybackClusterListen";
+    private static final String PROP_CLUSTER_KEY = "rtmpPlaybackClusterKey";
+    private static final String PROP_CLUSTER_NODE_ID = "rtmpPlaybackClusterNodeId";
+    private static final String PROP_AUDIT_LOG = "rtmpPlaybackAuditLog";
+    private static final String PROP_AUDIT_BUFFER_SIZE = "rtmpPlaybackAuditBufferSize";
+    private static final String PROP_AUDIT_MAX_FILE_SIZE = "rtmpPlaybackAuditMaxFileSize";
+    private static final String PROP_AUDIT_MAX_FILES = "rtmpPlaybackAuditMaxFiles";
+    private static final String PROP_TOP_CLIENTS = "rtmpPlaybackTopClients";
+    private static final String PROP_TOP_CLIENTS_WINDOW = "rtmpPlaybackTopClientsWindow";
 
     // Default values
     private static final boolean DEFAULT_REQUIRE_AUTH = true;
-    private static final int DEFAULT_AUTH_TIMEOUT = 30000; // 30 seconds
+    private static final int DEFAULT_AUTH_TIMEOUT = 0; // session lifetime, unlimited
     private static final boolean DEFAULT_USE_PUBLISH_AUTH = true;
     private static final boolean DEFAULT_OVERRIDE_SECURITY_TOKEN = true;
+    private static final boolean DEFAULT_WATCH_CREDENTIALS = true;
+    private static final int DEFAULT_RELOAD_DEBOUNCE = 500; // 0.5 seconds
+    private static final int DEFAULT_RELOAD_POLL_INTERVAL = 2000; // 2 seconds
+    private static final boolean DEFAULT_CREDENTIAL_INDEX = false;
+    private static final boolean DEFAULT_ASYNC_ACCEPT = false;
+    private static final int DEFAULT_VERIFY_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private static final int DEFAULT_VERIFY_QUEUE = 256;
+    // A default-cost PBKDF2 check takes well under this; the wait only grows
+    // when the verifier pool is backed up, and then it sheds quickly
+    private static final int DEFAULT_VERIFY_TIMEOUT = 1000; // 1 second
+    private static final int DEFAULT_VERIFY_CACHE_TTL = 60000; // 1 minute
+    private static final int DEFAULT_VERIFY_CACHE_SIZE = 10000;
+    private static final boolean DEFAULT_THROTTLE_ENABLED = true;
+    private static final boolean DEFAULT_THROTTLE_USERS = true;
+    private static final int DEFAULT_THROTTLE_MAX_FAILURES = 5;
+    private static final int DEFAULT_THROTTLE_REFILL_INTERVAL = 10000; // 10 seconds
+    private static final int DEFAULT_THROTTLE_BASE_BACKOFF = 1000; // 1 second
+    private static final int DEFAULT_THROTTLE_MAX_BACKOFF = 300000; // 5 minutes
+    private static final int DEFAULT_THROTTLE_TABLE_SIZE = 16384;
+    private static final int DEFAULT_USERNAME_FILTER_BITS = 10; // about 1% false positives
+    private static final AuthEventLog.Verbosity DEFAULT_LOG_VERBOSITY = AuthEventLog.Verbosity.EVENTS;
+    private static final int DEFAULT_LOG_FLUSH_INTERVAL = 10000; // 10 seconds
+    private static final boolean DEFAULT_METRICS_JMX = true;
+    private static final String DEFAULT_CREDENTIAL_STORE = "file";
+    private static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final int DEFAULT_ADMISSION_QUEUE = 1024;
+    private static final int DEFAULT_ADMISSION_TIMEOUT = 2000; // 2 seconds
+    private static final int DEFAULT_MAX_SESSIONS_PER_USER = 0; // unlimited
+    private static final boolean DEFAULT_REVOKE_ON_RELOAD = true;
+    private static final boolean DEFAULT_STREAM_ACL = true;
+    private static final boolean DEFAULT_IP_FILTER = true;
+    private static final boolean DEFAULT_TICKETS = false;
+    private static final int DEFAULT_TICKET_TTL = 300000; // 5 minutes
+    private static final String DEFAULT_TICKET_CLIENT_METHOD = "onAuthTicket";
+    private static final String DEFAULT_CLUSTER_LISTEN = "1940";
+    private static final int DEFAULT_AUDIT_BUFFER_SIZE = 8192;
+    private static final int DEFAULT_AUDIT_MAX_FILE_SIZE = 100 * 1024 * 1024; // 100 MB
+    private static final int DEFAULT_AUDIT_MAX_FILES = 10;
+    private static final int DEFAULT_TOP_CLIENTS = 10;
+    private static final int DEFAULT_TOP_CLIENTS_WINDOW = 60000; // 1 minute
+
+    private static final String TICKET_PROPERTY = "rtmpAuthTicket";
+
+    private static final String REJECT_THROTTLED = "Too many failed authentication attempts, retry later";
+    private static final String REJECT_OVERLOADED = "Server busy, retry in %d seconds";
+    private static final String REJECT_SESSION_LIMIT = "Too many concurrent sessions for this user";
+    private static final String REJECT_IP_DENIED = "Client address not allowed";
+
+    // Lifetimes are checked with this precision, minutes-long sessions fit in one turn
+    private static final int SESSION_TICK_MILLIS = 250;
+    private static final int SESSION_WHEEL_SLOTS = 1024;
+    private static final int CLUSTER_TIMEOUT_MILLIS = 2000;
 
     // Internal storage
-    private final Map<String, String> credentials = new ConcurrentHashMap<>();
     private boolean requireAuth = DEFAULT_REQUIRE_AUTH;
     private int authTimeout = DEFAULT_AUTH_TIMEOUT;
     private boolean usePublishAuth = DEFAULT_USE_PUBLISH_AUTH;
     private boolean overrideSecurityToken = DEFAULT_OVERRIDE_SECURITY_TOKEN;
+    private boolean watchCredentials = DEFAULT_WATCH_CREDENTIALS;
+    private int reloadDebounce = DEFAULT_RELOAD_DEBOUNCE;
+    private int reloadPollInterval = DEFAULT_RELOAD_POLL_INTERVAL;
+    private boolean credentialIndex = DEFAULT_CREDENTIAL_INDEX;
+    private boolean asyncAccept = DEFAULT_ASYNC_ACCEPT;
+    private int verifyThreads = DEFAULT_VERIFY_THREADS;
+    private int verifyQueue = DEFAULT_VERIFY_QUEUE;
+    private int verifyTimeout = DEFAULT_VERIFY_TIMEOUT;
+    private int verifyCacheTtl = DEFAULT_VERIFY_CACHE_TTL;
+    private int verifyCacheSize = DEFAULT_VERIFY_CACHE_SIZE;
+    private boolean throttleEnabled = DEFAULT_THROTTLE_ENABLED;
+    private boolean throttleUsers = DEFAULT_THROTTLE_USERS;
+    private int throttleMaxFailures = DEFAULT_THROTTLE_MAX_FAILURES;
+    private int throttleRefillInterval = DEFAULT_THROTTLE_REFILL_INTERVAL;
+    private int throttleBaseBackoff = DEFAULT_THROTTLE_BASE_BACKOFF;
+    private int throttleMaxBackoff = DEFAULT_THROTTLE_MAX_BACKOFF;
+    private int throttleTableSize = DEFAULT_THROTTLE_TABLE_SIZE;
+    private int usernameFilterBits = DEFAULT_USERNAME_FILTER_BITS;
+    private AuthEventLog.Verbosity logVerbosity = DEFAULT_LOG_VERBOSITY;
+    private int logFlushInterval = DEFAULT_LOG_FLUSH_INTERVAL;
+    private boolean metricsJmx = DEFAULT_METRICS_JMX;
+    private String credentialStoreName = DEFAULT_CREDENTIAL_STORE;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int admissionQueue = DEFAULT_ADMISSION_QUEUE;
+    private int admissionTimeout = DEFAULT_ADMISSION_TIMEOUT;
+    private int maxSessionsPerUser = DEFAULT_MAX_SESSIONS_PER_USER;
+    private boolean revokeOnReload = DEFAULT_REVOKE_ON_RELOAD;
+    private boolean streamAcl = DEFAULT_STREAM_ACL;
+    private boolean ipFilter = DEFAULT_IP_FILTER;
+    private boolean ticketsEnabled = DEFAULT_TICKETS;
+    private int ticketTtl = DEFAULT_TICKET_TTL;
+    private String ticketKeys;
+    private String ticketClientMethod = DEFAULT_TICKET_CLIENT_METHOD;
+    private String clusterPeers;
+    private String clusterListen = DEFAULT_CLUSTER_LISTEN;
+    private String clusterKey;
+    private String clusterNodeId;
+    private String auditLogPath;
+    private int auditBufferSize = DEFAULT_AUDIT_BUFFER_SIZE;
+    private int auditMaxFileSize = DEFAULT_AUDIT_MAX_FILE_SIZE;
+    private int auditMaxFiles = DEFAULT_AUDIT_MAX_FILES;
+    private int topClientsSize = DEFAULT_TOP_CLIENTS;
+    private int topClientsWindow = DEFAULT_TOP_CLIENTS_WINDOW;
     private String customPasswordFile;
-    private long lastFileModified = 0;
+    private volatile CredentialSource credentialSource;
+    private final CredentialStore fileStore = new FileCredentialStore();
+    private volatile CredentialStore credentialStore = fileStore;
+    private volatile CredentialVerifier credentialVerifier;
+    private volatile FailureThrottle ipThrottle;
+    private volatile FailureThrottle userThrottle;
+    private volatile ReconnectTickets tickets;
+    private volatile AdmissionController admission;
+    private volatile TimingWheel sessionWheel;
+    private volatile SessionTracker<IClient> sessions;
+    // Clients whose check finishes off the connect thread; false once they hung up
+    private final Map<IClient, Boolean> verifying = new ConcurrentHashMap<>();
+    private volatile ClusterReplicator cluster;
+    private volatile AuditLog auditLog;
+    private volatile AuthEventLog eventLog = new AuthEventLog(logger, DEFAULT_LOG_VERBOSITY,
+            DEFAULT_LOG_FLUSH_INTERVAL);
+    private volatile AuthMetrics metrics = new AuthMetrics("unregistered");
+    private final CredentialSource.ReloadListener reloadListener = this::credentialsReloaded;
+    private final ClusterReplicator.Listener clusterListener = new ClusterReplicator.Listener() {
+        @Override
+        public void credentialsChanged(String username) {
+            if (revokeOnReload) {
+                revoke(Collections.singletonList(username));
+            }
+        }
+
+        @Override
+        public void revoked(String username) {
+            revoke(Collections.singletonList(username));
+        }
+    };
     private IApplicationInstance appInstance;
 
     /**
@@ -75,8 +249,18 @@ public class ModuleRTMPPlaybackAuthentication extends ModuleBase {
         // Load configuration
         loadConfiguration(appInstance);
 
-        // Load credentials
-        loadCredentials();
+        // Metrics first so the initial load is counted
+        registerMetrics();
+
+        // Load credentials and hand further reloads over to the watcher
+        startCredentialStore();
+        createThrottles();
+        createTickets();
+        createAdmissionController();
+        startSessionTracker();
+        startCluster();
+        startEventLog();
+        startAuditLog();
 
         logger.info("ModuleRTMPPlaybackAuthentication: Module started successfully.");
     }
@@ -85,7 +269,14 @@ public class ModuleRTMPPlaybackAuthentication extends ModuleBase {
      * Called when application stops
      */
     public void onAppStop(IApplicationInstance appInstance) {
-        credentials.clear();
+        credentialStore.stop();
+        closeCredentialSource();
+        stopCredentialVerifier();
+        stopCluster();
+        stopSessionTracker();
+        eventLog.stop();
+        stopAuditLog();
+        metrics.unregister();
         logger.info("ModuleRTMPPlaybackAuthentication: Module stopped");
     }
 
@@ -103,99 +294,256 @@ public class ModuleRTMPPlaybackAuthentication extends ModuleBase {
             return;
         }
 
-        logger.info("ModuleRTMPPlaybackAuthentication: Processing RTMP connect request from " + client.getIp());
+        // Turn away addresses outside the allowed ranges and throttled clients
+        // before doing any credential work
+        long start = System.nanoTime();
+        AuthEventLog events = eventLog;
+        if (ipFilter && !credentials().getIpFilter().isAllowed(client.getIp())) {
+            metrics.recordConnect(AuthOutcome.IP_DENIED, start);
+            events.rejected(null, client.getIp(), AuthOutcome.IP_DENIED);
+            recordDecision(client, null, AuthOutcome.IP_DENIED);
+            client.rejectConnection(REJECT_IP_DENIED);
+            return;
+        }
+        FailureThrottle ips = ipThrottle;
+        if (ips != null && ips.isBlocked(client.getIp(), System.currentTimeMillis())) {
+            metrics.recordConnect(AuthOutcome.THROTTLED, start);
+            events.rejected(null, client.getIp(), AuthOutcome.THROTTLED);
+            recordDecision(client, null, AuthOutcome.THROTTLED);
+            client.rejectConnection(REJECT_THROTTLED);
+            return;
+        }
+
+        if (events.isVerbose()) {
+            events.verbose("Processing RTMP connect request from " + client.getIp());
+        }
 
-        boolean authenticated = false;
+        AuthOutcome outcome = AuthOutcome.NO_CREDENTIALS;
         String username = null;
         String password = null;
+        boolean byTicket = false;
 
         try {
-            // ONLY check NetConnection.connect parameters - NO query string support
-            if (params != null && params.size() > 1) {
-
-                // Method 1: Check for AMF object with credentials
-                for (int i = 1; i < params.size(); i++) {
-                    AMFData param = params.get(i);
-                    if (param instanceof AMFDataObj) {
-                        AMFDataObj obj = (AMFDataObj) param;
-                        if (obj.containsKey("username") && obj.containsKey("password")) {
-                            username = obj.getString("username");
-                            password = obj.getString("password");
-                            logger.info(
-                                    "ModuleRTMPPlaybackAuthentication: Using NetConnection object authentication for user: "
-                                            + username);
-                            break;
-                        }
-                    }
-                }
-
-                // Method 2: Check for simple string parameters
-                if (username == null && params.size() >= 3) {
-                    AMFData userParam = params.get(1);
-                    AMFData passParam = params.get(2);
-                    if (userParam != null && passParam != null &&
-                            !userParam.toString().isEmpty() && !passParam.toString().isEmpty()) {
-                        username = userParam.toString();
-                        password = passParam.toString();
-                        logger.info(
-                                "ModuleRTMPPlaybackAuthentication: Using NetConnection string authentication for user: "
-                                        + username);
-                    }
+            // ONLY check NetConnection.connect parameters - NO query string support.
+            // Parameter types are inspected once and values read without copies.
+            int location = ConnectParams.locate(params);
+            if (location != ConnectParams.NONE) {
+                username = ConnectParams.username(params, location);
+                password = ConnectParams.password(params, location);
+                if (events.isVerbose()) {
+                    events.verbose("Using NetConnection " + (location == ConnectParams.POSITIONAL ? "string" : "object")
+                            + " authentication for user: " + username);
                 }
             }
 
             // Authenticate user
+            FailureThrottle users = userThrottle;
+            if (username != null && users != null && users.isBlocked(username, System.currentTimeMillis())) {
+                metrics.recordConnect(AuthOutcome.THROTTLED, start);
+                events.rejected(username, client.getIp(), AuthOutcome.THROTTLED);
+                recordDecision(client, username, AuthOutcome.THROTTLED);
+                client.rejectConnection(REJECT_THROTTLED);
+                return;
+            }
             if (username != null && password != null) {
-                authenticated = authenticateUser(username, password);
-                if (authenticated) {
-                    logger.info("ModuleRTMPPlaybackAuthentication: User '" + username
-                            + "' authenticated successfully via standard RTMP");
-                    client.getProperties().setProperty("authenticated", true);
-                    client.getProperties().setProperty("username", username);
-                    // For debugging
-                    client.getProperties().setProperty("rtmpAuthMethod", "standard");
-
-                    // Override SecurityToken authentication if enabled
-                    if (overrideSecurityToken) {
-                        client.getProperties().setProperty("securityTokenOverridden", true);
-                        logger.info(
-                                "ModuleRTMPPlaybackAuthentication: SecurityToken authentication overridden for user: "
-                                        + username);
+                // Shed load before queueing more credential work than can finish in time
+                AdmissionController gate = admission;
+                if (gate != null && !gate.acquire()) {
+                    metrics.recordConnect(AuthOutcome.OVERLOADED, start);
+                    events.rejected(username, client.getIp(), AuthOutcome.OVERLOADED);
+                    recordDecision(client, username, AuthOutcome.OVERLOADED);
+                    client.rejectConnection(String.format(REJECT_OVERLOADED,
+                            TimeUnit.MILLISECONDS.toSeconds(gate.retryAfterMillis())));
+                    return;
+                }
+                long admitted = System.nanoTime();
+                boolean handedOff = false;
+                try {
+                    byTicket = acceptsTicket(username, password);
+                    CompletableFuture<AuthOutcome> result = authenticateUser(username, password, byTicket);
+                    if (!result.isDone() && asyncAccept) {
+                        // Hash check continues on the verifier pool; accept or reject from there.
+                        // Tickets complete at once, so this is never a ticket connect
+                        String user = username;
+                        handedOff = true;
+                        verifying.put(client, Boolean.TRUE);
+                        result.whenComplete((verified, error) -> {
+                            if (gate != null) {
+                                gate.release(admitted);
+                            }
+                            finishConnect(client, user, verified != null ? verified : AuthOutcome.ERROR, false,
+                                    start);
+                        });
+                        return;
+                    }
+                    outcome = awaitVerification(result, username);
+                } finally {
+                    if (gate != null && !handedOff) {
+                        gate.release(admitted);
                     }
-                } else {
-                    logger.warn("ModuleRTMPPlaybackAuthentication: Authentication failed for user: " + username);
                 }
-            } else {
-                logger.warn("ModuleRTMPPlaybackAuthentication: No standard RTMP credentials provided from "
-                        + client.getIp());
             }
 
         } catch (Exception e) {
             logger.error("ModuleRTMPPlaybackAuthentication: Error during authentication", e);
+            outcome = AuthOutcome.ERROR;
         }
 
+        finishConnect(client, username, outcome, byTicket, start);
+    }
+
+    /**
+     * Count a connect decision towards the top clients and queue it for the
+     * audit file; never blocks
+     */
+    private void recordDecision(IClient client, String username, AuthOutcome outcome) {
+        TopClients top = metrics.topClients();
+        if (top != null) {
+            top.record(username, client.getIp(), outcome);
+        }
+        AuditLog audit = auditLog;
+        if (audit != null) {
+            audit.connect(client.getIp(), username, outcome);
+        }
+    }
+
+    /**
+     * Apply an authentication decision to a connecting client
+     */
+    private void finishConnect(IClient client, String username, AuthOutcome outcome, boolean byTicket,
+            long startNanos) {
+        SessionTracker<IClient> tracker = sessions;
+        boolean opened = outcome.isAccepted() && tracker != null && tracker.open(client, username.trim());
+        // Checked after the open: onDisconnect marks the client before it closes sessions
+        boolean hungUp = Boolean.FALSE.equals(verifying.remove(client));
+        if (hungUp && opened) {
+            // onDisconnect already ran and found nothing to close
+            tracker.close(client);
+        }
+        if (outcome.isAccepted() && tracker != null && !opened) {
+            // Right credentials, so the throttles are left alone
+            metrics.recordConnect(AuthOutcome.SESSION_LIMIT, startNanos);
+            eventLog.rejected(username, client.getIp(), AuthOutcome.SESSION_LIMIT);
+            recordDecision(client, username, AuthOutcome.SESSION_LIMIT);
+            client.rejectConnection(REJECT_SESSION_LIMIT);
+            return;
+        }
+        metrics.recordConnect(outcome, startNanos);
+        recordDecision(client, username, outcome);
+        boolean authenticated = outcome.isAccepted();
+        if (authenticated || outcome.isCredentialFailure()) {
+            // A busy or failing server says nothing about the client
+            recordOutcome(client.getIp(), username, outcome);
+        }
+        if (hungUp) {
+            // Nobody left to accept or reject
+            return;
+        }
         if (authenticated) {
-            // Connection is accepted by default if not rejected. No super.onConnect() call
-            // needed.
-            logger.info("ModuleRTMPPlaybackAuthentication: Connection accepted for user: " + username);
+            client.getProperties().setProperty("authenticated", true);
+            client.getProperties().setProperty("username", username);
+            // For debugging
+            client.getProperties().setProperty("rtmpAuthMethod", byTicket ? "ticket" : "standard");
+            if (!byTicket) {
+                issueTicket(client, username);
+            }
+
+            // Override SecurityToken authentication if enabled
+            if (overrideSecurityToken) {
+                client.getProperties().setProperty("securityTokenOverridden", true);
+            }
+
+            // Connection is accepted by default if not rejected, unless the
+            // application disables AutoAccept so decisions can be made later
+            if (asyncAccept) {
+                client.acceptConnection();
+            }
+            eventLog.accepted(username, client.getIp(), overrideSecurityToken);
         } else {
+            // Failures are counted and summarized by the periodic flush
+            eventLog.rejected(username, client.getIp(), outcome);
             // Reject connection
-            logger.warn("ModuleRTMPPlaybackAuthentication: Rejecting connection from " + client.getIp());
+            if (outcome == AuthOutcome.OVERLOADED) {
+                client.rejectConnection(String.format(REJECT_OVERLOADED,
+                        Math.max(1, TimeUnit.MILLISECONDS.toSeconds(verifyTimeout))));
+                return;
+            }
             client.rejectConnection(
                     "RTMP authentication required: use NetConnection.connect() with username and password parameters");
         }
     }
 
+    /**
+     * Play handler: check the stream name against the authenticated user's
+     * stream rules. Rules are compiled with each credential snapshot, so this
+     * is a trie walk over the stream name.
+     */
+    public void play(IClient client, RequestFunction function, AMFDataList params) {
+        if (requireAuth && streamAcl) {
+            StreamAcl acl = credentials().getStreamAcl();
+            if (acl.isEnforcing()) {
+                String streamName = streamName(getParamString(params, PARAM1));
+                String username = client.getProperties().getPropertyStr("username");
+                if (!acl.isAllowed(username != null ? username.trim() : null, streamName)) {
+                    metrics.recordPlayDenied();
+                    eventLog.playDenied(username, client.getIp(), streamName);
+                    AuditLog audit = auditLog;
+                    if (audit != null) {
+                        audit.playDenied(client.getIp(), username, streamName);
+                    }
+                    sendClientOnStatusError(client, "NetStream.Play.Failed",
+                            "Not authorized to play stream: " + streamName);
+                    return;
+                }
+            }
+        }
+        invokePrevious(client, function, params);
+    }
+
+    /**
+     * @return the stream name without its query string
+     */
+    static String streamName(String requested) {
+        if (requested == null) {
+            return null;
+        }
+        int query = requested.indexOf('?');
+        return query >= 0 ? requested.substring(0, query) : requested;
+    }
+
+    /**
+     * Hand a reconnect ticket to a client that authenticated with its
+     * password. Ticket connects keep their ticket, so a ticket never
+     * outlives the TTL after the last real password check.
+     */
+    private void issueTicket(IClient client, String username) {
+        ReconnectTickets t = tickets;
+        if (t == null) {
+            return;
+        }
+        String ticket = t.issue(username.trim());
+        client.getProperties().setProperty(TICKET_PROPERTY, ticket);
+        if (!ticketClientMethod.isEmpty()) {
+            client.call(ticketClientMethod, null, ticket);
+        }
+    }
+
     /**
      * RTMP client disconnection handler
      * NOTE: The @Override annotation and super.onDisconnect() call are removed for
      * API compatibility.
      */
     public void onDisconnect(IClient client) {
+        // A check still in flight must not open a session for this client later
+        verifying.replace(client, Boolean.TRUE, Boolean.FALSE);
         // Use client.getProperties().getPropertyStr() for Wowza 4.x API
+        SessionTracker<IClient> tracker = sessions;
+        if (tracker != null) {
+            tracker.close(client);
+        }
         String username = client.getProperties().getPropertyStr("username");
         if (username != null) {
-            logger.info("ModuleRTMPPlaybackAuthentication: User '" + username + "' disconnected");
+            eventLog.disconnected(username);
         }
     }
 
@@ -217,75 +565,413 @@ public class ModuleRTMPPlaybackAuthentication extends ModuleBase {
         // Load configuration values
         requireAuth = props.getPropertyBoolean(PROP_REQUIRE_AUTH, DEFAULT_REQUIRE_AUTH);
         authTimeout = props.getPropertyInt(PROP_AUTH_TIMEOUT, DEFAULT_AUTH_TIMEOUT);
+        maxSessionsPerUser = props.getPropertyInt(PROP_MAX_SESSIONS_PER_USER, DEFAULT_MAX_SESSIONS_PER_USER);
+        maxInFlight = props.getPropertyInt(PROP_MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT);
+        admissionQueue = props.getPropertyInt(PROP_ADMISSION_QUEUE, DEFAULT_ADMISSION_QUEUE);
+        admissionTimeout = props.getPropertyInt(PROP_ADMISSION_TIMEOUT, DEFAULT_ADMISSION_TIMEOUT);
         usePublishAuth = props.getPropertyBoolean(PROP_USE_PUBLISH_AUTH, DEFAULT_USE_PUBLISH_AUTH);
         overrideSecurityToken = props.getPropertyBoolean(PROP_OVERRIDE_SECURITY_TOKEN,
                 DEFAULT_OVERRIDE_SECURITY_TOKEN);
         customPasswordFile = props.getPropertyStr(PROP_CUSTOM_PASSWORD_FILE);
+        watchCredentials = props.getPropertyBoolean(PROP_WATCH_CREDENTIALS, DEFAULT_WATCH_CREDENTIALS);
+        reloadDebounce = props.getPropertyInt(PROP_RELOAD_DEBOUNCE, DEFAULT_RELOAD_DEBOUNCE);
+        reloadPollInterval = props.getPropertyInt(PROP_RELOAD_POLL_INTERVAL, DEFAULT_RELOAD_POLL_INTERVAL);
+        credentialIndex = props.getPropertyBoolean(PROP_CREDENTIAL_INDEX, DEFAULT_CREDENTIAL_INDEX);
+        asyncAccept = props.getPropertyBoolean(PROP_ASYNC_ACCEPT, DEFAULT_ASYNC_ACCEPT);
+        verifyThreads = props.getPropertyInt(PROP_VERIFY_THREADS, DEFAULT_VERIFY_THREADS);
+        verifyQueue = props.getPropertyInt(PROP_VERIFY_QUEUE, DEFAULT_VERIFY_QUEUE);
+        verifyTimeout = props.getPropertyInt(PROP_VERIFY_TIMEOUT, DEFAULT_VERIFY_TIMEOUT);
+        verifyCacheTtl = props.getPropertyInt(PROP_VERIFY_CACHE_TTL, DEFAULT_VERIFY_CACHE_TTL);
+        verifyCacheSize = props.getPropertyInt(PROP_VERIFY_CACHE_SIZE, DEFAULT_VERIFY_CACHE_SIZE);
+        throttleEnabled = props.getPropertyBoolean(PROP_THROTTLE_ENABLED, DEFAULT_THROTTLE_ENABLED);
+        throttleUsers = props.getPropertyBoolean(PROP_THROTTLE_USERS, DEFAULT_THROTTLE_USERS);
+        throttleMaxFailures = props.getPropertyInt(PROP_THROTTLE_MAX_FAILURES, DEFAULT_THROTTLE_MAX_FAILURES);
+        throttleRefillInterval = props.getPropertyInt(PROP_THROTTLE_REFILL_INTERVAL,
+                DEFAULT_THROTTLE_REFILL_INTERVAL);
+        throttleBaseBackoff = props.getPropertyInt(PROP_THROTTLE_BASE_BACKOFF, DEFAULT_THROTTLE_BASE_BACKOFF);
+        throttleMaxBackoff = props.getPropertyInt(PROP_THROTTLE_MAX_BACKOFF, DEFAULT_THROTTLE_MAX_BACKOFF);
+        throttleTableSize = props.getPropertyInt(PROP_THROTTLE_TABLE_SIZE, DEFAULT_THROTTLE_TABLE_SIZE);
+        usernameFilterBits = props.getPropertyInt(PROP_USERNAME_FILTER_BITS, DEFAULT_USERNAME_FILTER_BITS);
+        logVerbosity = AuthEventLog.Verbosity.parse(props.getPropertyStr(PROP_LOG_VERBOSITY), DEFAULT_LOG_VERBOSITY);
+        logFlushInterval = props.getPropertyInt(PROP_LOG_FLUSH_INTERVAL, DEFAULT_LOG_FLUSH_INTERVAL);
+        metricsJmx = props.getPropertyBoolean(PROP_METRICS_JMX, DEFAULT_METRICS_JMX);
+        String store = props.getPropertyStr(PROP_CREDENTIAL_STORE);
+        credentialStoreName = store != null && !store.trim().isEmpty() ? store.trim() : DEFAULT_CREDENTIAL_STORE;
+        revokeOnReload = props.getPropertyBoolean(PROP_REVOKE_ON_RELOAD, DEFAULT_REVOKE_ON_RELOAD);
+        streamAcl = props.getPropertyBoolean(PROP_STREAM_ACL, DEFAULT_STREAM_ACL);
+        ipFilter = props.getPropertyBoolean(PROP_IP_FILTER, DEFAULT_IP_FILTER);
+        ticketsEnabled = props.getPropertyBoolean(PROP_TICKETS, DEFAULT_TICKETS);
+        ticketTtl = props.getPropertyInt(PROP_TICKET_TTL, DEFAULT_TICKET_TTL);
+        ticketKeys = props.getPropertyStr(PROP_TICKET_KEYS);
+        String method = props.getPropertyStr(PROP_TICKET_CLIENT_METHOD);
+        ticketClientMethod = method != null ? method.trim() : DEFAULT_TICKET_CLIENT_METHOD;
+        clusterPeers = props.getPropertyStr(PROP_CLUSTER_PEERS);
+        String listen = props.getPropertyStr(PROP_CLUSTER_LISTEN);
+        clusterListen = listen != null && !listen.trim().isEmpty() ? listen.trim() : DEFAULT_CLUSTER_LISTEN;
+        clusterKey = props.getPropertyStr(PROP_CLUSTER_KEY);
+        clusterNodeId = props.getPropertyStr(PROP_CLUSTER_NODE_ID);
+        auditLogPath = props.getPropertyStr(PROP_AUDIT_LOG);
+        auditBufferSize = props.getPropertyInt(PROP_AUDIT_BUFFER_SIZE, DEFAULT_AUDIT_BUFFER_SIZE);
+        auditMaxFileSize = props.getPropertyInt(PROP_AUDIT_MAX_FILE_SIZE, DEFAULT_AUDIT_MAX_FILE_SIZE);
+        auditMaxFiles = props.getPropertyInt(PROP_AUDIT_MAX_FILES, DEFAULT_AUDIT_MAX_FILES);
+        topClientsSize = props.getPropertyInt(PROP_TOP_CLIENTS, DEFAULT_TOP_CLIENTS);
+        topClientsWindow = props.getPropertyInt(PROP_TOP_CLIENTS_WINDOW, DEFAULT_TOP_CLIENTS_WINDOW);
 
         logger.info("ModuleRTMPPlaybackAuthentication: Configuration loaded:");
         logger.info("  Require Auth: " + requireAuth);
-        logger.info("  Auth Timeout: " + authTimeout + "ms");
+        logger.info("  Session Lifetime: " + (authTimeout > 0 ? authTimeout + "ms" : "unlimited"));
+        logger.info("  Admission: " + (maxInFlight > 0 ? maxInFlight + " in flight, queue " + admissionQueue
+                + ", deadline " + admissionTimeout + "ms" : "unlimited"));
+        logger.info("  Max Sessions Per User: " + (maxSessionsPerUser > 0 ? maxSessionsPerUser : "unlimited"));
         logger.info("  Use Publish Auth: " + usePublishAuth);
         logger.info("  Override SecurityToken: " + overrideSecurityToken);
+        logger.info("  Watch Credentials: " + watchCredentials + " (debounce " + reloadDebounce + "ms, poll "
+                + reloadPollInterval + "ms)");
+        logger.info("  Credential Index File: " + credentialIndex);
+        logger.info("  Async Accept: " + asyncAccept);
+        logger.info("  Hash Verifier: " + verifyThreads + " threads, queue " + verifyQueue + ", timeout "
+                + verifyTimeout + "ms, cache " + verifyCacheSize + " entries for " + verifyCacheTtl + "ms");
+        logger.info("  Blocking Work: " + BlockingExecutors.mode() + " (Java " + Runtime.version().feature() + ")");
+        logger.info("  Failure Throttle: " + throttleEnabled + " (per user: " + throttleUsers + ", "
+                + throttleMaxFailures + " failures per " + throttleRefillInterval + "ms, backoff "
+                + throttleBaseBackoff + "-" + throttleMaxBackoff + "ms)");
+        logger.info("  Username Filter: " + usernameFilterBits + " bits per user");
+        logger.info("  Log Verbosity: " + logVerbosity + " (failure summaries every " + logFlushInterval + "ms)");
+        logger.info("  Metrics JMX: " + metricsJmx);
+        logger.info("  Credential Store: " + credentialStoreName);
+        logger.info("  Revoke On Reload: " + revokeOnReload);
+        logger.info("  Stream ACL: " + streamAcl + " (rules from the password file path + "
+                + CredentialSource.ACL_SUFFIX + ")");
+        logger.info("  IP Filter: " + ipFilter + " (ranges from the password file path + "
+                + CredentialSource.IPS_SUFFIX + ")");
+        logger.info("  Reconnect Tickets: " + ticketsEnabled + " (ttl " + ticketTtl + "ms, client method "
+                + (ticketClientMethod.isEmpty() ? "none" : ticketClientMethod) + ")");
+        logger.info("  Cluster: " + (isClustered() ? "peers " + clusterPeers.trim() + ", listening on "
+                + clusterListen : "off"));
+        logger.info("  Audit Log: " + (isAuditing() ? auditLogPath.trim() + " (buffer " + auditBufferSize
+                + " events, rotate at " + auditMaxFileSize + " bytes, keep " + auditMaxFiles + ")" : "off"));
+        logger.info("  Top Clients: " + (topClientsSize > 0 ? topClientsSize + " per list over "
+                + topClientsWindow + "ms" : "off"));
         if (customPasswordFile != null) {
             logger.info("  Custom Password File: " + customPasswordFile);
         }
     }
 
     /**
-     * Load credentials from publish.password file
+     * Start the configured credential store. The password file is only
+     * read when it is the store in use; with any other store the stream
+     * rules and address ranges next to it are still loaded and watched.
+     */
+    private void startCredentialStore() {
+        CredentialStore store = createCredentialStore();
+        openCredentialSource(resolvePasswordFilePath(), store != fileStore);
+        if (store == fileStore) {
+            startCredentialVerifier();
+        }
+        store.start(appInstance);
+        credentialStore = store;
+    }
+
+    private CredentialStore createCredentialStore() {
+        if (DEFAULT_CREDENTIAL_STORE.equalsIgnoreCase(credentialStoreName)) {
+            return fileStore;
+        }
+        if ("http".equalsIgnoreCase(credentialStoreName)) {
+            HttpCredentialStore http = HttpCredentialStore.fromProperties(appInstance.getProperties());
+            if (http == null) {
+                logger.error("ModuleRTMPPlaybackAuthentication: " + HttpCredentialStore.PROP_URL
+                        + " is not set, using the password file");
+                return createFallbackStore();
+            }
+            return http;
+        }
+        try {
+            return Class.forName(credentialStoreName, true, getClass().getClassLoader())
+                    .asSubclass(CredentialStore.class).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException | LinkageError e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Cannot load credential store " + credentialStoreName
+                    + ", using the password file", e);
+            return createFallbackStore();
+        }
+    }
+
+    private CredentialStore createFallbackStore() {
+        credentialStoreName = DEFAULT_CREDENTIAL_STORE;
+        return fileStore;
+    }
+
+    /**
+     * Attach to the password file, loading and watching it unless another
+     * application instance of this VHost already does. Reloads happen on the
+     * watcher thread, so onConnect only ever reads the current snapshot.
+     *
+     * @param rulesOnly another store checks passwords; only load the .acl
+     *                  and .ips files
+     */
+    private synchronized void openCredentialSource(String path, boolean rulesOnly) {
+        closeCredentialSource();
+        String vhost = appInstance != null && appInstance.getVHost() != null ? appInstance.getVHost().getName()
+                : null;
+        credentialSource = SharedCredentialSources.acquire(vhost, path, rulesOnly, watchCredentials,
+                credentialIndex, usernameFilterBits, reloadDebounce, reloadPollInterval, reloadListener);
+    }
+
+    private synchronized void closeCredentialSource() {
+        CredentialSource source = credentialSource;
+        credentialSource = null;
+        if (source != null) {
+            SharedCredentialSources.release(source, reloadListener);
+        }
+    }
+
+    private synchronized void startCredentialVerifier() {
+        stopCredentialVerifier();
+        credentialVerifier = new CredentialVerifier(verifyThreads, verifyQueue, verifyCacheTtl, verifyCacheSize);
+    }
+
+    private synchronized void stopCredentialVerifier() {
+        CredentialVerifier verifier = credentialVerifier;
+        credentialVerifier = null;
+        if (verifier != null) {
+            verifier.shutdown();
+        }
+    }
+
+    private synchronized void registerMetrics() {
+        metrics.unregister();
+        AuthMetrics m = new AuthMetrics(metricsName(appInstance));
+        m.setLoadedUsers(() -> credentials().size());
+        TopClients top = topClientsSize > 0 ? new TopClients(topClientsSize, topClientsWindow,
+                System::currentTimeMillis) : null;
+        m.setTopClients(top);
+        m.register(metricsJmx);
+        metrics = m;
+    }
+
+    /**
+     * @return vhost/application/instance, used to label this instance's metrics
+     */
+    private static String metricsName(IApplicationInstance appInstance) {
+        String vhost = appInstance.getVHost() != null ? appInstance.getVHost().getName() : null;
+        String app = appInstance.getApplication() != null ? appInstance.getApplication().getName() : null;
+        return (vhost != null ? vhost : "_defaultVHost_") + "/" + app + "/"
+                + (appInstance.getName() != null ? appInstance.getName() : "_definst_");
+    }
+
+    private synchronized void startEventLog() {
+        eventLog.stop();
+        AuthEventLog events = new AuthEventLog(logger, logVerbosity, logFlushInterval);
+        events.start();
+        eventLog = events;
+    }
+
+    private boolean isAuditing() {
+        return auditLogPath != null && !auditLogPath.trim().isEmpty();
+    }
+
+    /**
+     * Open the audit file when rtmpPlaybackAuditLog is set. Relative paths
+     * are resolved against [vhost-home]/logs/; instances that resolve to
+     * the same file share one writer.
+     */
+    private synchronized void startAuditLog() {
+        stopAuditLog();
+        if (!isAuditing()) {
+            return;
+        }
+        File file = new File(auditLogPath.trim());
+        if (!file.isAbsolute()) {
+            file = new File(appInstance.getVHost().getHomePath() + "/logs/" + auditLogPath.trim());
+        }
+        try {
+            auditLog = SharedAuditLogs.acquire(file.toPath(), auditBufferSize, auditMaxFileSize, auditMaxFiles);
+        } catch (IOException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Cannot open audit log " + file
+                    + ", auth decisions are not audited", e);
+        }
+    }
+
+    private synchronized void stopAuditLog() {
+        AuditLog audit = auditLog;
+        auditLog = null;
+        if (audit != null) {
+            SharedAuditLogs.release(audit);
+        }
+    }
+
+    private void createThrottles() {
+        ipThrottle = throttleEnabled ? newThrottle() : null;
+        userThrottle = throttleEnabled && throttleUsers ? newThrottle() : null;
+    }
+
+    private void createAdmissionController() {
+        admission = maxInFlight > 0 ? new AdmissionController(maxInFlight, admissionQueue, admissionTimeout) : null;
+    }
+
+    /**
+     * Track authenticated sessions per user, end them after
+     * rtmpPlaybackAuthTimeout, and find them again when a reload revokes
+     * their user.
      */
-    private void loadCredentials() {
-        String passwordFilePath = resolvePasswordFilePath();
+    private synchronized void startSessionTracker() {
+        stopSessionTracker();
+        TimingWheel wheel = null;
+        if (authTimeout > 0) {
+            wheel = new TimingWheel(SESSION_TICK_MILLIS, SESSION_WHEEL_SLOTS, "RTMPPlaybackAuth-sessions");
+            wheel.start();
+        }
+        sessionWheel = wheel;
+        sessions = new SessionTracker<>(maxSessionsPerUser, authTimeout, wheel, this::expireSession);
+    }
 
-        File passwordFile = new File(passwordFilePath);
-        if (!passwordFile.exists()) {
-            logger.warn("ModuleRTMPPlaybackAuthentication: Password file not found: " + passwordFilePath);
+    private synchronized void stopSessionTracker() {
+        TimingWheel wheel = sessionWheel;
+        sessionWheel = null;
+        sessions = null;
+        if (wheel != null) {
+            wheel.stop();
+        }
+    }
+
+    private boolean isClustered() {
+        return clusterPeers != null && !clusterPeers.trim().isEmpty();
+    }
+
+    /**
+     * Join the edge cluster when rtmpPlaybackClusterPeers is set. Without a
+     * valid shared key the module runs standalone rather than accept
+     * unauthenticated changes.
+     */
+    private synchronized void startCluster() {
+        stopCluster();
+        if (!isClustered()) {
             return;
         }
+        byte[] key;
+        try {
+            key = clusterKey != null ? Base64.getDecoder().decode(clusterKey.trim()) : new byte[0];
+        } catch (IllegalArgumentException e) {
+            key = new byte[0];
+        }
+        if (key.length < 16) {
+            logger.error("ModuleRTMPPlaybackAuthentication: " + PROP_CLUSTER_KEY
+                    + " must be a base64 key of at least 16 bytes, cluster replication disabled");
+            return;
+        }
+        try {
+            InetSocketAddress listen = ClusterReplicator.parseAddress(clusterListen);
+            String nodeId = clusterNodeId != null && !clusterNodeId.trim().isEmpty() ? clusterNodeId.trim()
+                    : InetAddress.getLocalHost().getHostName() + ":" + listen.getPort();
+            // Instances sharing the password file share one replicator and its port
+            ClusterReplicator candidate = new ClusterReplicator(nodeId, listen, key, CLUSTER_TIMEOUT_MILLIS);
+            CredentialSource source = credentialSource;
+            cluster = SharedClusterReplicators.acquire(source != null && !source.isRulesOnly() ? source : null,
+                    clusterListen, candidate, ClusterReplicator.parsePeers(clusterPeers),
+                    listen + "/" + nodeId + "/" + clusterPeers.trim(), clusterListener);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Cannot join cluster on " + clusterListen
+                    + ", cluster replication disabled", e);
+        }
+    }
 
-        // Check if file was modified
-        long currentModified = passwordFile.lastModified();
-        if (currentModified <= lastFileModified && !credentials.isEmpty()) {
-            return; // No changes
+    private synchronized void stopCluster() {
+        ClusterReplicator replicator = cluster;
+        cluster = null;
+        if (replicator != null) {
+            SharedClusterReplicators.release(replicator, clusterListener);
         }
-        lastFileModified = currentModified;
+    }
 
-        credentials.clear();
+    /**
+     * Reload listener, on the reloading thread: count the reload and end the
+     * sessions and tickets of users that were removed or got a new password.
+     * The shared replicator tells the cluster what changed.
+     */
+    private void credentialsReloaded(CredentialSnapshot previous, CredentialSnapshot current, CredentialDiff diff,
+            long durationNanos) {
+        metrics.recordReload(current != null, durationNanos);
+        if (diff.isEmpty() || !revokeOnReload) {
+            return;
+        }
+        int disconnected = revoke(diff.removed()) + revoke(diff.changed());
+        logger.info("ModuleRTMPPlaybackAuthentication: Credentials changed (" + diff + "), disconnected "
+                + disconnected + " sessions");
+    }
 
-        try (BufferedReader reader = new BufferedReader(new FileReader(passwordFile))) {
-            String line;
-            int lineNumber = 0;
-            while ((line = reader.readLine()) != null) {
-                lineNumber++;
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) {
-                    continue;
+    private int revoke(List<String> usernames) {
+        SessionTracker<IClient> tracker = sessions;
+        ReconnectTickets t = tickets;
+        int disconnected = 0;
+        for (String username : usernames) {
+            if (t != null) {
+                t.revoke(username);
+            }
+            if (tracker != null) {
+                for (IClient client : tracker.revoke(username)) {
+                    client.shutdownClient();
+                    disconnected++;
                 }
+            }
+        }
+        return disconnected;
+    }
 
-                // Parse username:password or username password format
-                String[] parts;
-                if (line.contains(":")) {
-                    parts = line.split(":", 2);
-                } else {
-                    parts = line.split("\\s+", 2);
-                }
+    private void expireSession(IClient client) {
+        eventLog.expired(client.getProperties().getPropertyStr("username"));
+        client.shutdownClient();
+    }
 
-                if (parts.length >= 2) {
-                    String username = parts[0].trim();
-                    String password = parts[1].trim();
-                    credentials.put(username, password);
-                } else {
-                    logger.warn("ModuleRTMPPlaybackAuthentication: Invalid line format at line " + lineNumber + " in "
-                            + passwordFilePath);
-                }
+    private void createTickets() {
+        if (!ticketsEnabled) {
+            tickets = null;
+            return;
+        }
+        try {
+            tickets = new ReconnectTickets(ReconnectTickets.parseKeys(ticketKeys), ticketTtl,
+                    metricsName(appInstance), System::currentTimeMillis);
+        } catch (IllegalArgumentException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Invalid " + PROP_TICKET_KEYS
+                    + ", reconnect tickets disabled: " + e.getMessage());
+            tickets = null;
+        }
+    }
+
+    private FailureThrottle newThrottle() {
+        return new FailureThrottle(throttleTableSize, throttleMaxFailures, throttleRefillInterval, throttleBaseBackoff,
+                throttleMaxBackoff);
+    }
+
+    /**
+     * Update the failure throttles with an authentication outcome. A success
+     * only clears the user's bucket: the address bucket refills at its own
+     * rate, or one valid account would let a client reset it between guesses
+     * at other users' passwords. Unknown users only cost the address: their
+     * names are the client's choice, and each one would otherwise take a
+     * slot in the user table.
+     */
+    private void recordOutcome(String ip, String username, AuthOutcome outcome) {
+        FailureThrottle ips = ipThrottle;
+        FailureThrottle users = userThrottle;
+        if (outcome.isAccepted()) {
+            if (users != null) {
+                users.recordSuccess(username);
             }
-        } catch (IOException e) {
-            logger.error("ModuleRTMPPlaybackAuthentication: Error reading password file: " + passwordFilePath, e);
+            return;
         }
+        long now = System.currentTimeMillis();
+        if (ips != null && ips.recordFailure(ip, now)) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Throttling " + ip + " after repeated failures");
+        }
+        if (users != null && username != null && outcome != AuthOutcome.UNKNOWN_USER
+                && users.recordFailure(username, now)) {
+            logger.warn("ModuleRTMPPlaybackAuthentication: Throttling user '" + AuthEventLog.printable(username)
+                    + "' after repeated failures");
+        }
+    }
 
-        logger.info("ModuleRTMPPlaybackAuthentication: Loaded " + credentials.size() + " user credentials from "
-                + passwordFilePath);
+    private CredentialSnapshot credentials() {
+        CredentialSource source = credentialSource;
+        return source != null ? source.snapshot() : CredentialSnapshot.EMPTY;
     }
 
     /**
@@ -319,51 +1005,227 @@ public class ModuleRTMPPlaybackAuthentication extends ModuleBase {
     }
 
     /**
-     * Authenticate user credentials
+     * Authenticate user credentials against the configured store
+     *
+     * @param byTicket the password is a valid reconnect ticket for the user
      */
-    private boolean authenticateUser(String username, String password) {
-        if (username == null || password == null || username.trim().isEmpty() || password.trim().isEmpty()) {
+    private CompletableFuture<AuthOutcome> authenticateUser(String username, String password, boolean byTicket) {
+        if (username == null || password == null) {
+            return AuthOutcome.NO_CREDENTIALS.future();
+        }
+        // trim() returns the same instance when there is nothing to strip
+        String user = username.trim();
+        String pass = password.trim();
+        if (user.isEmpty() || pass.isEmpty()) {
+            return AuthOutcome.NO_CREDENTIALS.future();
+        }
+        // A valid ticket stands in for the password without asking the store
+        if (byTicket) {
+            return AuthOutcome.ACCEPTED.future();
+        }
+        CompletableFuture<AuthOutcome> result = credentialStore.authenticate(user, pass);
+        if (tickets == null || !ReconnectTickets.isTicket(pass)) {
+            return result;
+        }
+        // A password may start like a ticket, so an invalid ticket is still
+        // checked as a password; a failure is most likely a stale ticket
+        return result.thenApply(outcome -> outcome.isCredentialFailure() ? AuthOutcome.BAD_TICKET : outcome);
+    }
+
+    /**
+     * @return true when the password is a valid reconnect ticket for the user
+     */
+    private boolean acceptsTicket(String username, String password) {
+        ReconnectTickets t = tickets;
+        if (t == null || username == null || password == null) {
             return false;
         }
+        String pass = password.trim();
+        return ReconnectTickets.isTicket(pass) && t.verify(username.trim(), pass).isAccepted();
+    }
+
+    private CompletableFuture<AuthOutcome> authenticateFromFile(String user, String pass) {
+        // Changes replicated from other nodes take precedence over the local file
+        ClusterReplicator replicator = cluster;
+        ClusterReplicator.Entry replicated = replicator != null ? replicator.lookup(user) : null;
+        if (replicated != null) {
+            return authenticateReplicated(replicated, user, pass);
+        }
 
-        // Reload credentials if file changed
-        loadCredentials();
+        // The username filter answers most unknown users without touching the index
+        CredentialSnapshot snapshot = credentials();
+        long lookupStart = System.nanoTime();
+        int entry = snapshot.find(user);
+        metrics.recordLookup(lookupStart);
+        if (entry < 0) {
+            return AuthOutcome.UNKNOWN_USER.future();
+        }
 
-        // Direct credential comparison
-        String storedPassword = credentials.get(username.trim());
-        boolean authenticated = password.trim().equals(storedPassword);
+        if (snapshot.isHashed(entry)) {
+            CredentialVerifier verifier = credentialVerifier;
+            if (verifier == null) {
+                return AuthOutcome.ERROR.future();
+            }
+            return verifier.verify(snapshot, entry, user, pass);
+        }
 
-        if (!authenticated && storedPassword != null) {
-            logger.warn("ModuleRTMPPlaybackAuthentication: Password mismatch for user '" + username + "'");
-        } else if (storedPassword == null) {
-            logger.warn("ModuleRTMPPlaybackAuthentication: User '" + username + "' not found in credentials");
+        // Compare against the index without materializing the stored password
+        if (!snapshot.passwordEquals(entry, pass)) {
+            return AuthOutcome.BAD_PASSWORD.future();
         }
+        return AuthOutcome.ACCEPTED.future();
+    }
 
-        return authenticated;
+    private CompletableFuture<AuthOutcome> authenticateReplicated(ClusterReplicator.Entry entry, String user,
+            String pass) {
+        if (entry.isRemoved()) {
+            return AuthOutcome.UNKNOWN_USER.future();
+        }
+        if (PasswordHash.isHashed(entry.password)) {
+            CredentialVerifier verifier = credentialVerifier;
+            if (verifier == null) {
+                return AuthOutcome.ERROR.future();
+            }
+            // Negative generations keep replicated results apart from file ones in the cache
+            return verifier.verify(entry.password, -entry.version, user, pass);
+        }
+        boolean equal = MessageDigest.isEqual(entry.password.getBytes(StandardCharsets.UTF_8),
+                pass.getBytes(StandardCharsets.UTF_8));
+        return (equal ? AuthOutcome.ACCEPTED : AuthOutcome.BAD_PASSWORD).future();
+    }
+
+    /**
+     * Wait for a hash verification, bounded by rtmpPlaybackVerifyTimeout.
+     * This holds the onConnect thread while the hash is checked, so the
+     * default is kept short; rtmpPlaybackAsyncAccept avoids the wait but
+     * needs the application's AutoAccept turned off, which the module cannot
+     * see, so it cannot be the default.
+     */
+    private AuthOutcome awaitVerification(CompletableFuture<AuthOutcome> result, String username) {
+        if (result.isDone()) {
+            return result.getNow(AuthOutcome.ERROR);
+        }
+        try {
+            return result.get(verifyTimeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Counted as an error in the failure summary
+            AuthEventLog events = eventLog;
+            if (events.isVerbose()) {
+                events.verbose(
+                        "Password verification timed out for user '" + AuthEventLog.printable(username) + "'");
+            }
+        } catch (ExecutionException e) {
+            logger.error("ModuleRTMPPlaybackAuthentication: Password verification failed for user '"
+                    + AuthEventLog.printable(username) + "'", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return AuthOutcome.ERROR;
     }
 
     // Public methods for administration
     public Map<String, String> getLoadedCredentials() {
-        loadCredentials();
-        return new java.util.HashMap<>(credentials);
+        return credentials().toMap();
     }
 
     public String getPasswordFilePath() {
-        return resolvePasswordFilePath();
+        CredentialSource source = credentialSource;
+        return source != null ? source.getPath() : resolvePasswordFilePath();
     }
 
+    /**
+     * Force an immediate reload. The password file location is resolved
+     * again, so a newly created application-specific file is picked up.
+     */
     public void reloadCredentials() {
-        lastFileModified = 0;
-        loadCredentials();
+        String path = resolvePasswordFilePath();
+        CredentialSource source = credentialSource;
+        if (source != null && SharedCredentialSources.normalize(path).equals(source.getPath())) {
+            source.reload();
+        } else {
+            openCredentialSource(path, credentialStore != fileStore);
+        }
+    }
+
+    /**
+     * Disconnect a user's sessions and reject all reconnect tickets issued
+     * to them so far. The user has to present their password again. In a
+     * cluster the revocation is sent to every other node as well.
+     */
+    public void revokeUser(String username) {
+        if (username != null) {
+            int disconnected = revoke(Collections.singletonList(username.trim()));
+            ClusterReplicator replicator = cluster;
+            if (replicator != null) {
+                replicator.publishRevocation(username.trim());
+            }
+            logger.info("ModuleRTMPPlaybackAuthentication: Revoked user '" + AuthEventLog.printable(username) + "', disconnected "
+                    + disconnected + " sessions");
+        }
     }
 
     public boolean userExists(String username) {
-        loadCredentials();
-        return credentials.containsKey(username);
+        return credentials().contains(username);
     }
 
     public String getAuthStats() {
-        return String.format("Loaded users: %d, Password file: %s, Override SecurityToken: %s",
-                credentials.size(), getPasswordFilePath(), overrideSecurityToken);
+        CredentialSnapshot snapshot = credentials();
+        long now = System.currentTimeMillis();
+        FailureThrottle ips = ipThrottle;
+        FailureThrottle users = userThrottle;
+        AuthMetrics m = metrics;
+        ReconnectTickets t = tickets;
+        SessionTracker<IClient> tracker = sessions;
+        AdmissionController gate = admission;
+        ClusterReplicator replicator = cluster;
+        AuditLog audit = auditLog;
+        IpFilter addresses = snapshot.getIpFilter();
+        TopClients top = m.topClients();
+        return String.format("Loaded users: %d, Generation: %d, Password file: %s, Credential store: %s, "
+                + "Address ranges: %s, Blocking work: %s, Cluster: %s, Audit: %s, Top rejected: %s, "
+                + "Reconnect tickets: %s, Override SecurityToken: %s, Sessions: %d, Throttled IPs: %d, "
+                + "Throttled users: %d, Accepted: %d, Rejected: %d, Shed: %d, In flight: %d, Queued: %d, "
+                + "Connect p99: %dus", snapshot.size(), snapshot.getGeneration(), getPasswordFilePath(),
+                credentialStore.describe(),
+                !ipFilter || !addresses.isEnforcing() ? "off"
+                        : addresses == IpFilter.DENY_ALL ? "denying all, ranges file unreadable"
+                                : addresses.allowCount() + " allowed, " + addresses.denyCount() + " denied",
+                BlockingExecutors.mode(),
+                replicator != null ? replicator.peerCount() + " peers, " + replicator.entryCount() + " replicated"
+                        : "off",
+                audit != null ? audit.writtenCount() + " written, " + audit.droppedCount() + " dropped" : "off",
+                top != null ? top.describe(3) : "off",
+                t != null ? "key " + t.signingKeyId() : "off", overrideSecurityToken,
+                tracker != null ? tracker.activeSessions() : 0,
+                ips != null ? ips.blockedCount(now) : 0, users != null ? users.blockedCount(now) : 0,
+                m.getAcceptedCount(), m.getRejectedCount() - m.getOverloadedCount(), m.getOverloadedCount(),
+                gate != null ? gate.inFlight() : 0, gate != null ? gate.queued() : 0,
+                m.getConnectLatencyP99Micros());
+    }
+
+    /**
+     * The publish.password file as a credential store. Plaintext entries are
+     * decided immediately; hashed entries are checked on the verifier pool.
+     * Its lifecycle follows the module's, so start and stop do nothing.
+     */
+    private final class FileCredentialStore implements CredentialStore {
+
+        @Override
+        public void start(IApplicationInstance appInstance) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String describe() {
+            return "file";
+        }
+
+        @Override
+        public CompletableFuture<AuthOutcome> authenticate(String user, String pass) {
+            return authenticateFromFile(user, pass);
+        }
     }
 }
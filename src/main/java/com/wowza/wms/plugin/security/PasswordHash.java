@@ -0,0 +1,153 @@
+package com.wowza.wms.plugin.security;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashed password entries for publish.password.
+ *
+ * Supported entries use the modular crypt layout
+ * {@code $pbkdf2-sha256$<iterations>$<salt>$<hash>} (also {@code -sha1} and
+ * {@code -sha512}), with salt and hash in unpadded base64 where '.' replaces
+ * '+', so files generated by passlib work as-is. Plaintext entries are still
+ * accepted, which allows migrating one user at a time.
+ *
+ * bcrypt, scrypt and argon2 entries are recognized but need libraries this
+ * module does not ship, so they never match. They are deliberately not
+ * treated as plaintext; otherwise the hash string itself would be a valid
+ * password.
+ *
+ * Generate an entry with:
+ * <pre>
+ *   java -cp rtmp-playback-auth.jar com.wowza.wms.plugin.security.PasswordHash username password
+ * </pre>
+ */
+final class PasswordHash {
+
+    static final int DEFAULT_ITERATIONS = 210000;
+
+    private static final int MAX_ITERATIONS = 10000000;
+    private static final int SALT_LENGTH = 16;
+
+    private static final String[] SUPPORTED_PREFIXES = { "$pbkdf2-sha256$", "$pbkdf2-sha512$", "$pbkdf2-sha1$" };
+    private static final String[] SUPPORTED_ALGORITHMS = { "PBKDF2WithHmacSHA256", "PBKDF2WithHmacSHA512",
+            "PBKDF2WithHmacSHA1" };
+    private static final String[] UNSUPPORTED_PREFIXES = { "$2a$", "$2b$", "$2y$", "$scrypt$", "$7$", "$argon2" };
+
+    private PasswordHash() {
+    }
+
+    /**
+     * @return true if the stored value is a hash entry rather than plaintext
+     */
+    static boolean isHashed(CharSequence stored) {
+        return schemeIndex(stored, SUPPORTED_PREFIXES) >= 0 || schemeIndex(stored, UNSUPPORTED_PREFIXES) >= 0;
+    }
+
+    static boolean isSupported(CharSequence stored) {
+        return schemeIndex(stored, SUPPORTED_PREFIXES) >= 0;
+    }
+
+    static String[] prefixes() {
+        String[] all = new String[SUPPORTED_PREFIXES.length + UNSUPPORTED_PREFIXES.length];
+        System.arraycopy(SUPPORTED_PREFIXES, 0, all, 0, SUPPORTED_PREFIXES.length);
+        System.arraycopy(UNSUPPORTED_PREFIXES, 0, all, SUPPORTED_PREFIXES.length, UNSUPPORTED_PREFIXES.length);
+        return all;
+    }
+
+    /**
+     * Check a password against a hash entry. Malformed or unsupported
+     * entries never match. The final comparison is constant time.
+     */
+    static boolean verify(String stored, String password) {
+        int scheme = schemeIndex(stored, SUPPORTED_PREFIXES);
+        if (scheme < 0 || password == null) {
+            return false;
+        }
+        String[] fields = stored.substring(SUPPORTED_PREFIXES[scheme].length()).split("\\$");
+        if (fields.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(fields[0]);
+            if (iterations < 1 || iterations > MAX_ITERATIONS) {
+                return false;
+            }
+            byte[] salt = decode(fields[1]);
+            byte[] expected = decode(fields[2]);
+            if (expected.length == 0) {
+                return false;
+            }
+            byte[] actual = pbkdf2(SUPPORTED_ALGORITHMS[scheme], password, salt, iterations, expected.length);
+            return MessageDigest.isEqual(expected, actual);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create a {@code $pbkdf2-sha256$} entry with a random salt.
+     */
+    static String hash(String password, int iterations) throws GeneralSecurityException {
+        byte[] salt = new byte[SALT_LENGTH];
+        new SecureRandom().nextBytes(salt);
+        byte[] hash = pbkdf2(SUPPORTED_ALGORITHMS[0], password, salt, iterations, 32);
+        return SUPPORTED_PREFIXES[0] + iterations + "$" + encode(salt) + "$" + encode(hash);
+    }
+
+    private static byte[] pbkdf2(String algorithm, String password, byte[] salt, int iterations, int length)
+            throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, length * 8);
+        try {
+            return SecretKeyFactory.getInstance(algorithm).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static int schemeIndex(CharSequence stored, String[] prefixes) {
+        if (stored == null || stored.length() == 0 || stored.charAt(0) != '$') {
+            return -1;
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            if (startsWith(stored, prefixes[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(CharSequence s, String prefix) {
+        if (s.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (s.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] decode(String ab64) {
+        return Base64.getDecoder().decode(ab64.replace('.', '+'));
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getEncoder().withoutPadding().encodeToString(bytes).replace('+', '.');
+    }
+
+    public static void main(String[] args) throws GeneralSecurityException {
+        if (args.length < 2) {
+            System.err.println("Usage: PasswordHash <username> <password> [iterations]");
+            System.exit(1);
+        }
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_ITERATIONS;
+        System.out.println(args[0] + ":" + hash(args[1], iterations));
+    }
+}
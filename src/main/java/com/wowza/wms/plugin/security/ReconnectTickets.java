@@ -0,0 +1,211 @@
+package com.wowza.wms.plugin.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Stateless, HMAC-signed reconnect tickets.
+ *
+ * A ticket {@code rt1.<key id>.<issued>.<expires>.<mac>} (times in epoch
+ * seconds) is handed to a client after a successful connect and can be
+ * sent in place of the password on the next connects until it expires.
+ * The MAC covers the username and the audience, the application instance
+ * that issued it, so a ticket is only good for the user it was issued to
+ * and only where that user's password was checked, even when several
+ * applications share the keys. Checking it needs no credential store
+ * access.
+ *
+ * The first key signs; the others are only accepted, so keys can be
+ * rotated by prepending a new one and dropping the old one after a TTL.
+ * {@link #revoke} rejects every ticket of a user issued up to that moment.
+ */
+final class ReconnectTickets {
+
+    static final String PREFIX = "rt1.";
+
+    private static final int MAC_LENGTH = 16;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final List<SigningKey> keys;
+    private final long ttlSeconds;
+    private final byte[] audience;
+    private final LongSupplier clock;
+    private final Map<String, Long> revokedAt = new ConcurrentHashMap<>();
+
+    static final class SigningKey {
+        final String id;
+        final SecretKeySpec secret;
+
+        SigningKey(String id, byte[] secret) {
+            this.id = id;
+            this.secret = new SecretKeySpec(secret, "HmacSHA256");
+        }
+    }
+
+    /**
+     * @param audience identifies the application instance; tickets issued
+     *                 for another audience are rejected
+     */
+    ReconnectTickets(List<SigningKey> keys, long ttlMillis, String audience, LongSupplier clock) {
+        if (keys.isEmpty()) {
+            throw new IllegalArgumentException("At least one ticket key is required");
+        }
+        this.keys = Collections.unmodifiableList(new ArrayList<>(keys));
+        this.ttlSeconds = Math.max(1, ttlMillis / 1000);
+        this.audience = audience.getBytes(StandardCharsets.UTF_8);
+        this.clock = clock;
+    }
+
+    /**
+     * Parse {@code id:base64secret[,id:base64secret...]}, signing key first.
+     * An empty spec yields one random key, so tickets only survive as long
+     * as this application instance.
+     */
+    static List<SigningKey> parseKeys(String spec) {
+        List<SigningKey> keys = new ArrayList<>();
+        if (spec == null || spec.trim().isEmpty()) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            keys.add(new SigningKey("0", secret));
+            return keys;
+        }
+        for (String part : spec.split(",")) {
+            String entry = part.trim();
+            int colon = entry.indexOf(':');
+            if (colon <= 0 || colon == entry.length() - 1) {
+                throw new IllegalArgumentException("Ticket keys must look like id:base64secret");
+            }
+            String id = entry.substring(0, colon);
+            if (id.indexOf('.') >= 0) {
+                throw new IllegalArgumentException("Ticket key id must not contain '.': " + id);
+            }
+            byte[] secret = Base64.getDecoder().decode(entry.substring(colon + 1));
+            if (secret.length < 16) {
+                throw new IllegalArgumentException("Ticket key " + id + " is shorter than 128 bits");
+            }
+            keys.add(new SigningKey(id, secret));
+        }
+        return keys;
+    }
+
+    static boolean isTicket(String password) {
+        return password != null && password.startsWith(PREFIX);
+    }
+
+    String issue(String username) {
+        SigningKey key = keys.get(0);
+        long issued = clock.getAsLong() / 1000;
+        long expires = issued + ttlSeconds;
+        String payload = PREFIX + key.id + "." + issued + "." + expires;
+        return payload + "." + ENCODER.encodeToString(mac(key, payload, username));
+    }
+
+    /**
+     * @return ACCEPTED for a valid, unexpired, unrevoked ticket of this
+     *         user issued for this audience, BAD_TICKET otherwise
+     */
+    AuthOutcome verify(String username, String ticket) {
+        if (!isTicket(ticket)) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        // rt1.<kid>.<issued>.<expires>.<mac>
+        int kidEnd = ticket.indexOf('.', PREFIX.length());
+        int issuedEnd = kidEnd < 0 ? -1 : ticket.indexOf('.', kidEnd + 1);
+        int expiresEnd = issuedEnd < 0 ? -1 : ticket.indexOf('.', issuedEnd + 1);
+        if (expiresEnd < 0) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        SigningKey key = key(ticket.substring(PREFIX.length(), kidEnd));
+        if (key == null) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        long issued;
+        long expires;
+        byte[] presented;
+        try {
+            issued = Long.parseLong(ticket.substring(kidEnd + 1, issuedEnd));
+            expires = Long.parseLong(ticket.substring(issuedEnd + 1, expiresEnd));
+            presented = DECODER.decode(ticket.substring(expiresEnd + 1));
+        } catch (IllegalArgumentException e) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        byte[] expected = mac(key, ticket.substring(0, expiresEnd), username);
+        if (!MessageDigest.isEqual(expected, presented)) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        long now = clock.getAsLong() / 1000;
+        if (now >= expires || expires - issued > ttlSeconds) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        Long revoked = revokedAt.get(username);
+        if (revoked != null && issued <= revoked) {
+            return AuthOutcome.BAD_TICKET;
+        }
+        return AuthOutcome.ACCEPTED;
+    }
+
+    /**
+     * Reject every ticket of a user issued until now. Revocations are
+     * forgotten once all tickets they cover have expired.
+     */
+    void revoke(String username) {
+        long now = clock.getAsLong() / 1000;
+        revokedAt.put(username, now);
+        for (Iterator<Long> it = revokedAt.values().iterator(); it.hasNext();) {
+            if (now - it.next() > ttlSeconds) {
+                it.remove();
+            }
+        }
+    }
+
+    int revokedCount() {
+        return revokedAt.size();
+    }
+
+    String signingKeyId() {
+        return keys.get(0).id;
+    }
+
+    private SigningKey key(String id) {
+        for (SigningKey key : keys) {
+            if (key.id.equals(id)) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    private byte[] mac(SigningKey key, String payload, String username) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key.secret);
+            mac.update(payload.getBytes(StandardCharsets.US_ASCII));
+            mac.update((byte) 0);
+            // Length-prefixed so no audience and username pair can pass for another
+            int length = audience.length;
+            mac.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+                    (byte) length });
+            mac.update(audience);
+            byte[] full = mac.doFinal(username.getBytes(StandardCharsets.UTF_8));
+            byte[] truncated = new byte[MAC_LENGTH];
+            System.arraycopy(full, 0, truncated, 0, MAC_LENGTH);
+            return truncated;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+}
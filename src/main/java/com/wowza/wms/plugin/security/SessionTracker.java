@@ -0,0 +1,179 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Authenticated sessions of one application instance: which clients each
+ * user holds, and when each session must end.
+ *
+ * Per-user counts are plain atomic counters updated with compare-and-set,
+ * so opening and closing sessions of different users never contend and a
+ * user's limit cannot be overshot by racing connects. A counter that drops
+ * to zero is retired (set to -1) before it is removed, so a connect racing
+ * with the last disconnect retries on a fresh entry instead of counting
+ * into a dead one. Next to the counter each user keeps the set of its
+ * clients, so revoking a user touches only that user's sessions. Lifetimes
+ * are single entries in a shared {@link TimingWheel}, not one timer per
+ * client.
+ *
+ * @param <C> the client type, an {@code IClient} in the module
+ */
+final class SessionTracker<C> {
+
+    private static final int RETIRED = -1;
+
+    private final int maxPerUser;
+    private final long lifetimeMillis;
+    private final TimingWheel wheel;
+    private final Consumer<C> onExpire;
+    private final Map<String, UserSessions<C>> perUser = new ConcurrentHashMap<>();
+    private final Map<C, Session> sessions = new ConcurrentHashMap<>();
+
+    private static final class UserSessions<C> {
+        final AtomicInteger count = new AtomicInteger();
+        final Set<C> clients = ConcurrentHashMap.newKeySet();
+    }
+
+    private final class Session {
+        final String username;
+        final TimingWheel.Timeout expiry;
+
+        Session(String username, TimingWheel.Timeout expiry) {
+            this.username = username;
+            this.expiry = expiry;
+        }
+    }
+
+    /**
+     * @param maxPerUser     concurrent sessions allowed per user, 0 for no limit
+     * @param lifetimeMillis session lifetime, 0 for no limit
+     * @param wheel          wheel that times lifetimes, may be null without them
+     * @param onExpire       called on the wheel thread for expired sessions
+     */
+    SessionTracker(int maxPerUser, long lifetimeMillis, TimingWheel wheel, Consumer<C> onExpire) {
+        this.maxPerUser = Math.max(0, maxPerUser);
+        this.lifetimeMillis = Math.max(0, lifetimeMillis);
+        this.wheel = wheel;
+        this.onExpire = onExpire;
+    }
+
+    /**
+     * Open a session for a client that just authenticated
+     *
+     * @return false if the user already holds the maximum number of sessions
+     */
+    boolean open(C client, String username) {
+        UserSessions<C> user = acquire(username);
+        if (user == null) {
+            return false;
+        }
+        TimingWheel.Timeout expiry = lifetimeMillis > 0 && wheel != null
+                ? wheel.schedule(() -> expire(client), lifetimeMillis)
+                : null;
+        Session previous = sessions.put(client, new Session(username, expiry));
+        if (previous != null) {
+            // The same client authenticated twice; only the new session counts
+            end(client, previous);
+        }
+        user.clients.add(client);
+        return true;
+    }
+
+    /**
+     * Close a client's session, if it has one
+     */
+    void close(C client) {
+        Session session = sessions.remove(client);
+        if (session != null) {
+            end(client, session);
+        }
+    }
+
+    /**
+     * End every session of a user, without scanning other users' clients
+     *
+     * @return the clients whose session was ended
+     */
+    List<C> revoke(String username) {
+        UserSessions<C> user = perUser.get(username);
+        if (user == null) {
+            return Collections.emptyList();
+        }
+        List<C> revoked = new ArrayList<>();
+        for (C client : user.clients) {
+            Session session = sessions.get(client);
+            if (session != null && session.username.equals(username) && sessions.remove(client, session)) {
+                end(client, session);
+                revoked.add(client);
+            }
+        }
+        return revoked;
+    }
+
+    int sessions(String username) {
+        UserSessions<C> user = perUser.get(username);
+        return user != null ? Math.max(0, user.count.get()) : 0;
+    }
+
+    int activeSessions() {
+        return sessions.size();
+    }
+
+    int getMaxPerUser() {
+        return maxPerUser;
+    }
+
+    long getLifetimeMillis() {
+        return lifetimeMillis;
+    }
+
+    private void expire(C client) {
+        Session session = sessions.remove(client);
+        if (session != null) {
+            release(client, session.username);
+            onExpire.accept(client);
+        }
+    }
+
+    private void end(C client, Session session) {
+        if (session.expiry != null) {
+            session.expiry.cancel();
+        }
+        release(client, session.username);
+    }
+
+    private UserSessions<C> acquire(String username) {
+        while (true) {
+            UserSessions<C> user = perUser.computeIfAbsent(username, k -> new UserSessions<>());
+            AtomicInteger count = user.count;
+            for (int current = count.get(); current != RETIRED; current = count.get()) {
+                if (maxPerUser > 0 && current >= maxPerUser) {
+                    return null;
+                }
+                if (count.compareAndSet(current, current + 1)) {
+                    return user;
+                }
+            }
+            // Retired by a concurrent release; it is about to leave the map
+            perUser.remove(username, user);
+        }
+    }
+
+    private void release(C client, String username) {
+        UserSessions<C> user = perUser.get(username);
+        if (user == null) {
+            return;
+        }
+        user.clients.remove(client);
+        if (user.count.decrementAndGet() == 0 && user.count.compareAndSet(0, RETIRED)) {
+            perUser.remove(username, user);
+        }
+    }
+}
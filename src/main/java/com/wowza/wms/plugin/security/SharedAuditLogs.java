@@ -0,0 +1,48 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Server-wide registry of {@link AuditLog}s, one per audit file, shared by
+ * every application instance configured to write there.
+ *
+ * Only one writer thread may append to and rotate a file, so instances
+ * that resolve to the same path publish into the same ring buffer. Logs are
+ * reference counted: the first {@link #acquire} opens the file, the last
+ * {@link #release} drains and closes it. The first instance's buffer and
+ * rotation settings apply to everyone sharing the file.
+ */
+final class SharedAuditLogs {
+
+    private static final SharedRegistry<AuditLog> LOGS = new SharedRegistry<>(log -> log, AuditLog::stop);
+
+    private SharedAuditLogs() {
+    }
+
+    /**
+     * Get the audit log for a file, opening it if this is the first user
+     */
+    static AuditLog acquire(Path file, int bufferSize, long maxFileBytes, int maxFiles) throws IOException {
+        String key = SharedCredentialSources.normalize(file.toString());
+        String settings = bufferSize + "/" + maxFileBytes + "/" + maxFiles;
+        return LOGS.acquire(key, "Audit log " + key, settings, () -> {
+            AuditLog log = new AuditLog(file, bufferSize, maxFileBytes, maxFiles);
+            log.start();
+            return log;
+        }, null);
+    }
+
+    /**
+     * Drop one reference; the last one stops the writer
+     */
+    static void release(AuditLog log) {
+        if (!LOGS.release(log)) {
+            log.stop();
+        }
+    }
+
+    static int references(AuditLog log) {
+        return LOGS.references(log);
+    }
+}
@@ -0,0 +1,118 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Server-wide registry of {@link ClusterReplicator}s, one per shared
+ * {@link CredentialSource}, so application instances that use the same
+ * password file also share its listen port and replicated overlay.
+ *
+ * The replicator listens to the source itself: each reload is published to
+ * the cluster once, not once per instance, and overlay entries the file has
+ * caught up with are pruned. Replicators are reference counted like the
+ * sources; the first {@link #acquire} starts one with that instance's
+ * settings and the last {@link #release} stops it. Each instance adds its
+ * own {@link ClusterReplicator.Listener} to end its sessions.
+ */
+final class SharedClusterReplicators {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(SharedClusterReplicators.class);
+
+    private static final SharedRegistry<Shared> REPLICATORS = new SharedRegistry<>(shared -> shared.replicator,
+            Shared::stop);
+
+    private static final class Shared implements CredentialSource.ReloadListener {
+        final ClusterReplicator replicator;
+        final CredentialSource source;
+
+        Shared(ClusterReplicator replicator, CredentialSource source) {
+            this.replicator = replicator;
+            this.source = source;
+        }
+
+        void stop() {
+            if (source != null) {
+                source.removeReloadListener(this);
+            }
+            replicator.stop();
+        }
+
+        @Override
+        public void reloaded(CredentialSnapshot previous, CredentialSnapshot current, CredentialDiff diff,
+                long durationNanos) {
+            if (current == null) {
+                return;
+            }
+            if (!diff.isEmpty()) {
+                Map<String, String> upserts = new LinkedHashMap<>();
+                for (List<String> usernames : Arrays.asList(diff.added(), diff.changed())) {
+                    for (String username : usernames) {
+                        upserts.put(username, current.storedPassword(current.find(username)));
+                    }
+                }
+                int sent = replicator.publish(upserts, diff.removed());
+                if (sent > 0) {
+                    logger.info("ModuleRTMPPlaybackAuthentication: Sent " + sent
+                            + " credential changes to the cluster");
+                }
+            }
+            replicator.prune(username -> storedPassword(current, username));
+        }
+    }
+
+    private static String storedPassword(CredentialSnapshot snapshot, String username) {
+        int entry = snapshot.find(username);
+        return entry < 0 ? null : snapshot.storedPassword(entry);
+    }
+
+    private SharedClusterReplicators() {
+    }
+
+    /**
+     * Get the replicator for a credential source, starting {@code candidate}
+     * if this is the first user. Without a source (another credential store
+     * is in use) instances that listen on the same address share one.
+     *
+     * @param candidate a replicator that is not started yet; it is dropped
+     *                  when one is already running
+     */
+    static ClusterReplicator acquire(CredentialSource source, String listen, ClusterReplicator candidate,
+            List<InetSocketAddress> peers, String settings, ClusterReplicator.Listener listener) throws IOException {
+        Object key = source != null ? source : listen;
+        ClusterReplicator replicator = REPLICATORS.acquire(key, "Cluster on " + listen, settings, () -> {
+            if (source != null) {
+                candidate.setLocal(username -> storedPassword(source.snapshot(), username));
+            }
+            candidate.start(peers);
+            Shared shared = new Shared(candidate, source);
+            if (source != null) {
+                source.addReloadListener(shared);
+            }
+            return shared;
+        }, null).replicator;
+        replicator.addListener(listener);
+        return replicator;
+    }
+
+    /**
+     * Drop one reference; the last one stops the replicator
+     */
+    static void release(ClusterReplicator replicator, ClusterReplicator.Listener listener) {
+        replicator.removeListener(listener);
+        if (!REPLICATORS.release(replicator)) {
+            replicator.stop();
+        }
+    }
+
+    static int references(ClusterReplicator replicator) {
+        return REPLICATORS.references(replicator);
+    }
+}
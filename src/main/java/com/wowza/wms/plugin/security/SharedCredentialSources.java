@@ -0,0 +1,85 @@
+package com.wowza.wms.plugin.security;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ * Server-wide registry of {@link CredentialSource}s, shared by every
+ * application instance of a VHost that resolves to the same password file.
+ *
+ * The file is parsed, held and watched once no matter how many instances
+ * use it. Sources are reference counted: the first {@link #acquire} loads
+ * the file and starts the watcher, the last {@link #release} stops it. The
+ * first instance's reload settings apply to everyone sharing the file.
+ */
+final class SharedCredentialSources {
+
+    private static final SharedRegistry<CredentialSource> SOURCES = new SharedRegistry<>(source -> source,
+            CredentialSource::stop);
+
+    private SharedCredentialSources() {
+    }
+
+    /**
+     * Get the shared source for a password file, loading it if this is the
+     * first user. The listener is registered before the first load so it
+     * sees it.
+     */
+    static CredentialSource acquire(String vhost, String path, boolean watch, boolean useIndexFile,
+            int filterBitsPerKey, long debounceMillis, long pollMillis, CredentialSource.ReloadListener listener) {
+        return acquire(vhost, path, false, watch, useIndexFile, filterBitsPerKey, debounceMillis, pollMillis,
+                listener);
+    }
+
+    /**
+     * @param rulesOnly only load the stream rules and address ranges next to
+     *                  the password file, see {@link CredentialSource#rulesOnly}
+     */
+    static CredentialSource acquire(String vhost, String path, boolean rulesOnly, boolean watch,
+            boolean useIndexFile, int filterBitsPerKey, long debounceMillis, long pollMillis,
+            CredentialSource.ReloadListener listener) {
+        String file = normalize(path);
+        // Instances that check the file's passwords and ones that only need its rules load it differently
+        String key = (vhost != null ? vhost : "_defaultVHost_") + '\0' + file + (rulesOnly ? "\0rules" : "");
+        String settings = watch + "/" + useIndexFile + "/" + filterBitsPerKey + "/" + debounceMillis + "/"
+                + pollMillis;
+        return SOURCES.acquire(key, file, settings, () -> {
+            CredentialSource source = rulesOnly ? CredentialSource.rulesOnly(file, watch, debounceMillis, pollMillis)
+                    : new CredentialSource(file, watch, useIndexFile, filterBitsPerKey, debounceMillis, pollMillis);
+            if (listener != null) {
+                source.addReloadListener(listener);
+            }
+            source.start();
+            return source;
+        }, listener == null ? null : source -> source.addReloadListener(listener));
+    }
+
+    /**
+     * Drop one reference; the last one stops the watcher and forgets the file
+     */
+    static void release(CredentialSource source, CredentialSource.ReloadListener listener) {
+        if (listener != null) {
+            source.removeReloadListener(listener);
+        }
+        if (!SOURCES.release(source)) {
+            // Not shared (already released); make sure it is not left running
+            source.stop();
+        }
+    }
+
+    static int references(CredentialSource source) {
+        return SOURCES.references(source);
+    }
+
+    /**
+     * @return the absolute, normalized form of a password file path, which
+     *         is what shared sources report from getPath()
+     */
+    static String normalize(String path) {
+        try {
+            return Paths.get(path).toAbsolutePath().normalize().toString();
+        } catch (InvalidPathException e) {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Reference-counted registry behind the server-wide shared objects
+ * ({@link SharedCredentialSources}, {@link SharedAuditLogs},
+ * {@link SharedClusterReplicators}): the first {@link #acquire} of a key
+ * opens the value, the last {@link #release} closes it.
+ *
+ * The lock only guards the map and the counts. Opening (parsing a file,
+ * binding a socket) and closing run outside it, so a slow open never holds
+ * up instances using other keys. Instances acquiring the same key wait for
+ * its open to finish, and a key is only opened again once its previous value
+ * has finished closing.
+ *
+ * @param <V> the shared value
+ */
+final class SharedRegistry<V> {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(SharedRegistry.class);
+
+    /**
+     * Creates and starts the value for a key that nobody holds
+     */
+    interface Opener<V, E extends Exception> {
+        V open() throws E;
+    }
+
+    private final Map<Object, Entry<V>> entries = new HashMap<>(); // guarded by entries
+    private final Function<V, ?> handle;
+    private final Consumer<V> closer;
+
+    private static final class Entry<V> {
+        final String settings;
+        final CompletableFuture<V> opened = new CompletableFuture<>();
+        final CompletableFuture<Void> closed = new CompletableFuture<>();
+        int references;
+        boolean closing;
+
+        Entry(String settings) {
+            this.settings = settings;
+        }
+
+        /**
+         * @return the value once it is open, or null while opening or if the
+         *         open failed
+         */
+        V value() {
+            return opened.isDone() && !opened.isCompletedExceptionally() ? opened.join() : null;
+        }
+    }
+
+    /**
+     * @param handle what callers hold and pass to {@link #release}, derived
+     *               from the value
+     * @param closer stops a value once its last reference is released
+     */
+    SharedRegistry(Function<V, ?> handle, Consumer<V> closer) {
+        this.handle = handle;
+        this.closer = closer;
+    }
+
+    /**
+     * Get the value for a key, opening it if this is the first user.
+     *
+     * @param name     how the key is called when its settings differ
+     * @param settings compared with the first user's; the first user's win
+     * @param join     applied to the value by every user except the one that
+     *                 opened it, may be null
+     */
+    <E extends Exception> V acquire(Object key, String name, String settings, Opener<V, E> opener,
+            Consumer<V> join) throws E {
+        while (true) {
+            Entry<V> entry;
+            boolean open = false;
+            synchronized (entries) {
+                entry = entries.get(key);
+                if (entry == null) {
+                    entry = new Entry<>(settings);
+                    entries.put(key, entry);
+                    open = true;
+                } else if (!entry.closing && !entry.settings.equals(settings)) {
+                    logger.warn("ModuleRTMPPlaybackAuthentication: " + name
+                            + " is shared with different settings; keeping the first application's");
+                }
+                if (!entry.closing) {
+                    entry.references++;
+                }
+            }
+
+            if (open) {
+                V value;
+                try {
+                    value = opener.open();
+                } catch (Exception | Error e) {
+                    // Waiting users start over and one of them tries again
+                    synchronized (entries) {
+                        entries.remove(key, entry);
+                    }
+                    entry.opened.completeExceptionally(e);
+                    entry.closed.complete(null);
+                    throw e;
+                }
+                entry.opened.complete(value);
+                return value;
+            }
+
+            if (entry.closing) {
+                entry.closed.join();
+                continue;
+            }
+            V value = entry.opened.handle((v, e) -> v).join();
+            if (value == null) {
+                continue;
+            }
+            if (join != null) {
+                join.accept(value);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Drop one reference; the last one closes the value.
+     *
+     * @return false if the value is not registered (already released), in
+     *         which case nothing was closed
+     */
+    boolean release(Object held) {
+        Object key = null;
+        Entry<V> last = null;
+        synchronized (entries) {
+            for (Map.Entry<Object, Entry<V>> e : entries.entrySet()) {
+                Entry<V> entry = e.getValue();
+                V value = entry.value();
+                if (entry.closing || value == null || handle.apply(value) != held) {
+                    continue;
+                }
+                if (--entry.references > 0) {
+                    return true;
+                }
+                entry.closing = true;
+                key = e.getKey();
+                last = entry;
+                break;
+            }
+        }
+        if (last == null) {
+            return false;
+        }
+        try {
+            closer.accept(last.value());
+        } finally {
+            synchronized (entries) {
+                entries.remove(key, last);
+            }
+            last.closed.complete(null);
+        }
+        return true;
+    }
+
+    int references(Object held) {
+        synchronized (entries) {
+            for (Entry<V> entry : entries.values()) {
+                V value = entry.value();
+                if (!entry.closing && value != null && handle.apply(value) == held) {
+                    return entry.references;
+                }
+            }
+            return 0;
+        }
+    }
+}
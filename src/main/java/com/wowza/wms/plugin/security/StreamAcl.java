@@ -0,0 +1,288 @@
+package com.wowza.wms.plugin.security;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-user stream playback rules, compiled once per credential snapshot.
+ *
+ * The rules file lists a username followed by stream patterns, separated by
+ * commas or whitespace. A username of {@code *} applies to every user:
+ *
+ * <pre>
+ * alice   live/alice, live/shared/*
+ * bob     news-??, *-preview
+ * *       public/*
+ * </pre>
+ *
+ * Patterns are exact names, or contain {@code *} (any run of characters)
+ * and {@code ?} (one character). Each user's patterns are merged into one
+ * character trie, so a check walks the stream name once for exact names and
+ * prefixes no matter how many rules there are. From the first wildcard on,
+ * the trie is run as an automaton that follows every pattern that can still
+ * match in the same single pass, so the cost stays linear in the name
+ * however many {@code *} a rule has. Names longer than
+ * {@link #MAX_STREAM_NAME} never match.
+ */
+final class StreamAcl {
+
+    /**
+     * No rules file: every authenticated user may play every stream
+     */
+    static final StreamAcl ALLOW_ALL = new StreamAcl(false, new HashMap<>(), new Trie.Builder().build(), 0);
+
+    static final String ALL_USERS = "*";
+
+    // Clients choose stream names; a rule check must not get arbitrarily long
+    static final int MAX_STREAM_NAME = 1024;
+
+    private final boolean enforcing;
+    private final Map<String, Trie> users;
+    private final Trie everyone;
+    private final int ruleCount;
+
+    private StreamAcl(boolean enforcing, Map<String, Trie> users, Trie everyone, int ruleCount) {
+        this.enforcing = enforcing;
+        this.users = users;
+        this.everyone = everyone;
+        this.ruleCount = ruleCount;
+    }
+
+    /**
+     * @return the rules in a file, or {@link #ALLOW_ALL} if it does not exist
+     */
+    static StreamAcl load(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return ALLOW_ALL;
+        }
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+    static StreamAcl parse(List<String> lines) {
+        Map<String, Trie.Builder> builders = new TreeMap<>();
+        int rules = 0;
+        for (String raw : lines) {
+            String line = raw.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[\\s,]+");
+            if (fields.length < 2) {
+                continue;
+            }
+            Trie.Builder builder = builders.computeIfAbsent(fields[0], k -> new Trie.Builder());
+            for (int i = 1; i < fields.length; i++) {
+                builder.add(fields[i]);
+                rules++;
+            }
+        }
+        Trie.Builder all = builders.remove(ALL_USERS);
+        Map<String, Trie> users = new HashMap<>();
+        for (Map.Entry<String, Trie.Builder> e : builders.entrySet()) {
+            users.put(e.getKey(), e.getValue().build());
+        }
+        return new StreamAcl(true, users, all != null ? all.build() : new Trie.Builder().build(), rules);
+    }
+
+    /**
+     * @return false when rules were loaded and none of them lets this user
+     *         play the stream
+     */
+    boolean isAllowed(String username, String streamName) {
+        if (!enforcing) {
+            return true;
+        }
+        if (username == null || streamName == null || streamName.length() > MAX_STREAM_NAME) {
+            return false;
+        }
+        if (everyone.matches(streamName)) {
+            return true;
+        }
+        Trie own = users.get(username);
+        return own != null && own.matches(streamName);
+    }
+
+    boolean isEnforcing() {
+        return enforcing;
+    }
+
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    int userCount() {
+        return users.size();
+    }
+
+    /**
+     * Character trie over a set of patterns. Literal children are kept in
+     * sorted arrays and found by binary search; {@code ?} and {@code *} get
+     * dedicated edges. The node behind a {@code *} edge loops on any
+     * character. Nodes are numbered depth first so a match can keep its set
+     * of current nodes in arrays.
+     */
+    static final class Trie {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Trie[] NO_CHILDREN = new Trie[0];
+
+        private final char[] keys;
+        private final Trie[] children;
+        private final Trie one;
+        private final Trie any;
+        private final boolean terminal;
+        // A trailing '*' ends here: whatever follows matches
+        private final boolean matchesRest;
+        // Reached over a '*' edge: may take any character and stay
+        private final boolean loops;
+        private final int id;
+        // Ids of this node's subtree run from id to just below this
+        private final int limit;
+
+        private Trie(Builder b, boolean loops, int[] ids) {
+            this.id = ids[0]++;
+            this.loops = loops;
+            int n = b.children.size();
+            this.keys = n == 0 ? NO_KEYS : new char[n];
+            this.children = n == 0 ? NO_CHILDREN : new Trie[n];
+            int i = 0;
+            for (Map.Entry<Character, Builder> e : b.children.entrySet()) {
+                keys[i] = e.getKey();
+                children[i++] = new Trie(e.getValue(), false, ids);
+            }
+            this.one = b.one != null ? new Trie(b.one, false, ids) : null;
+            this.any = b.any != null ? new Trie(b.any, true, ids) : null;
+            this.terminal = b.terminal;
+            this.matchesRest = any != null && any.terminal;
+            this.limit = ids[0];
+        }
+
+        boolean matches(CharSequence name) {
+            Trie node = this;
+            int pos = 0;
+            int length = name.length();
+            // Literal walk until the trie branches on a wildcard
+            while (node.one == null && node.any == null) {
+                if (pos == length) {
+                    return node.terminal;
+                }
+                int slot = Arrays.binarySearch(node.keys, name.charAt(pos));
+                if (slot < 0) {
+                    return false;
+                }
+                node = node.children[slot];
+                pos++;
+            }
+            return simulate(node, name, pos);
+        }
+
+        /**
+         * Advance every node that can still match by one character at a
+         * time: each node is in the set at most once, so the work per
+         * character is bounded by the trie, not by the name. Only the
+         * subtree below {@code start} can be reached, so the sets are sized
+         * and indexed by it.
+         */
+        private static boolean simulate(Trie start, CharSequence name, int pos) {
+            int base = start.id;
+            int count = start.limit - base;
+            Trie[] current = new Trie[count];
+            Trie[] next = new Trie[count];
+            long[] seen = new long[(count + 63) >>> 6];
+            int size = enter(start, base, current, 0, seen);
+            for (; pos < name.length() && size > 0; pos++) {
+                char c = name.charAt(pos);
+                for (int i = 0; i < size; i++) {
+                    int bit = current[i].id - base;
+                    seen[bit >>> 6] &= ~(1L << bit);
+                }
+                int nextSize = 0;
+                for (int i = 0; i < size; i++) {
+                    Trie node = current[i];
+                    if (node.matchesRest) {
+                        return true;
+                    }
+                    int slot = Arrays.binarySearch(node.keys, c);
+                    if (slot >= 0) {
+                        nextSize = enter(node.children[slot], base, next, nextSize, seen);
+                    }
+                    if (node.one != null) {
+                        nextSize = enter(node.one, base, next, nextSize, seen);
+                    }
+                    if (node.loops) {
+                        nextSize = enter(node, base, next, nextSize, seen);
+                    }
+                }
+                Trie[] swap = current;
+                current = next;
+                next = swap;
+                size = nextSize;
+            }
+            for (int i = 0; i < size; i++) {
+                if (current[i].terminal) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Add a node to the set, and the nodes behind its '*' edges since a
+         * star also matches nothing
+         */
+        private static int enter(Trie node, int base, Trie[] states, int size, long[] seen) {
+            for (; node != null; node = node.any) {
+                int bit = node.id - base;
+                if ((seen[bit >>> 6] & (1L << bit)) != 0) {
+                    return size;
+                }
+                seen[bit >>> 6] |= 1L << bit;
+                states[size++] = node;
+            }
+            return size;
+        }
+
+        static final class Builder {
+            private final Map<Character, Builder> children = new TreeMap<>();
+            private Builder one;
+            private Builder any;
+            private boolean terminal;
+
+            void add(String pattern) {
+                Builder node = this;
+                for (int i = 0; i < pattern.length(); i++) {
+                    char c = pattern.charAt(i);
+                    if (c == '*') {
+                        // Consecutive stars are one star
+                        if (i > 0 && pattern.charAt(i - 1) == '*') {
+                            continue;
+                        }
+                        if (node.any == null) {
+                            node.any = new Builder();
+                        }
+                        node = node.any;
+                    } else if (c == '?') {
+                        if (node.one == null) {
+                            node.one = new Builder();
+                        }
+                        node = node.one;
+                    } else {
+                        node = node.children.computeIfAbsent(c, k -> new Builder());
+                    }
+                }
+                node.terminal = true;
+            }
+
+            Trie build() {
+                return new Trie(this, false, new int[1]);
+            }
+        }
+    }
+}
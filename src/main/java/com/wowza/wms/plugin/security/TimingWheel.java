@@ -0,0 +1,185 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.wowza.wms.logging.WMSLogger;
+import com.wowza.wms.logging.WMSLoggerFactory;
+
+/**
+ * Hashed timing wheel for many coarse timeouts.
+ *
+ * Timeouts are hashed into one of a fixed number of slots by their deadline
+ * tick, and a single daemon thread visits one slot per tick. Scheduling and
+ * cancelling are O(1) and take no locks: new timeouts go through a queue
+ * that only the wheel thread drains, and cancelled ones are dropped the next
+ * time their slot comes round. Precision is one tick, which is plenty for
+ * session lifetimes measured in minutes or hours.
+ */
+final class TimingWheel {
+
+    private static final WMSLogger logger = WMSLoggerFactory.getLogger(TimingWheel.class);
+
+    /**
+     * Handle of a scheduled task
+     */
+    static final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineTick;
+        private long remainingRounds; // wheel thread only
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * @return true if the task had not run yet and now never will
+         */
+        boolean cancel() {
+            return state.compareAndSet(PENDING, CANCELLED);
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+    }
+
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private final List<Timeout>[] slots;
+    private final int mask;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final String threadName;
+    private long tick; // wheel thread only
+    private volatile Thread thread;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int slotCount, String threadName) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Math.max(2, Integer.highestOneBit(Math.max(1, slotCount - 1) << 1));
+        this.slots = new List[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.threadName = threadName;
+    }
+
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Thread t = new Thread(this::run, threadName);
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    synchronized void stop() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Run a task on the wheel thread once the delay has passed. Tasks
+     * should be short; a slow task delays every later tick.
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        long delayTicks = (TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)) + tickNanos - 1) / tickNanos;
+        long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+        Timeout timeout = new Timeout(task, nowTick + Math.max(1, delayTicks));
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return scheduled tasks that have neither run nor been cancelled;
+     *         cancelled ones are subtracted once the wheel drops them
+     */
+    int pendingCount() {
+        return pending.get();
+    }
+
+    private void run() {
+        while (thread == Thread.currentThread()) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleepNanos = deadline - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+
+    /**
+     * Process one tick: file new timeouts, then fire the due ones of the
+     * current slot. Package-private so tests can drive the wheel.
+     */
+    void advance() {
+        transferAdded();
+        List<Timeout> slot = slots[(int) (tick & mask)];
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Timeout timeout = slot.get(i);
+            if (timeout.isCancelled()) {
+                pending.decrementAndGet();
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                slot.set(kept++, timeout);
+            } else {
+                expire(timeout);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+        tick++;
+    }
+
+    private void transferAdded() {
+        for (Timeout timeout; (timeout = added.poll()) != null;) {
+            if (timeout.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            // Deadlines already passed fire on the current tick
+            long target = Math.max(timeout.deadlineTick, tick);
+            timeout.remainingRounds = (target - tick) / slots.length;
+            slots[(int) (target & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Timeout timeout) {
+        pending.decrementAndGet();
+        if (!timeout.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+            return;
+        }
+        try {
+            timeout.task.run();
+        } catch (RuntimeException e) {
+            // A failing task must not stop the wheel
+            logger.error("ModuleRTMPPlaybackAuthentication: Error in scheduled task", e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * The users and client addresses that connect most often, split into
+ * accepted and rejected connects, over a sliding window.
+ *
+ * Every connect decision updates up to two {@link HeavyHitters}, so memory
+ * stays the same however many distinct names and addresses show up during
+ * a flood. {@link #describe} feeds getAuthStats() and
+ * {@link #writeJson} the {@link HTTPProviderAuthTopClients} endpoint.
+ */
+final class TopClients {
+
+    // Keys tracked per window bucket for each key reported
+    private static final int CANDIDATES_PER_ENTRY = 4;
+    // Larger lists make every table update scan more slots
+    static final int MAX_SIZE = 100;
+
+    private final int size;
+    private final HeavyHitters acceptedUsers;
+    private final HeavyHitters rejectedUsers;
+    private final HeavyHitters acceptedIps;
+    private final HeavyHitters rejectedIps;
+
+    /**
+     * @param size         entries reported per list
+     * @param windowMillis length of the sliding window
+     */
+    TopClients(int size, long windowMillis, LongSupplier clock) {
+        this.size = Math.max(1, Math.min(size, MAX_SIZE));
+        int capacity = this.size * CANDIDATES_PER_ENTRY;
+        this.acceptedUsers = new HeavyHitters(capacity, windowMillis, clock);
+        this.rejectedUsers = new HeavyHitters(capacity, windowMillis, clock);
+        this.acceptedIps = new HeavyHitters(capacity, windowMillis, clock);
+        this.rejectedIps = new HeavyHitters(capacity, windowMillis, clock);
+    }
+
+    void record(String username, String ip, AuthOutcome outcome) {
+        boolean accepted = outcome.isAccepted();
+        if (username != null) {
+            (accepted ? acceptedUsers : rejectedUsers).record(username);
+        }
+        if (ip != null) {
+            (accepted ? acceptedIps : rejectedIps).record(ip);
+        }
+    }
+
+    List<HeavyHitters.Entry> users(boolean rejected) {
+        return (rejected ? rejectedUsers : acceptedUsers).top(size);
+    }
+
+    List<HeavyHitters.Entry> ips(boolean rejected) {
+        return (rejected ? rejectedIps : acceptedIps).top(size);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long windowMillis() {
+        return rejectedUsers.windowMillis();
+    }
+
+    /**
+     * @return the heaviest rejected users and addresses, for example
+     *         {@code users [bob=120, eve=33], IPs [10.0.0.9=150]}
+     */
+    String describe(int n) {
+        return "users " + rejectedUsers.top(n) + ", IPs " + rejectedIps.top(n);
+    }
+
+    /**
+     * Append the four lists as the members of a JSON object
+     */
+    void writeJson(StringBuilder out) {
+        out.append("\"windowSeconds\":").append(windowMillis() / 1000);
+        list(out, "rejectedUsers", users(true));
+        list(out, "rejectedIps", ips(true));
+        list(out, "acceptedUsers", users(false));
+        list(out, "acceptedIps", ips(false));
+    }
+
+    private static void list(StringBuilder out, String name, List<HeavyHitters.Entry> entries) {
+        out.append(",\"").append(name).append("\":[");
+        for (int i = 0; i < entries.size(); i++) {
+            HeavyHitters.Entry e = entries.get(i);
+            out.append(i > 0 ? ",{\"key\":" : "{\"key\":");
+            AuditLog.jsonString(out, e.key);
+            out.append(",\"count\":").append(e.count).append('}');
+        }
+        out.append(']');
+    }
+}
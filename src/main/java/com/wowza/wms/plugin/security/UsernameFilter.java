@@ -0,0 +1,77 @@
+package com.wowza.wms.plugin.security;
+
+/**
+ * Bloom filter over the usernames of one credential snapshot.
+ *
+ * Built next to each snapshot so that lookups for unknown usernames, which
+ * make up most credential-stuffing traffic, are answered from a small bit
+ * array without probing the credential index. A negative answer is exact;
+ * a positive one still goes through the index.
+ */
+final class UsernameFilter {
+
+    /** Filter that lets every username through to the index */
+    static final UsernameFilter PASS_ALL = new UsernameFilter(null, 0);
+
+    private final long[] bits;
+    private final int mask;
+    private final int hashes;
+
+    private UsernameFilter(long[] bits, int hashes) {
+        this.bits = bits;
+        this.mask = bits == null ? 0 : bits.length * 64 - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * @param bitsPerKey filter size per username; 10 gives about 1% false positives
+     */
+    static UsernameFilter build(CompactCredentialIndex index, int bitsPerKey) {
+        if (bitsPerKey <= 0) {
+            return PASS_ALL;
+        }
+        long wanted = Math.max(64L, (long) index.size() * bitsPerKey);
+        int numBits = (int) Math.min(1L << 30, Long.highestOneBit(wanted - 1) << 1);
+        int hashes = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+        UsernameFilter filter = new UsernameFilter(new long[numBits / 64], hashes);
+        for (int slot = 0; slot < index.slotCount(); slot++) {
+            int entry = index.entryAtSlot(slot);
+            if (entry != 0) {
+                filter.add(index.usernameHash64(entry));
+            }
+        }
+        return filter;
+    }
+
+    boolean mightContain(CharSequence username) {
+        if (bits == null) {
+            return true;
+        }
+        if (username == null) {
+            return false;
+        }
+        long hash = CompactCredentialIndex.hash64(username);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long byteSize() {
+        return bits == null ? 0 : bits.length * 8L;
+    }
+
+    private void add(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (h1 + i * h2) & mask;
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.wowza.wms.plugin.security;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for blocking credential work, Java 21 version: every task gets its
+ * own virtual thread, so a reload or a slow credential service call only
+ * parks a virtual thread instead of holding a pooled platform thread.
+ *
+ * Hash checks are CPU bound and would not get faster with more threads, so
+ * {@link #bounded} still admits only {@code threads} tasks at a time and
+ * {@code queueSize} more waiting; beyond that tasks are rejected as on the
+ * platform pool of the Java 11 version.
+ */
+final class BlockingExecutors {
+
+    private BlockingExecutors() {
+    }
+
+    static String mode() {
+        return "virtual threads";
+    }
+
+    static boolean isVirtual() {
+        return true;
+    }
+
+    static BlockingExecutor bounded(String name, int threads, int queueSize) {
+        return new Virtual(name, Math.max(1, threads), Math.max(1, queueSize));
+    }
+
+    static ExecutorService unbounded(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 1).factory());
+    }
+
+    static Thread start(String name, Runnable task) {
+        return Thread.ofVirtual().name(name).start(task);
+    }
+
+    private static final class Virtual extends BlockingExecutor {
+        private final ExecutorService executor;
+        private final Semaphore running;
+        private final int threads;
+        private final int capacity;
+        private final AtomicInteger accepted = new AtomicInteger();
+
+        Virtual(String name, int threads, int queueSize) {
+            this.executor = unbounded(name);
+            this.running = new Semaphore(threads);
+            this.threads = threads;
+            this.capacity = threads + queueSize;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (accepted.incrementAndGet() > capacity) {
+                accepted.decrementAndGet();
+                throw new RejectedExecutionException("Too many tasks waiting");
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        running.acquire();
+                        try {
+                            task.run();
+                        } finally {
+                            running.release();
+                        }
+                    } catch (InterruptedException e) {
+                        // Shut down while waiting for a turn
+                    } finally {
+                        accepted.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                accepted.decrementAndGet();
+                throw e;
+            }
+        }
+
+        @Override
+        int waitingCount() {
+            return Math.max(0, accepted.get() - (threads - running.availablePermits()));
+        }
+
+        @Override
+        void shutdown() {
+            executor.shutdownNow();
+        }
+    }
+}
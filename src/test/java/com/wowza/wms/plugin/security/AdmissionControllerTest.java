@@ -0,0 +1,114 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControllerTest {
+
+    @Test
+    void admitsUpToTheLimitWithoutWaiting() {
+        AdmissionController gate = new AdmissionController(2, 0, 1000);
+
+        assertTrue(gate.acquire());
+        assertTrue(gate.acquire());
+        assertEquals(2, gate.inFlight());
+        assertFalse(gate.acquire(), "No queue: the third is shed at once");
+        assertEquals(1, gate.shedCount());
+
+        gate.release(System.nanoTime());
+        assertTrue(gate.acquire());
+        assertEquals(3, gate.admittedCount());
+    }
+
+    @Test
+    void queuedConnectIsAdmittedWhenASlotFrees() throws Exception {
+        AdmissionController gate = new AdmissionController(1, 10, 5000);
+        assertTrue(gate.acquire());
+        long held = System.nanoTime();
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> waiter = pool.submit(gate::acquire);
+            while (gate.queued() == 0) {
+                Thread.sleep(1);
+            }
+            gate.release(held);
+            assertTrue(waiter.get(5, TimeUnit.SECONDS));
+            assertEquals(1, gate.admittedAfterWaitCount());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void shedsWhenTheExpectedWaitExceedsTheDeadline() {
+        AdmissionController gate = new AdmissionController(1, 100, 50);
+        // Teach the gate that a check takes about 100ms
+        for (int i = 0; i < 64; i++) {
+            assertTrue(gate.acquire());
+            gate.release(System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertTrue(gate.averageServiceMicros() > 50000);
+        assertTrue(gate.acquire());
+
+        long start = System.nanoTime();
+        assertFalse(gate.acquire());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(40), "Shed without waiting");
+        assertTrue(gate.retryAfterMillis() >= 1000);
+    }
+
+    @Test
+    void stormKeepsAdmittedLatencyBounded() throws Exception {
+        AdmissionController gate = new AdmissionController(2, 1000, 200);
+        int clients = 200;
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong worstAdmittedNanos = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                results.add(pool.submit(() -> {
+                    go.await();
+                    long start = System.nanoTime();
+                    if (!gate.acquire()) {
+                        return false;
+                    }
+                    long admitted = System.nanoTime();
+                    try {
+                        Thread.sleep(10);
+                    } finally {
+                        gate.release(admitted);
+                    }
+                    worstAdmittedNanos.accumulateAndGet(admitted - start, Math::max);
+                    return true;
+                }));
+            }
+            go.countDown();
+            int admitted = 0;
+            for (Future<Boolean> f : results) {
+                if (f.get(30, TimeUnit.SECONDS)) {
+                    admitted++;
+                }
+            }
+
+            assertTrue(admitted > 0);
+            assertTrue(gate.shedCount() > 0, "A 10ms check at concurrency 2 cannot serve 200 in 200ms");
+            assertEquals(clients, admitted + gate.shedCount());
+            assertTrue(worstAdmittedNanos.get() < TimeUnit.MILLISECONDS.toNanos(1000),
+                    "Queue wait stays near the deadline: " + worstAdmittedNanos.get() / 1000000 + "ms");
+            assertEquals(0, gate.inFlight());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
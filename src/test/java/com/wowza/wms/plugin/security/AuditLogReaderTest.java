@@ -0,0 +1,95 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static String line(String time, String ip, String user, String result, String reason) {
+        return "{\"time\":\"" + time + "\",\"event\":\"connect\",\"ip\":\"" + ip + "\",\"user\":\"" + user
+                + "\",\"result\":\"" + result + "\",\"reason\":\"" + reason + "\"}\n";
+    }
+
+    private Path writeLogs() throws Exception {
+        Path log = tempDir.resolve("audit.log");
+        Files.writeString(AuditLog.rotated(log, 2), line("2026-10-16T10:00:00Z", "10.0.0.1", "alice", "accepted",
+                "accepted"));
+        Files.writeString(AuditLog.rotated(log, 1), line("2026-10-16T11:00:00Z", "10.0.0.2", "bob", "rejected",
+                "bad-password") + "not json\n");
+        Files.writeString(log, line("2026-10-16T12:00:00Z", "10.0.0.2", "bob", "rejected", "bad-password")
+                + line("2026-10-16T12:30:00Z", "10.0.0.1", "alice", "accepted", "accepted"));
+        return log;
+    }
+
+    private static String run(String... args) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        int status = AuditLogReader.run(args, new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8"));
+        assertEquals(0, status, err.toString("UTF-8"));
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    void parsesFlatJsonObjects() {
+        Map<String, String> record = AuditLogReader.parse(
+                "{\"user\":\"a\\\"b\\\\c\\n\\u0041\", \"ip\": null ,\"result\":\"accepted\"}");
+
+        assertEquals("a\"b\\c\nA", record.get("user"));
+        assertTrue(record.containsKey("ip"));
+        assertNull(record.get("ip"));
+        assertEquals("accepted", record.get("result"));
+        assertNull(AuditLogReader.parse("{\"user\":\"unterminated}"));
+        assertNull(AuditLogReader.parse("{\"user\":\"a\"} trailing"));
+        assertNull(AuditLogReader.parse("user=alice"));
+    }
+
+    @Test
+    void readsRotatedFilesOldestFirst() throws Exception {
+        Path log = writeLogs();
+
+        assertEquals(List.of(AuditLog.rotated(log, 2), AuditLog.rotated(log, 1), log), AuditLogReader.files(log));
+        String[] lines = run(log.toString()).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].contains("10:00:00Z"));
+        assertTrue(lines[3].contains("12:30:00Z"));
+    }
+
+    @Test
+    void filtersByFieldAndTime() throws Exception {
+        Path log = writeLogs();
+
+        assertEquals(2, run("--user", "bob", log.toString()).split("\n").length);
+        assertEquals(1, run("--ip", "10.0.0.1", "--since", "2026-10-16T12:00:00Z", log.toString()).split("\n").length);
+        assertEquals("", run("--result", "rejected", "--until", "2026-10-16T11:00:00Z", log.toString()));
+    }
+
+    @Test
+    void summarizesByResultAndReason() throws Exception {
+        String summary = run("--summary", writeLogs().toString());
+
+        assertEquals("2\taccepted accepted\n2\trejected bad-password\n4\ttotal\n", summary.replace("\r", ""));
+    }
+
+    @Test
+    void rejectsBadArguments() throws Exception {
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(err, true, "UTF-8");
+
+        assertEquals(1, AuditLogReader.run(new String[0], stream, stream));
+        assertEquals(1, AuditLogReader.run(new String[] { "--since", "yesterday", "audit.log" }, stream, stream));
+        assertTrue(err.toString("UTF-8").startsWith("Usage: AuditLogReader"));
+    }
+}
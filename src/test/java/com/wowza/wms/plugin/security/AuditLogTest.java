@@ -0,0 +1,141 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuditLogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<Map<String, String>> records(Path file) throws Exception {
+        List<Map<String, String>> records = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            Map<String, String> record = AuditLogReader.parse(line);
+            assertNotNull(record, "not a valid audit line: " + line);
+            records.add(record);
+        }
+        return records;
+    }
+
+    @Test
+    void writesOneJsonLinePerDecision() throws Exception {
+        Path file = tempDir.resolve("logs").resolve("audit.log");
+        AuditLog audit = new AuditLog(file, 64, 1 << 20, 2);
+        audit.start();
+
+        audit.connect("10.0.0.7", "alice", AuthOutcome.ACCEPTED);
+        audit.connect("10.0.0.8", "bob", AuthOutcome.BAD_PASSWORD);
+        audit.connect("10.0.0.9", null, AuthOutcome.THROTTLED);
+        audit.playDenied("10.0.0.7", "alice", "live/bob");
+        audit.stop();
+
+        List<Map<String, String>> records = records(file);
+        assertEquals(4, records.size());
+        assertEquals("connect", records.get(0).get("event"));
+        assertEquals("alice", records.get(0).get("user"));
+        assertEquals("accepted", records.get(0).get("result"));
+        assertEquals("bad-password", records.get(1).get("reason"));
+        assertEquals("rejected", records.get(1).get("result"));
+        assertNull(records.get(2).get("user"));
+        assertEquals("play", records.get(3).get("event"));
+        assertEquals("stream-denied", records.get(3).get("reason"));
+        assertEquals("live/bob", records.get(3).get("stream"));
+        assertNotNull(java.time.Instant.parse(records.get(0).get("time")));
+        assertEquals(4, audit.writtenCount());
+    }
+
+    @Test
+    void escapesAndTruncatesClientSuppliedNames() throws Exception {
+        Path file = tempDir.resolve("audit.log");
+        AuditLog audit = new AuditLog(file, 16, 1 << 20, 0);
+        audit.start();
+        String hostile = "evil\"}\n{\"user\":\"admin\\" + "x".repeat(1000);
+
+        audit.connect("10.0.0.1", hostile, AuthOutcome.UNKNOWN_USER);
+        audit.stop();
+
+        List<Map<String, String>> records = records(file);
+        assertEquals(1, records.size(), "a name must not be able to inject lines");
+        assertEquals(256, records.get(0).get("user").length());
+        assertTrue(records.get(0).get("user").startsWith("evil\"}\n{"));
+    }
+
+    @Test
+    void fullBufferDropsInsteadOfBlocking() throws Exception {
+        Path file = tempDir.resolve("audit.log");
+        AuditLog audit = new AuditLog(file, 4, 1 << 20, 0);
+
+        // Writer not started yet, so nothing drains the ring
+        for (int i = 0; i < 4; i++) {
+            assertTrue(audit.connect("10.0.0.1", "user" + i, AuthOutcome.ACCEPTED));
+        }
+        assertFalse(audit.connect("10.0.0.1", "late", AuthOutcome.ACCEPTED));
+        assertEquals(1, audit.droppedCount());
+        assertEquals(4, audit.pendingCount());
+
+        audit.start();
+        audit.stop();
+        assertEquals(4, records(file).size());
+        assertEquals(0, audit.pendingCount());
+    }
+
+    @Test
+    void rotatesBySizeAndKeepsConfiguredFiles() throws Exception {
+        Path file = tempDir.resolve("audit.log");
+        AuditLog audit = new AuditLog(file, 4096, 4096, 2);
+        audit.start();
+        for (int i = 0; i < 200; i++) {
+            audit.connect("10.0.0.1", "user" + i, AuthOutcome.ACCEPTED);
+            if (i % 10 == 9) {
+                // Let the writer take several small batches
+                Thread.sleep(30);
+            }
+        }
+        audit.stop();
+
+        assertTrue(Files.exists(AuditLog.rotated(file, 1)));
+        assertTrue(Files.exists(AuditLog.rotated(file, 2)));
+        assertFalse(Files.exists(AuditLog.rotated(file, 3)));
+        for (Path p : AuditLogReader.files(file)) {
+            assertTrue(Files.size(p) <= 4096, p + " exceeds the rotation size");
+        }
+        // The newest events are in the current file
+        List<Map<String, String>> current = records(file);
+        assertEquals("user199", current.get(current.size() - 1).get("user"));
+    }
+
+    @Test
+    void concurrentProducersLoseNothingWhenTheBufferKeepsUp() throws Exception {
+        Path file = tempDir.resolve("audit.log");
+        AuditLog audit = new AuditLog(file, 1 << 16, 1 << 26, 0);
+        audit.start();
+        int threads = 8;
+        int perThread = 2000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String ip = "10.0.0." + t;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    audit.connect(ip, "user" + i, AuthOutcome.ACCEPTED);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        audit.stop();
+
+        assertEquals(threads * perThread, records(file).size() + audit.droppedCount());
+        assertEquals(0, audit.droppedCount());
+    }
+}
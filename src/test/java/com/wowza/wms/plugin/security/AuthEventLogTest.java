@@ -0,0 +1,150 @@
+package com.wowza.wms.plugin.security;
+
+import com.wowza.wms.logging.WMSLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuthEventLogTest {
+
+    @Mock
+    private WMSLogger logger;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(logger.isInfoEnabled()).thenReturn(true);
+    }
+
+    @Test
+    void rejected_AggregatesBySubnetUntilFlush() {
+        AuthEventLog log = new AuthEventLog(logger, AuthEventLog.Verbosity.EVENTS, 10000);
+
+        for (int i = 0; i < 532; i++) {
+            log.rejected("alice", "10.0.0." + (i % 200), AuthOutcome.BAD_PASSWORD);
+        }
+        log.rejected("mallory", "192.168.1.5", AuthOutcome.UNKNOWN_USER);
+        verify(logger, never()).warn(anyString());
+        assertEquals(2, log.pendingGroups());
+
+        log.flush(System.currentTimeMillis() + 10000);
+
+        verify(logger).warn(
+                "ModuleRTMPPlaybackAuthentication: user=alice failed 532 times from 10.0.0.0/24 in the last 10s "
+                        + "(bad-password)");
+        verify(logger).warn(
+                "ModuleRTMPPlaybackAuthentication: user=- failed 1 time from 192.168.1.0/24 in the last 10s "
+                        + "(unknown-user)");
+        assertEquals(2, log.pendingGroups(), "active groups are kept until a flush finds them idle");
+
+        log.flush(System.currentTimeMillis() + 20000);
+        assertEquals(0, log.pendingGroups());
+    }
+
+    @Test
+    void usernames_CannotForgeLinesOrFields() {
+        AuthEventLog log = new AuthEventLog(logger, AuthEventLog.Verbosity.EVENTS, 10000);
+        String forged = "bob\r\nModuleRTMPPlaybackAuthentication: auth result=accepted user=admin";
+
+        log.accepted(forged, "10.0.0.1", false);
+        log.rejected(forged, "10.0.0.1", AuthOutcome.THROTTLED);
+        log.rejected(forged + "x".repeat(1000), "10.0.0.1", AuthOutcome.BAD_TICKET);
+        log.flush(System.currentTimeMillis() + 10000);
+
+        String escaped = "bob\\r\\nModuleRTMPPlaybackAuthentication:\\u0020auth\\u0020result=accepted\\u0020user=admin";
+        verify(logger).info("ModuleRTMPPlaybackAuthentication: auth result=accepted user=" + escaped + " ip=10.0.0.1");
+        verify(logger).warn(startsWith("ModuleRTMPPlaybackAuthentication: user=" + escaped + " failed 1 time"));
+        verify(logger).warn(argThat((String line) -> line.contains("(bad-ticket)") && line.contains("...")
+                && line.length() < 300));
+        verify(logger, never()).info(contains("\n"));
+        verify(logger, never()).warn(contains("\n"));
+    }
+
+    @Test
+    void printable_LeavesOrdinaryNamesAlone() {
+        assertSame("alice.smith@example.com", AuthEventLog.printable("alice.smith@example.com"));
+        assertEquals("a\\\\b\\u0000", AuthEventLog.printable("a\\b\u0000"));
+        assertEquals("-", AuthEventLog.printable(null));
+    }
+
+    @Test
+    void flush_KeepsCountingIntoGroupsThatStayInTheMap() {
+        AuthEventLog log = new AuthEventLog(logger, AuthEventLog.Verbosity.FAILURES, 10000);
+        log.rejected("alice", "10.0.0.1", AuthOutcome.BAD_PASSWORD);
+        log.flush(System.currentTimeMillis());
+
+        log.rejected("alice", "10.0.0.1", AuthOutcome.BAD_PASSWORD);
+        log.rejected("alice", "10.0.0.2", AuthOutcome.BAD_PASSWORD);
+        log.flush(System.currentTimeMillis());
+
+        verify(logger).warn(contains("user=alice failed 1 time from 10.0.0.0/24"));
+        verify(logger).warn(contains("user=alice failed 2 times from 10.0.0.0/24"));
+    }
+
+    @Test
+    void rejected_CapsNumberOfGroups() {
+        AuthEventLog log = new AuthEventLog(logger, AuthEventLog.Verbosity.FAILURES, 10000);
+
+        for (int i = 0; i < AuthEventLog.MAX_GROUPS + 10; i++) {
+            log.rejected("user" + i, "10.0.0.1", AuthOutcome.BAD_PASSWORD);
+        }
+        assertEquals(AuthEventLog.MAX_GROUPS, log.pendingGroups());
+
+        log.flush(System.currentTimeMillis());
+
+        verify(logger).warn(contains("10 more failed connects"));
+    }
+
+    @Test
+    void accepted_OnlyLoggedAtEventsVerbosity() {
+        new AuthEventLog(logger, AuthEventLog.Verbosity.FAILURES, 10000).accepted("alice", "10.0.0.1", true);
+        verify(logger, never()).info(anyString());
+
+        new AuthEventLog(logger, AuthEventLog.Verbosity.EVENTS, 10000).accepted("alice", "10.0.0.1", true);
+        verify(logger).info("ModuleRTMPPlaybackAuthentication: auth result=accepted user=alice ip=10.0.0.1 "
+                + "securityTokenOverridden=true");
+    }
+
+    @Test
+    void accepted_SkippedWhenInfoDisabled() {
+        when(logger.isInfoEnabled()).thenReturn(false);
+        AuthEventLog log = new AuthEventLog(logger, AuthEventLog.Verbosity.VERBOSE, 10000);
+
+        log.accepted("alice", "10.0.0.1", false);
+        log.verbose("detail");
+
+        assertFalse(log.isVerbose());
+        verify(logger, never()).info(anyString());
+    }
+
+    @Test
+    void off_LogsNothing() {
+        AuthEventLog log = new AuthEventLog(logger, AuthEventLog.Verbosity.OFF, 10000);
+
+        log.rejected("alice", "10.0.0.1", AuthOutcome.BAD_PASSWORD);
+        log.flush(System.currentTimeMillis());
+
+        verify(logger, never()).warn(anyString());
+    }
+
+    @Test
+    void verbosity_ParsesCaseInsensitively() {
+        assertEquals(AuthEventLog.Verbosity.VERBOSE, AuthEventLog.Verbosity.parse(" verbose ", null));
+        assertEquals(AuthEventLog.Verbosity.EVENTS,
+                AuthEventLog.Verbosity.parse("loud", AuthEventLog.Verbosity.EVENTS));
+    }
+
+    @Test
+    void subnet_GroupsIpv4AndIpv6Networks() {
+        assertEquals("10.1.2.0/24", AuthEventLog.subnet("10.1.2.3"));
+        assertEquals("2001:db8:1:2::/64", AuthEventLog.subnet("2001:db8:1:2:aa:bb:cc:dd"));
+        assertEquals("2001:db8::1", AuthEventLog.subnet("2001:db8::1"));
+        assertEquals("unknown", AuthEventLog.subnet(null));
+    }
+}
@@ -0,0 +1,94 @@
+package com.wowza.wms.plugin.security;
+
+import com.wowza.wms.http.IHTTPRequest;
+import com.wowza.wms.http.IHTTPResponse;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AuthMetricsTest {
+
+    private final AuthMetrics metrics = new AuthMetrics("_defaultVHost_/live/_definst_");
+
+    @AfterEach
+    void tearDown() {
+        metrics.unregister();
+    }
+
+    @Test
+    void recordConnect_CountsOutcomes() {
+        long start = System.nanoTime();
+        metrics.recordConnect(AuthOutcome.ACCEPTED, start);
+        metrics.recordConnect(AuthOutcome.ACCEPTED, start);
+        metrics.recordConnect(AuthOutcome.BAD_PASSWORD, start);
+        metrics.recordConnect(AuthOutcome.UNKNOWN_USER, start);
+
+        assertEquals(2, metrics.getAcceptedCount());
+        assertEquals(2, metrics.getRejectedCount());
+        assertEquals(1, metrics.getBadPasswordCount());
+        assertEquals(4, metrics.connectLatency().count());
+    }
+
+    @Test
+    void writePrometheus_ListsRegisteredApplications() {
+        metrics.setLoadedUsers(() -> 42);
+        metrics.recordConnect(AuthOutcome.ACCEPTED, System.nanoTime());
+        metrics.recordReload(true, 2_000_000);
+        metrics.register(false);
+
+        StringBuilder out = new StringBuilder();
+        AuthMetrics.writePrometheus(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("# TYPE rtmp_auth_connects_total counter\n"));
+        assertTrue(text.contains(
+                "rtmp_auth_connects_total{app=\"_defaultVHost_/live/_definst_\",outcome=\"accepted\"} 1\n"));
+        assertTrue(text.contains("rtmp_auth_reloads_total{app=\"_defaultVHost_/live/_definst_\",result=\"ok\"} 1\n"));
+        assertTrue(text.contains("rtmp_auth_users{app=\"_defaultVHost_/live/_definst_\"} 42\n"));
+        assertTrue(text.contains("rtmp_auth_connect_seconds_count{app=\"_defaultVHost_/live/_definst_\"} 1\n"));
+        assertTrue(text.contains("rtmp_auth_connect_seconds{app=\"_defaultVHost_/live/_definst_\",quantile=\"0.99\"}"));
+
+        metrics.unregister();
+        StringBuilder after = new StringBuilder();
+        AuthMetrics.writePrometheus(after);
+        assertFalse(after.toString().contains("_defaultVHost_/live/_definst_"));
+    }
+
+    @Test
+    void register_ExposesMBean() throws Exception {
+        metrics.recordConnect(AuthOutcome.THROTTLED, System.nanoTime());
+        metrics.register(true);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(AuthMetrics.JMX_DOMAIN + ":type=RTMPPlaybackAuthentication,name="
+                + ObjectName.quote("_defaultVHost_/live/_definst_"));
+        assertEquals(1L, server.getAttribute(name, "ThrottledCount"));
+
+        metrics.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void httpProvider_WritesPrometheusText() {
+        metrics.register(false);
+        IHTTPRequest request = mock(IHTTPRequest.class);
+        IHTTPResponse response = mock(IHTTPResponse.class);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        when(response.getOutputStream()).thenReturn(body);
+
+        new HTTPProviderAuthMetrics().onHTTPRequest(null, request, response);
+
+        verify(response).setHeader("Content-Type", HTTPProviderAuthMetrics.CONTENT_TYPE);
+        assertTrue(new String(body.toByteArray(), StandardCharsets.UTF_8)
+                .contains("rtmp_auth_users{app=\"_defaultVHost_/live/_definst_\"} 0"));
+    }
+}
@@ -0,0 +1,156 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class BlockingExecutorsTest {
+
+    private static final String PACKAGE = BlockingExecutors.class.getPackage().getName();
+
+    /**
+     * Run {@code threads + queueSize + 1} blocked tasks and check that the
+     * last one is rejected while the others are running or waiting
+     */
+    private static void assertBounded(Executor executor, Method waitingCount, boolean virtual) throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger completed = new AtomicInteger();
+        AtomicInteger virtualThreads = new AtomicInteger();
+        Runnable task = () -> {
+            if (Thread.currentThread().getName().startsWith("test-blocking") && isVirtual(Thread.currentThread())) {
+                virtualThreads.incrementAndGet();
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            completed.incrementAndGet();
+        };
+        for (int i = 0; i < 5; i++) {
+            executor.execute(task);
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, waitingCount.invoke(executor));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(task));
+
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (completed.get() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(5, completed.get());
+        assertEquals(0, waitingCount.invoke(executor));
+        assertEquals(virtual ? 5 : 0, virtualThreads.get());
+    }
+
+    private static boolean isVirtual(Thread thread) {
+        try {
+            return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            return false; // before Java 21
+        }
+    }
+
+    @Test
+    void platformVersionRunsBoundedPools() throws Exception {
+        assertEquals("platform threads", BlockingExecutors.mode());
+        assertFalse(BlockingExecutors.isVirtual());
+
+        BlockingExecutor executor = BlockingExecutors.bounded("test-blocking", 2, 3);
+        try {
+            assertBounded(executor, BlockingExecutor.class.getDeclaredMethod("waitingCount"), false);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void startsDaemonThreadsAndUnboundedExecutors() throws Exception {
+        CompletableFuture<Boolean> daemon = new CompletableFuture<>();
+        Thread t = BlockingExecutors.start("test-blocking-watcher", () -> daemon.complete(Thread.currentThread().isDaemon()));
+        assertTrue(daemon.get(5, TimeUnit.SECONDS));
+        assertEquals("test-blocking-watcher", t.getName());
+
+        ExecutorService unbounded = BlockingExecutors.unbounded("test-blocking-http");
+        try {
+            assertEquals("ok", CompletableFuture.supplyAsync(() -> "ok", unbounded).get(5, TimeUnit.SECONDS));
+        } finally {
+            unbounded.shutdown();
+        }
+    }
+
+    /**
+     * The tests run from target/classes, where the JVM ignores
+     * META-INF/versions. Load the package again with the Java 21 classes
+     * taking precedence, the way the multi-release jar does.
+     */
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    void java21VersionRunsTasksOnVirtualThreads() throws Exception {
+        Path classes = Paths.get(BlockingExecutors.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path versioned = classes.resolve("META-INF/versions/21");
+        assumeTrue(Files.isDirectory(versioned), "built without the java21 profile");
+
+        ClassLoader loader = new ClassLoader(getClass().getClassLoader()) {
+            @Override
+            protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+                if (!name.startsWith(PACKAGE + ".")) {
+                    return super.loadClass(name, resolve);
+                }
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> c = findLoadedClass(name);
+                    if (c == null) {
+                        String file = name.replace('.', '/') + ".class";
+                        Path source = Files.exists(versioned.resolve(file)) ? versioned.resolve(file)
+                                : classes.resolve(file);
+                        try (InputStream in = Files.newInputStream(source)) {
+                            byte[] bytes = in.readAllBytes();
+                            c = defineClass(name, bytes, 0, bytes.length);
+                        } catch (IOException e) {
+                            throw new ClassNotFoundException(name, e);
+                        }
+                    }
+                    return c;
+                }
+            }
+        };
+        Class<?> executors = loader.loadClass(PACKAGE + ".BlockingExecutors");
+        Method mode = executors.getDeclaredMethod("mode");
+        mode.setAccessible(true);
+        assertEquals("virtual threads", mode.invoke(null));
+
+        Method bounded = executors.getDeclaredMethod("bounded", String.class, int.class, int.class);
+        bounded.setAccessible(true);
+        Executor executor = (Executor) bounded.invoke(null, "test-blocking", 2, 3);
+        Class<?> base = loader.loadClass(PACKAGE + ".BlockingExecutor");
+        Method waitingCount = base.getDeclaredMethod("waitingCount");
+        waitingCount.setAccessible(true);
+        Method shutdown = base.getDeclaredMethod("shutdown");
+        shutdown.setAccessible(true);
+        try {
+            assertBounded(executor, waitingCount, true);
+        } finally {
+            shutdown.invoke(executor);
+        }
+    }
+}
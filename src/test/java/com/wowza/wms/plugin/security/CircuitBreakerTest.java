@@ -0,0 +1,38 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000);
+
+        assertFalse(breaker.recordFailure(0));
+        breaker.recordSuccess();
+        assertFalse(breaker.recordFailure(0));
+        assertFalse(breaker.recordFailure(0));
+        assertTrue(breaker.recordFailure(0));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(999));
+    }
+
+    @Test
+    void halfOpenAllowsOneProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000);
+        breaker.recordFailure(0);
+
+        assertTrue(breaker.allowRequest(1000));
+        assertFalse(breaker.allowRequest(1000), "Only one probe at a time");
+        assertTrue(breaker.recordFailure(1000), "Failed probe reopens the circuit");
+        assertFalse(breaker.allowRequest(1500));
+
+        assertTrue(breaker.allowRequest(2000));
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(2000));
+    }
+}
@@ -0,0 +1,327 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterReplicatorTest {
+
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final List<ClusterReplicator> nodes = new ArrayList<>();
+    private final List<String> changed = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> revoked = Collections.synchronizedList(new ArrayList<>());
+
+    @AfterEach
+    void stopNodes() {
+        nodes.forEach(ClusterReplicator::stop);
+    }
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+
+    private ClusterReplicator node(String id, InetSocketAddress address, byte[] key) {
+        ClusterReplicator node = new ClusterReplicator(id, address, key, 1000);
+        node.addListener(new ClusterReplicator.Listener() {
+            @Override
+            public void credentialsChanged(String username) {
+                changed.add(id + ":" + username);
+            }
+
+            @Override
+            public void revoked(String username) {
+                revoked.add(id + ":" + username);
+            }
+        });
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * Start a fully meshed cluster on loopback
+     */
+    private List<ClusterReplicator> cluster(int size) throws IOException {
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            addresses.add(freeAddress());
+        }
+        List<ClusterReplicator> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            List<InetSocketAddress> peers = new ArrayList<>(addresses);
+            peers.remove(i);
+            ClusterReplicator node = node("node" + i, addresses.get(i), KEY);
+            node.start(peers);
+            result.add(node);
+        }
+        return result;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not reached in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private static boolean hasPassword(ClusterReplicator node, String username, String password) {
+        ClusterReplicator.Entry entry = node.lookup(username);
+        return entry != null && password.equals(entry.password);
+    }
+
+    @Test
+    void changesReachEveryPeer() throws Exception {
+        List<ClusterReplicator> cluster = cluster(3);
+
+        assertEquals(1, cluster.get(0).publish(Map.of("alice", "secret"), Collections.emptyList()));
+
+        await(() -> hasPassword(cluster.get(1), "alice", "secret") && hasPassword(cluster.get(2), "alice", "secret"));
+        await(() -> changed.contains("node1:alice") && changed.contains("node2:alice"));
+        assertFalse(changed.contains("node0:alice"), "the publishing node already knows");
+    }
+
+    @Test
+    void unchangedValuesAreNotSentAgain() throws Exception {
+        List<ClusterReplicator> cluster = cluster(2);
+        cluster.get(0).publish(Map.of("alice", "secret"), Collections.emptyList());
+        await(() -> hasPassword(cluster.get(1), "alice", "secret"));
+
+        // node1's own file catching up with the change must not echo it back
+        assertEquals(0, cluster.get(1).publish(Map.of("alice", "secret"), Collections.emptyList()));
+    }
+
+    @Test
+    void removalsAndRevocationsPropagate() throws Exception {
+        List<ClusterReplicator> cluster = cluster(3);
+        cluster.get(0).publish(Map.of("alice", "secret"), Collections.emptyList());
+        await(() -> hasPassword(cluster.get(2), "alice", "secret"));
+
+        cluster.get(1).publish(Collections.emptyMap(), List.of("alice"));
+        cluster.get(1).publishRevocation("bob");
+
+        await(() -> cluster.get(0).lookup("alice").isRemoved() && cluster.get(2).lookup("alice").isRemoved());
+        await(() -> revoked.contains("node0:bob") && revoked.contains("node2:bob"));
+    }
+
+    @Test
+    void concurrentChangesConverge() throws Exception {
+        List<ClusterReplicator> cluster = cluster(3);
+
+        cluster.get(0).publish(Map.of("alice", "from0"), Collections.emptyList());
+        cluster.get(2).publish(Map.of("alice", "from2"), Collections.emptyList());
+
+        await(() -> {
+            String first = cluster.get(0).lookup("alice").password;
+            return cluster.stream().allMatch(n -> n.lookup("alice") != null && first.equals(n.lookup("alice").password));
+        });
+        // Same version on both sides, so the higher node id wins everywhere
+        assertEquals("from2", cluster.get(1).lookup("alice").password);
+    }
+
+    @Test
+    void laggingNodeCatchesUpFromSnapshot() throws Exception {
+        InetSocketAddress a = freeAddress();
+        InetSocketAddress b = freeAddress();
+        InetSocketAddress c = freeAddress();
+        ClusterReplicator nodeA = node("a", a, KEY);
+        nodeA.start(List.of(b, c));
+        ClusterReplicator nodeB = node("b", b, KEY);
+        nodeB.start(List.of(a, c));
+
+        // c is down while these are made
+        nodeA.publish(Map.of("alice", "one"), Collections.emptyList());
+        nodeA.publish(Map.of("bob", "two"), List.of("carol"));
+        await(() -> hasPassword(nodeB, "bob", "two"));
+
+        ClusterReplicator nodeC = node("c", c, KEY);
+        nodeC.start(List.of(a, b));
+        await(() -> hasPassword(nodeC, "alice", "one") && hasPassword(nodeC, "bob", "two")
+                && nodeC.lookup("carol") != null && nodeC.lookup("carol").isRemoved());
+
+        // Later deltas continue from the snapshot
+        nodeA.publish(Map.of("dave", "three"), Collections.emptyList());
+        await(() -> hasPassword(nodeC, "dave", "three"));
+    }
+
+    @Test
+    void framesWithTheWrongKeyAreIgnored() throws Exception {
+        InetSocketAddress a = freeAddress();
+        InetSocketAddress b = freeAddress();
+        ClusterReplicator nodeA = node("a", a, KEY);
+        nodeA.start(List.of(b));
+        ClusterReplicator intruder = node("b", b, "another key, another cluster!!!".getBytes(StandardCharsets.US_ASCII));
+        intruder.start(List.of(a));
+
+        intruder.publish(Map.of("alice", "stolen"), Collections.emptyList());
+        intruder.publishRevocation("bob");
+        Thread.sleep(300);
+
+        assertNull(nodeA.lookup("alice"));
+        assertTrue(revoked.isEmpty());
+    }
+
+    @Test
+    void passwordsAreNotSentInTheClear() throws Exception {
+        InetSocketAddress a = freeAddress();
+        try (ServerSocket wire = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            ClusterReplicator nodeA = node("a", a, KEY);
+            nodeA.start(List.of(new InetSocketAddress(InetAddress.getLoopbackAddress(), wire.getLocalPort())));
+            wire.setSoTimeout(5000);
+            // The first connection is a's snapshot request; the delta follows
+            wire.accept().close();
+            nodeA.publish(Map.of("alice", "plaintext-secret"), Collections.emptyList());
+            byte[] frame;
+            try (Socket socket = wire.accept()) {
+                socket.setSoTimeout(5000);
+                frame = socket.getInputStream().readNBytes(512);
+            }
+
+            String seen = new String(frame, StandardCharsets.ISO_8859_1);
+            assertTrue(frame.length > 0);
+            assertFalse(seen.contains("plaintext-secret"));
+            assertFalse(seen.contains("alice"));
+        }
+    }
+
+    @Test
+    void connectionsFromHostsThatAreNotPeersAreRefused() throws Exception {
+        InetSocketAddress a = freeAddress();
+        InetSocketAddress b = freeAddress();
+        ClusterReplicator nodeA = node("a", a, KEY);
+        // Documentation address: nothing on loopback is a peer of a
+        nodeA.start(List.of(new InetSocketAddress("192.0.2.1", b.getPort())));
+        ClusterReplicator nodeB = node("b", b, KEY);
+        nodeB.start(List.of(a));
+
+        nodeB.publish(Map.of("alice", "secret"), Collections.emptyList());
+        nodeB.publishRevocation("bob");
+        Thread.sleep(300);
+
+        assertNull(nodeA.lookup("alice"));
+        assertTrue(revoked.isEmpty());
+    }
+
+    @Test
+    void largeChangesAndSnapshotsAreSplitIntoFrames() throws Exception {
+        InetSocketAddress a = freeAddress();
+        InetSocketAddress b = freeAddress();
+        InetSocketAddress c = freeAddress();
+        ClusterReplicator nodeA = node("a", a, KEY);
+        nodeA.start(List.of(b, c));
+        ClusterReplicator nodeB = node("b", b, KEY);
+        nodeB.start(List.of(a, c));
+
+        // About 1 MB of updates, more than one frame holds
+        Map<String, String> upserts = new HashMap<>();
+        String password = "x".repeat(200);
+        for (int i = 0; i < 5000; i++) {
+            upserts.put("user" + i, password);
+        }
+        assertEquals(5000, nodeA.publish(upserts, Collections.emptyList()));
+        await(() -> nodeB.entryCount() == 5000);
+
+        // c catches up from a snapshot of the same size
+        ClusterReplicator nodeC = node("c", c, KEY);
+        nodeC.start(List.of(a, b));
+        await(() -> nodeC.entryCount() == 5000);
+
+        nodeA.publish(Map.of("user0", "changed"), Collections.emptyList());
+        await(() -> hasPassword(nodeB, "user0", "changed") && hasPassword(nodeC, "user0", "changed"));
+    }
+
+    @Test
+    void pruneDropsEntriesTheFileHasCaughtUpWith() throws Exception {
+        InetSocketAddress a = freeAddress();
+        InetSocketAddress b = freeAddress();
+        InetSocketAddress c = freeAddress();
+        ClusterReplicator nodeA = node("a", a, KEY);
+        nodeA.start(List.of(b));
+        ClusterReplicator nodeB = node("b", b, KEY);
+        nodeB.start(List.of(a, c));
+        nodeA.publish(Map.of("alice", "secret", "bob", "new"), List.of("carol"));
+        await(() -> nodeB.entryCount() == 3);
+
+        // The local file has bob and carol's removal, but not alice's change yet
+        Map<String, String> file = Map.of("alice", "old", "bob", "new");
+        assertEquals(2, nodeB.prune(file::get));
+        assertNull(nodeB.lookup("bob"));
+        assertNull(nodeB.lookup("carol"));
+        assertTrue(hasPassword(nodeB, "alice", "secret"));
+
+        Map<String, String> caughtUp = Map.of("alice", "secret", "bob", "new");
+        assertEquals(1, nodeB.prune(caughtUp::get));
+        assertEquals(0, nodeB.entryCount());
+
+        // c never heard of a's change, so its older version must not come back
+        ClusterReplicator nodeC = node("c", c, KEY);
+        nodeC.start(List.of(b));
+        nodeC.publish(Map.of("alice", "stale"), Collections.emptyList());
+        nodeC.publish(Map.of("dave", "fresh"), Collections.emptyList());
+        await(() -> hasPassword(nodeB, "dave", "fresh"));
+        assertNull(nodeB.lookup("alice"));
+    }
+
+    @Test
+    void ownChangesArePrunedOnlyOnceEveryPeerHasThem() throws Exception {
+        InetSocketAddress a = freeAddress();
+        InetSocketAddress b = freeAddress();
+        InetSocketAddress c = freeAddress();
+        ClusterReplicator nodeA = node("a", a, KEY);
+        nodeA.start(List.of(b, c));
+        ClusterReplicator nodeB = node("b", b, KEY);
+        nodeB.start(List.of(a, c));
+
+        // c is down and misses a change and a revocation, while a's file
+        // catches up with its own change at once
+        nodeA.publish(Map.of("alice", "one"), Collections.emptyList());
+        nodeA.publishRevocation("carol");
+        await(() -> hasPassword(nodeB, "alice", "one") && revoked.contains("b:carol"));
+        Map<String, String> file = Map.of("alice", "one");
+        assertEquals(0, nodeA.prune(file::get));
+        assertTrue(hasPassword(nodeA, "alice", "one"), "c can only learn it from a's snapshot");
+
+        // Catching up at start and after a gap both read a's snapshot
+        ClusterReplicator nodeC = node("c", c, KEY);
+        nodeC.start(List.of(a, b));
+        await(() -> hasPassword(nodeC, "alice", "one") && revoked.contains("c:carol"));
+
+        // Once c has read the snapshot nobody needs a's copy any more
+        await(() -> nodeA.prune(file::get) == 1);
+        assertEquals(0, nodeA.entryCount());
+
+        // Deltas continue from the snapshot, and the revocation it carried was
+        // acted on once
+        nodeA.publish(Map.of("bob", "two"), Collections.emptyList());
+        await(() -> hasPassword(nodeC, "bob", "two"));
+        assertEquals(1, revoked.stream().filter("c:carol"::equals).count());
+    }
+
+    @Test
+    void parsesPeerLists() {
+        List<InetSocketAddress> peers = ClusterReplicator.parsePeers(" 10.0.0.1:1940, edge2:1941 ,");
+
+        assertEquals(2, peers.size());
+        assertEquals(1940, peers.get(0).getPort());
+        assertEquals("edge2", peers.get(1).getHostString());
+        assertEquals(1940, ClusterReplicator.parseAddress("1940").getPort());
+        assertTrue(ClusterReplicator.parseAddress("1940").getAddress().isLoopbackAddress(),
+                "a bare port must not listen on every interface");
+    }
+}
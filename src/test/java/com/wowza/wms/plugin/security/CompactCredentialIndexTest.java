@@ -0,0 +1,125 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactCredentialIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static CompactCredentialIndex build(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return CompactCredentialIndex.build(bytes, 0, bytes.length, "test");
+    }
+
+    @Test
+    void build_ParsesSameFormatsAsLineParser() {
+        CompactCredentialIndex index = build("user1:pass1\r\n"
+                + "  user2 \t pass2  \n"
+                + "# comment:line\n"
+                + "\n"
+                + "invalidline\n"
+                + "user3 : pass:with:colons\r"
+                + "user1:replaced\n");
+
+        Map<String, String> map = index.toMap();
+        assertEquals(3, index.size());
+        assertEquals("replaced", map.get("user1"), "Later lines win");
+        assertEquals("pass2", map.get("user2"));
+        assertEquals("pass:with:colons", map.get("user3"));
+        assertNull(map.get("invalidline"));
+    }
+
+    @Test
+    void find_MatchesUnicodeUsernamesAndPasswords() {
+        CompactCredentialIndex index = build("josé:päss€😀\n");
+
+        int entry = index.find("josé");
+        assertTrue(entry >= 0);
+        assertTrue(index.passwordEquals(entry, "päss€😀"));
+        assertFalse(index.passwordEquals(entry, "päss€"));
+        assertFalse(index.passwordEquals(entry, "päss€😀x"));
+        assertEquals(-1, index.find("jose"));
+    }
+
+    @Test
+    void find_LargeIndexResolvesEveryUser() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            text.append("viewer").append(i).append(' ').append("secret").append(i).append('\n');
+        }
+        CompactCredentialIndex index = build(text.toString());
+
+        assertEquals(50000, index.size());
+        for (int i = 0; i < 50000; i += 997) {
+            int entry = index.find("viewer" + i);
+            assertTrue(entry >= 0);
+            assertTrue(index.passwordEquals(entry, "secret" + i));
+        }
+        assertEquals(-1, index.find("viewer50000"));
+    }
+
+    @Test
+    void open_WritesSidecarAndMapsItUntilSourceChanges() throws Exception {
+        Path source = tempDir.resolve("publish.password");
+        Files.writeString(source, "user1:pass1\n");
+
+        CompactCredentialIndex first = CompactCredentialIndex.open(source, true);
+        Path sidecar = CompactCredentialIndex.sidecarPath(source);
+        assertTrue(Files.exists(sidecar));
+        assertTrue(first.isMapped());
+        long sidecarModified = Files.getLastModifiedTime(sidecar).toMillis();
+
+        CompactCredentialIndex second = CompactCredentialIndex.open(source, true);
+        assertTrue(second.find("user1") >= 0);
+        assertEquals(sidecarModified, Files.getLastModifiedTime(sidecar).toMillis(), "Valid sidecar is reused");
+
+        Files.writeString(source, "user1:pass1\nuser2:pass2\n");
+        CompactCredentialIndex third = CompactCredentialIndex.open(source, true);
+        assertEquals(2, third.size());
+        assertTrue(first.find("user1") >= 0, "Old mapping stays readable after the sidecar is replaced");
+    }
+
+    @Test
+    void open_WithoutSidecarUsesOffHeapIndex() throws Exception {
+        Path source = tempDir.resolve("publish.password");
+        Files.writeString(source, "user1:pass1\n");
+
+        CompactCredentialIndex index = CompactCredentialIndex.open(source, false);
+
+        assertFalse(index.isMapped());
+        assertFalse(Files.exists(CompactCredentialIndex.sidecarPath(source)));
+    }
+
+    @Test
+    void findAndCompare_DoNotAllocate() {
+        CompactCredentialIndex index = build("user1:pass1\nuser2:pass2\n");
+        String user = "user2";
+        String pass = "pass2";
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        int hits = 0;
+        for (int i = 0; i < 20000; i++) {
+            hits += index.passwordEquals(index.find(user), pass) ? 1 : 0;
+        }
+
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < 100000; i++) {
+            hits += index.passwordEquals(index.find(user), pass) ? 1 : 0;
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+        assertEquals(120000, hits);
+        assertTrue(allocated < 4096, "Lookups allocated " + allocated + " bytes");
+    }
+}
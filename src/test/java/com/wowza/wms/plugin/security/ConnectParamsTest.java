@@ -0,0 +1,98 @@
+package com.wowza.wms.plugin.security;
+
+import com.wowza.wms.amf.AMFDataItem;
+import com.wowza.wms.amf.AMFDataList;
+import com.wowza.wms.amf.AMFDataObj;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectParamsTest {
+
+    private static AMFDataList objectParams(String username, String password) {
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        AMFDataObj credentials = new AMFDataObj();
+        credentials.put("username", username);
+        credentials.put("password", password);
+        params.add(credentials);
+        return params;
+    }
+
+    @Test
+    void locate_FindsCredentialObject() {
+        AMFDataList params = objectParams("user1", "pass1");
+
+        int location = ConnectParams.locate(params);
+
+        assertEquals(1, location);
+        assertEquals("user1", ConnectParams.username(params, location));
+        assertEquals("pass1", ConnectParams.password(params, location));
+    }
+
+    @Test
+    void locate_FallsBackToPositionalStrings() {
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add(1234);
+
+        int location = ConnectParams.locate(params);
+
+        assertEquals(ConnectParams.POSITIONAL, location);
+        assertEquals("user1", ConnectParams.username(params, location));
+        assertEquals("1234.0", ConnectParams.password(params, location), "Numbers keep their toString() form");
+    }
+
+    @Test
+    void locate_IgnoresMissingOrEmptyCredentials() {
+        AMFDataList onlyCommand = new AMFDataList();
+        onlyCommand.add(new AMFDataObj());
+        AMFDataList emptyPassword = new AMFDataList();
+        emptyPassword.add(new AMFDataObj());
+        emptyPassword.add("user1");
+        emptyPassword.add("");
+        AMFDataList nullPassword = new AMFDataList();
+        nullPassword.add(new AMFDataObj());
+        nullPassword.add("user1");
+        nullPassword.add(new AMFDataItem());
+
+        assertEquals(ConnectParams.NONE, ConnectParams.locate(null));
+        assertEquals(ConnectParams.NONE, ConnectParams.locate(onlyCommand));
+        assertEquals(ConnectParams.NONE, ConnectParams.locate(emptyPassword));
+        assertEquals(ConnectParams.NONE, ConnectParams.locate(nullPassword));
+        assertNull(ConnectParams.username(onlyCommand, ConnectParams.NONE));
+    }
+
+    @Test
+    void extraction_DoesNotAllocate() {
+        AMFDataList object = objectParams("user1", "pass1");
+        AMFDataList positional = new AMFDataList();
+        positional.add(new AMFDataObj());
+        positional.add("user2");
+        positional.add("pass2");
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        int length = 0;
+        for (int i = 0; i < 20000; i++) {
+            length += extract(object) + extract(positional);
+        }
+
+        long before = threads.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < 100000; i++) {
+            length += extract(object) + extract(positional);
+        }
+        long allocated = threads.getThreadAllocatedBytes(tid) - before;
+
+        assertEquals(120000 * 20, length);
+        assertTrue(allocated < 4096, "Extraction allocated " + allocated + " bytes");
+    }
+
+    private static int extract(AMFDataList params) {
+        int location = ConnectParams.locate(params);
+        return ConnectParams.username(params, location).length() + ConnectParams.password(params, location).length();
+    }
+}
@@ -0,0 +1,43 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialDiffTest {
+
+    private static CredentialSnapshot snapshot(String text) {
+        return new CredentialSnapshot(1, "test", 0,
+                CompactCredentialIndex.build(text.getBytes(StandardCharsets.UTF_8), 0, 0, null));
+    }
+
+    @Test
+    void reportsAddedRemovedAndChangedUsers() {
+        CredentialDiff diff = CredentialDiff.between(snapshot("alice a\nbob b\ncarol c\n"),
+                snapshot("bob b\ncarol changed\ndave d\nerin e\n"));
+
+        assertEquals(2, diff.addedCount());
+        assertEquals(Set.of("dave", "erin"), new HashSet<>(diff.added()));
+        assertEquals(List.of("alice"), diff.removed());
+        assertEquals(List.of("carol"), diff.changed());
+        assertEquals("+2 added, -1 removed, ~1 changed", diff.toString());
+    }
+
+    @Test
+    void identicalFilesHaveNoDifference() {
+        assertTrue(CredentialDiff.between(snapshot("alice a\nbob b\n"), snapshot("bob b\nalice a\n")).isEmpty());
+    }
+
+    @Test
+    void firstLoadOnlyAddsUsers() {
+        CredentialDiff diff = CredentialDiff.between(CredentialSnapshot.EMPTY, snapshot("alice a\nbob b\n"));
+
+        assertEquals(2, diff.addedCount());
+        assertTrue(diff.removed().isEmpty());
+    }
+}
@@ -0,0 +1,187 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialSourceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void reload_PublishesNewSnapshotWithNextGeneration() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1:pass1\n");
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+        source.start();
+        CredentialSnapshot first = source.snapshot();
+        assertEquals(1, first.getGeneration());
+        assertEquals("pass1", first.getPassword("user1"));
+
+        Files.writeString(file, "user1:changed\nuser2 pass2\n");
+        CredentialSnapshot second = source.reload();
+
+        assertEquals(2, second.getGeneration());
+        assertEquals("changed", second.getPassword("user1"));
+        assertEquals("pass1", first.getPassword("user1"), "Published snapshots must never change");
+    }
+
+    @Test
+    void reload_MissingFileKeepsPreviousSnapshot() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1:pass1\n");
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+        source.start();
+
+        Files.delete(file);
+        CredentialSnapshot after = source.reload();
+
+        assertEquals(1, after.getGeneration());
+        assertTrue(after.contains("user1"));
+    }
+
+    @Test
+    void reload_HandsTheSameDiffToEveryListener() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1:pass1\nuser2 pass2\n");
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+        List<CredentialDiff> diffs = new ArrayList<>();
+        source.addReloadListener((previous, current, diff, durationNanos) -> diffs.add(diff));
+        source.addReloadListener((previous, current, diff, durationNanos) -> diffs.add(diff));
+        source.start();
+        assertSame(CredentialDiff.NONE, diffs.get(0), "The first load has nothing to compare with");
+
+        Files.writeString(file, "user1:changed\nuser3 pass3\n");
+        source.reload();
+
+        assertEquals(4, diffs.size());
+        CredentialDiff diff = diffs.get(2);
+        assertSame(diff, diffs.get(3));
+        assertEquals(List.of("user3"), diff.added());
+        assertEquals(List.of("user2"), diff.removed());
+        assertEquals(List.of("user1"), diff.changed());
+    }
+
+    @Test
+    void watcher_ReloadsWhenStreamRulesChange() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1:pass1\n");
+        CredentialSource source = new CredentialSource(file.toString(), true, false, 0, 50, 50);
+        source.start();
+        try {
+            assertFalse(source.snapshot().getStreamAcl().isEnforcing());
+
+            Files.writeString(tempDir.resolve("publish.password.acl"), "user1 live/*\n");
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!source.snapshot().getStreamAcl().isEnforcing() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+
+            StreamAcl acl = source.snapshot().getStreamAcl();
+            assertTrue(acl.isAllowed("user1", "live/a"));
+            assertFalse(acl.isAllowed("user1", "vod/a"));
+        } finally {
+            source.stop();
+        }
+    }
+
+    @Test
+    void reload_PicksUpAddressRangesAndKeepsThemWhenMalformed() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1:pass1\n");
+        Path ranges = tempDir.resolve("publish.password.ips");
+        Files.writeString(ranges, "allow 10.0.0.0/8\n");
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+        source.start();
+        IpFilter first = source.snapshot().getIpFilter();
+        assertTrue(first.isAllowed("10.1.1.1"));
+        assertFalse(first.isAllowed("11.1.1.1"));
+
+        Files.writeString(ranges, "allow 10.0.0.0/8\nallow 11.0.0.0/88\n");
+        CredentialSnapshot next = source.reload();
+
+        assertEquals(2, next.getGeneration());
+        assertSame(first, next.getIpFilter(), "a malformed file keeps the previous ranges");
+
+        Files.delete(ranges);
+        assertFalse(source.reload().getIpFilter().isEnforcing());
+    }
+
+    @Test
+    void start_MalformedAddressRangesDenyEveryoneUntilFixed() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1:pass1\n");
+        Path ranges = tempDir.resolve("publish.password.ips");
+        Files.writeString(ranges, "deny 10.0.0.0/88\n");
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+        source.start();
+
+        IpFilter filter = source.snapshot().getIpFilter();
+        assertSame(IpFilter.DENY_ALL, filter, "a malformed first load must not allow everyone");
+        assertFalse(filter.isAllowed("11.1.1.1"));
+        assertFalse(filter.isAllowed("not-an-address"));
+
+        Files.writeString(ranges, "deny 10.0.0.0/8\n");
+        filter = source.reload().getIpFilter();
+        assertFalse(filter.isAllowed("10.1.1.1"));
+        assertTrue(filter.isAllowed("11.1.1.1"));
+    }
+
+    @Test
+    void rulesOnly_LoadsRangesWithoutThePasswordFile() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(tempDir.resolve("publish.password.ips"), "allow 10.0.0.0/8\n");
+        CredentialSource source = CredentialSource.rulesOnly(file.toString(), false, 0, 1000);
+        source.start();
+
+        CredentialSnapshot snapshot = source.snapshot();
+        assertEquals(1, snapshot.getGeneration());
+        assertEquals(0, snapshot.size());
+        assertTrue(snapshot.getIpFilter().isAllowed("10.1.1.1"));
+        assertFalse(snapshot.getIpFilter().isAllowed("11.1.1.1"));
+
+        Files.writeString(file, "user1:pass1\n");
+        assertEquals(0, source.reload().size(), "the password file is never read");
+    }
+
+    @Test
+    void reload_ConcurrentRequestsAreMerged() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("user").append(i).append(":pass").append(i).append('\n');
+        }
+        Files.writeString(file, content);
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<CredentialSnapshot>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(pool.submit(() -> {
+                go.await();
+                return source.reload();
+            }));
+        }
+        go.countDown();
+        for (Future<CredentialSnapshot> result : results) {
+            assertEquals(20000, result.get().size());
+        }
+        pool.shutdown();
+
+        assertTrue(source.snapshot().getGeneration() < threads,
+                "Concurrent reloads should share parses, got generation " + source.snapshot().getGeneration());
+    }
+}
@@ -0,0 +1,102 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialVerifierTest {
+
+    private CredentialVerifier verifier;
+
+    @AfterEach
+    void tearDown() {
+        if (verifier != null) {
+            verifier.shutdown();
+        }
+    }
+
+    private static CredentialSnapshot snapshot(long generation, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return new CredentialSnapshot(generation, "test", 0,
+                CompactCredentialIndex.build(bytes, 0, bytes.length, "test"));
+    }
+
+    @Test
+    void verify_RunsOffCallerThreadThenHitsCache() throws Exception {
+        verifier = new CredentialVerifier(2, 16, 60000, 100);
+        CredentialSnapshot snapshot = snapshot(1, "alice:" + PasswordHash.hash("secret", 20000) + "\n");
+        int entry = snapshot.find("alice");
+        assertTrue(snapshot.isHashed(entry));
+
+        CompletableFuture<AuthOutcome> first = verifier.verify(snapshot, entry, "alice", "secret");
+        assertEquals(AuthOutcome.ACCEPTED, first.get(10, TimeUnit.SECONDS));
+        assertEquals(1, verifier.cachedCount());
+
+        CompletableFuture<AuthOutcome> second = verifier.verify(snapshot, entry, "alice", "secret");
+        assertTrue(second.isDone(), "Cached verification completes immediately");
+        assertEquals(AuthOutcome.ACCEPTED, second.join());
+
+        CompletableFuture<AuthOutcome> wrong = verifier.verify(snapshot, entry, "alice", "wrong");
+        assertEquals(AuthOutcome.BAD_PASSWORD, wrong.get(10, TimeUnit.SECONDS),
+                "Cache only covers the verified password");
+    }
+
+    @Test
+    void verify_CacheIsDroppedForNewGeneration() throws Exception {
+        verifier = new CredentialVerifier(1, 16, 60000, 100);
+        String line = "alice:" + PasswordHash.hash("secret", 1000) + "\n";
+        CredentialSnapshot first = snapshot(1, line);
+        assertEquals(AuthOutcome.ACCEPTED,
+                verifier.verify(first, first.find("alice"), "alice", "secret").get(10, TimeUnit.SECONDS));
+
+        CredentialSnapshot reloaded = snapshot(2, line);
+        CompletableFuture<AuthOutcome> result = verifier.verify(reloaded, reloaded.find("alice"), "alice", "secret");
+
+        assertNotSame(AuthOutcome.ACCEPTED.future(), result);
+        assertEquals(AuthOutcome.ACCEPTED, result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void verify_UnsupportedSchemeIsRejected() {
+        verifier = new CredentialVerifier(1, 16, 60000, 100);
+        String bcrypt = "$2b$12$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234";
+        CredentialSnapshot snapshot = snapshot(1, "bob:" + bcrypt + "\n");
+
+        assertEquals(AuthOutcome.BAD_PASSWORD, verifier.verify(snapshot, snapshot.find("bob"), "bob", bcrypt).join());
+    }
+
+    @Test
+    void unsupportedHashes_AreFoundWhenTheSnapshotIsLoaded() throws Exception {
+        String bcrypt = "$2b$12$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234";
+        CredentialSnapshot snapshot = snapshot(1, "alice:" + PasswordHash.hash("secret", 1000) + "\nbob:" + bcrypt
+                + "\ncarol:$argon2id$v=19$m=65536,t=3,p=4$c2FsdA$aGFzaA\ndave:plain\n");
+
+        List<String> sample = new ArrayList<>();
+        assertEquals(2, snapshot.unsupportedHashes(sample, 1));
+        assertEquals(1, sample.size());
+        assertTrue(sample.get(0).equals("bob") || sample.get(0).equals("carol"));
+    }
+
+    @Test
+    void verify_FullQueueIsOverloadedNotBadPassword() throws Exception {
+        verifier = new CredentialVerifier(1, 1, 0, 0);
+        CredentialSnapshot snapshot = snapshot(1, "alice:" + PasswordHash.hash("secret", 200000) + "\n");
+        int entry = snapshot.find("alice");
+
+        AuthOutcome rejected = null;
+        for (int i = 0; i < 8 && rejected == null; i++) {
+            CompletableFuture<AuthOutcome> result = verifier.verify(snapshot, entry, "alice", "secret");
+            if (result.isDone()) {
+                rejected = result.join();
+            }
+        }
+        assertEquals(AuthOutcome.OVERLOADED, rejected);
+    }
+}
@@ -0,0 +1,75 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CredentialWatcherTest {
+
+    @TempDir
+    Path tempDir;
+
+    private CredentialWatcher watcher;
+
+    @AfterEach
+    void tearDown() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    void watchService_FiresOnceAfterBurstOfWrites() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1 pass1\n");
+        AtomicInteger reloads = new AtomicInteger();
+        CountDownLatch fired = new CountDownLatch(1);
+        watcher = new CredentialWatcher(file.toString(), 200, 50, true, () -> {
+            reloads.incrementAndGet();
+            fired.countDown();
+        });
+        watcher.start();
+
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(file, "user1 pass" + i + "\n");
+        }
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS), "Change should be reported");
+        Thread.sleep(400);
+        assertEquals(1, reloads.get(), "Burst of writes should collapse into one reload");
+    }
+
+    @Test
+    void polling_DetectsChangeWithoutWatchService() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1 pass1\n");
+        CountDownLatch fired = new CountDownLatch(1);
+        watcher = new CredentialWatcher(file.toString(), 0, 20, false, fired::countDown);
+        watcher.start();
+        assertFalse(watcher.isUsingWatchService());
+
+        Files.writeString(file, "user1 pass1\nuser2 pass2\n");
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS), "Polling should detect the size change");
+    }
+
+    @Test
+    void stop_EndsWatcherThread() throws IOException {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "user1 pass1\n");
+        watcher = new CredentialWatcher(file.toString(), 0, 20, true, () -> { });
+        watcher.start();
+        assertTrue(watcher.isRunning());
+        watcher.stop();
+        assertFalse(watcher.isRunning());
+    }
+}
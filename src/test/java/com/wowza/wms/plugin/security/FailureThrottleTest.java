@@ -0,0 +1,98 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FailureThrottleTest {
+
+    @Test
+    void recordFailure_BlocksAfterMaxFailuresWithExponentialBackoff() {
+        FailureThrottle throttle = new FailureThrottle(64, 3, 10000, 1000, 8000);
+        long now = 1_000_000;
+
+        assertFalse(throttle.recordFailure("10.0.0.1", now));
+        assertFalse(throttle.recordFailure("10.0.0.1", now));
+        assertTrue(throttle.recordFailure("10.0.0.1", now), "Third failure starts the backoff");
+        assertTrue(throttle.isBlocked("10.0.0.1", now));
+        assertEquals(now + 1000, throttle.blockedUntil("10.0.0.1", now));
+        assertFalse(throttle.isBlocked("10.0.0.1", now + 1000));
+
+        // Bucket is still empty, so the next failure blocks again for twice as long
+        assertTrue(throttle.recordFailure("10.0.0.1", now + 1000));
+        assertEquals(now + 3000, throttle.blockedUntil("10.0.0.1", now + 1000));
+        assertTrue(throttle.recordFailure("10.0.0.1", now + 3000));
+        assertEquals(now + 7000, throttle.blockedUntil("10.0.0.1", now + 3000));
+        assertTrue(throttle.recordFailure("10.0.0.1", now + 7000));
+        assertEquals(now + 15000, throttle.blockedUntil("10.0.0.1", now + 7000), "Backoff is capped");
+    }
+
+    @Test
+    void recordFailure_TokensRefillOverTime() {
+        FailureThrottle throttle = new FailureThrottle(64, 2, 1000, 1000, 8000);
+        long now = 1_000_000;
+
+        throttle.recordFailure("user", now);
+        assertFalse(throttle.recordFailure("user", now + 1000), "A token was refilled in between");
+        assertTrue(throttle.recordFailure("user", now + 1000));
+    }
+
+    @Test
+    void recordSuccess_ClearsKey() {
+        FailureThrottle throttle = new FailureThrottle(64, 1, 10000, 1000, 8000);
+        throttle.recordFailure("user", 0);
+        assertTrue(throttle.isBlocked("user", 0));
+
+        throttle.recordSuccess("user");
+
+        assertFalse(throttle.isBlocked("user", 0));
+    }
+
+    @Test
+    void table_StaysBoundedUnderManyDistinctKeys() {
+        FailureThrottle throttle = new FailureThrottle(256, 1, 10000, 5, 5);
+        for (int i = 0; i < 100000; i++) {
+            throttle.recordFailure("10.0." + (i >> 8) + "." + (i & 0xFF), i * 10L);
+        }
+
+        assertEquals(256, throttle.capacity());
+        assertTrue(throttle.isBlocked("10.0.390.159", 999990), "Most recent offender is tracked");
+    }
+
+    @Test
+    void recordFailure_DoesNotEvictBlockedKeys() {
+        FailureThrottle throttle = new FailureThrottle(4, 1, 10000, 60000, 60000);
+        for (int i = 0; i < 1000; i++) {
+            throttle.recordFailure("key" + i, 0);
+        }
+
+        assertEquals(4, throttle.blockedCount(0), "Table is full of blocked keys");
+        assertTrue(throttle.isBlocked("key0", 0) || throttle.isBlocked("key1", 0) || throttle.isBlocked("key2", 0)
+                || throttle.isBlocked("key3", 0), "Early offenders keep their slots");
+    }
+
+    @Test
+    void recordFailure_ConcurrentFailuresAreAllCounted() throws Exception {
+        FailureThrottle throttle = new FailureThrottle(64, 1000, 1_000_000, 1000, 8000);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.execute(() -> {
+                for (int i = 0; i < 124; i++) {
+                    throttle.recordFailure("shared", 0);
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertFalse(throttle.isBlocked("shared", 0), "992 of 1000 tokens used");
+
+        for (int i = 0; i < 8; i++) {
+            throttle.recordFailure("shared", 0);
+        }
+        assertTrue(throttle.isBlocked("shared", 0));
+    }
+}
@@ -0,0 +1,122 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHittersTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private static List<String> keys(List<HeavyHitters.Entry> entries) {
+        List<String> keys = new ArrayList<>();
+        for (HeavyHitters.Entry e : entries) {
+            keys.add(e.key);
+        }
+        return keys;
+    }
+
+    @Test
+    void findsHeavyKeysAmongManyDistinctOnes() {
+        HeavyHitters hitters = new HeavyHitters(12, 60000, clock::get);
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            int r = random.nextInt(100);
+            if (r < 10) {
+                hitters.record("bob");
+            } else if (r < 15) {
+                hitters.record("eve");
+            } else if (r < 18) {
+                hitters.record("mallory");
+            } else {
+                // A flood of names seen once or twice
+                hitters.record("user" + random.nextInt(1_000_000));
+            }
+        }
+
+        List<HeavyHitters.Entry> top = hitters.top(3);
+        assertEquals(List.of("bob", "eve", "mallory"), keys(top));
+        // Count-min never underestimates, and the error stays small
+        assertTrue(top.get(0).count >= 19_000 && top.get(0).count < 22_000, top.toString());
+        assertTrue(hitters.estimate("bob") >= top.get(0).count);
+        assertTrue(hitters.estimate("nobody") < 2_000);
+    }
+
+    @Test
+    void countsSlideOutOfTheWindow() {
+        HeavyHitters hitters = new HeavyHitters(4, 60000, clock::get);
+        for (int i = 0; i < 50; i++) {
+            hitters.record("old");
+        }
+        clock.addAndGet(30_000);
+        for (int i = 0; i < 20; i++) {
+            hitters.record("new");
+        }
+
+        assertEquals(List.of("old", "new"), keys(hitters.top(5)));
+        assertEquals(50, hitters.estimate("old"));
+
+        clock.addAndGet(35_000);
+        assertEquals(List.of("new"), keys(hitters.top(5)));
+        assertEquals(0, hitters.estimate("old"));
+
+        clock.addAndGet(60_000);
+        assertTrue(hitters.top(5).isEmpty());
+        assertEquals(60_000, hitters.windowMillis());
+    }
+
+    @Test
+    void heavyKeyDisplacesTheLightestTrackedOne() {
+        HeavyHitters hitters = new HeavyHitters(2, 60000, clock::get);
+        hitters.record("a");
+        hitters.record("b");
+        hitters.record("b");
+        for (int i = 0; i < 5; i++) {
+            hitters.record("c");
+        }
+
+        assertEquals(List.of("c", "b"), keys(hitters.top(2)));
+        assertEquals("c=5", hitters.top(1).get(0).toString());
+    }
+
+    @Test
+    void longKeysAreTrackedByTheirPrefix() {
+        HeavyHitters hitters = new HeavyHitters(4, 60000, clock::get);
+        String prefix = "x".repeat(HeavyHitters.MAX_KEY_LENGTH);
+        hitters.record(prefix + "1");
+        hitters.record(prefix + "2");
+
+        List<HeavyHitters.Entry> top = hitters.top(4);
+        assertEquals(1, top.size());
+        assertEquals(HeavyHitters.MAX_KEY_LENGTH, top.get(0).key.length());
+        assertEquals(2, top.get(0).count);
+    }
+
+    @Test
+    void concurrentRecordsAreAllCounted() throws Exception {
+        HeavyHitters hitters = new HeavyHitters(8, 60000, clock::get);
+        int threads = 8;
+        int perThread = 20_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            String own = "thread" + t;
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    hitters.record(i % 2 == 0 ? "shared" : own);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+
+        List<HeavyHitters.Entry> top = hitters.top(1);
+        assertEquals("shared", top.get(0).key);
+        assertTrue(top.get(0).count >= threads * perThread / 2);
+    }
+}
@@ -0,0 +1,199 @@
+package com.wowza.wms.plugin.security;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the store against a local stub of the credential service
+ */
+class HttpCredentialStoreTest {
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private volatile int status = 200;
+    private volatile long delayMillis;
+    private volatile CountDownLatch gate;
+    private volatile String answerOverride;
+    private HttpCredentialStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/auth", this::handle);
+        server.start();
+        store = newStore(2000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+        server.stop(0);
+    }
+
+    private HttpCredentialStore newStore(long timeoutMillis) {
+        URI url = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/auth");
+        HttpCredentialStore s = new HttpCredentialStore(url, timeoutMillis, 60000, 10000, 600000, 100, 3, 30000,
+                clock::get);
+        s.start(null);
+        return s;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        try {
+            CountDownLatch g = gate;
+            if (g != null) {
+                g.await(5, TimeUnit.SECONDS);
+            }
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        String answer;
+        if (answerOverride != null) {
+            answer = answerOverride;
+        } else if (body.contains("\"username\":\"alice\"") && body.contains("\"password\":\"secret\"")) {
+            answer = "{\"authenticated\": true}";
+        } else if (body.contains("\"username\":\"alice\"")) {
+            answer = "{\"authenticated\": false}";
+        } else {
+            answer = "{\"authenticated\": false, \"reason\": \"unknown_user\"}";
+        }
+        byte[] bytes = answer.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, status == 200 ? bytes.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (status == 200) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private AuthOutcome check(String username, String password) throws Exception {
+        return store.authenticate(username, password).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void authenticate_CachesAcceptedPasswords() throws Exception {
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+
+        assertEquals(1, requests.get());
+        assertTrue(store.authenticate("alice", "secret").isDone(), "Cache hits complete immediately");
+    }
+
+    @Test
+    void authenticate_WrongPasswordIsCheckedRemotelyAndKeepsValidLogin() throws Exception {
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+        assertEquals(AuthOutcome.BAD_PASSWORD, check("alice", "guess"));
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void authenticate_OnlyTopLevelFieldsOfAWellFormedAnswerCount() throws Exception {
+        answerOverride = "{\"profile\": {\"authenticated\": true}, \"authenticated\": false}";
+        assertEquals(AuthOutcome.BAD_PASSWORD, check("bob", "a"), "Nested fields are not the answer");
+
+        answerOverride = "{\"note\": \"\\\"authenticated\\\": true\", \"authenticated\": false, "
+                + "\"details\": [{\"reason\": \"unknown_user\"}]}";
+        assertEquals(AuthOutcome.BAD_PASSWORD, check("carol", "a"), "Text inside strings is not a field");
+
+        answerOverride = "{\"authenticated\": false, \"authenticated\": true}";
+        assertEquals(AuthOutcome.ERROR, check("dave", "a"), "Duplicate keys are refused");
+
+        answerOverride = "{\"authenticated\": true} trailing";
+        assertEquals(AuthOutcome.ERROR, check("erin", "a"));
+    }
+
+    @Test
+    void authenticate_CachesUnknownUsersForAnyPassword() throws Exception {
+        assertEquals(AuthOutcome.UNKNOWN_USER, check("mallory", "a"));
+        assertEquals(AuthOutcome.UNKNOWN_USER, check("mallory", "b"));
+        assertEquals(1, requests.get());
+
+        clock.addAndGet(10001);
+        assertEquals(AuthOutcome.UNKNOWN_USER, check("mallory", "c"));
+        assertEquals(2, requests.get(), "Negative entries expire after their own TTL");
+    }
+
+    @Test
+    void authenticate_CoalescesConcurrentChecks() throws Exception {
+        gate = new CountDownLatch(1);
+        List<CompletableFuture<AuthOutcome>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(store.authenticate("alice", "secret"));
+        }
+        gate.countDown();
+
+        for (CompletableFuture<AuthOutcome> result : results) {
+            assertEquals(AuthOutcome.ACCEPTED, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void authenticate_TimeoutRejectsWithoutCaching() throws Exception {
+        store.stop();
+        store = newStore(200);
+        delayMillis = 1000;
+
+        assertEquals(AuthOutcome.ERROR, check("alice", "secret"));
+        assertEquals(0, store.cachedCount());
+    }
+
+    @Test
+    void circuit_OpensAndFallsBackToLastKnownAnswer() throws Exception {
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+        clock.addAndGet(60001);
+        status = 500;
+
+        // Expired but not stale: served while the service is failing
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+        }
+        assertEquals(AuthOutcome.ERROR, check("bob", "secret"), "Nothing cached for bob");
+        assertEquals(CircuitBreaker.State.OPEN, store.circuitState());
+        int before = requests.get();
+
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+        assertEquals(before, requests.get(), "Open circuit does not call the service");
+
+        // After the open period one probe goes through and closes the circuit
+        status = 200;
+        clock.addAndGet(30001);
+        assertEquals(AuthOutcome.ACCEPTED, check("alice", "secret"));
+        assertEquals(CircuitBreaker.State.CLOSED, store.circuitState());
+    }
+
+    @Test
+    void requestBody_EscapesJson() {
+        assertEquals("{\"username\":\"a\\\"b\",\"password\":\"c\\\\d\\n\\u0001\"}",
+                HttpCredentialStore.requestBody("a\"b", "c\\d\n\u0001"));
+    }
+}
@@ -0,0 +1,150 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpFilterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static IpFilter filter(String... lines) {
+        return IpFilter.parse(Arrays.asList(lines));
+    }
+
+    @Test
+    void missingFileAllowsEveryAddress() throws Exception {
+        IpFilter filter = IpFilter.load(tempDir.resolve("publish.password.ips"));
+
+        assertSame(IpFilter.ALLOW_ALL, filter);
+        assertFalse(filter.isEnforcing());
+        assertTrue(filter.isAllowed("10.0.0.1"));
+        assertTrue(filter.isAllowed(null));
+    }
+
+    @Test
+    void mostSpecificRangeDecides() {
+        IpFilter filter = filter("# CDN egress", "allow 52.95.0.0/16, 10.1.2.3", "deny 52.95.12.0/24",
+                "allow 52.95.12.128/25");
+
+        assertTrue(filter.isAllowed("52.95.0.1"));
+        assertTrue(filter.isAllowed("52.95.255.255"));
+        assertFalse(filter.isAllowed("52.95.12.1"));
+        assertTrue(filter.isAllowed("52.95.12.200"));
+        assertTrue(filter.isAllowed("10.1.2.3"));
+        assertFalse(filter.isAllowed("10.1.2.4"));
+        assertFalse(filter.isAllowed("52.96.0.1"), "outside every allow range");
+        assertEquals(3, filter.allowCount());
+        assertEquals(1, filter.denyCount());
+    }
+
+    @Test
+    void denyOnlyListsRefuseJustThoseRanges() {
+        IpFilter filter = filter("deny 192.168.0.0/16", "deny 2001:db8::/32");
+
+        assertFalse(filter.isAllowed("192.168.10.20"));
+        assertTrue(filter.isAllowed("192.169.0.1"));
+        assertFalse(filter.isAllowed("2001:db8:1::5"));
+        assertTrue(filter.isAllowed("2001:db9::1"));
+        assertTrue(filter.isAllowed("not an address"));
+    }
+
+    @Test
+    void denyWinsForTheSameRange() {
+        assertFalse(filter("allow 10.0.0.0/8", "deny 10.0.0.0/8").isAllowed("10.1.1.1"));
+        assertFalse(filter("deny 10.0.0.0/8", "allow 10.0.0.0/8").isAllowed("10.1.1.1"));
+    }
+
+    @Test
+    void matchesIpv6AndMappedIpv4Addresses() {
+        IpFilter filter = filter("allow 2600:1f00::/24, ::1, 0.0.0.0/0", "deny 2600:1f18:abcd::/48");
+
+        assertTrue(filter.isAllowed("2600:1f14::1"));
+        assertTrue(filter.isAllowed("2600:1fff:ffff:ffff:ffff:ffff:ffff:ffff"));
+        assertFalse(filter.isAllowed("2600:1f18:abcd:1::1"));
+        assertFalse(filter.isAllowed("2600:2000::1"));
+        assertTrue(filter.isAllowed("::1"));
+        assertTrue(filter.isAllowed("[::1]"));
+        assertFalse(filter.isAllowed("fe80::1%eth0"));
+        assertTrue(filter.isAllowed("::ffff:203.0.113.9"), "mapped addresses use the IPv4 ranges");
+        assertTrue(filter.isAllowed("2600:1f00:0:0:0:0:0:1"));
+    }
+
+    @Test
+    void parsesAddressesStrictly() {
+        assertEquals(0xC0A80001L, IpFilter.parseV4("192.168.0.1", 0, 11));
+        assertEquals(-1, IpFilter.parseV4("192.168.0", 0, 9));
+        assertEquals(-1, IpFilter.parseV4("192.168.0.256", 0, 13));
+        assertEquals(-1, IpFilter.parseV4("1.2.3.4.5", 0, 9));
+        assertEquals(-1, IpFilter.parseV4("01234.1.1.1", 0, 11));
+
+        String full = "2001:db8:0:0:0:0:0:1";
+        assertTrue(IpFilter.isValidV6(full, 0, full.length()));
+        assertEquals(0x20010db800000000L, IpFilter.parseV6(full, 0, full.length(), true));
+        assertEquals(1L, IpFilter.parseV6(full, 0, full.length(), false));
+        String mapped = "::ffff:1.2.3.4";
+        assertEquals(0xffff01020304L, IpFilter.parseV6(mapped, 0, mapped.length(), false));
+        for (String bad : new String[] { ":::", "1::2::3", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "12345::",
+                "1:2:3:4:5:6:7:", ":1::", "::1.2.3", "g::1", "1:2:3:4:5:6:7::8" }) {
+            assertFalse(IpFilter.isValidV6(bad, 0, bad.length()), bad);
+        }
+    }
+
+    @Test
+    void rejectsMalformedFiles() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> filter("allow 10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> filter("deny 10.0.0/8"));
+        assertThrows(IllegalArgumentException.class, () -> filter("permit 10.0.0.0/8"));
+        assertThrows(IllegalArgumentException.class, () -> filter("allow 2001:db8::/129"));
+
+        Path file = tempDir.resolve("publish.password.ips");
+        Files.writeString(file, "allow 10.0.0.0/8\n");
+        assertTrue(IpFilter.load(file).isAllowed("10.2.3.4"));
+    }
+
+    @Test
+    void agreesWithALinearScanOverManyRanges() {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>(); // address, length, deny
+        for (int i = 0; i < 3000; i++) {
+            long address = random.nextInt() & 0xffffffffL;
+            int length = 8 + random.nextInt(25);
+            boolean deny = random.nextInt(4) == 0;
+            ranges.add(new long[] { address, length, deny ? 1 : 0 });
+            lines.add((deny ? "deny " : "allow ") + (address >>> 24) + "." + ((address >>> 16) & 255) + "."
+                    + ((address >>> 8) & 255) + "." + (address & 255) + "/" + length);
+        }
+        IpFilter filter = IpFilter.parse(lines);
+
+        for (int i = 0; i < 20000; i++) {
+            // Half of the probes land inside a loaded range
+            long address = random.nextInt() & 0xffffffffL;
+            if (i % 2 == 0) {
+                long[] r = ranges.get(random.nextInt(ranges.size()));
+                address = (r[0] & ~(0xffffffffL >>> r[1])) | (address & (0xffffffffL >>> r[1]));
+            }
+            int bestLength = -1;
+            boolean denied = false;
+            for (long[] r : ranges) {
+                long mask = (0xffffffffL << (32 - r[1])) & 0xffffffffL;
+                if ((address & mask) == (r[0] & mask) && (r[1] > bestLength || (r[1] == bestLength && r[2] == 1))) {
+                    denied = r[1] > bestLength ? r[2] == 1 : denied || r[2] == 1;
+                    bestLength = (int) r[1];
+                }
+            }
+            String ip = (address >>> 24) + "." + ((address >>> 16) & 255) + "." + ((address >>> 8) & 255) + "."
+                    + (address & 255);
+            assertEquals(bestLength >= 0 && !denied, filter.isAllowed(ip), ip);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonReaderTest {
+
+    @Test
+    void parseObject_ReadsNestedValuesInOrder() {
+        Map<String, Object> object = JsonReader.parseObject(
+                " {\"a\": \"x\\u0041\\n\\/\", \"b\": [1, -2.5e3, true, null], \"c\": {\"d\": false}, \"e\": null} ");
+
+        assertNotNull(object);
+        assertEquals(Arrays.asList("a", "b", "c", "e"), Arrays.asList(object.keySet().toArray()));
+        assertEquals("xA\n/", object.get("a"));
+        assertEquals(Arrays.asList(new BigDecimal("1"), new BigDecimal("-2.5e3"), true, null), object.get("b"));
+        assertEquals(Boolean.FALSE, ((Map<?, ?>) object.get("c")).get("d"));
+        assertTrue(object.containsKey("e"));
+        assertNull(object.get("e"));
+    }
+
+    @Test
+    void parseObject_RefusesAnythingButOneWellFormedObject() {
+        for (String text : new String[] { null, "", "[]", "\"a\"", "{", "{}}", "{} {}", "{\"a\":1,}",
+                "{\"a\" 1}", "{a:1}", "{\"a\":01}", "{\"a\":1.}", "{\"a\":tru}", "{\"a\":\"\\x\"}",
+                "{\"a\":\"\\u12\"}", "{\"a\":\"line\nbreak\"}", "{\"a\":1,\"a\":2}",
+                "{\"a\":{\"b\":1,\"b\":1}}" }) {
+            assertNull(JsonReader.parseObject(text), String.valueOf(text));
+        }
+        assertEquals(0, JsonReader.parseObject("{}").size());
+    }
+
+    @Test
+    void parseObject_LimitsNesting() {
+        StringBuilder deep = new StringBuilder("{\"a\":");
+        for (int i = 0; i < 10000; i++) {
+            deep.append('[');
+        }
+        assertNull(JsonReader.parseObject(deep.toString()), "Deep nesting is refused, not a stack overflow");
+
+        StringBuilder ok = new StringBuilder("{\"a\":");
+        for (int i = 0; i < JsonReader.MAX_DEPTH; i++) {
+            ok.append('[');
+        }
+        for (int i = 0; i < JsonReader.MAX_DEPTH; i++) {
+            ok.append(']');
+        }
+        assertNotNull(JsonReader.parseObject(ok.append('}').toString()));
+    }
+}
@@ -0,0 +1,65 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void buckets_CoverTheLongRangeContiguously() {
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long low = LatencyHistogram.lowerBound(i);
+            assertEquals(i, LatencyHistogram.bucketOf(low), "lower bound of bucket " + i);
+            assertEquals(i, LatencyHistogram.bucketOf(LatencyHistogram.upperBound(i)), "upper bound of bucket " + i);
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    void percentile_StaysWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100000; v++) {
+            histogram.record(v * 1000);
+        }
+
+        assertEquals(100000, histogram.count());
+        assertEquals(100_000_000L, histogram.max());
+        assertWithin(50_000_000L, histogram.percentile(0.5));
+        assertWithin(99_000_000L, histogram.percentile(0.99));
+        assertEquals(100_000_000L, histogram.percentile(1.0));
+    }
+
+    @Test
+    void percentile_EmptyHistogramIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.percentile(0.99));
+        assertEquals(0, histogram.count());
+    }
+
+    @Test
+    void record_IsSafeAcrossThreads() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 25000; i++) {
+                    histogram.record(1234);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(100000, histogram.count());
+        assertEquals(100000L * 1234, histogram.sum());
+        assertWithin(1234, histogram.percentile(0.5));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 8, "expected ~" + expected + " but was " + actual);
+    }
+}
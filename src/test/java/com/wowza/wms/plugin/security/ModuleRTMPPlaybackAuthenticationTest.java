@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -22,6 +23,9 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -56,7 +60,7 @@ class ModuleRTMPPlaybackAuthenticationTest {
     void setUp() throws IOException {
         when(appInstance.getVHost()).thenReturn(vhost);
         when(appInstance.getApplication()).thenReturn(app);
-        when(vhost.getHomePath()).thenReturn(tempDir.toString());
+        lenient().when(vhost.getHomePath()).thenReturn(tempDir.toString());
         when(app.getName()).thenReturn("myApp");
 
         Path confAppDir = tempDir.resolve("conf").resolve("myApp");
@@ -69,8 +73,9 @@ class ModuleRTMPPlaybackAuthenticationTest {
         }
 
         when(appInstance.getProperties()).thenReturn(appProperties);
-        when(client.getProperties()).thenReturn(clientProperties);
-        when(client.getIp()).thenReturn("192.168.0.1");
+        // Not every test connects a client
+        lenient().when(client.getProperties()).thenReturn(clientProperties);
+        lenient().when(client.getIp()).thenReturn("192.168.0.1");
         when(appProperties.getPropertyBoolean(anyString(), anyBoolean())).thenReturn(true);
         when(appProperties.getPropertyInt(anyString(), anyInt())).thenReturn(5000);
         when(appProperties.getPropertyStr("securityPublishPasswordFile")).thenReturn("");
@@ -130,6 +135,58 @@ class ModuleRTMPPlaybackAuthenticationTest {
         verify(client).rejectConnection(anyString());
     }
 
+    @Test
+    void onConnect_UnknownUser_RejectsConnection() {
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("nobody");
+        params.add("pass1");
+
+        module.onConnect(client, function, params);
+
+        verify(client).rejectConnection(anyString());
+        verify(clientProperties, never()).setProperty(eq("authenticated"), anyBoolean());
+    }
+
+    @Test
+    void onConnect_WithHashedPassword_AcceptsFromVerifierPool() throws Exception {
+        try (BufferedWriter writer = Files.newBufferedWriter(passwordFile)) {
+            writer.write("hashed:" + PasswordHash.hash("secret", 1000) + "\n");
+        }
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("hashed");
+        params.add("secret");
+
+        module.onConnect(client, function, params);
+
+        verify(client, timeout(5000)).acceptConnection();
+        verify(clientProperties).setProperty("username", "hashed");
+        verify(client, never()).rejectConnection(anyString());
+    }
+
+    @Test
+    void onConnect_WithWrongHashedPassword_RejectsFromVerifierPool() throws Exception {
+        try (BufferedWriter writer = Files.newBufferedWriter(passwordFile)) {
+            writer.write("hashed:" + PasswordHash.hash("secret", 1000) + "\n");
+        }
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("hashed");
+        params.add(PasswordHash.hash("secret", 1000));
+
+        module.onConnect(client, function, params);
+
+        verify(client, timeout(5000)).rejectConnection(anyString());
+        verify(client, never()).acceptConnection();
+    }
+
     @Test
     void userExistsAndReloadCredentials_WorksAsExpected() throws IOException {
         module.onAppStart(appInstance);
@@ -142,6 +199,23 @@ class ModuleRTMPPlaybackAuthenticationTest {
         assertTrue(module.userExists("newUser"));
     }
 
+    @Test
+    void onAppStop_KeepsPasswordFileSharedWithOtherInstances() throws IOException {
+        ModuleRTMPPlaybackAuthentication other = new ModuleRTMPPlaybackAuthentication();
+        module.onAppStart(appInstance);
+        other.onAppStart(appInstance);
+
+        module.onAppStop(appInstance);
+        assertTrue(other.userExists("user1"));
+
+        try (BufferedWriter writer = Files.newBufferedWriter(passwordFile)) {
+            writer.write("newUser newPass\n");
+        }
+        other.reloadCredentials();
+        assertTrue(other.userExists("newUser"));
+        other.onAppStop(appInstance);
+    }
+
     @Test
     void getPasswordFilePath_DefaultAndCustomBehavior() {
         module.onAppStart(appInstance);
@@ -155,11 +229,445 @@ class ModuleRTMPPlaybackAuthenticationTest {
         assertEquals("/etc/custom.pwd", module.getPasswordFilePath());
     }
 
+    /**
+     * Credential store loaded by class name through rtmpPlaybackCredentialStore
+     */
+    public static class OnlyAliceStore implements CredentialStore {
+        @Override
+        public void start(IApplicationInstance appInstance) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public CompletableFuture<AuthOutcome> authenticate(String username, String password) {
+            return ("alice".equals(username) ? AuthOutcome.ACCEPTED : AuthOutcome.UNKNOWN_USER).future();
+        }
+
+        @Override
+        public String describe() {
+            return "only alice";
+        }
+    }
+
+    @Test
+    void onConnect_WithCustomCredentialStore_UsesStore() {
+        lenient().when(appProperties.getPropertyStr("rtmpPlaybackCredentialStore"))
+                .thenReturn(OnlyAliceStore.class.getName());
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("alice");
+        params.add("anything");
+        module.onConnect(client, function, params);
+
+        verify(client, never()).rejectConnection(anyString());
+        verify(clientProperties).setProperty("username", "alice");
+        assertTrue(module.getAuthStats().contains("Credential store: only alice"));
+        assertTrue(module.getLoadedCredentials().isEmpty(), "Password file is not loaded");
+    }
+
+    @Test
+    void onConnect_WithCustomCredentialStore_StillEnforcesAddressRanges() throws IOException {
+        Files.write(passwordFile.resolveSibling("publish.password.ips"), "deny 192.168.0.0/24\n".getBytes());
+        lenient().when(appProperties.getPropertyStr("rtmpPlaybackCredentialStore"))
+                .thenReturn(OnlyAliceStore.class.getName());
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("alice");
+        params.add("anything");
+        module.onConnect(client, function, params);
+
+        verify(client).rejectConnection("Client address not allowed");
+        assertTrue(module.getLoadedCredentials().isEmpty(), "Password file is not loaded");
+    }
+
+    @Test
+    void onConnect_WithReconnectTicket_AcceptsWithoutPassword() throws IOException {
+        lenient().when(appProperties.getPropertyBoolean("rtmpPlaybackRevokeOnReload", true)).thenReturn(false);
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add("pass1");
+        module.onConnect(client, function, params);
+
+        ArgumentCaptor<String> ticket = ArgumentCaptor.forClass(String.class);
+        verify(clientProperties).setProperty(eq("rtmpAuthTicket"), ticket.capture());
+        verify(client).call("onAuthTicket", null, ticket.getValue());
+
+        // The password file no longer knows user1, the ticket still works
+        Files.write(passwordFile, "user2 pass2\n".getBytes());
+        module.reloadCredentials();
+        assertFalse(module.userExists("user1"));
+
+        AMFDataList reconnect = new AMFDataList();
+        reconnect.add(new AMFDataObj());
+        reconnect.add("user1");
+        reconnect.add(ticket.getValue());
+        module.onConnect(client, function, reconnect);
+        verify(client, never()).rejectConnection(anyString());
+        verify(clientProperties).setProperty("rtmpAuthMethod", "ticket");
+
+        module.revokeUser("user1");
+        module.onConnect(client, function, reconnect);
+        verify(client).rejectConnection(anyString());
+    }
+
+    @Test
+    void onConnect_WithPasswordThatLooksLikeTicket_ChecksThePassword() throws IOException {
+        Files.write(passwordFile, "legacy rt1.secret\n".getBytes());
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("legacy");
+        params.add("rt1.secret");
+        module.onConnect(client, function, params);
+
+        verify(client, never()).rejectConnection(anyString());
+        verify(clientProperties).setProperty("rtmpAuthMethod", "standard");
+
+        AMFDataList wrong = new AMFDataList();
+        wrong.add(new AMFDataObj());
+        wrong.add("legacy");
+        wrong.add("rt1.wrong");
+        module.onConnect(client, function, wrong);
+        verify(client).rejectConnection(anyString());
+    }
+
+    @Test
+    void play_WithStreamRules_DeniesStreamsOutsideUsersRules() throws IOException {
+        Files.write(passwordFile.resolveSibling("publish.password.acl"),
+                "user1 live/user1, shared/*\n".getBytes());
+        module.onAppStart(appInstance);
+        when(clientProperties.getPropertyStr("username")).thenReturn("user1");
+        AuthMetrics metrics = AuthMetrics.registered("_defaultVHost_/myApp/_definst_");
+
+        module.play(client, function, playParams("live/user1?token=abc"));
+        module.play(client, function, playParams("shared/news"));
+        assertEquals(0, metrics.getPlayDeniedCount());
+
+        module.play(client, function, playParams("live/user2"));
+        assertEquals(1, metrics.getPlayDeniedCount());
+    }
+
+    @Test
+    void onConnect_FromAddressOutsideAllowedRanges_RejectsBeforeCredentialCheck() throws IOException {
+        Files.write(passwordFile.resolveSibling("publish.password.ips"), "allow 192.168.0.0/24\n".getBytes());
+        module.onAppStart(appInstance);
+        IClient outside = mock(IClient.class);
+        when(outside.getIp()).thenReturn("10.0.0.9");
+        AuthMetrics metrics = AuthMetrics.registered("_defaultVHost_/myApp/_definst_");
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add("pass1");
+        module.onConnect(client, function, params);
+        module.onConnect(outside, function, params);
+
+        verify(client, never()).rejectConnection(anyString());
+        verify(outside).rejectConnection("Client address not allowed");
+        verify(outside, never()).getProperties();
+        assertEquals(1, metrics.getIpDeniedCount());
+        assertTrue(module.getAuthStats().contains("Address ranges: 1 allowed, 0 denied"));
+    }
+
+    @Test
+    void onConnect_CountsRejectedUsersAndAddressesAsTopClients() {
+        module.onAppStart(appInstance);
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add("wrong");
+        module.onConnect(client, function, params);
+        module.onConnect(client, function, params);
+
+        assertTrue(module.getAuthStats().contains("Top rejected: users [user1=2], IPs [192.168.0.1=2]"));
+        StringBuilder json = new StringBuilder();
+        AuthMetrics.writeTopClients(json);
+        assertTrue(json.toString().contains("{\"name\":\"_defaultVHost_/myApp/_definst_\""));
+        assertTrue(json.toString().contains("\"rejectedUsers\":[{\"key\":\"user1\",\"count\":2}]"));
+    }
+
+    @Test
+    void onConnect_SuccessDoesNotResetTheAddressThrottle() {
+        lenient().when(appProperties.getPropertyInt("rtmpPlaybackThrottleMaxFailures", 5)).thenReturn(3);
+        module.onAppStart(appInstance);
+        AMFDataList guess = new AMFDataList();
+        guess.add(new AMFDataObj());
+        guess.add("user2");
+        guess.add("wrong");
+        AMFDataList valid = new AMFDataList();
+        valid.add(new AMFDataObj());
+        valid.add("user1");
+        valid.add("pass1");
+
+        module.onConnect(client, function, guess);
+        module.onConnect(client, function, guess);
+        module.onConnect(client, function, valid);
+        module.onConnect(client, function, guess);
+        verify(client, never()).rejectConnection("Too many failed authentication attempts, retry later");
+
+        // Third failure from this address within the refill interval
+        module.onConnect(client, function, valid);
+        verify(client).rejectConnection("Too many failed authentication attempts, retry later");
+    }
+
+    @Test
+    void onConnect_UnknownUsersOnlyChargeTheAddress() {
+        lenient().when(appProperties.getPropertyInt("rtmpPlaybackThrottleMaxFailures", 5)).thenReturn(1);
+        module.onAppStart(appInstance);
+        AMFDataList unknown = new AMFDataList();
+        unknown.add(new AMFDataObj());
+        unknown.add("nobody");
+        unknown.add("guess");
+
+        module.onConnect(client, function, unknown);
+
+        String stats = module.getAuthStats();
+        assertTrue(stats.contains("Throttled IPs: 1"), stats);
+        assertTrue(stats.contains("Throttled users: 0"), stats);
+    }
+
+    private static AMFDataList playParams(String streamName) {
+        AMFDataList params = new AMFDataList();
+        params.add("play");
+        params.add(0);
+        params.add(new AMFDataObj());
+        params.add(streamName);
+        return params;
+    }
+
+    @Test
+    void onConnect_BeyondSessionLimit_RejectsUntilASessionEnds() {
+        lenient().when(appProperties.getPropertyInt("rtmpPlaybackMaxSessionsPerUser", 0)).thenReturn(1);
+        module.onAppStart(appInstance);
+        IClient second = mock(IClient.class);
+        when(second.getProperties()).thenReturn(new WMSProperties());
+        when(second.getIp()).thenReturn("192.168.0.2");
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add("pass1");
+        module.onConnect(client, function, params);
+        module.onConnect(second, function, params);
+
+        verify(client, never()).rejectConnection(anyString());
+        verify(second).rejectConnection("Too many concurrent sessions for this user");
+        assertTrue(module.getAuthStats().contains("Sessions: 1"));
+
+        module.onDisconnect(client);
+        module.onConnect(second, function, params);
+        verify(second, times(1)).rejectConnection(anyString());
+    }
+
+    @Test
+    void onConnect_WhenAdmissionIsFull_ShedsWithRetryableReason() throws Exception {
+        lenient().when(appProperties.getPropertyInt("rtmpPlaybackMaxInFlight", 64)).thenReturn(1);
+        lenient().when(appProperties.getPropertyInt("rtmpPlaybackAdmissionQueue", 1024)).thenReturn(0);
+        lenient().when(appProperties.getPropertyStr("rtmpPlaybackCredentialStore"))
+                .thenReturn(BlockingStore.class.getName());
+        module.onAppStart(appInstance);
+        IClient first = mock(IClient.class);
+        when(first.getProperties()).thenReturn(new WMSProperties());
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add("pass1");
+        Thread blocked = new Thread(() -> module.onConnect(first, function, params));
+        blocked.start();
+        assertTrue(BlockingStore.entered.await(5, TimeUnit.SECONDS));
+
+        module.onConnect(client, function, params);
+        verify(client).rejectConnection(startsWith("Server busy, retry in "));
+        assertTrue(module.getAuthStats().contains("Shed: 1, In flight: 1"));
+
+        BlockingStore.release.countDown();
+        blocked.join(5000);
+        verify(first, never()).rejectConnection(anyString());
+    }
+
+    /**
+     * Credential store that holds the first check until released
+     */
+    public static class BlockingStore implements CredentialStore {
+        static final CountDownLatch entered = new CountDownLatch(1);
+        static final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void start(IApplicationInstance appInstance) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public CompletableFuture<AuthOutcome> authenticate(String username, String password) {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return AuthOutcome.ACCEPTED.future();
+        }
+
+        @Override
+        public String describe() {
+            return "blocking";
+        }
+    }
+
+    @Test
+    void onConnect_OverloadedStoreDoesNotChargeTheThrottles() {
+        lenient().when(appProperties.getPropertyInt("rtmpPlaybackThrottleMaxFailures", 5)).thenReturn(1);
+        lenient().when(appProperties.getPropertyStr("rtmpPlaybackCredentialStore"))
+                .thenReturn(OverloadedStore.class.getName());
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("user1");
+        params.add("pass1");
+        for (int i = 0; i < 3; i++) {
+            module.onConnect(client, function, params);
+        }
+
+        verify(client, times(3)).rejectConnection(startsWith("Server busy, retry in "));
+        verify(client, never()).rejectConnection("Too many failed authentication attempts, retry later");
+    }
+
+    public static class OverloadedStore implements CredentialStore {
+        @Override
+        public void start(IApplicationInstance appInstance) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public CompletableFuture<AuthOutcome> authenticate(String username, String password) {
+            return AuthOutcome.OVERLOADED.future();
+        }
+
+        @Override
+        public String describe() {
+            return "overloaded";
+        }
+    }
+
+    public static class PendingStore implements CredentialStore {
+        static volatile CompletableFuture<AuthOutcome> pending;
+
+        @Override
+        public void start(IApplicationInstance appInstance) {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public CompletableFuture<AuthOutcome> authenticate(String username, String password) {
+            return pending;
+        }
+
+        @Override
+        public String describe() {
+            return "pending";
+        }
+    }
+
+    @Test
+    void onConnect_ClientThatHangsUpBeforeVerificationLeavesNoSession() {
+        PendingStore.pending = new CompletableFuture<>();
+        lenient().when(appProperties.getPropertyStr("rtmpPlaybackCredentialStore"))
+                .thenReturn(PendingStore.class.getName());
+        module.onAppStart(appInstance);
+
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add("alice");
+        params.add("secret");
+        module.onConnect(client, function, params);
+        module.onDisconnect(client);
+        PendingStore.pending.complete(AuthOutcome.ACCEPTED);
+
+        assertTrue(module.getAuthStats().contains("Sessions: 0"), module.getAuthStats());
+        verify(client, never()).acceptConnection();
+        verify(client, never()).rejectConnection(anyString());
+
+        // The same client object connecting again is tracked as usual
+        PendingStore.pending = AuthOutcome.ACCEPTED.future();
+        module.onConnect(client, function, params);
+        assertTrue(module.getAuthStats().contains("Sessions: 1"));
+    }
+
+    @Test
+    void reloadCredentials_DisconnectsOnlyRemovedAndChangedUsers() throws IOException {
+        Files.write(passwordFile, "user1:pass1\nuser2 pass2\nuser3 pass3\n".getBytes());
+        module.onAppStart(appInstance);
+        IClient[] clients = new IClient[3];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = mock(IClient.class);
+            when(clients[i].getProperties()).thenReturn(new WMSProperties());
+            AMFDataList params = new AMFDataList();
+            params.add(new AMFDataObj());
+            params.add("user" + (i + 1));
+            params.add("pass" + (i + 1));
+            module.onConnect(clients[i], function, params);
+        }
+
+        // user1 removed, user2 changed, user3 untouched
+        Files.write(passwordFile, "user2 newpass\nuser3 pass3\nuser4 pass4\n".getBytes());
+        module.reloadCredentials();
+
+        verify(clients[0]).shutdownClient();
+        verify(clients[1]).shutdownClient();
+        verify(clients[2], never()).shutdownClient();
+        assertTrue(module.getAuthStats().contains("Sessions: 1"));
+    }
+
+    @Test
+    void onConnect_WritesEveryDecisionToTheAuditLog() throws IOException {
+        Path auditFile = tempDir.resolve("audit").resolve("auth-audit.log");
+        lenient().when(appProperties.getPropertyStr("rtmpPlaybackAuditLog")).thenReturn(auditFile.toString());
+        module.onAppStart(appInstance);
+
+        for (String password : new String[] { "pass1", "wrong" }) {
+            AMFDataList params = new AMFDataList();
+            params.add(new AMFDataObj());
+            params.add("user1");
+            params.add(password);
+            module.onConnect(client, function, params);
+        }
+        module.onAppStop(appInstance);
+
+        java.util.List<String> lines = Files.readAllLines(auditFile);
+        assertEquals(2, lines.size());
+        assertEquals("accepted", AuditLogReader.parse(lines.get(0)).get("result"));
+        assertEquals("bad-password", AuditLogReader.parse(lines.get(1)).get("reason"));
+        assertEquals("192.168.0.1", AuditLogReader.parse(lines.get(1)).get("ip"));
+    }
+
     @Test
     void getAuthStats_IncludesLoadedCountAndFilePath() {
         module.onAppStart(appInstance);
         String stats = module.getAuthStats();
         assertTrue(stats.contains("Loaded users: 2"));
         assertTrue(stats.contains("Password file:"));
+        assertTrue(stats.contains("Blocking work: " + BlockingExecutors.mode()));
     }
 }
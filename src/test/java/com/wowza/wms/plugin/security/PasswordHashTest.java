@@ -0,0 +1,45 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PasswordHashTest {
+
+    @Test
+    void hashAndVerify_RoundTrip() throws Exception {
+        String entry = PasswordHash.hash("s3cret", 1000);
+
+        assertTrue(entry.startsWith("$pbkdf2-sha256$1000$"));
+        assertTrue(PasswordHash.isHashed(entry));
+        assertTrue(PasswordHash.verify(entry, "s3cret"));
+        assertFalse(PasswordHash.verify(entry, "s3cret "));
+        assertFalse(PasswordHash.verify(entry, ""));
+    }
+
+    @Test
+    void verify_AcceptsPasslibPbkdf2Sha256() {
+        // passlib.hash.pbkdf2_sha256.using(rounds=1000, salt=b"saltsalt").hash("password")
+        String entry = "$pbkdf2-sha256$1000$c2FsdHNhbHQ$E196ZhRPzw.wA84EjzHwJO1cv/MFJdO6C/sxmUeTYqY";
+
+        assertTrue(PasswordHash.verify(entry, "password"));
+        assertFalse(PasswordHash.verify(entry, "Password"));
+    }
+
+    @Test
+    void isHashed_PlaintextAndUnsupportedSchemes() {
+        assertFalse(PasswordHash.isHashed("plainpass"));
+        assertFalse(PasswordHash.isHashed("$dollar-prefixed-plaintext"));
+        assertTrue(PasswordHash.isHashed("$2b$12$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234"));
+        assertFalse(PasswordHash.isSupported("$2b$12$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234"));
+        assertFalse(PasswordHash.verify("$2b$12$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234",
+                "$2b$12$abcdefghijklmnopqrstuuABCDEFGHIJKLMNOPQRSTUVWXYZ01234"));
+    }
+
+    @Test
+    void verify_MalformedEntriesNeverMatch() {
+        assertFalse(PasswordHash.verify("$pbkdf2-sha256$notanumber$c2FsdA$aGFzaA", "x"));
+        assertFalse(PasswordHash.verify("$pbkdf2-sha256$1000$c2FsdA", "x"));
+        assertFalse(PasswordHash.verify("$pbkdf2-sha256$1000$!!$!!", "x"));
+    }
+}
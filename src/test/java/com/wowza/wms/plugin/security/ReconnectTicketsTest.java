@@ -0,0 +1,125 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReconnectTicketsTest {
+
+    private static final String KEY_A = "a:" + Base64.getEncoder().encodeToString(new byte[] {
+            1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16 });
+    private static final String KEY_B = "b:" + Base64.getEncoder().encodeToString(new byte[] {
+            16, 15, 14, 13, 12, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1 });
+
+    private final AtomicLong clock = new AtomicLong(1_700_000_000_000L);
+
+    private ReconnectTickets tickets(String keys) {
+        return tickets(keys, "_defaultVHost_/live/_definst_");
+    }
+
+    private ReconnectTickets tickets(String keys, String audience) {
+        return new ReconnectTickets(ReconnectTickets.parseKeys(keys), 60000, audience, clock::get);
+    }
+
+    @Test
+    void acceptsTicketOfSameUserUntilExpiry() {
+        ReconnectTickets tickets = tickets(KEY_A);
+        String ticket = tickets.issue("alice");
+
+        assertTrue(ReconnectTickets.isTicket(ticket));
+        assertEquals(AuthOutcome.ACCEPTED, tickets.verify("alice", ticket));
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("bob", ticket), "Bound to the user");
+
+        clock.addAndGet(59000);
+        assertEquals(AuthOutcome.ACCEPTED, tickets.verify("alice", ticket));
+        clock.addAndGet(1000);
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", ticket));
+    }
+
+    @Test
+    void rejectsTamperedTickets() {
+        ReconnectTickets tickets = tickets(KEY_A);
+        String ticket = tickets.issue("alice");
+        String[] parts = ticket.split("\\.");
+        long expires = Long.parseLong(parts[3]);
+
+        String extended = parts[0] + "." + parts[1] + "." + parts[2] + "." + (expires + 3600) + "." + parts[4];
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", extended));
+
+        char last = ticket.charAt(ticket.length() - 2);
+        String flipped = ticket.substring(0, ticket.length() - 2) + (last == 'A' ? 'B' : 'A')
+                + ticket.charAt(ticket.length() - 1);
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", flipped));
+
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", "rt1.a.x.y.z"));
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", "rt1.a"));
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", "rt1.a.1.2.%%%"));
+    }
+
+    @Test
+    void verifiesWithOlderKeysAfterRotation() {
+        String oldTicket = tickets(KEY_A).issue("alice");
+        ReconnectTickets rotated = tickets(KEY_B + "," + KEY_A);
+        String newTicket = rotated.issue("alice");
+
+        assertTrue(newTicket.startsWith("rt1.b."));
+        assertEquals(AuthOutcome.ACCEPTED, rotated.verify("alice", oldTicket));
+        assertEquals(AuthOutcome.ACCEPTED, rotated.verify("alice", newTicket));
+        assertEquals(AuthOutcome.BAD_TICKET, tickets(KEY_B).verify("alice", oldTicket), "Retired key");
+    }
+
+    @Test
+    void randomKeysDoNotVerifyEachOther() {
+        ReconnectTickets first = tickets("");
+        ReconnectTickets second = tickets("");
+
+        assertEquals(AuthOutcome.BAD_TICKET, second.verify("alice", first.issue("alice")));
+    }
+
+    @Test
+    void ticketsFromAnotherApplicationAreRejectedWithSharedKeys() {
+        String ticket = tickets(KEY_A, "_defaultVHost_/live/_definst_").issue("alice");
+        ReconnectTickets other = tickets(KEY_A, "_defaultVHost_/vod/_definst_");
+
+        assertEquals(AuthOutcome.BAD_TICKET, other.verify("alice", ticket));
+        assertEquals(AuthOutcome.ACCEPTED, tickets(KEY_A, "_defaultVHost_/live/_definst_").verify("alice", ticket));
+    }
+
+    @Test
+    void revokeRejectsEarlierTicketsOnly() {
+        ReconnectTickets tickets = tickets(KEY_A);
+        String before = tickets.issue("alice");
+        String other = tickets.issue("bob");
+
+        tickets.revoke("alice");
+        assertEquals(AuthOutcome.BAD_TICKET, tickets.verify("alice", before));
+        assertEquals(AuthOutcome.ACCEPTED, tickets.verify("bob", other));
+
+        clock.addAndGet(1000);
+        assertEquals(AuthOutcome.ACCEPTED, tickets.verify("alice", tickets.issue("alice")));
+    }
+
+    @Test
+    void forgetsRevocationsOnceTheirTicketsExpired() {
+        ReconnectTickets tickets = tickets(KEY_A);
+        tickets.revoke("alice");
+        clock.addAndGet(61000);
+        tickets.revoke("bob");
+
+        assertEquals(1, tickets.revokedCount());
+    }
+
+    @Test
+    void rejectsMalformedKeys() {
+        assertThrows(IllegalArgumentException.class, () -> ReconnectTickets.parseKeys("nocolon"));
+        assertThrows(IllegalArgumentException.class, () -> ReconnectTickets.parseKeys("a.b:AAAAAAAAAAAAAAAAAAAAAA=="));
+        assertThrows(IllegalArgumentException.class, () -> ReconnectTickets.parseKeys("short:AAAA"));
+        List<ReconnectTickets.SigningKey> none = new ArrayList<>();
+        assertThrows(IllegalArgumentException.class, () -> new ReconnectTickets(none, 1000, "app", clock::get));
+    }
+}
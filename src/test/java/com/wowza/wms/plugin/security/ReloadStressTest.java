@@ -0,0 +1,405 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.wowza.wms.amf.AMFDataList;
+import com.wowza.wms.amf.AMFDataObj;
+import com.wowza.wms.application.IApplication;
+import com.wowza.wms.application.IApplicationInstance;
+import com.wowza.wms.application.WMSProperties;
+import com.wowza.wms.client.IClient;
+import com.wowza.wms.vhost.IVHost;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Connects and lookups racing continuous password file rewrites, watcher
+ * reloads and concurrent forced reloads.
+ *
+ * The file always contains a set of stable users, while churn users come
+ * and go and get new passwords on every rewrite. No stable user may ever be
+ * rejected or disconnected. Each scenario prints its throughput and latency
+ * percentiles. Scenarios run for {@code stress.millis} (1 second by
+ * default); {@code mvn -Pstress test} runs them for longer.
+ */
+class ReloadStressTest {
+
+    private static final long DURATION_MILLIS = Long.getLong("stress.millis", 1000);
+    private static final int STABLE_USERS = 200;
+    private static final int CHURN_USERS = 200;
+    private static final int CONNECT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int RELOAD_THREADS = 3;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void connectsNeverRejectStableUsersDuringReloads() throws Exception {
+        Path file = tempDir.resolve("conf").resolve("stress").resolve("publish.password");
+        Files.createDirectories(file.getParent());
+        Rewriter rewriter = new Rewriter(file);
+        rewriter.rewrite();
+
+        WMSProperties properties = new WMSProperties();
+        properties.setProperty("rtmpPlaybackReloadDebounce", "20");
+        properties.setProperty("rtmpPlaybackReloadPollInterval", "100");
+        properties.setProperty("rtmpPlaybackThrottleEnabled", "false");
+        properties.setProperty("rtmpPlaybackMetricsJmx", "false");
+        properties.setProperty("rtmpPlaybackLogVerbosity", "off");
+        ModuleRTMPPlaybackAuthentication module = new ModuleRTMPPlaybackAuthentication();
+        module.onAppStart(appInstance(tempDir, properties));
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder stableConnects = new LongAdder();
+        LongAdder falseRejects = new LongAdder();
+        LongAdder churnAccepted = new LongAdder();
+        LongAdder churnConnects = new LongAdder();
+        List<StubClient> stableClients = new ArrayList<>();
+        List<StubClient> churnClients = new ArrayList<>();
+        List<Runnable> workers = new ArrayList<>();
+        for (int t = 0; t < CONNECT_THREADS; t++) {
+            StubClient stable = new StubClient("10.0.1." + t);
+            StubClient churn = new StubClient("10.0.2." + t);
+            stableClients.add(stable);
+            churnClients.add(churn);
+            workers.add(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int user = random.nextInt(STABLE_USERS);
+                long rejects = stable.rejects.get();
+                long start = System.nanoTime();
+                module.onConnect(stable.client, null, connectParams(stableUser(user), stablePassword(user)));
+                latency.recordSince(start);
+                stableConnects.increment();
+                if (stable.rejects.get() != rejects) {
+                    falseRejects.increment();
+                }
+
+                // Churn users may be accepted or not, depending on the version seen
+                int other = random.nextInt(CHURN_USERS);
+                long churnRejects = churn.rejects.get();
+                module.onConnect(churn.client, null,
+                        connectParams(churnUser(other), churnPassword(other, rewriter.version.get())));
+                churnConnects.increment();
+                if (churn.rejects.get() == churnRejects) {
+                    churnAccepted.increment();
+                }
+            });
+        }
+        workers.add(rewriter::rewriteQuietly);
+        LongAdder reloadCalls = new LongAdder();
+        for (int t = 0; t < RELOAD_THREADS; t++) {
+            workers.add(() -> {
+                module.reloadCredentials();
+                reloadCalls.increment();
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(200));
+            });
+        }
+
+        long elapsed;
+        try {
+            elapsed = runFor(DURATION_MILLIS, workers);
+        } finally {
+            module.onAppStop(null);
+        }
+
+        report("connects during reloads", stableConnects.sum(), elapsed, latency,
+                rewriter.rewrites.sum() + " rewrites, " + reloadCalls.sum() + " forced reloads, "
+                        + churnAccepted.sum() + "/" + churnConnects.sum() + " churn connects accepted, "
+                        + churnClients.stream().mapToLong(c -> c.shutdowns.get()).sum()
+                        + " churn sessions revoked");
+        assertTrue(stableConnects.sum() > 0);
+        assertEquals(0, falseRejects.sum(), "stable users were rejected during reloads");
+        assertEquals(0, stableClients.stream().mapToLong(c -> c.shutdowns.get()).sum(),
+                "stable users' sessions were revoked by a reload");
+    }
+
+    @Test
+    void lookupsSeeCompleteSnapshotsDuringConcurrentReloads() throws Exception {
+        lookupsDuringReloads(false);
+    }
+
+    @Test
+    void lookupsSeeCompleteSnapshotsWithIndexFile() throws Exception {
+        lookupsDuringReloads(true);
+    }
+
+    private void lookupsDuringReloads(boolean useIndexFile) throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Rewriter rewriter = new Rewriter(file);
+        rewriter.rewrite();
+        CredentialSource source = new CredentialSource(file.toString(), true, useIndexFile, 10, 20, 100);
+        LongAdder parses = new LongAdder();
+        source.addReloadListener((previous, current, diff, durationNanos) -> parses.increment());
+        source.start();
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder lookups = new LongAdder();
+        LongAdder misses = new LongAdder();
+        LongAdder regressions = new LongAdder();
+        List<Runnable> workers = new ArrayList<>();
+        for (int t = 0; t < CONNECT_THREADS; t++) {
+            long[] lastGeneration = new long[1];
+            workers.add(() -> {
+                int user = ThreadLocalRandom.current().nextInt(STABLE_USERS);
+                long start = System.nanoTime();
+                CredentialSnapshot snapshot = source.snapshot();
+                int entry = snapshot.find(stableUser(user));
+                boolean found = entry >= 0 && snapshot.passwordEquals(entry, stablePassword(user));
+                latency.recordSince(start);
+                lookups.increment();
+                if (!found) {
+                    misses.increment();
+                }
+                // A thread must never see an older snapshot after a newer one
+                if (snapshot.getGeneration() < lastGeneration[0]) {
+                    regressions.increment();
+                }
+                lastGeneration[0] = snapshot.getGeneration();
+            });
+        }
+        workers.add(rewriter::rewriteQuietly);
+        LongAdder reloadCalls = new LongAdder();
+        for (int t = 0; t < RELOAD_THREADS; t++) {
+            workers.add(() -> {
+                source.reload();
+                reloadCalls.increment();
+            });
+        }
+
+        long elapsed;
+        try {
+            elapsed = runFor(DURATION_MILLIS, workers);
+        } finally {
+            source.stop();
+        }
+
+        report("lookups during reloads" + (useIndexFile ? " (index file)" : ""), lookups.sum(), elapsed, latency,
+                rewriter.rewrites.sum() + " rewrites, " + reloadCalls.sum() + " reload calls coalesced into "
+                        + parses.sum() + " parses, generation " + source.snapshot().getGeneration());
+        assertTrue(lookups.sum() > 0);
+        assertEquals(0, misses.sum(), "stable users were missing from a published snapshot");
+        assertEquals(0, regressions.sum(), "a thread saw the generation go backwards");
+    }
+
+    /**
+     * Run every worker on its own thread, repeatedly, for the given time
+     *
+     * @return the measured run time in nanoseconds
+     */
+    private static long runFor(long millis, List<Runnable> workers) throws InterruptedException {
+        Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        CountDownLatch ready = new CountDownLatch(workers.size());
+        CountDownLatch go = new CountDownLatch(1);
+        AtomicLong deadline = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (Runnable worker : workers) {
+            Thread thread = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                    while (System.nanoTime() - deadline.get() < 0) {
+                        worker.run();
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "stress-worker");
+            thread.start();
+            threads.add(thread);
+        }
+        ready.await();
+        long start = System.nanoTime();
+        deadline.set(start + TimeUnit.MILLISECONDS.toNanos(millis));
+        go.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (!errors.isEmpty()) {
+            AssertionError failure = new AssertionError("stress worker failed", errors.peek());
+            errors.stream().skip(1).forEach(failure::addSuppressed);
+            throw failure;
+        }
+        return elapsed;
+    }
+
+    private static void report(String scenario, long operations, long elapsedNanos, LatencyHistogram latency,
+            String details) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("[stress] %s: %d ops in %.2fs (%.0f ops/s), latency p50 %dus, p99 %dus, p99.9 %dus, "
+                + "max %dus; %s%n", scenario, operations, seconds, operations / seconds,
+                micros(latency.percentile(0.50)), micros(latency.percentile(0.99)),
+                micros(latency.percentile(0.999)), micros(latency.max()), details);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static String stableUser(int i) {
+        return "stable" + i;
+    }
+
+    private static String stablePassword(int i) {
+        return "s3cret-" + i;
+    }
+
+    private static String churnUser(int i) {
+        return "churn" + i;
+    }
+
+    private static String churnPassword(int i, long version) {
+        return "v" + version + "-" + i;
+    }
+
+    private static AMFDataList connectParams(String username, String password) {
+        AMFDataList params = new AMFDataList();
+        params.add(new AMFDataObj());
+        params.add(username);
+        params.add(password);
+        return params;
+    }
+
+    /**
+     * Rewrites the password file the way deployment tools should: write a
+     * temporary file and rename it over the old one. Stable users keep their
+     * password but move around; churn users appear, disappear and get new
+     * passwords.
+     */
+    private static final class Rewriter {
+        final Path file;
+        final Path temp;
+        final AtomicLong version = new AtomicLong();
+        final LongAdder rewrites = new LongAdder();
+
+        Rewriter(Path file) {
+            this.file = file;
+            this.temp = file.resolveSibling(file.getFileName() + ".tmp");
+        }
+
+        void rewrite() throws IOException {
+            long v = version.incrementAndGet();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            StringBuilder text = new StringBuilder("# version ").append(v).append('\n');
+            int offset = random.nextInt(STABLE_USERS);
+            for (int i = 0; i < STABLE_USERS; i++) {
+                int user = (i + offset) % STABLE_USERS;
+                char separator = random.nextBoolean() ? ':' : ' ';
+                text.append(stableUser(user)).append(separator).append(stablePassword(user)).append('\n');
+                if (user < CHURN_USERS && (user + v) % 3 != 0) {
+                    text.append(churnUser(user)).append(' ').append(churnPassword(user, v)).append('\n');
+                }
+            }
+            Files.write(temp, text.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            rewrites.increment();
+        }
+
+        void rewriteQuietly() {
+            try {
+                rewrite();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * A client that counts rejections and disconnects. Dynamic proxies are
+     * used instead of Mockito so call recording does not skew the timings.
+     */
+    private static final class StubClient {
+        final AtomicLong rejects = new AtomicLong();
+        final AtomicLong shutdowns = new AtomicLong();
+        final IClient client;
+
+        StubClient(String ip) {
+            WMSProperties properties = new WMSProperties();
+            client = proxy(IClient.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "getIp":
+                    return ip;
+                case "getProperties":
+                    return properties;
+                case "rejectConnection":
+                    rejects.incrementAndGet();
+                    return null;
+                case "shutdownClient":
+                    shutdowns.incrementAndGet();
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    return defaultValue(method.getReturnType());
+                }
+            });
+        }
+    }
+
+    private static IApplicationInstance appInstance(Path home, WMSProperties properties) {
+        IVHost vhost = proxy(IVHost.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getHomePath":
+                return home.toString();
+            case "getName":
+                return "_defaultVHost_";
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        });
+        IApplication application = proxy(IApplication.class, (proxy, method, args) -> "getName".equals(
+                method.getName()) ? "stress" : defaultValue(method.getReturnType()));
+        return proxy(IApplicationInstance.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getVHost":
+                return vhost;
+            case "getApplication":
+                return application;
+            case "getProperties":
+                return properties;
+            default:
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return Boolean.FALSE;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,123 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionTrackerTest {
+
+    @Test
+    void limitsConcurrentSessionsPerUser() {
+        SessionTracker<Object> tracker = new SessionTracker<>(2, 0, null, c -> fail("No lifetime"));
+        Object a = new Object();
+        Object b = new Object();
+        Object c = new Object();
+
+        assertTrue(tracker.open(a, "alice"));
+        assertTrue(tracker.open(b, "alice"));
+        assertFalse(tracker.open(c, "alice"));
+        assertTrue(tracker.open(c, "bob"), "Limits are per user");
+
+        tracker.close(a);
+        assertEquals(1, tracker.sessions("alice"));
+        assertTrue(tracker.open(new Object(), "alice"));
+
+        tracker.close(a);
+        assertEquals(2, tracker.sessions("alice"), "Closing twice must not free a slot");
+    }
+
+    @Test
+    void reauthenticatingClientHoldsOneSession() {
+        SessionTracker<Object> tracker = new SessionTracker<>(1, 0, null, c -> {
+        });
+        Object client = new Object();
+
+        assertTrue(tracker.open(client, "alice"));
+        tracker.close(client);
+        assertTrue(tracker.open(client, "alice"));
+        assertEquals(1, tracker.activeSessions());
+        tracker.close(client);
+        assertEquals(0, tracker.sessions("alice"));
+    }
+
+    @Test
+    void expiresSessionsAfterTheirLifetime() {
+        TimingWheel wheel = new TimingWheel(60000, 8, "test-wheel");
+        List<Object> expired = new ArrayList<>();
+        SessionTracker<Object> tracker = new SessionTracker<>(1, 60000, wheel, expired::add);
+        Object stays = new Object();
+        Object leaves = new Object();
+        tracker.open(stays, "alice");
+        tracker.open(leaves, "bob");
+        tracker.close(leaves);
+
+        wheel.advance();
+        wheel.advance();
+
+        assertEquals(List.of(stays), expired);
+        assertEquals(0, tracker.sessions("alice"), "Expiry frees the slot");
+        assertTrue(tracker.open(new Object(), "alice"));
+        tracker.close(stays);
+        assertEquals(1, tracker.sessions("alice"), "A late disconnect of an expired session changes nothing");
+    }
+
+    @Test
+    void revokeEndsOnlyThatUsersSessions() {
+        SessionTracker<Object> tracker = new SessionTracker<>(0, 0, null, c -> {
+        });
+        Object a1 = new Object();
+        Object a2 = new Object();
+        Object b = new Object();
+        tracker.open(a1, "alice");
+        tracker.open(a2, "alice");
+        tracker.open(b, "bob");
+
+        List<Object> revoked = tracker.revoke("alice");
+
+        assertEquals(2, revoked.size());
+        assertTrue(revoked.contains(a1) && revoked.contains(a2));
+        assertEquals(0, tracker.sessions("alice"));
+        assertEquals(1, tracker.activeSessions());
+        assertTrue(tracker.revoke("alice").isEmpty());
+        tracker.close(a1);
+        assertEquals(1, tracker.sessions("bob"));
+    }
+
+    @Test
+    void concurrentConnectsNeverExceedTheLimit() throws Exception {
+        SessionTracker<Object> tracker = new SessionTracker<>(3, 0, null, c -> {
+        });
+        AtomicInteger peak = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        Object client = new Object();
+                        if (tracker.open(client, "alice")) {
+                            peak.accumulateAndGet(tracker.sessions("alice"), Math::max);
+                            tracker.close(client);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertTrue(peak.get() <= 3, "Peak " + peak.get());
+        assertEquals(0, tracker.sessions("alice"));
+        assertEquals(0, tracker.activeSessions());
+    }
+}
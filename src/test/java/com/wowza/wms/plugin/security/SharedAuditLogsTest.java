@@ -0,0 +1,58 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedAuditLogsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void acquire_SharesOneWriterPerFile() throws Exception {
+        Path file = tempDir.resolve("audit.log");
+        AuditLog first = SharedAuditLogs.acquire(file, 1024, 1 << 20, 2);
+        AuditLog second = SharedAuditLogs.acquire(tempDir.resolve(".").resolve("audit.log"), 1024, 1 << 20, 2);
+
+        assertSame(first, second, "Equivalent paths resolve to the same writer");
+        assertEquals(2, SharedAuditLogs.references(first));
+
+        first.connect("10.0.0.1", "alice", AuthOutcome.ACCEPTED);
+        SharedAuditLogs.release(first);
+        assertEquals(1, SharedAuditLogs.references(second));
+        second.connect("10.0.0.2", "bob", AuthOutcome.BAD_PASSWORD);
+
+        SharedAuditLogs.release(second);
+        assertEquals(0, SharedAuditLogs.references(second));
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size(), "The first release leaves the writer running");
+        assertEquals("bob", AuditLogReader.parse(lines.get(1)).get("user"));
+    }
+
+    @Test
+    void release_LastReferenceLetsTheFileBeReopened() throws Exception {
+        Path file = tempDir.resolve("audit.log");
+        AuditLog first = SharedAuditLogs.acquire(file, 1024, 1 << 20, 2);
+        SharedAuditLogs.release(first);
+
+        AuditLog fresh = SharedAuditLogs.acquire(file, 1024, 1 << 20, 2);
+        assertNotSame(first, fresh);
+        SharedAuditLogs.release(fresh);
+    }
+
+    @Test
+    void acquire_DifferentFilesGetTheirOwnWriter() throws Exception {
+        AuditLog first = SharedAuditLogs.acquire(tempDir.resolve("a.log"), 1024, 1 << 20, 2);
+        AuditLog second = SharedAuditLogs.acquire(tempDir.resolve("b.log"), 1024, 1 << 20, 2);
+
+        assertNotSame(first, second);
+        SharedAuditLogs.release(first);
+        SharedAuditLogs.release(second);
+    }
+}
@@ -0,0 +1,94 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedClusterReplicatorsTest {
+
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path tempDir;
+
+    private static InetSocketAddress freeAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+
+    private static final class Counting implements ClusterReplicator.Listener {
+        final AtomicInteger changes = new AtomicInteger();
+
+        @Override
+        public void credentialsChanged(String username) {
+            changes.incrementAndGet();
+        }
+
+        @Override
+        public void revoked(String username) {
+        }
+    }
+
+    @Test
+    void instancesOfOneSourceShareOneReplicatorThatPublishesEachReloadOnce() throws Exception {
+        Path file = tempDir.resolve("publish.password");
+        Files.writeString(file, "alice:one\n");
+        CredentialSource source = new CredentialSource(file.toString(), false, false, 0, 1000);
+        source.start();
+        InetSocketAddress shared = freeAddress();
+        InetSocketAddress remote = freeAddress();
+
+        Counting first = new Counting();
+        Counting second = new Counting();
+        ClusterReplicator one = SharedClusterReplicators.acquire(source, "shared", new ClusterReplicator("edge1",
+                shared, KEY, 1000), List.of(remote), "settings", first);
+        ClusterReplicator two = SharedClusterReplicators.acquire(source, "shared", new ClusterReplicator("edge1",
+                shared, KEY, 1000), List.of(remote), "settings", second);
+        assertSame(one, two);
+        assertEquals(2, SharedClusterReplicators.references(one));
+
+        Counting peerListener = new Counting();
+        ClusterReplicator peer = new ClusterReplicator("edge2", remote, KEY, 1000);
+        peer.addListener(peerListener);
+        peer.start(List.of(shared));
+        try {
+            Files.writeString(file, "alice:two\n");
+            source.reload();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (peer.lookup("alice") == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals("two", peer.lookup("alice").password);
+            assertEquals(1, peerListener.changes.get(), "One reload is one change on the peer");
+            // Kept until the peer acknowledged it, then pruned on the next reload
+            // because the local file already says the same
+            while (one.entryCount() > 0 && System.currentTimeMillis() < deadline) {
+                source.reload();
+                Thread.sleep(10);
+            }
+            assertEquals(0, one.entryCount());
+
+            SharedClusterReplicators.release(one, first);
+            assertTrue(one.getPort() > 0, "Still used by the second instance");
+            SharedClusterReplicators.release(two, second);
+            assertEquals(-1, one.getPort());
+            assertEquals(0, SharedClusterReplicators.references(one));
+        } finally {
+            peer.stop();
+            source.stop();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedCredentialSourcesTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path passwordFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        passwordFile = tempDir.resolve("publish.password");
+        Files.write(passwordFile, "user1:pass1\nuser2:pass2\n".getBytes());
+    }
+
+    private CredentialSource acquire(String vhost, String path, CredentialSource.ReloadListener listener) {
+        return SharedCredentialSources.acquire(vhost, path, false, false, 10, 0, 100, listener);
+    }
+
+    @Test
+    void acquire_SharesOneSourcePerFile() {
+        AtomicInteger loads = new AtomicInteger();
+        CredentialSource first = acquire("vhost", passwordFile.toString(), (p, c, diff, d) -> loads.incrementAndGet());
+        CredentialSource second = acquire("vhost", tempDir.resolve(".").resolve("publish.password").toString(),
+                null);
+
+        assertSame(first, second, "Equivalent paths resolve to the same source");
+        assertEquals(2, SharedCredentialSources.references(first));
+        assertEquals(1, loads.get(), "The file is parsed once");
+        assertSame(first.snapshot(), second.snapshot());
+
+        SharedCredentialSources.release(first, null);
+        SharedCredentialSources.release(second, null);
+    }
+
+    @Test
+    void release_LastReferenceForgetsTheFile() {
+        CredentialSource first = acquire("vhost", passwordFile.toString(), null);
+        CredentialSource second = acquire("vhost", passwordFile.toString(), null);
+
+        SharedCredentialSources.release(first, null);
+        assertEquals(1, SharedCredentialSources.references(second));
+        assertEquals(2, second.snapshot().size());
+
+        SharedCredentialSources.release(second, null);
+        assertEquals(0, SharedCredentialSources.references(second));
+        CredentialSource fresh = acquire("vhost", passwordFile.toString(), null);
+        assertNotSame(first, fresh);
+        SharedCredentialSources.release(fresh, null);
+    }
+
+    @Test
+    void acquire_ScopesSourcesByVHost() {
+        CredentialSource a = acquire("vhostA", passwordFile.toString(), null);
+        CredentialSource b = acquire("vhostB", passwordFile.toString(), null);
+
+        assertNotSame(a, b);
+
+        SharedCredentialSources.release(a, null);
+        SharedCredentialSources.release(b, null);
+    }
+
+    @Test
+    void release_RemovesListener() {
+        AtomicInteger reloads = new AtomicInteger();
+        CredentialSource.ReloadListener listener = (p, c, diff, d) -> reloads.incrementAndGet();
+        CredentialSource first = acquire("vhost", passwordFile.toString(), listener);
+        CredentialSource second = acquire("vhost", passwordFile.toString(), null);
+
+        SharedCredentialSources.release(first, listener);
+        second.reload();
+
+        assertEquals(1, reloads.get(), "Only the initial load was seen");
+        SharedCredentialSources.release(second, null);
+    }
+}
@@ -0,0 +1,82 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedRegistryTest {
+
+    private final List<Object> closed = new CopyOnWriteArrayList<>();
+    private final SharedRegistry<Object> registry = new SharedRegistry<>(value -> value, closed::add);
+
+    @Test
+    void acquire_SlowOpenDoesNotHoldUpOtherKeys() throws Exception {
+        CountDownLatch opening = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Object slow = new Object();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Object> first = executor.submit(() -> registry.acquire("a", "a", "", () -> {
+                opening.countDown();
+                finish.await();
+                return slow;
+            }, null));
+            assertTrue(opening.await(5, TimeUnit.SECONDS));
+
+            Object other = new Object();
+            assertSame(other, registry.acquire("b", "b", "", () -> other, null), "Another key opens meanwhile");
+
+            AtomicInteger joined = new AtomicInteger();
+            Future<Object> second = executor.submit(() -> registry.acquire("a", "a", "",
+                    () -> fail("The key is already being opened"), value -> joined.incrementAndGet()));
+            Thread.sleep(100);
+            assertFalse(second.isDone(), "The same key waits for its open");
+
+            finish.countDown();
+            assertSame(slow, first.get(5, TimeUnit.SECONDS));
+            assertSame(slow, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, joined.get(), "Only the user that did not open it joins");
+            assertEquals(2, registry.references(slow));
+        } finally {
+            finish.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void acquire_FailedOpenIsRetriedByTheNextUser() throws Exception {
+        assertThrows(IOException.class, () -> registry.acquire("a", "a", "", () -> {
+            throw new IOException("port in use");
+        }, null));
+
+        Object value = new Object();
+        assertSame(value, registry.acquire("a", "a", "", () -> value, null));
+        assertEquals(1, registry.references(value));
+    }
+
+    @Test
+    void release_LastReferenceClosesOnce() throws Exception {
+        Object value = new Object();
+        registry.acquire("a", "a", "", () -> value, null);
+        registry.acquire("a", "a", "", () -> fail("Already open"), null);
+
+        assertTrue(registry.release(value));
+        assertTrue(closed.isEmpty());
+        assertTrue(registry.release(value));
+        assertEquals(List.of(value), closed);
+        assertFalse(registry.release(value), "Released values are no longer registered");
+
+        Object reopened = new Object();
+        assertSame(reopened, registry.acquire("a", "a", "", () -> reopened, null));
+    }
+}
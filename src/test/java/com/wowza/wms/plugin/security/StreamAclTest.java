@@ -0,0 +1,110 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamAclTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static StreamAcl acl(String... lines) {
+        return StreamAcl.parse(Arrays.asList(lines));
+    }
+
+    @Test
+    void missingFileAllowsEverything() throws IOException {
+        StreamAcl acl = StreamAcl.load(tempDir.resolve("publish.password.acl"));
+
+        assertFalse(acl.isEnforcing());
+        assertTrue(acl.isAllowed("anyone", "anything"));
+    }
+
+    @Test
+    void matchesExactNamesAndPrefixes() {
+        StreamAcl acl = acl("# comment", "alice live/alice, live/shared/*", "", "bob live/bob");
+
+        assertTrue(acl.isAllowed("alice", "live/alice"));
+        assertFalse(acl.isAllowed("alice", "live/alice2"));
+        assertFalse(acl.isAllowed("alice", "live/alic"));
+        assertTrue(acl.isAllowed("alice", "live/shared/"));
+        assertTrue(acl.isAllowed("alice", "live/shared/a/b"));
+        assertFalse(acl.isAllowed("alice", "live/bob"));
+        assertTrue(acl.isAllowed("bob", "live/bob"));
+        assertFalse(acl.isAllowed("carol", "live/alice"), "Unlisted users get no streams");
+        assertFalse(acl.isAllowed(null, "live/alice"));
+        assertEquals(3, acl.ruleCount());
+        assertEquals(2, acl.userCount());
+    }
+
+    @Test
+    void matchesWildcardsInsidePatterns() {
+        StreamAcl acl = acl("alice news-??, *-preview, cam*/low, a**b");
+
+        assertTrue(acl.isAllowed("alice", "news-01"));
+        assertFalse(acl.isAllowed("alice", "news-1"));
+        assertFalse(acl.isAllowed("alice", "news-001"));
+        assertTrue(acl.isAllowed("alice", "-preview"));
+        assertTrue(acl.isAllowed("alice", "show-preview"));
+        assertFalse(acl.isAllowed("alice", "show-preview2"));
+        assertTrue(acl.isAllowed("alice", "cam1/low"));
+        assertTrue(acl.isAllowed("alice", "cam/x/low"));
+        assertFalse(acl.isAllowed("alice", "cam1/high"));
+        assertTrue(acl.isAllowed("alice", "ab"));
+        assertTrue(acl.isAllowed("alice", "axxb"));
+    }
+
+    @Test
+    void longNamesAgainstManyWildcardsStayLinear() {
+        StreamAcl acl = acl("alice *a*a*a*a*a*a*b, live/*/*/*/x?");
+        String name = "a".repeat(StreamAcl.MAX_STREAM_NAME);
+
+        // Backtracking would try about n^6 ways to split the name here
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertFalse(acl.isAllowed("alice", name));
+            assertFalse(acl.isAllowed("alice", "live/" + "/".repeat(1000)));
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2), "matching is not linear");
+        assertTrue(acl.isAllowed("alice", name.substring(1) + "b"));
+        assertTrue(acl.isAllowed("alice", "live/a/b/c/xy"));
+
+        assertFalse(acl.isAllowed("alice", "a".repeat(StreamAcl.MAX_STREAM_NAME) + "b"), "too long");
+    }
+
+    @Test
+    void rulesForAllUsersApplyToEveryone() {
+        StreamAcl acl = acl("* public/*", "alice private");
+
+        assertTrue(acl.isAllowed("alice", "public/news"));
+        assertTrue(acl.isAllowed("carol", "public/news"));
+        assertTrue(acl.isAllowed("alice", "private"));
+        assertFalse(acl.isAllowed("carol", "private"));
+    }
+
+    @Test
+    void manyRulesShareOneTrie() {
+        List<String> lines = new ArrayList<>();
+        StringBuilder rules = new StringBuilder("alice");
+        for (int i = 0; i < 5000; i++) {
+            rules.append(" live/stream").append(i);
+        }
+        lines.add(rules.toString());
+        StreamAcl acl = StreamAcl.parse(lines);
+
+        assertEquals(5000, acl.ruleCount());
+        assertTrue(acl.isAllowed("alice", "live/stream4999"));
+        assertTrue(acl.isAllowed("alice", "live/stream0"));
+        assertFalse(acl.isAllowed("alice", "live/stream5000"));
+        assertFalse(acl.isAllowed("alice", "live/stream"));
+    }
+}
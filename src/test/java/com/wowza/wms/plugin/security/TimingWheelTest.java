@@ -0,0 +1,84 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void firesOnDeadlineTickAcrossRounds() {
+        // Long ticks so the wall clock does not move while the test drives the wheel
+        TimingWheel wheel = new TimingWheel(60000, 4, "test-wheel");
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(() -> fired.add("one"), 60000);
+        wheel.schedule(() -> fired.add("six"), 6 * 60000);
+        assertEquals(2, wheel.pendingCount());
+
+        wheel.advance();
+        assertTrue(fired.isEmpty());
+        wheel.advance();
+        assertEquals(List.of("one"), fired);
+        for (int i = 0; i < 4; i++) {
+            wheel.advance();
+        }
+        assertEquals(List.of("one"), fired, "Six ticks need a second round of a four-slot wheel");
+        wheel.advance();
+        assertEquals(List.of("one", "six"), fired);
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    void cancelledTimeoutsNeverRun() {
+        TimingWheel wheel = new TimingWheel(60000, 8, "test-wheel");
+        List<String> fired = new ArrayList<>();
+        TimingWheel.Timeout early = wheel.schedule(() -> fired.add("early"), 0);
+        TimingWheel.Timeout late = wheel.schedule(() -> fired.add("late"), 60000);
+        assertTrue(early.cancel());
+
+        wheel.advance();
+        assertTrue(late.cancel());
+        wheel.advance();
+        wheel.advance();
+
+        assertTrue(fired.isEmpty());
+        assertFalse(late.cancel(), "Already cancelled");
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() {
+        TimingWheel wheel = new TimingWheel(60000, 8, "test-wheel");
+        List<String> fired = new ArrayList<>();
+        wheel.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 0);
+        TimingWheel.Timeout ok = wheel.schedule(() -> fired.add("ok"), 0);
+
+        wheel.advance();
+        wheel.advance();
+
+        assertEquals(List.of("ok"), fired);
+        assertTrue(ok.isExpired());
+    }
+
+    @Test
+    void wheelThreadRunsTasksInRealTime() throws Exception {
+        TimingWheel wheel = new TimingWheel(10, 16, "test-wheel");
+        CountDownLatch done = new CountDownLatch(100);
+        wheel.start();
+        try {
+            for (int i = 0; i < 100; i++) {
+                wheel.schedule(done::countDown, i);
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopClientsTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    void splitsUsersAndAddressesByOutcome() {
+        TopClients top = new TopClients(2, 60000, clock::get);
+        for (int i = 0; i < 3; i++) {
+            top.record("bob", "10.0.0.9", AuthOutcome.BAD_PASSWORD);
+        }
+        top.record(null, "10.0.0.8", AuthOutcome.NO_CREDENTIALS);
+        top.record("alice", "10.0.0.7", AuthOutcome.ACCEPTED);
+
+        assertEquals("[bob=3]", top.users(true).toString());
+        assertEquals("[10.0.0.9=3, 10.0.0.8=1]", top.ips(true).toString());
+        assertEquals("[alice=1]", top.users(false).toString());
+        assertEquals("[10.0.0.7=1]", top.ips(false).toString());
+        assertEquals("users [bob=3], IPs [10.0.0.9=3]", top.describe(1));
+    }
+
+    @Test
+    void writesJsonAndEscapesNames() {
+        TopClients top = new TopClients(5, 60000, clock::get);
+        top.record("a\"b", "10.0.0.1", AuthOutcome.UNKNOWN_USER);
+
+        StringBuilder json = new StringBuilder("{");
+        top.writeJson(json);
+        json.append('}');
+
+        assertEquals("{\"windowSeconds\":60,\"rejectedUsers\":[{\"key\":\"a\\\"b\",\"count\":1}],"
+                + "\"rejectedIps\":[{\"key\":\"10.0.0.1\",\"count\":1}],\"acceptedUsers\":[],\"acceptedIps\":[]}",
+                json.toString());
+    }
+
+    @Test
+    void limitsTheListSize() {
+        assertEquals(TopClients.MAX_SIZE, new TopClients(1_000_000, 60000, clock::get).size());
+        assertEquals(1, new TopClients(0, 60000, clock::get).size());
+    }
+}
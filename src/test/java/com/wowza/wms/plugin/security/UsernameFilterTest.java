@@ -0,0 +1,54 @@
+package com.wowza.wms.plugin.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UsernameFilterTest {
+
+    private static CompactCredentialIndex index(int users) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < users; i++) {
+            text.append("user").append(i).append(":pass\n");
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        return CompactCredentialIndex.build(bytes, 0, bytes.length, "test");
+    }
+
+    @Test
+    void mightContain_NoFalseNegatives() {
+        UsernameFilter filter = UsernameFilter.build(index(10000), 10);
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("user" + i));
+        }
+    }
+
+    @Test
+    void mightContain_RejectsMostUnknownUsers() {
+        UsernameFilter filter = UsernameFilter.build(index(10000), 10);
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("intruder" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 3000, "False positive rate too high: " + falsePositives);
+    }
+
+    @Test
+    void build_NonAsciiUsernamesMatchStringHash() {
+        byte[] bytes = "josé:pass\nユーザー:pass\n".getBytes(StandardCharsets.UTF_8);
+        UsernameFilter filter = UsernameFilter.build(CompactCredentialIndex.build(bytes, 0, bytes.length, "t"), 10);
+
+        assertTrue(filter.mightContain("josé"));
+        assertTrue(filter.mightContain("ユーザー"));
+    }
+
+    @Test
+    void passAll_AndDisabledFilterLetEverythingThrough() {
+        assertTrue(UsernameFilter.PASS_ALL.mightContain("anyone"));
+        assertSame(UsernameFilter.PASS_ALL, UsernameFilter.build(index(10), 0));
+    }
+}